@@ -0,0 +1,65 @@
+package com.scmspain;
+
+import org.openjdk.jmh.annotations.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.lang.management.ManagementFactory;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time from starting the application until it is ready, with and without the startup profile. Every fork measures a
+ * single start, so the result is spread over many forks instead of repeated starts on a JVM warmed by the previous
+ * ones. Every fork first starts the application once with the default profile to create the schema the startup
+ * profile validates, so both profiles are measured on an equally warm JVM. The heap the running application retains
+ * is logged after a collection, once the start was measured; run with the gc profiler for what every start
+ * allocates:
+ * ./gradlew jmh -Pjmh='StartupBenchmark -prof gc'
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+@Fork(10)
+public class StartupBenchmark {
+    private static final Logger LOG = LoggerFactory.getLogger(StartupBenchmark.class);
+
+    @Param({"default", "startup"})
+    private String profile;
+
+    private String database;
+    private ConfigurableApplicationContext context;
+
+    @Setup(Level.Trial)
+    public void createSchema() {
+        database = "jdbc:h2:mem:" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1;DB_CLOSE_ON_EXIT=FALSE";
+        start("default", "spring.jpa.hibernate.ddl-auto=update").close();
+    }
+
+    @TearDown(Level.Invocation)
+    public void stop() {
+        System.gc();
+        final long heapUsed = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+        LOG.info("Heap retained after starting with the {} profile: {} MB.", profile, heapUsed / (1024 * 1024));
+        context.close();
+    }
+
+    @Benchmark
+    public ConfigurableApplicationContext timeToReady() {
+        context = start(profile);
+        return context;
+    }
+
+    private ConfigurableApplicationContext start(final String profile, final String... properties) {
+        return new SpringApplicationBuilder(MsFcTechTestApplication.class)
+                .profiles(profile)
+                .properties("server.port=0", "logging.level.root=WARN",
+                        "logging.level.com.scmspain.StartupBenchmark=INFO", "spring.datasource.url=" + database)
+                .properties(properties)
+                .run();
+    }
+}
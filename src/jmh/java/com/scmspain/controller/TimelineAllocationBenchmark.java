@@ -0,0 +1,57 @@
+package com.scmspain.controller;
+
+import com.scmspain.MsFcTechTestApplication;
+import com.scmspain.entities.Tweet;
+import com.scmspain.services.TweetService;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.web.context.WebApplicationContext;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.setup.MockMvcBuilders.webAppContextSetup;
+
+/**
+ * Cost of a GET /tweet request over a timeline of the given size, written by a handful of publishers. Run it with
+ * the GC profiler to get the heap allocated per request (gc.alloc.rate.norm):
+ * ./gradlew jmh -Pjmh='TimelineAllocationBenchmark -prof gc'
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TimelineAllocationBenchmark {
+
+    @Param({"100", "1000"})
+    private int tweets;
+
+    private ConfigurableApplicationContext context;
+    private MockMvc mockMvc;
+
+    @Setup
+    public void setUp() {
+        context = new SpringApplicationBuilder(MsFcTechTestApplication.class)
+                .properties("server.port=0", "logging.level.root=WARN")
+                .run();
+        TweetService tweetService = context.getBean(TweetService.class);
+        for(int i = 0; i < tweets; i++){
+            tweetService.publishTweet(new Tweet("Publisher number " + (i % 10), "Tweet number " + i + " http://example.com/" + (i % 50) + " "));
+        }
+        mockMvc = webAppContextSetup((WebApplicationContext) context).build();
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public byte[] listAllTweets() throws Exception {
+        return mockMvc.perform(get("/tweet")).andReturn().getResponse().getContentAsByteArray();
+    }
+}
@@ -0,0 +1,88 @@
+package com.scmspain.controller;
+
+import com.scmspain.entities.Tweet;
+import org.openjdk.jmh.annotations.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.GenericHttpMessageConverter;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+import org.springframework.mock.http.MockHttpInputMessage;
+import org.springframework.mock.http.MockHttpOutputMessage;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Server encode time and client decode time of a timeline of the given size on every wire format served by
+ * GET /tweet. The bytes on the wire of each format are logged when the benchmark is set up:
+ * ./gradlew jmh -Pjmh=WireFormatBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WireFormatBenchmark {
+    private static final Logger LOG = LoggerFactory.getLogger(WireFormatBenchmark.class);
+    private static final Type TWEETS = new ParameterizedTypeReference<List<Tweet>>() {}.getType();
+
+    @Param({"json", "cbor", "smile", "protobuf"})
+    private String format;
+
+    @Param({"10", "100", "1000"})
+    private int tweets;
+
+    private GenericHttpMessageConverter<Object> converter;
+    private MediaType mediaType;
+    private List<Tweet> timeline;
+    private byte[] encoded;
+
+    @Setup
+    public void setUp() throws IOException {
+        switch (format) {
+            case "cbor":
+                converter = JacksonBinaryHttpMessageConverter.cbor(Jackson2ObjectMapperBuilder.json());
+                mediaType = JacksonBinaryHttpMessageConverter.APPLICATION_CBOR;
+                break;
+            case "smile":
+                converter = JacksonBinaryHttpMessageConverter.smile(Jackson2ObjectMapperBuilder.json());
+                mediaType = JacksonBinaryHttpMessageConverter.APPLICATION_SMILE;
+                break;
+            case "protobuf":
+                converter = new TweetProtobufHttpMessageConverter();
+                mediaType = TweetProtobufHttpMessageConverter.APPLICATION_PROTOBUF;
+                break;
+            default:
+                converter = new MappingJackson2HttpMessageConverter();
+                mediaType = MediaType.APPLICATION_JSON_UTF8;
+        }
+
+        timeline = new ArrayList<>();
+        for(int i = 0; i < tweets; i++){
+            Tweet tweet = new Tweet("Publisher number " + (i % 10), "Tweet number " + i + " http://example.com/" + (i % 50) + " ");
+            tweet.setId((1500000000000L + i * 1000L) << 22 | i % 1024);
+            timeline.add(tweet);
+        }
+        encoded = encode();
+        LOG.info("{} timeline of {} tweets: {} bytes.", format, tweets, encoded.length);
+    }
+
+    @Benchmark
+    public byte[] encode() throws IOException {
+        MockHttpOutputMessage output = new MockHttpOutputMessage();
+        converter.write(timeline, TWEETS, mediaType, output);
+        return output.getBodyAsBytes();
+    }
+
+    @Benchmark
+    public Object decode() throws IOException {
+        return converter.read(TWEETS, null, new MockHttpInputMessage(encoded));
+    }
+}
@@ -0,0 +1,91 @@
+package com.scmspain.persistence;
+
+import com.scmspain.MsFcTechTestApplication;
+import com.scmspain.entities.Tweet;
+import com.scmspain.entities.TweetChange;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Write and read throughput of both tweet storages, the JPA one on the embedded H2 database and the append-only
+ * log, called directly so neither the web layer nor the repository guard are measured. Reads run on a read only
+ * transaction, as the repository guard runs them. Every trial starts from a store holding the given amount of
+ * tweets, which keeps growing while the publish benchmark runs:
+ * ./gradlew jmh -Pjmh='TweetStorageBenchmark'
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TweetStorageBenchmark {
+
+    @Param({"jpa", "log"})
+    private String storage;
+
+    @Param({"1000"})
+    private int tweets;
+
+    private ConfigurableApplicationContext context;
+    private TweetStorage tweetStorage;
+    private TransactionTemplate readTransaction;
+    private Path directory;
+    private long[] ids;
+    private int published;
+
+    @Setup
+    public void setUp() throws Exception {
+        directory = Files.createTempDirectory("tweet-log");
+        context = new SpringApplicationBuilder(MsFcTechTestApplication.class)
+                .properties("server.port=0", "logging.level.root=WARN",
+                        "spring.datasource.url=jdbc:h2:mem:" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1;DB_CLOSE_ON_EXIT=FALSE",
+                        "tweet.storage.type=" + storage,
+                        "tweet.storage.log.directory=" + directory)
+                .run();
+        tweetStorage = context.getBean(TweetStorage.class);
+        readTransaction = new TransactionTemplate(context.getBean(PlatformTransactionManager.class));
+        readTransaction.setReadOnly(true);
+
+        ids = new long[tweets];
+        for(int i = 0; i < tweets; i++){
+            ids[i] = tweetStorage.saveTweet(newTweet()).getTweetId();
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        context.close();
+        Files.walk(directory).sorted((a, b) -> b.compareTo(a)).forEach(path -> path.toFile().delete());
+    }
+
+    @Benchmark
+    public TweetChange publish() {
+        return tweetStorage.saveTweet(newTweet());
+    }
+
+    @Benchmark
+    public Tweet findById() {
+        return readTransaction.execute(status -> tweetStorage.findTweetById(ids[ThreadLocalRandom.current().nextInt(ids.length)]));
+    }
+
+    @Benchmark
+    public List<Tweet> timeline() {
+        return readTransaction.execute(status -> tweetStorage.findNonDiscardedTweets());
+    }
+
+    private Tweet newTweet() {
+        final int i = published++;
+        return new Tweet("Publisher number " + (i % 10), "Tweet number " + i + " http://example.com/" + (i % 50) + " ");
+    }
+}
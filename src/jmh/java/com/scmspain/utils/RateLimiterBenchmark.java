@@ -0,0 +1,60 @@
+package com.scmspain.utils;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of rate limiting a request with 64 threads writing for 10k distinct publishers, compared to the plain map
+ * lookup every limiter keyed by publisher pays anyway, and to 64 threads all writing for the same publisher, the
+ * worst case for the compare and set loop. Run with ./gradlew jmh -Pjmh=RateLimiterBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(64)
+public class RateLimiterBenchmark {
+    private static final int PUBLISHERS = 10_000;
+
+    private final String[] publishers = new String[PUBLISHERS];
+    private final RateLimiter rateLimiter = new RateLimiter(1_000_000, 1_000, PUBLISHERS);
+    private final ConcurrentMap<String, Long> map = new ConcurrentHashMap<>();
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        private int next = (int) (Math.random() * PUBLISHERS);
+
+        private int next() {
+            next = next + 7919 < PUBLISHERS ? next + 7919 : next + 7919 - PUBLISHERS;
+            return next;
+        }
+    }
+
+    @Setup
+    public void setUp() {
+        for(int i = 0; i < PUBLISHERS; i++){
+            publishers[i] = "Publisher number " + i;
+            map.put(publishers[i], (long) i);
+        }
+    }
+
+    @Benchmark
+    public long distinctPublishers(Cursor cursor) {
+        return rateLimiter.tryAcquire(publishers[cursor.next()]);
+    }
+
+    @Benchmark
+    public Long distinctPublishersMapLookup(Cursor cursor) {
+        return map.get(publishers[cursor.next()]);
+    }
+
+    @Benchmark
+    public long samePublisher() {
+        return rateLimiter.tryAcquire(publishers[0]);
+    }
+}
@@ -0,0 +1,46 @@
+package com.scmspain.utils;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Throughput of the id generator, on its own and under contention, compared to a plain AtomicLong counter which
+ * is the lower bound of any lock-free generator. Run with ./gradlew jmh -Pjmh=SnowflakeIdGeneratorBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SnowflakeIdGeneratorBenchmark {
+
+    private final SnowflakeIdGenerator generator = new SnowflakeIdGenerator(1, 5000);
+    private final AtomicLong counter = new AtomicLong();
+
+    @Benchmark
+    @Threads(1)
+    public long snowflakeSingleThread() {
+        return generator.nextId();
+    }
+
+    @Benchmark
+    @Threads(8)
+    public long snowflakeEightThreads() {
+        return generator.nextId();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public long atomicCounterSingleThread() {
+        return counter.incrementAndGet();
+    }
+
+    @Benchmark
+    @Threads(8)
+    public long atomicCounterEightThreads() {
+        return counter.incrementAndGet();
+    }
+}
@@ -0,0 +1,21 @@
+package com.scmspain.loadtest;
+
+/**
+ * Endpoints driven by the load test, named as they appear on the report.
+ */
+public enum Endpoint {
+    PUBLISH("POST /tweet"),
+    TIMELINE("GET /tweet"),
+    DISCARD("POST /discarded"),
+    DISCARDED("GET /discarded");
+
+    private final String label;
+
+    Endpoint(String label) {
+        this.label = label;
+    }
+
+    public String getLabel() {
+        return label;
+    }
+}
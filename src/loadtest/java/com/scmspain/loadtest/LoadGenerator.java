@@ -0,0 +1,284 @@
+package com.scmspain.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Open model load generator: requests are sent on a schedule given by the arrival rate, whether or not the previous
+ * ones were answered, as real clients would. Response times are measured from the time each request was scheduled
+ * to be sent rather than from the time it actually was, so the time requests spend waiting for a free connection
+ * while the service stalls is reported too (coordinated omission correction). The time from the actual send, the
+ * service time, is recorded as well.
+ *
+ * The dispatcher thread alone draws from the random generator, so a given seed always yields the same requests.
+ */
+public class LoadGenerator {
+    private static final long HIGHEST_TRACKABLE_MICROS = TimeUnit.MINUTES.toMicros(10);
+    private static final int TIMELINE_HARVEST_EVERY = 20;
+    private static final int LINKS = 1000;
+
+    private final LoadTestSettings settings;
+    private final String baseUrl;
+    private final Random random;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final BlockingQueue<Long> discardableIds = new ArrayBlockingQueue<>(100_000);
+    private final Set<Long> seenIds = ConcurrentHashMap.newKeySet();
+    private final AtomicLong timelineReads = new AtomicLong();
+    private final AtomicInteger tweets = new AtomicInteger();
+    private final LongAdder substitutedDiscards = new LongAdder();
+
+    private final Map<Endpoint, Recorder> responseTimes = new EnumMap<>(Endpoint.class);
+    private final Map<Endpoint, Recorder> serviceTimes = new EnumMap<>(Endpoint.class);
+    private final Map<Endpoint, ConcurrentMap<Integer, LongAdder>> statuses = new EnumMap<>(Endpoint.class);
+
+    public LoadGenerator(LoadTestSettings settings, String baseUrl) {
+        this.settings = settings;
+        this.baseUrl = baseUrl;
+        this.random = new Random(settings.getSeed());
+        for(Endpoint endpoint : Endpoint.values()){
+            this.responseTimes.put(endpoint, new Recorder(HIGHEST_TRACKABLE_MICROS, 3));
+            this.serviceTimes.put(endpoint, new Recorder(HIGHEST_TRACKABLE_MICROS, 3));
+            this.statuses.put(endpoint, new ConcurrentHashMap<>());
+        }
+    }
+
+    /**
+     * Preloads the service, then sends requests at the configured rate during the warm up and the measured period.
+     * @return The report of the requests scheduled during the measured period.
+     * @throws InterruptedException when interrupted while waiting for the last requests.
+     */
+    public LoadTestReport run() throws InterruptedException {
+        preload();
+
+        final ThreadPoolExecutor connections = new ThreadPoolExecutor(settings.getConnections(), settings.getConnections(),
+                0, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+                    final Thread thread = new Thread(runnable, "loadtest-connection");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+
+        final long start = System.nanoTime();
+        final long measureFrom = start + TimeUnit.SECONDS.toNanos(settings.getWarmupSeconds());
+        final long end = measureFrom + TimeUnit.SECONDS.toNanos(settings.getDurationSeconds());
+        long scheduled = start;
+        long maxDispatchLagNanos = 0;
+        while(scheduled - end < 0){
+            waitUntil(scheduled);
+            maxDispatchLagNanos = Math.max(maxDispatchLagNanos, System.nanoTime() - scheduled);
+
+            final Request request = nextRequest(scheduled - measureFrom >= 0);
+            final long requestScheduled = scheduled;
+            connections.execute(() -> send(request, requestScheduled));
+            scheduled += nextIntervalNanos();
+        }
+
+        connections.shutdown();
+        connections.awaitTermination(10, TimeUnit.MINUTES);
+        final long elapsedNanos = System.nanoTime() - measureFrom;
+
+        final Map<Endpoint, Histogram> responseHistograms = new EnumMap<>(Endpoint.class);
+        final Map<Endpoint, Histogram> serviceHistograms = new EnumMap<>(Endpoint.class);
+        for(Endpoint endpoint : Endpoint.values()){
+            responseHistograms.put(endpoint, this.responseTimes.get(endpoint).getIntervalHistogram());
+            serviceHistograms.put(endpoint, this.serviceTimes.get(endpoint).getIntervalHistogram());
+        }
+        return new LoadTestReport(settings, elapsedNanos, maxDispatchLagNanos, substitutedDiscards.sum(),
+                responseHistograms, serviceHistograms, statuses);
+    }
+
+    private void preload() {
+        for(int i = 0; i < settings.getPreload(); i++){
+            send(publishRequest(false), System.nanoTime());
+        }
+        final Response timeline = execute(new Request(Endpoint.TIMELINE, "GET", "/tweet", null, null, false));
+        harvestIds(timeline);
+    }
+
+    private Request nextRequest(final boolean measured) {
+        int pick = random.nextInt(settings.getMix().values().stream().mapToInt(Integer::intValue).sum());
+        Endpoint endpoint = null;
+        for(Map.Entry<Endpoint, Integer> weight : settings.getMix().entrySet()){
+            pick -= weight.getValue();
+            if(pick < 0){
+                endpoint = weight.getKey();
+                break;
+            }
+        }
+
+        switch (endpoint) {
+            case TIMELINE:
+                return new Request(Endpoint.TIMELINE, "GET", "/tweet", null, null, measured);
+            case DISCARDED:
+                return new Request(Endpoint.DISCARDED, "GET", "/discarded", null, publisher(), measured);
+            case DISCARD:
+                final Long id = discardableIds.poll();
+                if(id != null){
+                    return new Request(Endpoint.DISCARD, "POST", "/discarded", "{\"tweet\": \""+ id +"\"}", null, measured);
+                }
+                // nothing known to discard yet, publish something to discard later instead.
+                if(measured){
+                    substitutedDiscards.increment();
+                }
+                return publishRequest(measured);
+            default:
+                return publishRequest(measured);
+        }
+    }
+
+    private Request publishRequest(final boolean measured) {
+        final int number = tweets.incrementAndGet();
+        final StringBuilder text = new StringBuilder("Load test tweet number ").append(number);
+        if(random.nextDouble() < settings.getLinkHeavyRatio()){
+            // links are not counted on the tweet length, and a few of them are far more popular than the rest.
+            for(int i = 0; i < 3; i++){
+                final int link = (int) (LINKS * Math.pow(random.nextDouble(), 3));
+                text.append(" http://example.com/loadtest/link/").append(link).append(' ');
+            }
+        }
+        final String body = "{\"publisher\": \""+ publisher() +"\", \"tweet\": \""+ text +"\"}";
+        return new Request(Endpoint.PUBLISH, "POST", "/tweet", body, null, measured);
+    }
+
+    private String publisher() {
+        return "loadtest-publisher-"+ random.nextInt(settings.getPublishers());
+    }
+
+    private long nextIntervalNanos() {
+        final double meanNanos = TimeUnit.SECONDS.toNanos(1) / settings.getRate();
+        if(!settings.isPoisson()){
+            return (long) meanNanos;
+        }
+        return (long) (-Math.log(1 - random.nextDouble()) * meanNanos);
+    }
+
+    private void send(final Request request, final long scheduled) {
+        final long sent = System.nanoTime();
+        final Response response = execute(request);
+        final long done = System.nanoTime();
+
+        if(request.measured){
+            record(this.responseTimes.get(request.endpoint), done - scheduled);
+            record(this.serviceTimes.get(request.endpoint), done - sent);
+            this.statuses.get(request.endpoint).computeIfAbsent(response.status, status -> new LongAdder()).increment();
+        }
+        if(request.endpoint == Endpoint.TIMELINE && timelineReads.incrementAndGet() % TIMELINE_HARVEST_EVERY == 0){
+            harvestIds(response);
+        }
+    }
+
+    private static void record(final Recorder recorder, final long nanos) {
+        recorder.recordValue(Math.min(TimeUnit.NANOSECONDS.toMicros(nanos), HIGHEST_TRACKABLE_MICROS));
+    }
+
+    private Response execute(final Request request) {
+        try {
+            final HttpURLConnection connection = (HttpURLConnection) new URL(baseUrl + request.path).openConnection();
+            connection.setRequestMethod(request.method);
+            connection.setRequestProperty("Accept", "application/json");
+            if(request.publisher != null){
+                connection.setRequestProperty("publisher", request.publisher);
+            }
+            if(request.body != null){
+                connection.setDoOutput(true);
+                connection.setRequestProperty("Content-Type", "application/json;charset=UTF-8");
+                try (OutputStream out = connection.getOutputStream()) {
+                    out.write(request.body.getBytes(StandardCharsets.UTF_8));
+                }
+            }
+            final int status = connection.getResponseCode();
+            final InputStream in = status >= 400 ? connection.getErrorStream() : connection.getInputStream();
+            return new Response(status, in == null ? new byte[0] : readFully(in));
+        } catch (IOException ex){
+            return new Response(-1, new byte[0]);
+        }
+    }
+
+    private void harvestIds(final Response timeline) {
+        if(timeline.status != 200){
+            return;
+        }
+        try {
+            for(JsonNode tweet : objectMapper.readTree(timeline.body)){
+                final long id = tweet.get("id").asLong();
+                if(seenIds.add(id)){
+                    discardableIds.offer(id);
+                }
+            }
+        } catch (IOException ex){
+            // not a timeline, nothing to harvest.
+        }
+    }
+
+    private static byte[] readFully(final InputStream in) throws IOException {
+        try (InputStream input = in) {
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            final byte[] buffer = new byte[8192];
+            int read;
+            while((read = input.read(buffer)) >= 0){
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        }
+    }
+
+    private static void waitUntil(final long nanos) {
+        long remaining;
+        while((remaining = nanos - System.nanoTime()) > 0){
+            LockSupport.parkNanos(remaining);
+        }
+    }
+
+    private static final class Request {
+        private final Endpoint endpoint;
+        private final String method;
+        private final String path;
+        private final String body;
+        private final String publisher;
+        private final boolean measured;
+
+        private Request(Endpoint endpoint, String method, String path, String body, String publisher, boolean measured) {
+            this.endpoint = endpoint;
+            this.method = method;
+            this.path = path;
+            this.body = body;
+            this.publisher = publisher;
+            this.measured = measured;
+        }
+    }
+
+    private static final class Response {
+        private final int status;
+        private final byte[] body;
+
+        private Response(int status, byte[] body) {
+            this.status = status;
+            this.body = body;
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package com.scmspain.loadtest;
+
+import com.scmspain.MsFcTechTestApplication;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.context.embedded.EmbeddedWebApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.File;
+
+/**
+ * Starts the application on a random port, backed by its own in-memory H2 database, and drives it with a mixed
+ * workload at a fixed arrival rate, reporting the latency percentiles of every endpoint. Run it with e.g.
+ * ./gradlew loadtest -Ploadtest='rate=500 duration=120 mix=publish=10,timeline=80,discard=2,discarded=8'
+ * See {@link LoadTestSettings} for every setting.
+ */
+public class LoadTest {
+    public static void main(String[] args) throws Exception {
+        final LoadTestSettings settings = LoadTestSettings.parse(args);
+
+        final ConfigurableApplicationContext context = new SpringApplicationBuilder(MsFcTechTestApplication.class)
+                .properties("server.port=0",
+                        "spring.datasource.url=jdbc:h2:mem:loadtest;DB_CLOSE_DELAY=-1;DB_CLOSE_ON_EXIT=FALSE",
+                        "logging.level.root=WARN")
+                .run(settings.getApplicationArgs().toArray(new String[0]));
+        try {
+            final int port = ((EmbeddedWebApplicationContext) context).getEmbeddedServletContainer().getPort();
+            final LoadTestReport report = new LoadGenerator(settings, "http://localhost:"+ port).run();
+
+            report.print(System.out);
+            final File results = report.write();
+            System.out.println("Results written to "+ results.getAbsolutePath());
+        } finally {
+            context.close();
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package com.scmspain.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.HdrHistogram.Histogram;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Results of a load test run: per endpoint response time and service time percentiles, in milliseconds, and the
+ * count of every response status. Written as results.json, meant to be kept and compared between commits, next to
+ * the full percentile distribution of every endpoint (one .hgrm file each, which HdrHistogram's plotter reads).
+ */
+public class LoadTestReport {
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9, 99.99};
+    private static final double MICROS_PER_MILLI = 1000.0;
+
+    private final LoadTestSettings settings;
+    private final long elapsedNanos;
+    private final long maxDispatchLagNanos;
+    private final long substitutedDiscards;
+    private final Map<Endpoint, Histogram> responseTimes;
+    private final Map<Endpoint, Histogram> serviceTimes;
+    private final Map<Endpoint, ? extends Map<Integer, LongAdder>> statuses;
+
+    public LoadTestReport(LoadTestSettings settings, long elapsedNanos, long maxDispatchLagNanos, long substitutedDiscards,
+                          Map<Endpoint, Histogram> responseTimes, Map<Endpoint, Histogram> serviceTimes,
+                          Map<Endpoint, ? extends Map<Integer, LongAdder>> statuses) {
+        this.settings = settings;
+        this.elapsedNanos = elapsedNanos;
+        this.maxDispatchLagNanos = maxDispatchLagNanos;
+        this.substitutedDiscards = substitutedDiscards;
+        this.responseTimes = responseTimes;
+        this.serviceTimes = serviceTimes;
+        this.statuses = statuses;
+    }
+
+    /**
+     * Writes results.json and the percentile distributions to the output directory of the settings.
+     * @return The results file.
+     * @throws IOException when the files can't be written.
+     */
+    public File write() throws IOException {
+        final File directory = new File(settings.getOutput());
+        if(!directory.isDirectory() && !directory.mkdirs()){
+            throw new IOException("Can't create the output directory ["+ directory +"].");
+        }
+
+        for(Endpoint endpoint : Endpoint.values()){
+            try (PrintStream out = new PrintStream(new File(directory, endpoint.name().toLowerCase() +".hgrm"), "UTF-8")) {
+                this.responseTimes.get(endpoint).outputPercentileDistribution(out, MICROS_PER_MILLI);
+            }
+        }
+
+        final File results = new File(directory, "results.json");
+        new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT).writeValue(results, toMap());
+        return results;
+    }
+
+    /**
+     * Prints a summary of the response times of every endpoint.
+     * @param out Where to print it.
+     */
+    public void print(final PrintStream out) {
+        out.printf("%-16s %8s %8s %10s %10s %10s %10s %10s%n", "endpoint", "count", "errors", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms");
+        for(Endpoint endpoint : Endpoint.values()){
+            final Histogram histogram = this.responseTimes.get(endpoint);
+            out.printf("%-16s %8d %8d %10.3f %10.3f %10.3f %10.3f %10.3f%n", endpoint.getLabel(), histogram.getTotalCount(),
+                    errors(endpoint), millis(histogram.getValueAtPercentile(50)), millis(histogram.getValueAtPercentile(90)),
+                    millis(histogram.getValueAtPercentile(99)), millis(histogram.getValueAtPercentile(99.9)),
+                    millis(histogram.getMaxValue()));
+        }
+        out.printf("achieved rate %.1f requests/s, max dispatch lag %.3f ms%n", achievedRate(),
+                TimeUnit.NANOSECONDS.toMicros(this.maxDispatchLagNanos) / MICROS_PER_MILLI);
+    }
+
+    private Map<String, Object> toMap() {
+        final Map<String, Object> report = new LinkedHashMap<>();
+        report.put("settings", this.settings.describe());
+        report.put("measuredSeconds", this.elapsedNanos / 1e9);
+        report.put("achievedRate", achievedRate());
+        report.put("maxDispatchLagMs", TimeUnit.NANOSECONDS.toMicros(this.maxDispatchLagNanos) / MICROS_PER_MILLI);
+        report.put("substitutedDiscards", this.substitutedDiscards);
+
+        final Map<String, Object> endpoints = new LinkedHashMap<>();
+        for(Endpoint endpoint : Endpoint.values()){
+            final Map<String, Object> results = new LinkedHashMap<>();
+            results.put("count", this.responseTimes.get(endpoint).getTotalCount());
+            results.put("errors", errors(endpoint));
+            final Map<Integer, Long> statuses = new TreeMap<>();
+            this.statuses.get(endpoint).forEach((status, count) -> statuses.put(status, count.sum()));
+            results.put("statuses", statuses);
+            results.put("responseTimeMs", percentiles(this.responseTimes.get(endpoint)));
+            results.put("serviceTimeMs", percentiles(this.serviceTimes.get(endpoint)));
+            endpoints.put(endpoint.getLabel(), results);
+        }
+        report.put("endpoints", endpoints);
+        return report;
+    }
+
+    private static Map<String, Double> percentiles(final Histogram histogram) {
+        final Map<String, Double> percentiles = new LinkedHashMap<>();
+        for(double percentile : PERCENTILES){
+            percentiles.put("p"+ (percentile == Math.rint(percentile) ? String.valueOf((long) percentile) : String.valueOf(percentile)),
+                    millis(histogram.getValueAtPercentile(percentile)));
+        }
+        percentiles.put("max", millis(histogram.getMaxValue()));
+        percentiles.put("mean", histogram.getMean() / MICROS_PER_MILLI);
+        return percentiles;
+    }
+
+    private long errors(final Endpoint endpoint) {
+        return this.statuses.get(endpoint).entrySet().stream()
+                .filter(status -> status.getKey() < 200 || status.getKey() >= 300)
+                .mapToLong(status -> status.getValue().sum())
+                .sum();
+    }
+
+    private double achievedRate() {
+        final long requests = this.responseTimes.values().stream().mapToLong(Histogram::getTotalCount).sum();
+        return requests / (this.elapsedNanos / 1e9);
+    }
+
+    private static double millis(final long micros) {
+        return micros / MICROS_PER_MILLI;
+    }
+}
@@ -0,0 +1,148 @@
+package com.scmspain.loadtest;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Settings of a load test run, given as name=value arguments. Arguments starting with -- are passed on to the
+ * application instead, e.g. --tweet.cache.max-entries=100.
+ */
+public class LoadTestSettings {
+    private static final String DEFAULT_MIX = "publish=20,timeline=50,discard=5,discarded=25";
+
+    private double rate = 200;
+    private long warmupSeconds = 10;
+    private long durationSeconds = 60;
+    private boolean poisson = true;
+    private final Map<Endpoint, Integer> mix = new EnumMap<>(Endpoint.class);
+    private double linkHeavyRatio = 0.3;
+    private int publishers = 100;
+    private int preload = 1000;
+    private int connections = 256;
+    private long seed = 42;
+    private String output = "build/loadtest";
+    private String label = "";
+    private final List<String> applicationArgs = new ArrayList<>();
+
+    /**
+     * @param args The arguments of the run.
+     * @return The settings of the run, defaults being used for those not given.
+     * @throws IllegalArgumentException when an argument is unknown or malformed.
+     */
+    public static LoadTestSettings parse(final String[] args) throws IllegalArgumentException {
+        final LoadTestSettings settings = new LoadTestSettings();
+        settings.parseMix(DEFAULT_MIX);
+        for(String arg : args){
+            if(arg.startsWith("--")){
+                settings.applicationArgs.add(arg);
+                continue;
+            }
+            final int separator = arg.indexOf('=');
+            if(separator < 0){
+                throw new IllegalArgumentException("Expected name=value but got ["+ arg +"].");
+            }
+            final String value = arg.substring(separator + 1);
+            switch (arg.substring(0, separator)) {
+                case "rate": settings.rate = Double.parseDouble(value); break;
+                case "warmup": settings.warmupSeconds = Long.parseLong(value); break;
+                case "duration": settings.durationSeconds = Long.parseLong(value); break;
+                case "arrivals": settings.poisson = !"uniform".equals(value); break;
+                case "mix": settings.parseMix(value); break;
+                case "link-heavy-ratio": settings.linkHeavyRatio = Double.parseDouble(value); break;
+                case "publishers": settings.publishers = Integer.parseInt(value); break;
+                case "preload": settings.preload = Integer.parseInt(value); break;
+                case "connections": settings.connections = Integer.parseInt(value); break;
+                case "seed": settings.seed = Long.parseLong(value); break;
+                case "output": settings.output = value; break;
+                case "label": settings.label = value; break;
+                default: throw new IllegalArgumentException("Unknown setting ["+ arg +"].");
+            }
+        }
+        if(settings.rate <= 0 || settings.durationSeconds <= 0 || settings.publishers < 1 || settings.connections < 1){
+            throw new IllegalArgumentException("Rate, duration, publishers and connections must be positive.");
+        }
+        return settings;
+    }
+
+    private void parseMix(final String value) {
+        this.mix.clear();
+        for(String entry : value.split(",")){
+            final String[] weight = entry.split("=");
+            this.mix.put(Endpoint.valueOf(weight[0].trim().toUpperCase()), Integer.parseInt(weight[1].trim()));
+        }
+        if(this.mix.values().stream().mapToInt(Integer::intValue).sum() <= 0){
+            throw new IllegalArgumentException("The request mix needs a positive weight.");
+        }
+    }
+
+    /**
+     * @return The settings as reported, so runs can be told apart.
+     */
+    public Map<String, Object> describe() {
+        final Map<String, Object> description = new LinkedHashMap<>();
+        description.put("label", label);
+        description.put("rate", rate);
+        description.put("warmupSeconds", warmupSeconds);
+        description.put("durationSeconds", durationSeconds);
+        description.put("arrivals", poisson ? "poisson" : "uniform");
+        description.put("mix", mix);
+        description.put("linkHeavyRatio", linkHeavyRatio);
+        description.put("publishers", publishers);
+        description.put("preload", preload);
+        description.put("connections", connections);
+        description.put("seed", seed);
+        description.put("applicationArgs", applicationArgs);
+        return description;
+    }
+
+    public double getRate() {
+        return rate;
+    }
+
+    public long getWarmupSeconds() {
+        return warmupSeconds;
+    }
+
+    public long getDurationSeconds() {
+        return durationSeconds;
+    }
+
+    public boolean isPoisson() {
+        return poisson;
+    }
+
+    public Map<Endpoint, Integer> getMix() {
+        return mix;
+    }
+
+    public double getLinkHeavyRatio() {
+        return linkHeavyRatio;
+    }
+
+    public int getPublishers() {
+        return publishers;
+    }
+
+    public int getPreload() {
+        return preload;
+    }
+
+    public int getConnections() {
+        return connections;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public String getOutput() {
+        return output;
+    }
+
+    public List<String> getApplicationArgs() {
+        return applicationArgs;
+    }
+}
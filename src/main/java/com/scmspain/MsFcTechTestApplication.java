@@ -2,15 +2,18 @@ package com.scmspain;
 
 import com.scmspain.configuration.InfrastructureConfiguration;
 import com.scmspain.configuration.TweetConfiguration;
+import com.scmspain.configuration.WebConfiguration;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Import;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @Configuration
 @EnableAutoConfiguration
-@Import({TweetConfiguration.class, InfrastructureConfiguration.class})
+@EnableScheduling
+@Import({TweetConfiguration.class, InfrastructureConfiguration.class, WebConfiguration.class})
 public class MsFcTechTestApplication {
     public static void main(String[] args) {
         SpringApplication.run(MsFcTechTestApplication.class, args);
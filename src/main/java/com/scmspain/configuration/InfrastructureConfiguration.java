@@ -5,12 +5,27 @@ import org.springframework.boot.actuate.metrics.jmx.JmxMetricWriter;
 import org.springframework.boot.actuate.metrics.writer.MetricWriter;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
 import org.springframework.jmx.export.MBeanExporter;
 
 @Configuration
 public class InfrastructureConfiguration {
-    @Bean @ExportMetricWriter
+    @Bean @ExportMetricWriter @Profile("!startup")
     public MetricWriter getMetricWriter(MBeanExporter exporter) {
         return new JmxMetricWriter(exporter);
     }
+
+    /**
+     * The startup profile turns the JMX auto-configuration off, so metrics get an MBean exporter of their own
+     * once the first one is written.
+     */
+    @Bean @ExportMetricWriter @Profile("startup")
+    public MetricWriter getLazyMetricWriter() {
+        return new LazyMetricWriter();
+    }
+
+    @Bean @Profile("startup")
+    public static LazyEndpointsPostProcessor getLazyEndpointsPostProcessor() {
+        return new LazyEndpointsPostProcessor();
+    }
 }
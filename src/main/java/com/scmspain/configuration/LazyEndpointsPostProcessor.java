@@ -0,0 +1,46 @@
+package com.scmspain.configuration;
+
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.config.BeanFactoryPostProcessor;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+import org.springframework.boot.actuate.endpoint.Endpoint;
+import org.springframework.boot.actuate.endpoint.HealthEndpoint;
+import org.springframework.boot.actuate.endpoint.mvc.EndpointHandlerMapping;
+import org.springframework.boot.actuate.endpoint.mvc.HealthMvcEndpoint;
+import org.springframework.boot.actuate.endpoint.mvc.MvcEndpoint;
+import org.springframework.boot.actuate.endpoint.mvc.MvcEndpoints;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Makes the actuator endpoints other than health lazy, together with the handler mapping serving all of them over
+ * HTTP, which collects every endpoint. They are then created by the first request, when the dispatcher servlet
+ * looks up its handler mappings, instead of while the application starts. Endpoints are looked up without
+ * initializing any factory bean, so nothing is created early.
+ */
+public class LazyEndpointsPostProcessor implements BeanFactoryPostProcessor {
+    private static final List<Class<?>> LAZY_TYPES = Arrays.asList(
+            Endpoint.class, MvcEndpoint.class, MvcEndpoints.class, EndpointHandlerMapping.class);
+    private static final List<Class<?>> EAGER_TYPES = Arrays.asList(HealthEndpoint.class, HealthMvcEndpoint.class);
+
+    @Override
+    public void postProcessBeanFactory(ConfigurableListableBeanFactory beanFactory) throws BeansException {
+        for(Class<?> type : LAZY_TYPES){
+            for(String name : beanFactory.getBeanNamesForType(type, true, false)){
+                if(beanFactory.containsBeanDefinition(name) && !isEager(beanFactory, name)){
+                    beanFactory.getBeanDefinition(name).setLazyInit(true);
+                }
+            }
+        }
+    }
+
+    private static boolean isEager(final ConfigurableListableBeanFactory beanFactory, final String name) {
+        for(Class<?> type : EAGER_TYPES){
+            if(beanFactory.isTypeMatch(name, type)){
+                return true;
+            }
+        }
+        return false;
+    }
+}
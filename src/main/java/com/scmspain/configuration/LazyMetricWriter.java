@@ -0,0 +1,68 @@
+package com.scmspain.configuration;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.boot.actuate.metrics.jmx.JmxMetricWriter;
+import org.springframework.boot.actuate.metrics.writer.Delta;
+import org.springframework.boot.actuate.metrics.writer.MetricWriter;
+import org.springframework.jmx.export.MBeanExporter;
+import org.springframework.jmx.support.RegistrationPolicy;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Exports the metrics to JMX like {@link JmxMetricWriter}, only creating the MBean exporter when the first metric
+ * is written instead of while the application starts. The metric MBeans replace any registered under the same name,
+ * and are unregistered on shutdown.
+ */
+public class LazyMetricWriter implements MetricWriter, DisposableBean {
+
+    private volatile MBeanExporter exporter;
+    private volatile MetricWriter writer;
+
+    @Override
+    public void increment(Delta<?> delta) {
+        writer().increment(delta);
+    }
+
+    @Override
+    public void reset(String metricName) {
+        writer().reset(metricName);
+    }
+
+    @Override
+    public void set(Metric<?> value) {
+        writer().set(value);
+    }
+
+    /**
+     * @return Whether any metric was written, so the MBean exporter was created.
+     */
+    public boolean isInitialized() {
+        return this.writer != null;
+    }
+
+    @Override
+    public synchronized void destroy() throws Exception {
+        if(this.exporter != null){
+            this.exporter.destroy();
+        }
+    }
+
+    private MetricWriter writer() {
+        MetricWriter writer = this.writer;
+        if(writer == null){
+            synchronized (this){
+                if(this.writer == null){
+                    final MBeanExporter exporter = new MBeanExporter();
+                    exporter.setServer(ManagementFactory.getPlatformMBeanServer());
+                    exporter.setRegistrationPolicy(RegistrationPolicy.REPLACE_EXISTING);
+                    this.exporter = exporter;
+                    this.writer = new JmxMetricWriter(exporter);
+                }
+                writer = this.writer;
+            }
+        }
+        return writer;
+    }
+}
@@ -1,15 +1,50 @@
 package com.scmspain.configuration;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.scmspain.controller.PublisherRateLimitAdvice;
+import com.scmspain.controller.TopLinksController;
 import com.scmspain.controller.TweetController;
+import com.scmspain.controller.TweetStatisticsController;
 import com.scmspain.controller.validation.TweetValidator;
+import com.scmspain.entities.InstantTimestampConverter;
+import com.scmspain.entities.Link;
+import com.scmspain.entities.Publisher;
+import com.scmspain.entities.Tweet;
+import com.scmspain.entities.TweetChange;
+import com.scmspain.entities.TweetLink;
+import com.scmspain.persistence.DiscardedAtMigration;
+import com.scmspain.persistence.LinkDictionary;
+import com.scmspain.persistence.LogTweetStorage;
+import com.scmspain.persistence.PublisherDictionary;
+import com.scmspain.persistence.RepositoryGuard;
+import com.scmspain.persistence.TimelineSnapshotFile;
 import com.scmspain.persistence.TweetPersistence;
+import com.scmspain.persistence.TweetStorage;
+import com.scmspain.services.PublisherRateLimiter;
+import com.scmspain.services.TimelineCache;
+import com.scmspain.services.TopLinksService;
+import com.scmspain.services.TweetChangeListener;
+import com.scmspain.services.TweetCache;
+import com.scmspain.services.TweetChangeLogService;
+import com.scmspain.services.TweetRetentionService;
 import com.scmspain.services.TweetService;
+import com.scmspain.services.TweetStatisticsService;
+import com.scmspain.utils.CircuitBreaker;
+import com.scmspain.utils.RateLimiter;
+import com.scmspain.utils.SnowflakeIdGenerator;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.actuate.metrics.writer.MetricWriter;
 import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.autoconfigure.orm.jpa.JpaProperties;
+import org.springframework.boot.orm.jpa.EntityManagerFactoryBuilder;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
 import org.springframework.data.web.config.EnableSpringDataWebSupport;
+import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
+import org.springframework.orm.jpa.SharedEntityManagerCreator;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.validation.DataBinder;
 import org.springframework.web.bind.WebDataBinder;
 import org.springframework.web.bind.annotation.InitBinder;
@@ -17,22 +52,194 @@ import org.springframework.web.servlet.config.annotation.EnableWebMvc;
 
 import javax.annotation.PostConstruct;
 import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.sql.DataSource;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 @Configuration
 public class TweetConfiguration {
 
+    private static final List<Class<?>> ENTITIES = Arrays.asList(Tweet.class, TweetLink.class, Link.class,
+            Publisher.class, TweetChange.class, InstantTimestampConverter.class);
+
+    // the instance is identified by the node of its tweet ids, so both identities come from a single setting.
+    @Value("node-${spring.jpa.properties.tweet.id.node:0}")
+    private String nodeId;
+
+    /**
+     * Persistence unit of the startup profile, listing the entities instead of scanning the application package for
+     * them.
+     */
+    @Bean(name = "entityManagerFactory") @Profile("startup")
+    public LocalContainerEntityManagerFactoryBean getEntityManagerFactory(EntityManagerFactoryBuilder builder,
+                                                                          DataSource dataSource, JpaProperties jpaProperties) {
+        final Map<String, Object> properties = new HashMap<>(jpaProperties.getHibernateProperties(dataSource));
+        properties.put("hibernate.transaction.jta.platform", "org.hibernate.engine.transaction.jta.platform.internal.NoJtaPlatform");
+        final LocalContainerEntityManagerFactoryBean factory = builder.dataSource(dataSource).packages(new String[0])
+                .properties(properties).build();
+        factory.setPersistenceUnitPostProcessors(unit -> ENTITIES.forEach(entity -> unit.addManagedClassName(entity.getName())));
+        return factory;
+    }
+
+    /**
+     * Shared entity manager of the startup profile, otherwise registered along the JPA repositories it disables.
+     */
+    @Bean @Profile("startup")
+    public EntityManager getEntityManager(EntityManagerFactory entityManagerFactory) {
+        return SharedEntityManagerCreator.createSharedEntityManager(entityManagerFactory);
+    }
+
+    @Bean
+    public PublisherDictionary getPublisherDictionary(EntityManager entityManager, PlatformTransactionManager transactionManager,
+                                                      @Value("${tweet.publishers.unknown-ttl-ms:1000}") long unknownTtlMillis){
+        return new PublisherDictionary(entityManager, transactionManager, unknownTtlMillis);
+    }
+
+    @Bean
+    public LinkDictionary getLinkDictionary(EntityManager entityManager, PlatformTransactionManager transactionManager){
+        return new LinkDictionary(entityManager, transactionManager);
+    }
+
+    @Bean
+    public TweetStorage getTweetStorage(EntityManager entityManager, PublisherDictionary publisherDictionary,
+                                        LinkDictionary linkDictionary, MetricWriter metricWriter,
+                                        @Value("${tweet.storage.type:jpa}") String type,
+                                        @Value("${tweet.storage.log.directory:tweet-log}") String directory,
+                                        @Value("${tweet.storage.log.segment-bytes:67108864}") int segmentBytes,
+                                        @Value("${tweet.storage.log.force:false}") boolean force,
+                                        @Value("${tweet.storage.log.changes:10000}") int maxChanges,
+                                        @Value("${spring.jpa.properties.tweet.id.node:0}") int idNode,
+                                        @Value("${spring.jpa.properties.tweet.id.max-backwards-ms:5000}") long maxBackwardsMillis){
+        switch (type) {
+            case "jpa":
+                return new TweetPersistence(entityManager, publisherDictionary, linkDictionary, nodeId);
+            case "log":
+                return new LogTweetStorage(Paths.get(directory), segmentBytes, force, maxChanges,
+                        new SnowflakeIdGenerator(idNode, maxBackwardsMillis), metricWriter, nodeId);
+            default:
+                throw new IllegalArgumentException("Unknown tweet storage type ["+ type +"], it must be jpa or log.");
+        }
+    }
+
+    @Bean
+    public DiscardedAtMigration getDiscardedAtMigration(TweetStorage tweetStorage, MetricWriter metricWriter,
+                                                        @Value("${tweet.migration.chunk-size:500}") int chunkSize,
+                                                        @Value("${tweet.migration.pause-ms:100}") long pauseMillis) {
+        return new DiscardedAtMigration(tweetStorage, metricWriter, chunkSize, pauseMillis);
+    }
+
+    @Bean
+    public TweetStatisticsService getTweetStatisticsService(TweetStorage tweetStorage) {
+        return new TweetStatisticsService(tweetStorage);
+    }
+
+    @Bean
+    public TopLinksService getTopLinksService(TweetStorage tweetStorage,
+                                              @Value("${tweet.links.sketch-depth:4}") int sketchDepth,
+                                              @Value("${tweet.links.sketch-width:16384}") int sketchWidth,
+                                              @Value("${tweet.links.candidates:100}") int capacity) {
+        return new TopLinksService(tweetStorage, sketchDepth, sketchWidth, capacity);
+    }
+
+    @Bean
+    public RepositoryGuard getRepositoryGuard(PlatformTransactionManager transactionManager, MetricWriter metricWriter,
+                                              @Value("${tweet.repository.window-size:20}") int windowSize,
+                                              @Value("${tweet.repository.minimum-calls:10}") int minimumCalls,
+                                              @Value("${tweet.repository.failure-rate-percent:50}") int failureRatePercent,
+                                              @Value("${tweet.repository.slow-call-ms:500}") long slowCallMillis,
+                                              @Value("${tweet.repository.open-ms:5000}") long openMillis,
+                                              @Value("${tweet.repository.max-concurrent-reads:8}") int maxConcurrentReads,
+                                              @Value("${tweet.repository.read-timeout-ms:1000}") long readTimeoutMillis,
+                                              @Value("${tweet.repository.snapshots:1000}") int maxSnapshots,
+                                              @Value("${tweet.repository.reuse-ms:0}") long reuseMillis) {
+        final CircuitBreaker circuitBreaker = new CircuitBreaker(windowSize, minimumCalls, failureRatePercent, slowCallMillis, openMillis);
+        return new RepositoryGuard(circuitBreaker, transactionManager, metricWriter, maxConcurrentReads, readTimeoutMillis, maxSnapshots, reuseMillis);
+    }
+
+    @Bean
+    public TweetCache getTweetCache(MetricWriter metricWriter, RepositoryGuard repositoryGuard,
+                                    @Value("${tweet.cache.max-entries:10000}") int maxEntries) {
+        return new TweetCache(metricWriter, repositoryGuard, maxEntries);
+    }
+
+    @Bean
+    public TimelineCache getTimelineCache(TweetStorage tweetStorage, RepositoryGuard repositoryGuard,
+                                          PlatformTransactionManager transactionManager, MetricWriter metricWriter,
+                                          @Value("${tweet.timeline.entries:0}") int maxEntries,
+                                          @Value("${tweet.timeline.settle-ms:2000}") long settleMillis,
+                                          @Value("${tweet.timeline.snapshot.path:}") String snapshotPath) {
+        final TimelineSnapshotFile snapshotFile = snapshotPath.isEmpty() ? null : new TimelineSnapshotFile(Paths.get(snapshotPath));
+        return new TimelineCache(tweetStorage, repositoryGuard, transactionManager, metricWriter, snapshotFile,
+                maxEntries, settleMillis);
+    }
+
+    @Bean
+    public TweetService getTweetService(TweetStorage tweetStorage, MetricWriter metricWriter,
+                                        List<TweetChangeListener> changeListeners, RepositoryGuard repositoryGuard,
+                                        TweetCache tweetCache, TimelineCache timelineCache) {
+        return new TweetService(tweetStorage, metricWriter, changeListeners, repositoryGuard, tweetCache, timelineCache);
+    }
+
+    @Bean
+    public TweetChangeLogService getTweetChangeLogService(TweetStorage tweetStorage, MetricWriter metricWriter,
+                                                          List<TweetChangeListener> changeListeners,
+                                                          @Value("${tweet.changelog.batch-size:500}") int batchSize,
+                                                          @Value("${tweet.changelog.gap-timeout-ms:60000}") long gapTimeoutMillis,
+                                                          @Value("${tweet.changelog.retention-ms:600000}") long retentionMillis) {
+        return new TweetChangeLogService(tweetStorage, metricWriter, changeListeners, nodeId, batchSize,
+                gapTimeoutMillis, retentionMillis);
+    }
+
+    @Bean
+    public TweetRetentionService getTweetRetentionService(TweetStorage tweetStorage, MetricWriter metricWriter,
+                                                          List<TweetChangeListener> changeListeners,
+                                                          @Value("${tweet.retention.published-max-age-days:0}") long publishedMaxAgeDays,
+                                                          @Value("${tweet.retention.discarded-max-age-days:0}") long discardedMaxAgeDays,
+                                                          @Value("${tweet.retention.chunk-size:100}") int chunkSize,
+                                                          @Value("${tweet.retention.pause-ms:100}") long pauseMillis,
+                                                          @Value("${tweet.retention.max-tweets-per-second:500}") int maxTweetsPerSecond,
+                                                          @Value("${tweet.retention.interval-ms:3600000}") long intervalMillis) {
+        return new TweetRetentionService(tweetStorage, metricWriter, changeListeners,
+                Duration.ofDays(publishedMaxAgeDays), Duration.ofDays(discardedMaxAgeDays),
+                chunkSize, pauseMillis, maxTweetsPerSecond, intervalMillis);
+    }
+
+    @Bean
+    public PublisherRateLimiter getPublisherRateLimiter(MetricWriter metricWriter,
+                                                        @Value("${tweet.rate-limit.writes-per-second:10}") double writesPerSecond,
+                                                        @Value("${tweet.rate-limit.burst:20}") int burst,
+                                                        @Value("${tweet.rate-limit.publishers:100000}") int maxPublishers) {
+        final RateLimiter rateLimiter = writesPerSecond > 0 ? new RateLimiter(writesPerSecond, burst, maxPublishers) : null;
+        return new PublisherRateLimiter(rateLimiter, metricWriter);
+    }
+
+    @Bean
+    public PublisherRateLimitAdvice getPublisherRateLimitAdvice(PublisherRateLimiter publisherRateLimiter) {
+        return new PublisherRateLimitAdvice(publisherRateLimiter);
+    }
+
+    @Bean
+    public TweetController getTweetConfiguration(TweetService tweetService, PublisherRateLimiter publisherRateLimiter) {
+        return new TweetController(tweetService, publisherRateLimiter);
+    }
+
     @Bean
-    public TweetPersistence getTweetPersistence(EntityManager entityManager){
-        return new TweetPersistence(entityManager);
+    public WarmUp getWarmUp(ObjectMapper objectMapper, @Value("${tweet.warm-up.iterations:200}") int iterations) {
+        return new WarmUp(objectMapper, iterations);
     }
 
     @Bean
-    public TweetService getTweetService(TweetPersistence tweetPersistence, MetricWriter metricWriter) {
-        return new TweetService(tweetPersistence, metricWriter);
+    public TweetStatisticsController getTweetStatisticsController(TweetStatisticsService tweetStatisticsService) {
+        return new TweetStatisticsController(tweetStatisticsService);
     }
 
     @Bean
-    public TweetController getTweetConfiguration(TweetService tweetService) {
-        return new TweetController(tweetService);
+    public TopLinksController getTopLinksController(TopLinksService topLinksService) {
+        return new TopLinksController(topLinksService);
     }
 }
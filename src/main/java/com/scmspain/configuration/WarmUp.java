@@ -0,0 +1,68 @@
+package com.scmspain.configuration;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.scmspain.entities.Tweet;
+import com.scmspain.utils.LinkUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runs the code of every request on synthetic tweets before the application is reported as ready, so the first
+ * requests don't pay for its class loading and interpretation: links are taken out of the tweet text and put back
+ * the way tweets are published and read, and the tweets are serialized as the timeline is. Nothing is stored.
+ * Application runners are called before the application is ready, and the health is out of service until done.
+ */
+public class WarmUp implements ApplicationRunner, HealthIndicator {
+    private static final Logger LOG = LoggerFactory.getLogger(WarmUp.class);
+
+    private static final int TIMELINE_TWEETS = 20;
+
+    private final ObjectMapper objectMapper;
+    private final int iterations;
+
+    private volatile boolean done;
+
+    /**
+     * @param objectMapper Mapper serializing the responses.
+     * @param iterations Amount of synthetic timelines built and serialized, 0 to skip the warm up.
+     */
+    public WarmUp(ObjectMapper objectMapper, int iterations) {
+        this.objectMapper = objectMapper;
+        this.iterations = iterations;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) throws JsonProcessingException {
+        final long start = System.nanoTime();
+        long bytes = 0;
+        for(int i = 0; i < this.iterations; i++){
+            final List<Tweet> timeline = new ArrayList<>(TIMELINE_TWEETS);
+            for(int j = 0; j < TIMELINE_TWEETS; j++){
+                final Tweet tweet = new Tweet("Warm up " + j, "Warming up http://example.com/" + i + "/" + j + " tweet " + j);
+                tweet.setId((long) i * TIMELINE_TWEETS + j);
+                tweet.setDate(Instant.now());
+                LinkUtils.extractLinks(tweet, tweet.getTweet());
+                timeline.add(LinkUtils.includeLinks(tweet));
+            }
+            bytes += this.objectMapper.writeValueAsBytes(timeline).length;
+        }
+        this.done = true;
+
+        LOG.info("Warmed up with "+ this.iterations +" synthetic timeline(s) ("+ bytes +" bytes) in "
+                + (System.nanoTime() - start) / 1_000_000 +" ms.");
+    }
+
+    @Override
+    public Health health() {
+        return (this.done ? Health.up() : Health.outOfService()).withDetail("iterations", this.iterations).build();
+    }
+}
@@ -0,0 +1,31 @@
+package com.scmspain.configuration;
+
+import com.scmspain.controller.JacksonBinaryHttpMessageConverter;
+import com.scmspain.controller.TweetProtobufHttpMessageConverter;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurerAdapter;
+
+import java.util.List;
+
+/**
+ * Adds the binary wire formats, selected by the Accept header. They go after the default converters, so JSON is
+ * still served whenever the client accepts any format. The Jackson ones are configured like the JSON one, from the
+ * spring.jackson.* properties.
+ */
+@Configuration
+public class WebConfiguration extends WebMvcConfigurerAdapter {
+    private final Jackson2ObjectMapperBuilder objectMapperBuilder;
+
+    public WebConfiguration(Jackson2ObjectMapperBuilder objectMapperBuilder) {
+        this.objectMapperBuilder = objectMapperBuilder;
+    }
+
+    @Override
+    public void extendMessageConverters(List<HttpMessageConverter<?>> converters) {
+        converters.add(JacksonBinaryHttpMessageConverter.cbor(objectMapperBuilder));
+        converters.add(JacksonBinaryHttpMessageConverter.smile(objectMapperBuilder));
+        converters.add(new TweetProtobufHttpMessageConverter());
+    }
+}
@@ -0,0 +1,47 @@
+package com.scmspain.controller;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.json.AbstractJackson2HttpMessageConverter;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+/**
+ * Jackson converter for a binary data format, writing the same documents as the JSON converter in fewer bytes and
+ * without formatting or parsing any number as text. It takes the settings of the JSON object mapper, so both write
+ * the same properties.
+ */
+public class JacksonBinaryHttpMessageConverter extends AbstractJackson2HttpMessageConverter {
+    public static final MediaType APPLICATION_CBOR = new MediaType("application", "cbor");
+    public static final MediaType APPLICATION_SMILE = new MediaType("application", "x-jackson-smile");
+
+    /**
+     * @param factory Factory of the binary data format.
+     * @param mediaType Media type the format is served as.
+     * @param objectMapperBuilder Builder of the JSON object mapper, whose settings the binary mapper copies without
+     *                            changing the builder.
+     */
+    public JacksonBinaryHttpMessageConverter(JsonFactory factory, MediaType mediaType,
+                                             Jackson2ObjectMapperBuilder objectMapperBuilder) {
+        super(new ObjectMapper(factory), mediaType);
+        objectMapperBuilder.configure(getObjectMapper());
+    }
+
+    /**
+     * @param objectMapperBuilder Builder of the JSON object mapper.
+     * @return A converter for CBOR (RFC 7049), served as application/cbor.
+     */
+    public static JacksonBinaryHttpMessageConverter cbor(Jackson2ObjectMapperBuilder objectMapperBuilder) {
+        return new JacksonBinaryHttpMessageConverter(new CBORFactory(), APPLICATION_CBOR, objectMapperBuilder);
+    }
+
+    /**
+     * @param objectMapperBuilder Builder of the JSON object mapper.
+     * @return A converter for Smile, served as application/x-jackson-smile.
+     */
+    public static JacksonBinaryHttpMessageConverter smile(Jackson2ObjectMapperBuilder objectMapperBuilder) {
+        return new JacksonBinaryHttpMessageConverter(new SmileFactory(), APPLICATION_SMILE, objectMapperBuilder);
+    }
+}
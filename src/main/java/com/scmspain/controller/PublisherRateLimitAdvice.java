@@ -0,0 +1,38 @@
+package com.scmspain.controller;
+
+import com.scmspain.entities.Tweet;
+import com.scmspain.services.PublisherRateLimiter;
+import org.springframework.core.MethodParameter;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.web.bind.annotation.ControllerAdvice;
+import org.springframework.web.servlet.mvc.method.annotation.RequestBodyAdviceAdapter;
+
+import javax.validation.Valid;
+import java.lang.reflect.Type;
+
+/**
+ * Rate limits the publishing of tweets by publisher as soon as the request body is read, so requests over the limit
+ * are refused before being validated.
+ */
+@ControllerAdvice
+public class PublisherRateLimitAdvice extends RequestBodyAdviceAdapter {
+    private final PublisherRateLimiter publisherRateLimiter;
+
+    public PublisherRateLimitAdvice(PublisherRateLimiter publisherRateLimiter) {
+        this.publisherRateLimiter = publisherRateLimiter;
+    }
+
+    @Override
+    public boolean supports(MethodParameter methodParameter, Type targetType,
+                            Class<? extends HttpMessageConverter<?>> converterType) {
+        return targetType == Tweet.class && methodParameter.hasParameterAnnotation(Valid.class);
+    }
+
+    @Override
+    public Object afterBodyRead(Object body, HttpInputMessage inputMessage, MethodParameter parameter, Type targetType,
+                                Class<? extends HttpMessageConverter<?>> converterType) {
+        this.publisherRateLimiter.acquire(((Tweet) body).getPublisher());
+        return body;
+    }
+}
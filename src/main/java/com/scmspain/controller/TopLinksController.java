@@ -0,0 +1,51 @@
+package com.scmspain.controller;
+
+import com.scmspain.services.TopLinksService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseBody;
+import org.springframework.web.bind.annotation.ResponseStatus;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+
+import static org.springframework.http.HttpStatus.BAD_REQUEST;
+
+/**
+ * Exposes the links found on the most published tweets. Every response is built from in-memory estimates, so its
+ * cost doesn't depend on the amount of tweets or links stored.
+ */
+@RestController
+public class TopLinksController {
+    Logger LOG = LoggerFactory.getLogger(TopLinksController.class);
+
+    private TopLinksService topLinksService;
+
+    public TopLinksController(TopLinksService topLinksService) {
+        this.topLinksService = topLinksService;
+    }
+
+    @GetMapping("/links/top")
+    public List<TopLinksService.LinkCount> getTopLinks(@RequestParam(defaultValue = "10") int limit) {
+        if(limit < 1 || limit > this.topLinksService.getCapacity()){
+            throw new IllegalArgumentException("The limit must be between 1 and "+ this.topLinksService.getCapacity() +".");
+        }
+
+        LOG.debug("Retrieving the top "+ limit +" links.");
+        return this.topLinksService.top(limit);
+    }
+
+    @ExceptionHandler(IllegalArgumentException.class)
+    @ResponseStatus(BAD_REQUEST)
+    @ResponseBody
+    public Object invalidArgumentException(IllegalArgumentException ex) {
+        LOG.warn("An exception happened. Handling exception ["+ ex +"]!");
+        return new Object() {
+            public String message = ex.getMessage();
+            public String exceptionClass = ex.getClass().getSimpleName();
+        };
+    }
+}
@@ -2,10 +2,16 @@ package com.scmspain.controller;
 
 import com.scmspain.controller.validation.TweetValidator;
 import com.scmspain.entities.Tweet;
+import com.scmspain.persistence.ReadResult;
+import com.scmspain.persistence.RepositoryUnavailableException;
+import com.scmspain.services.PublisherRateLimiter;
+import com.scmspain.services.RateLimitedException;
 import com.scmspain.services.TweetService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.WebDataBinder;
 import org.springframework.web.bind.annotation.*;
 
@@ -19,10 +25,14 @@ import static org.springframework.http.HttpStatus.*;
 public class TweetController {
     Logger LOG = LoggerFactory.getLogger(TweetController.class);
 
+    static final String STALE_WARNING = "110 - \"Response is Stale\"";
+
     private TweetService tweetService;
+    private PublisherRateLimiter publisherRateLimiter;
 
-    public TweetController(TweetService tweetService) {
+    public TweetController(TweetService tweetService, PublisherRateLimiter publisherRateLimiter) {
         this.tweetService = tweetService;
+        this.publisherRateLimiter = publisherRateLimiter;
     }
 
     /**
@@ -38,15 +48,25 @@ public class TweetController {
     }
 
     @GetMapping("/tweet")
-    public List<Tweet> listAllTweets() {
+    public ResponseEntity<List<Tweet>> listAllTweets() {
         LOG.debug("Listing all tweets stored for the current publisher.");
-        return this.tweetService.listAllTweets();
+        return toResponse(this.tweetService.listAllTweets());
+    }
+
+    @GetMapping("/tweet/{id}")
+    public ResponseEntity<Tweet> getTweet(@PathVariable Long id) {
+        LOG.debug("Retrieving tweet ["+ id +"].");
+        final ReadResult<Tweet> result = this.tweetService.getTweet(id);
+        if(result.getValue() == null){
+            return ResponseEntity.notFound().build();
+        }
+        return toResponse(result);
     }
 
     @GetMapping("/discarded")
-    public List<Tweet> listDiscardedTweets(@RequestHeader String publisher) {
+    public ResponseEntity<List<Tweet>> listDiscardedTweets(@RequestHeader String publisher) {
         LOG.debug("Listing all discarded tweets stored for the current publisher ["+ publisher +"].");
-        return this.tweetService.listDiscardedTweets(publisher);
+        return toResponse(this.tweetService.listDiscardedTweets(publisher));
     }
 
     @PostMapping("/tweet")
@@ -62,7 +82,43 @@ public class TweetController {
         LOG.debug("discarding tweeter "+ tweet.getTweet() +"..."); // Respecting the API defined.
         tweet.setId(Long.valueOf(tweet.getTweet())); //It would be better receiving directly the "id" as a Long value, to avoid this conversion and to enable decoupled validation.
         tweet.setTweet(null);
-        this.tweetService.discardTweet(tweet);
+        this.tweetService.discardTweet(tweet, this.publisherRateLimiter::acquire); // the request has no publisher.
+    }
+
+    /**
+     * Builds the response of a read, marking it with a Warning header when it was served stale because the
+     * repository is degraded.
+     * @param result The result of the read.
+     * @return The response with the value read.
+     */
+    private static <T> ResponseEntity<T> toResponse(ReadResult<T> result) {
+        final ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if(result.isStale()){
+            response.header(HttpHeaders.WARNING, STALE_WARNING);
+        }
+        return response.body(result.getValue());
+    }
+
+    @ExceptionHandler(RepositoryUnavailableException.class)
+    @ResponseStatus(SERVICE_UNAVAILABLE)
+    @ResponseBody
+    public Object repositoryUnavailableException(RepositoryUnavailableException ex) {
+        LOG.warn("Repository unavailable. Handling exception ["+ ex +"]!");
+        return new Object() {
+            public String message = ex.getMessage();
+            public String exceptionClass = ex.getClass().getSimpleName();
+        };
+    }
+
+    @ExceptionHandler(RateLimitedException.class)
+    public ResponseEntity<Object> rateLimitedException(RateLimitedException ex) {
+        LOG.warn("Rate limited. Handling exception ["+ ex +"]!");
+        return ResponseEntity.status(TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(ex.getRetryAfterSeconds()))
+                .body(new Object() {
+                    public String message = ex.getMessage();
+                    public String exceptionClass = ex.getClass().getSimpleName();
+                });
     }
 
     @ExceptionHandler({IllegalArgumentException.class, NumberFormatException.class})
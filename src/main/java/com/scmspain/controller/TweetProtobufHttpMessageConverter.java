@@ -0,0 +1,244 @@
+package com.scmspain.controller;
+
+import com.scmspain.entities.Tweet;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractGenericHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.util.StreamUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Converter writing tweets, and lists of them, as a stream of length prefixed protocol buffers messages, each one
+ * preceded by its size as a varint (as protobuf's writeDelimitedTo does). A single tweet is a stream of one message.
+ * The messages are encoded by hand, so no generated code or protobuf runtime is needed; their schema is
+ *
+ * <pre>
+ * message Tweet {
+ *     int64 id = 1;
+ *     string publisher = 2;
+ *     string tweet = 3;
+ *     int64 pre2015MigrationStatus = 4;
+ * }
+ * </pre>
+ *
+ * Null fields are left out of the message, and unknown fields are skipped when reading.
+ */
+public class TweetProtobufHttpMessageConverter extends AbstractGenericHttpMessageConverter<Object> {
+    public static final MediaType APPLICATION_PROTOBUF = new MediaType("application", "x-protobuf");
+
+    private static final int VARINT = 0;
+    private static final int FIXED64 = 1;
+    private static final int LENGTH_DELIMITED = 2;
+    private static final int FIXED32 = 5;
+
+    private static final int ID = 1;
+    private static final int PUBLISHER = 2;
+    private static final int TWEET = 3;
+    private static final int PRE2015_MIGRATION_STATUS = 4;
+
+    public TweetProtobufHttpMessageConverter() {
+        super(APPLICATION_PROTOBUF);
+    }
+
+    @Override
+    protected boolean supports(Class<?> clazz) {
+        return Tweet.class.isAssignableFrom(clazz);
+    }
+
+    @Override
+    public boolean canRead(Type type, Class<?> contextClass, MediaType mediaType) {
+        return isTweets(type) ? canRead(mediaType) : super.canRead(type, contextClass, mediaType);
+    }
+
+    @Override
+    public boolean canWrite(Type type, Class<?> clazz, MediaType mediaType) {
+        return isTweets(type) ? canWrite(mediaType) : super.canWrite(type, clazz, mediaType);
+    }
+
+    @Override
+    public Object read(Type type, Class<?> contextClass, HttpInputMessage inputMessage) throws IOException {
+        final List<Tweet> tweets = decode(StreamUtils.copyToByteArray(inputMessage.getBody()));
+        if(isTweets(type)){
+            return tweets;
+        }
+        if(tweets.size() != 1){
+            throw new HttpMessageNotReadableException("Expected a single tweet but found "+ tweets.size() +".");
+        }
+        return tweets.get(0);
+    }
+
+    @Override
+    protected Object readInternal(Class<?> clazz, HttpInputMessage inputMessage) throws IOException {
+        return read(clazz, null, inputMessage);
+    }
+
+    @Override
+    protected void writeInternal(Object value, Type type, HttpOutputMessage outputMessage) throws IOException {
+        final Buffer body = new Buffer();
+        final Buffer message = new Buffer();
+        if(value instanceof Tweet){
+            encode((Tweet) value, message, body);
+        } else {
+            for(Object tweet : (List<?>) value){
+                encode((Tweet) tweet, message, body);
+            }
+        }
+        outputMessage.getHeaders().setContentLength(body.size());
+        body.writeTo(outputMessage.getBody());
+    }
+
+    /**
+     * @param body A stream of length prefixed messages.
+     * @return The tweets of the stream.
+     * @throws HttpMessageNotReadableException when the stream is malformed.
+     */
+    public static List<Tweet> decode(final byte[] body) throws HttpMessageNotReadableException {
+        final List<Tweet> tweets = new ArrayList<>();
+        final Reader reader = new Reader(body);
+        while(reader.position < body.length){
+            final int end = reader.end((int) reader.readVarint());
+            final Tweet tweet = new Tweet();
+            while(reader.position < end){
+                final int key = (int) reader.readVarint();
+                switch (key) {
+                    case ID << 3 | VARINT:
+                        tweet.setId(reader.readVarint());
+                        break;
+                    case PUBLISHER << 3 | LENGTH_DELIMITED:
+                        tweet.setPublisher(reader.readString());
+                        break;
+                    case TWEET << 3 | LENGTH_DELIMITED:
+                        tweet.setTweet(reader.readString());
+                        break;
+                    case PRE2015_MIGRATION_STATUS << 3 | VARINT:
+                        tweet.setPre2015MigrationStatus(reader.readVarint());
+                        break;
+                    default:
+                        reader.skip(key & 7);
+                }
+            }
+            if(reader.position != end){
+                throw new HttpMessageNotReadableException("Malformed tweet message.");
+            }
+            tweets.add(tweet);
+        }
+        return tweets;
+    }
+
+    private static void encode(final Tweet tweet, final Buffer message, final Buffer body) {
+        message.reset();
+        if(tweet.getId() != null){
+            message.writeVarint(ID << 3 | VARINT);
+            message.writeVarint(tweet.getId());
+        }
+        writeString(message, PUBLISHER, tweet.getPublisher());
+        writeString(message, TWEET, tweet.getTweet());
+        if(tweet.getPre2015MigrationStatus() != null){
+            message.writeVarint(PRE2015_MIGRATION_STATUS << 3 | VARINT);
+            message.writeVarint(tweet.getPre2015MigrationStatus());
+        }
+
+        body.writeVarint(message.size());
+        body.append(message);
+    }
+
+    private static void writeString(final Buffer message, final int field, final String value) {
+        if(value == null){
+            return;
+        }
+        final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        message.writeVarint(field << 3 | LENGTH_DELIMITED);
+        message.writeVarint(bytes.length);
+        message.write(bytes, 0, bytes.length);
+    }
+
+    private static boolean isTweets(final Type type) {
+        if(!(type instanceof ParameterizedType)){
+            return false;
+        }
+        final ParameterizedType parameterized = (ParameterizedType) type;
+        return parameterized.getRawType() instanceof Class
+                && List.class.isAssignableFrom((Class<?>) parameterized.getRawType())
+                && parameterized.getActualTypeArguments()[0] == Tweet.class;
+    }
+
+    private static final class Buffer extends ByteArrayOutputStream {
+        private void writeVarint(long value) {
+            while((value & ~0x7FL) != 0){
+                write((int) (value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            write((int) value);
+        }
+
+        private void append(final Buffer other) {
+            write(other.buf, 0, other.count);
+        }
+    }
+
+    private static final class Reader {
+        private final byte[] bytes;
+        private int position;
+
+        private Reader(final byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        private long readVarint() {
+            long value = 0;
+            for(int shift = 0; shift < 64; shift += 7){
+                if(position >= bytes.length){
+                    throw new HttpMessageNotReadableException("Truncated varint.");
+                }
+                final byte b = bytes[position++];
+                value |= (long) (b & 0x7F) << shift;
+                if((b & 0x80) == 0){
+                    return value;
+                }
+            }
+            throw new HttpMessageNotReadableException("Malformed varint.");
+        }
+
+        private String readString() {
+            final int end = end((int) readVarint());
+            final String value = new String(bytes, position, end - position, StandardCharsets.UTF_8);
+            position = end;
+            return value;
+        }
+
+        private void skip(final int wireType) {
+            switch (wireType) {
+                case VARINT:
+                    readVarint();
+                    break;
+                case FIXED64:
+                    position = end(8);
+                    break;
+                case LENGTH_DELIMITED:
+                    position = end((int) readVarint());
+                    break;
+                case FIXED32:
+                    position = end(4);
+                    break;
+                default:
+                    throw new HttpMessageNotReadableException("Unsupported wire type "+ wireType +".");
+            }
+        }
+
+        private int end(final int length) {
+            if(length < 0 || length > bytes.length - position){
+                throw new HttpMessageNotReadableException("Truncated message.");
+            }
+            return position + length;
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package com.scmspain.controller;
+
+import com.scmspain.services.TweetStatisticsService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * Exposes the tweet statistics. Every response is built from in-memory counters, so its cost doesn't depend
+ * on the amount of tweets stored.
+ */
+@RestController
+public class TweetStatisticsController {
+    Logger LOG = LoggerFactory.getLogger(TweetStatisticsController.class);
+
+    private TweetStatisticsService tweetStatisticsService;
+
+    public TweetStatisticsController(TweetStatisticsService tweetStatisticsService) {
+        this.tweetStatisticsService = tweetStatisticsService;
+    }
+
+    @GetMapping("/stats")
+    public TweetStatisticsService.Counts getStatistics(@RequestHeader(required = false) String publisher) {
+        if(publisher == null){
+            LOG.debug("Retrieving tweet statistics.");
+            return this.tweetStatisticsService.snapshot();
+        }
+
+        LOG.debug("Retrieving tweet statistics for the publisher ["+ publisher +"].");
+        return this.tweetStatisticsService.getCounts(publisher);
+    }
+}
@@ -0,0 +1,24 @@
+package com.scmspain.entities;
+
+import javax.persistence.AttributeConverter;
+import javax.persistence.Converter;
+import java.sql.Timestamp;
+import java.time.Instant;
+
+/**
+ * Maps an Instant to a SQL TIMESTAMP column, so it can be indexed and compared by the repository. Without it,
+ * Instant attributes are stored as serialized binary values.
+ */
+@Converter
+public class InstantTimestampConverter implements AttributeConverter<Instant, Timestamp> {
+
+    @Override
+    public Timestamp convertToDatabaseColumn(Instant instant) {
+        return instant == null ? null : Timestamp.from(instant);
+    }
+
+    @Override
+    public Instant convertToEntityAttribute(Timestamp timestamp) {
+        return timestamp == null ? null : timestamp.toInstant();
+    }
+}
@@ -0,0 +1,44 @@
+package com.scmspain.entities;
+
+import javax.persistence.*;
+
+/**
+ * Entry of the link dictionary. Every distinct URL found in tweets is stored once, keyed by a 64 bit hash of the
+ * URL, and every TweetLink references it instead of repeating the URL.
+ */
+@Entity
+public class Link {
+
+    @Id
+    private Long id;
+
+    @Column(nullable = false)
+    private String url;
+
+    public Link() {}
+
+    public Link(String url) {
+        this.url = url;
+    }
+
+    public Link(Long id, String url) {
+        this.id = id;
+        this.url = url;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public void setUrl(String url) {
+        this.url = url;
+    }
+}
@@ -0,0 +1,40 @@
+package com.scmspain.entities;
+
+import javax.persistence.*;
+
+/**
+ * Entry of the publisher dictionary. Tweets reference their publisher by the integer key of this entity instead of
+ * repeating its name on every row.
+ */
+@Entity
+public class Publisher {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Integer id;
+
+    @Column(nullable = false, unique = true)
+    private String name;
+
+    public Publisher() {}
+
+    public Publisher(String name) {
+        this.name = name;
+    }
+
+    public Integer getId() {
+        return id;
+    }
+
+    public void setId(Integer id) {
+        this.id = id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+}
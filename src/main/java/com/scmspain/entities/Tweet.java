@@ -1,21 +1,31 @@
 package com.scmspain.entities;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
+import org.hibernate.annotations.GenericGenerator;
 
 import javax.persistence.*;
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.List;
 
+/**
+ * Tweet published by a publisher. The indexes serving the timelines are created by the import.sql script, as
+ * Hibernate ignores the column ordering of the JPA index annotations.
+ */
 @Entity
 public class Tweet {
     @Id
-    @GeneratedValue
+    @GeneratedValue(generator = "snowflake") //time ordered, so the primary key index sorts by publication time.
+    @GenericGenerator(name = "snowflake", strategy = "com.scmspain.persistence.SnowflakeIdentifierGenerator")
     private Long id;
 
-    @Column(nullable = false)
+    @Transient //stored as publisherId, resolved through the publisher dictionary.
     private String publisher;
 
+    @Column(nullable = false)
+    @JsonIgnore
+    private Integer publisherId;
+
     @Column(nullable = false, length = 140)
     private String tweet;
 
@@ -30,6 +40,11 @@ public class Tweet {
     @JsonIgnore
     private Boolean discarded;
 
+    @Column(nullable = true)
+    @Convert(converter = InstantTimestampConverter.class)
+    @JsonIgnore
+    private Instant discardedAt;
+
     @OneToMany(cascade = CascadeType.ALL, orphanRemoval = true) //intentionally left to use EAGER fetch (default value).
     @JoinColumn(name = "tweet_id", referencedColumnName = "id")
     @JsonIgnore
@@ -59,6 +74,14 @@ public class Tweet {
         this.publisher = publisher;
     }
 
+    public Integer getPublisherId() {
+        return publisherId;
+    }
+
+    public void setPublisherId(Integer publisherId) {
+        this.publisherId = publisherId;
+    }
+
     public String getTweet() {
         return tweet;
     }
@@ -94,6 +117,14 @@ public class Tweet {
         this.discarded = discarded;
     }
 
+    public Instant getDiscardedAt() {
+        return discardedAt;
+    }
+
+    public void setDiscardedAt(Instant discardedAt) {
+        this.discardedAt = discardedAt;
+    }
+
     public List<TweetLink> getLinks() {
         return links;
     }
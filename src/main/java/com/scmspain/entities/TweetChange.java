@@ -0,0 +1,93 @@
+package com.scmspain.entities;
+
+import javax.persistence.*;
+import java.time.Instant;
+
+/**
+ * Entry of the tweet change log. Every write on a tweet appends one of these in the same transaction, so every
+ * instance of the application can follow the changes made by the others (polling by sequence number, which is the
+ * primary key) and keep its in-process state up to date.
+ */
+@Entity
+public class TweetChange {
+
+    public enum Type { PUBLISHED, DISCARDED, PUBLISHED_PURGED, DISCARDED_PURGED }
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY) //own identity column, so sequence gaps only come from rollbacks.
+    private Long seq;
+
+    @Column(nullable = false)
+    private Long tweetId;
+
+    @Column(nullable = false)
+    private Integer publisherId;
+
+    @Column(nullable = false, length = 16)
+    @Enumerated(EnumType.STRING)
+    private Type type;
+
+    @Column(nullable = false, length = 64)
+    private String nodeId;
+
+    @Column(nullable = false)
+    private Instant createdAt;
+
+    public TweetChange() {}
+
+    public TweetChange(Tweet tweet, Type type, String nodeId) {
+        this.tweetId = tweet.getId();
+        this.publisherId = tweet.getPublisherId();
+        this.type = type;
+        this.nodeId = nodeId;
+        this.createdAt = Instant.now();
+    }
+
+    public Long getSeq() {
+        return seq;
+    }
+
+    public void setSeq(Long seq) {
+        this.seq = seq;
+    }
+
+    public Long getTweetId() {
+        return tweetId;
+    }
+
+    public void setTweetId(Long tweetId) {
+        this.tweetId = tweetId;
+    }
+
+    public Integer getPublisherId() {
+        return publisherId;
+    }
+
+    public void setPublisherId(Integer publisherId) {
+        this.publisherId = publisherId;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public void setType(Type type) {
+        this.type = type;
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    public void setNodeId(String nodeId) {
+        this.nodeId = nodeId;
+    }
+
+    public Instant getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(Instant createdAt) {
+        this.createdAt = createdAt;
+    }
+}
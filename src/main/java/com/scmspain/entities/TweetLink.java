@@ -6,7 +6,7 @@ import java.io.Serializable;
 /**
  * Link of a tweet. A tweet might have links on it and those shouldn't affect the tweet text limit of 140 characters,
  * so whenever a link is found in a tweet it will be extracted with the position of the link and stored on an instance
- * of this class.
+ * of this class. The link itself is an entry of the link dictionary, shared by every tweet containing it.
  */
 @Entity
 public class TweetLink implements Serializable{
@@ -19,8 +19,9 @@ public class TweetLink implements Serializable{
     @Column(nullable = false)
     private Integer index;
 
-    @Column(nullable = false)
-    private String link;
+    @ManyToOne(optional = false)
+    @JoinColumn(name = "link_id")
+    private Link link;
 
     public TweetLink(){}
 
@@ -44,11 +45,11 @@ public class TweetLink implements Serializable{
         this.index = index;
     }
 
-    public String getLink() {
+    public Link getLink() {
         return link;
     }
 
-    public void setLink(String link) {
+    public void setLink(Link link) {
         this.link = link;
     }
 }
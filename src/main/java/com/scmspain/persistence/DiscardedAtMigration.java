@@ -0,0 +1,83 @@
+package com.scmspain.persistence;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.boot.actuate.metrics.writer.Delta;
+import org.springframework.boot.actuate.metrics.writer.MetricWriter;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationListener;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Background migration filling the discard date of the tweets discarded before it had its own column. It starts
+ * once the application is ready and walks the primary key index in small chunks, each one in its own short
+ * transaction and followed by a pause, so it doesn't compete with the requests being served. Once every tweet is
+ * migrated it finds nothing to do on later startups, at the cost of a single index range scan.
+ */
+public class DiscardedAtMigration implements ApplicationListener<ApplicationReadyEvent>, DisposableBean {
+    private static final Logger LOG = LoggerFactory.getLogger(DiscardedAtMigration.class);
+
+    private final TweetStorage tweetStorage;
+    private final MetricWriter metricWriter;
+    private final int chunkSize;
+    private final long pauseMillis;
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        final Thread thread = new Thread(runnable, "discarded-at-migration");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * @param tweetStorage The storage used to migrate the tweets.
+     * @param metricWriter Writer of the migration metrics.
+     * @param chunkSize Amount of tweets migrated on each transaction.
+     * @param pauseMillis Pause between two chunks.
+     */
+    public DiscardedAtMigration(TweetStorage tweetStorage, MetricWriter metricWriter, int chunkSize, long pauseMillis) {
+        this.tweetStorage = tweetStorage;
+        this.metricWriter = metricWriter;
+        this.chunkSize = chunkSize;
+        this.pauseMillis = pauseMillis;
+    }
+
+    @Override
+    public void onApplicationEvent(ApplicationReadyEvent event) {
+        this.executor.submit(this::migrate);
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        this.executor.shutdownNow();
+        this.executor.awaitTermination(5, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Migrates every pending tweet, chunk by chunk.
+     * @return The amount of chunks migrated.
+     */
+    public int migrate() {
+        int chunks = 0;
+        try {
+            long lastId = Long.MIN_VALUE;
+            Long id;
+            while((id = this.tweetStorage.migrateDiscardedAt(lastId, this.chunkSize)) != null){
+                lastId = id;
+                chunks++;
+                this.metricWriter.increment(new Delta<Number>("migration.discarded-at.chunks", 1));
+                Thread.sleep(this.pauseMillis);
+            }
+            LOG.info("Discard date migration finished after "+ chunks +" chunk(s).");
+        } catch (InterruptedException ex){
+            LOG.info("Discard date migration interrupted after "+ chunks +" chunk(s), it will be resumed on next startup.");
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException ex){
+            LOG.warn("Discard date migration failed after "+ chunks +" chunk(s), it will be resumed on next startup.", ex);
+        }
+        return chunks;
+    }
+}
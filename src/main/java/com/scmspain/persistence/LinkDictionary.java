@@ -0,0 +1,88 @@
+package com.scmspain.persistence;
+
+import com.scmspain.entities.Link;
+import com.scmspain.utils.LinkUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+import javax.persistence.LockModeType;
+import javax.persistence.PersistenceException;
+import java.util.Objects;
+
+/**
+ * Dictionary of links, storing every distinct URL once under a key derived from its 64 bit hash, so resolving a
+ * link is a primary key lookup and tweets sharing a link share its row. On the unlikely event of two URLs hashing
+ * to the same key, the next free key is used (linear probing), which is why the stored URL is always compared.
+ *
+ * New links are created on the transaction storing their tweet, like publishers on the {@link PublisherDictionary},
+ * so publishing never holds more than one connection. The row is only inserted when its key is still free, so a link
+ * stored meanwhile by another instance is found instead of failing the tweet being published, also when both insert
+ * it at once. A different link taking the key meanwhile just makes the probing go on. Resolved links are read locked
+ * until the tweet referencing them is stored, so a purge can't delete them as unreferenced meanwhile.
+ */
+public class LinkDictionary {
+    private static final Logger LOG = LoggerFactory.getLogger(LinkDictionary.class);
+
+    static final int MAX_PROBES = 8;
+    private static final String INSERT_LINK_IF_ABSENT = "INSERT INTO LINK (ID, URL) SELECT ?, ? FROM DUAL "
+            + "WHERE NOT EXISTS (SELECT 1 FROM LINK WHERE ID = ?)";
+
+    private final EntityManager entityManager;
+    private final TransactionTemplate transaction;
+
+    /**
+     * @param entityManager The EntityManager of the repository.
+     * @param transactionManager Transaction manager creating a transaction for new links when there is none.
+     */
+    public LinkDictionary(final EntityManager entityManager, final PlatformTransactionManager transactionManager) {
+        this.entityManager = entityManager;
+        this.transaction = new TransactionTemplate(transactionManager);
+    }
+
+    /**
+     * @param url A link found on a tweet.
+     * @return The managed dictionary entry of the link, which is created when there is no such link yet.
+     * @throws IllegalArgumentException when the link can't be stored or an exception happens performing an
+     * operation in the existing EntityManager.
+     */
+    public Link resolve(final String url) throws IllegalArgumentException {
+        long id = LinkUtils.hash(url);
+
+        for(int probe = 0; probe < MAX_PROBES; probe++, id++){
+            Link link = find(id);
+            if(Objects.isNull(link)){
+                create(id, url);
+                link = find(id);
+                if(Objects.isNull(link)){
+                    throw new IllegalArgumentException("Link ["+ url +"] could not be stored!");
+                }
+            }
+            if(url.equals(link.getUrl())){
+                return link;
+            }
+            LOG.debug("Link key ["+ id +"] already taken by another link, probing the next one...");
+        }
+
+        throw new IllegalArgumentException("No free key found for link ["+ url +"]!");
+    }
+
+    private Link find(final long id) {
+        try {
+            return this.entityManager.find(Link.class, id, LockModeType.PESSIMISTIC_READ);
+        } catch (PersistenceException ex){
+            throw new IllegalArgumentException(ex.getMessage(), ex);
+        }
+    }
+
+    private void create(final long id, final String url) {
+        LOG.debug("Creating link ["+ url +"]...");
+        // another instance might take the key meanwhile, in which case nothing is inserted, or the insert losing the
+        // race is rolled back on its savepoint, and the stored link is checked by the caller. Only the dictionary is
+        // written, so the tweet being stored is not flushed before its links are resolved.
+        this.transaction.execute(status ->
+                SavepointInsert.execute(this.entityManager, INSERT_LINK_IF_ABSENT, id, url, id));
+    }
+}
@@ -0,0 +1,208 @@
+package com.scmspain.persistence;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * Segment file of the {@link LogTweetStorage}: a memory-mapped file records are appended to one after the other.
+ * Every record is framed as [payload length][CRC32 of the payload][payload], and the length is written after the
+ * rest of the record, so a record torn by a crash reads as a zero length, which is how the end of the records is
+ * found on a file that was created at its full size. The checksum catches the pages only partially written to
+ * disk when the whole machine crashed.
+ *
+ * Segments are not thread safe, the storage serializes every access to its active segment.
+ */
+class LogSegment implements Closeable {
+    private static final Logger LOG = LoggerFactory.getLogger(LogSegment.class);
+
+    static final String SUFFIX = ".log";
+    static final int HEADER_BYTES = 8;
+
+    private final long index;
+    private final Path path;
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private int position;
+
+    private LogSegment(final long index, final Path path, final FileChannel channel, final MappedByteBuffer buffer) {
+        this.index = index;
+        this.path = path;
+        this.channel = channel;
+        this.buffer = buffer;
+    }
+
+    /**
+     * Creates a new, empty segment.
+     * @param directory The directory of the segments.
+     * @param index The index of the segment, which gives the order segments are replayed in.
+     * @param size The size of the segment file.
+     * @return The segment, open to append records.
+     * @throws IOException when the file already exists or can't be created.
+     */
+    static LogSegment create(final Path directory, final long index, final int size) throws IOException {
+        final Path path = path(directory, index);
+        final FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        return new LogSegment(index, path, channel, channel.map(FileChannel.MapMode.READ_WRITE, 0, size));
+    }
+
+    /**
+     * Opens an existing segment, whose records must be replayed before appending new ones.
+     * @param path The segment file.
+     * @param size The minimum size of the segment file, which is grown when smaller and writable.
+     * @param writable Whether records will be appended to the segment.
+     * @return The segment.
+     * @throws IOException when the file can't be opened.
+     */
+    static LogSegment open(final Path path, final int size, final boolean writable) throws IOException {
+        final FileChannel channel = writable
+                ? FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)
+                : FileChannel.open(path, StandardOpenOption.READ);
+        final MappedByteBuffer buffer = writable
+                ? channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(size, channel.size()))
+                : channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        return new LogSegment(index(path), path, channel, buffer);
+    }
+
+    /**
+     * @param directory The directory of the segments.
+     * @param index The index of a segment.
+     * @return The file of the segment, named after its index so the directory listing sorts like the segments.
+     */
+    static Path path(final Path directory, final long index) {
+        return directory.resolve(String.format("%020d", index) + SUFFIX);
+    }
+
+    /**
+     * @param path A segment file, or a file named after the index of a segment with another suffix.
+     * @return The index of the segment.
+     */
+    static long index(final Path path) {
+        final String name = path.getFileName().toString();
+        return Long.parseLong(name.substring(0, name.indexOf('.')));
+    }
+
+    /**
+     * @param payload The payload of a record.
+     * @return The record framing the payload, ready to be written anywhere but in a segment being appended to.
+     */
+    static ByteBuffer frame(final byte[] payload) {
+        final ByteBuffer record = ByteBuffer.allocate(HEADER_BYTES + payload.length);
+        record.putInt(payload.length).putInt(checksum(payload)).put(payload);
+        record.flip();
+        return record;
+    }
+
+    /**
+     * Reads every record from the start of the segment, leaving it positioned after the last one so new records
+     * are appended there. A torn record found on a writable segment is wiped, so it can't be mistaken for a
+     * record once a shorter one is appended over its start.
+     * @param consumer Receives the payload of every record, in order. The buffer is only valid during the call.
+     * @return The amount of records read.
+     */
+    int replay(final Consumer<ByteBuffer> consumer) {
+        final CRC32 crc = new CRC32();
+        int records = 0;
+        this.position = 0;
+
+        while(this.position + HEADER_BYTES <= this.buffer.limit()){
+            final int length = this.buffer.getInt(this.position);
+            if(length == 0){
+                return records;
+            }
+
+            final int start = this.position + HEADER_BYTES;
+            if(length < 0 || start + length > this.buffer.limit()
+                    || checksum(crc, slice(start, length)) != this.buffer.getInt(this.position + 4)){
+                LOG.warn("Torn record found at ["+ this.position +"] of segment ["+ this.path +"], ignoring the rest of the segment.");
+                wipe();
+                return records;
+            }
+
+            consumer.accept(slice(start, length));
+            this.position = start + length;
+            records++;
+        }
+        return records;
+    }
+
+    /**
+     * @param payload The payload of the record to append.
+     * @return Whether the record was appended, false when it doesn't fit in the rest of the segment.
+     */
+    boolean append(final byte[] payload) {
+        final int end = this.position + HEADER_BYTES + payload.length;
+        if(end > this.buffer.limit()){
+            return false;
+        }
+
+        this.buffer.position(this.position + HEADER_BYTES);
+        this.buffer.put(payload);
+        this.buffer.putInt(this.position + 4, checksum(payload));
+        this.buffer.putInt(this.position, payload.length); //last, so the record only exists once complete.
+        this.position = end;
+        return true;
+    }
+
+    /**
+     * Writes the appended records to disk. Without it they are still written by the operating system, surviving
+     * a crash of the application but not of the machine.
+     */
+    void force() {
+        this.buffer.force();
+    }
+
+    long index() {
+        return index;
+    }
+
+    Path path() {
+        return path;
+    }
+
+    /**
+     * Closes the file. The mapping itself is released once the buffer is garbage collected, as Java offers no
+     * way of unmapping it.
+     */
+    @Override
+    public void close() throws IOException {
+        this.channel.close();
+    }
+
+    private ByteBuffer slice(final int start, final int length) {
+        final ByteBuffer slice = this.buffer.duplicate();
+        slice.limit(start + length).position(start);
+        return slice.slice();
+    }
+
+    private void wipe() {
+        if(this.buffer.isReadOnly()){
+            return;
+        }
+        for(int i = this.position; i < this.buffer.limit(); i++){
+            this.buffer.put(i, (byte) 0);
+        }
+    }
+
+    private static int checksum(final byte[] payload) {
+        final CRC32 crc = new CRC32();
+        crc.update(payload);
+        return (int) crc.getValue();
+    }
+
+    private static int checksum(final CRC32 crc, final ByteBuffer payload) {
+        crc.reset();
+        crc.update(payload.duplicate());
+        return (int) crc.getValue();
+    }
+}
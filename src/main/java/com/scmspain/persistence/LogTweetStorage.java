@@ -0,0 +1,890 @@
+package com.scmspain.persistence;
+
+import com.scmspain.entities.Link;
+import com.scmspain.entities.Tweet;
+import com.scmspain.entities.TweetChange;
+import com.scmspain.entities.TweetLink;
+import com.scmspain.utils.LinkUtils;
+import com.scmspain.utils.SnowflakeIdGenerator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.boot.actuate.metrics.writer.Delta;
+import org.springframework.boot.actuate.metrics.writer.MetricWriter;
+
+import javax.annotation.PostConstruct;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Storage keeping tweets on local append-only segment files instead of the JPA repository. Publishing, discarding
+ * and purging a tweet append a record to the active segment, a memory-mapped file, and apply it to in-memory
+ * indexes serving every read: the tweets by id, the non discarded ones by id (ids are time ordered, so that is
+ * the timeline order) and the discarded ones by discard date. Segments are only read on startup, when they are
+ * replayed in order to rebuild the indexes, which is also how the storage recovers after a crash (see
+ * {@link LogSegment} for how torn records are found).
+ *
+ * Once the active segment is full it is sealed and a new one is created. Sealed segments are compacted in the
+ * background into a single one holding a snapshot record of every tweet they stored which is still there, so the
+ * records of purged tweets and the discard records already folded into a snapshot are dropped. The compacted
+ * segment takes the index of the last segment it replaces, so it is still replayed before the active one, and
+ * it only replaces them once completely written (see {@link #open()} for how an interrupted compaction is handled).
+ *
+ * Writes are serialized on the storage instance, reads don't lock. Segments store publisher names, and the keys
+ * services count tweets by are handed out by the storage itself, densely from 1 in the order publishers are first
+ * replayed or published, so the log needs no other repository and doesn't depend on the keys given on a previous
+ * run. Link keys are the plain hash of the link, without the probing done
+ * by the {@link LinkDictionary}. Only the last changes are kept to be followed by {@link #findChangesAfter(long, int)},
+ * which is enough for the in-process state of this instance but not to share the storage among instances, so this
+ * storage is meant for single instance deployments.
+ */
+public class LogTweetStorage implements TweetStorage, DisposableBean {
+    private static final Logger LOG = LoggerFactory.getLogger(LogTweetStorage.class);
+
+    private static final byte PUBLISHED = 1;
+    private static final byte DISCARDED = 2;
+    private static final byte PURGED = 3;
+    private static final byte SNAPSHOT = 4;
+    private static final byte SEQUENCE = 5;
+
+    private static final long NONE = Long.MIN_VALUE;
+    private static final int MAX_TWEET_LENGTH = 140;
+
+    private static final Comparator<Entry> DISCARD_ORDER =
+            Comparator.comparing((Entry entry) -> entry.discardedAt).thenComparingLong(entry -> entry.id);
+
+    private final Path directory;
+    private final int segmentBytes;
+    private final boolean force;
+    private final int maxChanges;
+    private final SnowflakeIdGenerator idGenerator;
+    private final MetricWriter metricWriter;
+    private final String nodeId;
+
+    private final ConcurrentMap<Long, Entry> tweets = new ConcurrentHashMap<>();
+    private final ConcurrentNavigableMap<Long, Entry> published = new ConcurrentSkipListMap<>();
+    private final ConcurrentSkipListSet<Entry> discarded = new ConcurrentSkipListSet<>(DISCARD_ORDER);
+    private final ConcurrentMap<Integer, ConcurrentSkipListSet<Entry>> discardedByPublisher = new ConcurrentHashMap<>();
+    private final ConcurrentNavigableMap<Long, TweetChange> changes = new ConcurrentSkipListMap<>();
+    private final ConcurrentMap<String, Integer> publisherIds = new ConcurrentHashMap<>(); //written holding this.
+    private final ConcurrentMap<Integer, String> publisherNames = new ConcurrentHashMap<>();
+    private volatile long lastSeq;
+
+    private final List<Long> sealed = new ArrayList<>(); //guarded by this, like the active segment.
+    private LogSegment active;
+    private boolean compacting;
+    private final Object compactionLock = new Object();
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        final Thread thread = new Thread(runnable, "tweet-log-compaction");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * @param directory The directory of the segment files, created when missing.
+     * @param segmentBytes The size of every segment file, which bounds the size of a record too.
+     * @param force Whether every record is written to disk before the write returns, so it survives a crash of
+     * the machine and not only of the application, at the cost of a disk flush per write.
+     * @param maxChanges Amount of the last change log entries kept.
+     * @param idGenerator The generator of the tweet ids.
+     * @param metricWriter Writer of the storage metrics.
+     * @param nodeId Identifier of this application instance, recorded in the change log entries.
+     */
+    public LogTweetStorage(Path directory, int segmentBytes, boolean force, int maxChanges,
+                           SnowflakeIdGenerator idGenerator, MetricWriter metricWriter, String nodeId) {
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.force = force;
+        this.maxChanges = maxChanges;
+        this.idGenerator = idGenerator;
+        this.metricWriter = metricWriter;
+        this.nodeId = nodeId;
+    }
+
+    /**
+     * Rebuilds the indexes replaying every segment, the last one becoming the active segment. A compaction
+     * interrupted before its segment was completely written is discarded, and one interrupted after it replaces
+     * the segments it was compacted from.
+     * @throws IllegalArgumentException when the segments can't be read.
+     */
+    @PostConstruct
+    public synchronized void open() throws IllegalArgumentException {
+        final long start = System.nanoTime();
+        int records = 0;
+
+        try {
+            Files.createDirectories(this.directory);
+            for(Path path : list("*.compacting")){
+                Files.delete(path);
+            }
+            for(Path path : list("*.compacted")){
+                final long index = LogSegment.index(path);
+                for(Path segment : list("*" + LogSegment.SUFFIX)){
+                    if(LogSegment.index(segment) <= index){
+                        Files.delete(segment);
+                    }
+                }
+                Files.move(path, LogSegment.path(this.directory, index), StandardCopyOption.ATOMIC_MOVE);
+            }
+
+            final List<Path> segments = list("*" + LogSegment.SUFFIX);
+            for(int i = 0; i < segments.size(); i++){
+                final boolean last = i == segments.size() - 1;
+                final LogSegment segment = LogSegment.open(segments.get(i), this.segmentBytes, last);
+                records += segment.replay(record -> apply(record, segment.index()));
+                if(last){
+                    this.active = segment;
+                } else {
+                    this.sealed.add(segment.index());
+                    segment.close();
+                }
+            }
+            if(Objects.isNull(this.active)){
+                this.active = LogSegment.create(this.directory, 1, this.segmentBytes);
+            }
+        } catch (IOException ex){
+            throw new IllegalArgumentException(ex.getMessage(), ex);
+        }
+
+        LOG.info("Replayed "+ records +" record(s) from ["+ this.directory +"] in "
+                + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) +" ms, "+ this.tweets.size() +" tweet(s) stored.");
+        this.metricWriter.set(new Metric<Number>("storage.log.segments", this.sealed.size() + 1));
+        compactInBackground();
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        this.executor.shutdownNow();
+        this.executor.awaitTermination(5, TimeUnit.SECONDS);
+        synchronized (this) {
+            if(Objects.nonNull(this.active)){
+                this.active.force();
+                this.active.close();
+            }
+        }
+    }
+
+    /**
+     * @see TweetStorage#saveTweet(Tweet)
+     */
+    @Override
+    public TweetChange saveTweet(final Tweet tweet) throws IllegalArgumentException {
+        LOG.debug("Saving tweet from ["+ tweet.getPublisher() +"] in the log...");
+
+        final String text = tweet.getTweet();
+        final Tweet withoutLinks = new Tweet();
+        LinkUtils.extractLinks(withoutLinks, text);
+        if(withoutLinks.getTweet().length() > MAX_TWEET_LENGTH){
+            final String msg = "A Tweet can't contain more than 140 characters.";
+            LOG.warn(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        final String publisher = tweet.getPublisher();
+        final TweetChange change;
+        final Entry entry;
+        synchronized (this) {
+            final long seq = this.lastSeq + 1;
+            final Instant now = Instant.now();
+            final long id;
+            try {
+                id = this.idGenerator.nextId();
+            } catch (IllegalStateException ex){
+                throw new IllegalArgumentException(ex.getMessage(), ex);
+            }
+            final Long pre2015 = tweet.getPre2015MigrationStatus();
+
+            final long segment = append(new Writer(PUBLISHED).putLong(seq).putLong(now.toEpochMilli()).putLong(id)
+                    .putLong(pre2015 == null ? NONE : pre2015).putString(publisher).putString(text).toBytes());
+            entry = new Entry(id, publisher, publisherId(publisher), text, Instant.ofEpochMilli(now.toEpochMilli()), pre2015, null, segment);
+            index(entry);
+            change = change(seq, now, TweetChange.Type.PUBLISHED, entry);
+        }
+
+        tweet.setId(entry.id);
+        tweet.setPublisherId(entry.publisherId);
+        tweet.setDate(entry.date);
+        tweet.setDiscarded(false);
+
+        LOG.debug("Tweet from ["+ tweet.getPublisher() +"] saved successfully!");
+        return change;
+    }
+
+    /**
+     * @see TweetStorage#findTweetById(Long)
+     */
+    @Override
+    public Tweet findTweetById(final Long id) throws IllegalArgumentException {
+        final Entry entry = this.tweets.get(id);
+        return entry == null ? null : entry.toTweet();
+    }
+
+    /**
+     * @see TweetStorage#findNonDiscardedTweets()
+     */
+    @Override
+    public List<Tweet> findNonDiscardedTweets() throws IllegalArgumentException {
+        return toTweets(this.published.descendingMap().values());
+    }
+
+    /**
+     * @see TweetStorage#findNonDiscardedTweetsAfter(long)
+     */
+    @Override
+    public List<Tweet> findNonDiscardedTweetsAfter(final long afterId) throws IllegalArgumentException {
+        return toTweets(this.published.tailMap(afterId, false).descendingMap().values());
+    }
+
+    /**
+     * @see TweetStorage#findDiscardedTweets(String)
+     */
+    @Override
+    public List<Tweet> findDiscardedTweets(final String publisher) throws IllegalArgumentException {
+        final Integer publisherId = this.publisherIds.get(publisher);
+        final ConcurrentSkipListSet<Entry> entries = publisherId == null ? null : this.discardedByPublisher.get(publisherId);
+        if(Objects.isNull(entries)){
+            return Collections.emptyList();
+        }
+        return toTweets(entries.descendingSet());
+    }
+
+    /**
+     * @see TweetStorage#discardTweet(Tweet, Consumer)
+     */
+    @Override
+    public TweetChange discardTweet(final Tweet tweet, final Consumer<String> beforeDiscard) throws IllegalArgumentException {
+        LOG.debug("Setting tweet ["+ tweet.getId() +"] as discarded...");
+
+        synchronized (this) {
+            final Entry entry = this.tweets.get(tweet.getId());
+            if(Objects.isNull(entry)){
+                throw new IllegalArgumentException("Invalid tweet id was not found!");
+            }
+            if(entry.isDiscarded()){
+                LOG.debug("Tweet id ["+ tweet.getId() +"] was already discarded!");
+                return null;
+            }
+
+            beforeDiscard.accept(entry.publisher);
+            final long seq = this.lastSeq + 1;
+            final Instant now = Instant.now();
+            append(new Writer(DISCARDED).putLong(seq).putLong(now.toEpochMilli()).putLong(entry.id)
+                    .putString(entry.publisher).toBytes());
+            index(entry.discard(Instant.ofEpochMilli(now.toEpochMilli())));
+
+            LOG.debug("Tweet id ["+ tweet.getId() +"] marked as discarded!");
+            return change(seq, now, TweetChange.Type.DISCARDED, entry);
+        }
+    }
+
+    /**
+     * @see TweetStorage#findPublisherId(String)
+     */
+    @Override
+    public Integer findPublisherId(final String publisher) throws IllegalArgumentException {
+        return publisher == null ? null : this.publisherIds.get(publisher);
+    }
+
+    /**
+     * @see TweetStorage#findPublisherName(Integer)
+     */
+    @Override
+    public String findPublisherName(final Integer publisherId) throws IllegalArgumentException {
+        return publisherId == null ? null : this.publisherNames.get(publisherId);
+    }
+
+    /**
+     * @see TweetStorage#countTweetsByPublisher()
+     */
+    @Override
+    public List<Object[]> countTweetsByPublisher() throws IllegalArgumentException {
+        final Map<Integer, long[]> counts = new HashMap<>();
+        for(Entry entry : this.tweets.values()){
+            counts.computeIfAbsent(entry.publisherId, key -> new long[2])[entry.isDiscarded() ? 1 : 0]++;
+        }
+
+        final List<Object[]> rows = new ArrayList<>();
+        counts.forEach((publisherId, count) -> {
+            if(count[0] > 0){ rows.add(new Object[]{publisherId, false, count[0]}); }
+            if(count[1] > 0){ rows.add(new Object[]{publisherId, true, count[1]}); }
+        });
+        return rows;
+    }
+
+    /**
+     * @see TweetStorage#findTweetLinks(Long)
+     */
+    @Override
+    public List<Link> findTweetLinks(final Long tweetId) throws IllegalArgumentException {
+        final Entry entry = this.tweets.get(tweetId);
+        if(Objects.isNull(entry)){
+            return Collections.emptyList();
+        }
+
+        final List<Link> links = new ArrayList<>();
+        for(String url : links(entry.text)){
+            links.add(new Link(LinkUtils.hash(url), url));
+        }
+        return links;
+    }
+
+    /**
+     * @see TweetStorage#countPublishedTweetsByLink()
+     */
+    @Override
+    public List<Object[]> countPublishedTweetsByLink() throws IllegalArgumentException {
+        final Map<String, Long> counts = new HashMap<>();
+        for(Entry entry : this.published.values()){
+            for(String url : new LinkedHashSet<>(links(entry.text))){
+                counts.merge(url, 1L, Long::sum);
+            }
+        }
+
+        final List<Object[]> rows = new ArrayList<>();
+        counts.forEach((url, count) -> rows.add(new Object[]{LinkUtils.hash(url), url, count}));
+        return rows;
+    }
+
+    /**
+     * @see TweetStorage#findChangesAfter(long, int)
+     */
+    @Override
+    public List<TweetChange> findChangesAfter(final long seq, final int limit) throws IllegalArgumentException {
+        final List<TweetChange> result = new ArrayList<>();
+        for(TweetChange change : this.changes.tailMap(seq, false).values()){
+            if(result.size() == limit){
+                break;
+            }
+            result.add(change);
+        }
+        return result;
+    }
+
+    /**
+     * @see TweetStorage#findChanges(Collection)
+     */
+    @Override
+    public List<TweetChange> findChanges(final Collection<Long> seqs) throws IllegalArgumentException {
+        final List<TweetChange> result = new ArrayList<>();
+        for(Long seq : new TreeSet<>(seqs)){
+            final TweetChange change = this.changes.get(seq);
+            if(Objects.nonNull(change)){
+                result.add(change);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @see TweetStorage#findLastChangeSeq()
+     */
+    @Override
+    public long findLastChangeSeq() throws IllegalArgumentException {
+        return this.lastSeq;
+    }
+
+    /**
+     * @see TweetStorage#deleteChangesBefore(long)
+     */
+    @Override
+    public int deleteChangesBefore(final long seq) throws IllegalArgumentException {
+        final Map<Long, TweetChange> deleted = this.changes.headMap(seq, false);
+        final int count = deleted.size();
+        deleted.clear();
+        return count;
+    }
+
+    /**
+     * Discard dates are always stored by this storage, so there is nothing to migrate.
+     * @see TweetStorage#migrateDiscardedAt(long, int)
+     */
+    @Override
+    public Long migrateDiscardedAt(final long afterId, final int chunkSize) throws IllegalArgumentException {
+        return null;
+    }
+
+    /**
+     * @see TweetStorage#findPublishedTweetsBefore(long, long, int)
+     */
+    @Override
+    public List<Object[]> findPublishedTweetsBefore(final long afterId, final long beforeId, final int limit) throws IllegalArgumentException {
+        final List<Object[]> rows = new ArrayList<>();
+        if(afterId >= beforeId){
+            return rows;
+        }
+        for(Entry entry : this.published.subMap(afterId, false, beforeId, false).values()){
+            if(rows.size() == limit){
+                break;
+            }
+            rows.add(new Object[]{entry.id, entry.date});
+        }
+        return rows;
+    }
+
+    /**
+     * @see TweetStorage#countPublishedTweetsBefore(long)
+     */
+    @Override
+    public long countPublishedTweetsBefore(final long beforeId) throws IllegalArgumentException {
+        return this.published.headMap(beforeId, false).size();
+    }
+
+    /**
+     * @see TweetStorage#findDiscardedTweetIdsBefore(Instant, int)
+     */
+    @Override
+    public List<Long> findDiscardedTweetIdsBefore(final Instant before, final int limit) throws IllegalArgumentException {
+        final List<Long> ids = new ArrayList<>();
+        for(Entry entry : this.discarded){
+            if(ids.size() == limit || !entry.discardedAt.isBefore(before)){
+                break;
+            }
+            ids.add(entry.id);
+        }
+        return ids;
+    }
+
+    /**
+     * @see TweetStorage#countDiscardedTweetsBefore(Instant)
+     */
+    @Override
+    public long countDiscardedTweetsBefore(final Instant before) throws IllegalArgumentException {
+        long count = 0;
+        for(Entry entry : this.discarded){
+            if(!entry.discardedAt.isBefore(before)){
+                break;
+            }
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * @see TweetStorage#purgeTweets(Collection)
+     */
+    @Override
+    public synchronized List<TweetChange> purgeTweets(final Collection<Long> ids) throws IllegalArgumentException {
+        final List<TweetChange> result = new ArrayList<>();
+        for(Long id : ids){
+            final Entry entry = this.tweets.get(id);
+            if(Objects.isNull(entry)){
+                continue;
+            }
+
+            final long seq = this.lastSeq + 1;
+            final Instant now = Instant.now();
+            append(new Writer(PURGED).putLong(seq).putLong(now.toEpochMilli()).putLong(entry.id)
+                    .putLong(entry.isDiscarded() ? 1 : 0).putString(entry.publisher).toBytes());
+            unindex(entry);
+            result.add(change(seq, now, entry.isDiscarded() ? TweetChange.Type.DISCARDED_PURGED : TweetChange.Type.PUBLISHED_PURGED, entry));
+        }
+
+        LOG.debug(result.size() +" tweet(s) purged.");
+        return result;
+    }
+
+    /**
+     * Compacts every sealed segment into a single one. Runs in the background once a second segment is sealed,
+     * and only blocks writes while the compacted segment replaces the sealed ones. Compactions never overlap.
+     * @return Whether anything was compacted.
+     * @throws IllegalArgumentException when the compacted segment can't be written.
+     */
+    public boolean compact() throws IllegalArgumentException {
+        synchronized (this.compactionLock) {
+            return compactSealed();
+        }
+    }
+
+    private boolean compactSealed() {
+        final List<Long> segments;
+        final long seq;
+        synchronized (this) {
+            segments = new ArrayList<>(this.sealed);
+            seq = this.lastSeq;
+        }
+        if(segments.isEmpty()){
+            return false;
+        }
+
+        final long start = System.nanoTime();
+        final long index = segments.get(segments.size() - 1);
+        final Path compacting = this.directory.resolve(String.format("%020d", index) + ".compacting");
+        final Path compacted = this.directory.resolve(String.format("%020d", index) + ".compacted");
+        int records = 0;
+
+        try {
+            // the snapshot is taken while writes go on, which is fine as they are appended to later segments,
+            // replayed after this one: at worst a tweet is snapshot with a change that is replayed again.
+            try (FileChannel channel = FileChannel.open(compacting, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                write(channel, new Writer(SEQUENCE).putLong(seq).toBytes());
+                for(Entry entry : this.tweets.values()){
+                    if(entry.segment <= index){
+                        write(channel, new Writer(SNAPSHOT).putLong(entry.id).putLong(entry.date.toEpochMilli())
+                                .putLong(entry.pre2015 == null ? NONE : entry.pre2015)
+                                .putLong(entry.isDiscarded() ? entry.discardedAt.toEpochMilli() : NONE)
+                                .putString(entry.publisher).putString(entry.text).toBytes());
+                        records++;
+                    }
+                }
+                channel.force(true);
+            }
+            Files.move(compacting, compacted, StandardCopyOption.ATOMIC_MOVE);
+
+            synchronized (this) {
+                for(Long segment : segments){
+                    Files.delete(LogSegment.path(this.directory, segment));
+                }
+                Files.move(compacted, LogSegment.path(this.directory, index), StandardCopyOption.ATOMIC_MOVE);
+                this.sealed.removeAll(segments);
+                this.sealed.add(0, index);
+                this.metricWriter.set(new Metric<Number>("storage.log.segments", this.sealed.size() + 1));
+            }
+        } catch (IOException ex){
+            throw new IllegalArgumentException(ex.getMessage(), ex);
+        }
+
+        this.metricWriter.increment(new Delta<Number>("storage.log.compactions", 1));
+        LOG.info("Compacted "+ segments.size() +" segment(s) into "+ records +" tweet(s) in "
+                + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) +" ms.");
+        return true;
+    }
+
+    /**
+     * Appends a record to the active segment, sealing it and creating a new one when the record doesn't fit.
+     * Must be called holding the lock of the storage.
+     * @return The index of the segment the record was appended to.
+     */
+    private long append(final byte[] payload) {
+        if(payload.length > this.segmentBytes - LogSegment.HEADER_BYTES){
+            throw new IllegalArgumentException("A record of "+ payload.length +" bytes doesn't fit in a segment.");
+        }
+
+        try {
+            if(!this.active.append(payload)){
+                this.active.force();
+                this.active.close();
+                this.sealed.add(this.active.index());
+                this.active = LogSegment.create(this.directory, this.active.index() + 1, this.segmentBytes);
+                this.active.append(payload);
+                this.metricWriter.set(new Metric<Number>("storage.log.segments", this.sealed.size() + 1));
+                if(this.sealed.size() > 1){
+                    compactInBackground();
+                }
+            }
+        } catch (IOException ex){
+            throw new IllegalArgumentException(ex.getMessage(), ex);
+        }
+
+        if(this.force){
+            this.active.force();
+        }
+        return this.active.index();
+    }
+
+    private synchronized void compactInBackground() {
+        if(this.compacting || this.sealed.size() < 2){
+            return;
+        }
+        this.compacting = true;
+        this.executor.submit(() -> {
+            try {
+                compact();
+            } catch (RuntimeException ex){
+                LOG.warn("Segment compaction failed, it will be retried once the next segment is sealed.", ex);
+            } finally {
+                synchronized (this) {
+                    this.compacting = false;
+                }
+            }
+        });
+    }
+
+    /**
+     * Applies a record being replayed to the indexes.
+     */
+    private void apply(final ByteBuffer record, final long segment) {
+        final byte type = record.get();
+        switch (type) {
+            case PUBLISHED: {
+                final long seq = record.getLong();
+                final Instant at = Instant.ofEpochMilli(record.getLong());
+                final long id = record.getLong();
+                final long pre2015 = record.getLong();
+                final String publisher = getString(record);
+                final Entry entry = new Entry(id, publisher, publisherId(publisher), getString(record), at,
+                        pre2015 == NONE ? null : pre2015, null, segment);
+                index(entry);
+                change(seq, at, TweetChange.Type.PUBLISHED, entry);
+                break;
+            }
+            case DISCARDED: {
+                final long seq = record.getLong();
+                final Instant at = Instant.ofEpochMilli(record.getLong());
+                final Entry entry = replayed(record.getLong(), getString(record));
+                if(Objects.nonNull(entry.text) && !entry.isDiscarded()){
+                    index(entry.discard(at));
+                }
+                change(seq, at, TweetChange.Type.DISCARDED, entry);
+                break;
+            }
+            case PURGED: {
+                final long seq = record.getLong();
+                final Instant at = Instant.ofEpochMilli(record.getLong());
+                final long id = record.getLong();
+                final boolean wasDiscarded = record.getLong() != 0;
+                final Entry entry = replayed(id, getString(record));
+                if(Objects.nonNull(entry.text)){
+                    unindex(entry);
+                }
+                change(seq, at, wasDiscarded ? TweetChange.Type.DISCARDED_PURGED : TweetChange.Type.PUBLISHED_PURGED, entry);
+                break;
+            }
+            case SNAPSHOT: {
+                final long id = record.getLong();
+                final Instant date = Instant.ofEpochMilli(record.getLong());
+                final long pre2015 = record.getLong();
+                final long discardedAt = record.getLong();
+                final String publisher = getString(record);
+                index(new Entry(id, publisher, publisherId(publisher), getString(record), date,
+                        pre2015 == NONE ? null : pre2015, discardedAt == NONE ? null : Instant.ofEpochMilli(discardedAt), segment));
+                break;
+            }
+            case SEQUENCE:
+                this.lastSeq = Math.max(this.lastSeq, record.getLong());
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown record type ["+ type +"] found on segment ["+ segment +"].");
+        }
+    }
+
+    /**
+     * @return The stored entry of a tweet a replayed record refers to, or an entry without text when the tweet was
+     * purged afterwards and compacted away, which is only good to build the change log entry.
+     */
+    private Entry replayed(final long id, final String publisher) {
+        final Entry entry = this.tweets.get(id);
+        if(Objects.nonNull(entry)){
+            return entry;
+        }
+        return new Entry(id, publisher, publisherId(publisher), null, null, null, null, 0);
+    }
+
+    /**
+     * @return The key of the given publisher, handing out the next one when it is the first time it is seen.
+     * Must be called holding the lock of the storage.
+     */
+    private Integer publisherId(final String publisher) {
+        final Integer publisherId = this.publisherIds.get(publisher);
+        if(Objects.nonNull(publisherId)){
+            return publisherId;
+        }
+        final Integer created = this.publisherIds.size() + 1;
+        this.publisherNames.put(created, publisher); //before the key is found, so every key found has a name.
+        this.publisherIds.put(publisher, created);
+        return created;
+    }
+
+    private void index(final Entry entry) {
+        final Entry previous = this.tweets.put(entry.id, entry);
+        if(Objects.nonNull(previous) && previous.isDiscarded()){
+            this.discarded.remove(previous);
+            discarded(previous.publisherId).remove(previous);
+        }
+
+        if(entry.isDiscarded()){
+            this.discarded.add(entry);
+            discarded(entry.publisherId).add(entry);
+            this.published.remove(entry.id);
+        } else {
+            this.published.put(entry.id, entry);
+        }
+    }
+
+    private void unindex(final Entry entry) {
+        this.tweets.remove(entry.id);
+        this.published.remove(entry.id);
+        if(entry.isDiscarded()){
+            this.discarded.remove(entry);
+            discarded(entry.publisherId).remove(entry);
+        }
+    }
+
+    private ConcurrentSkipListSet<Entry> discarded(final Integer publisherId) {
+        return this.discardedByPublisher.computeIfAbsent(publisherId, key -> new ConcurrentSkipListSet<>(DISCARD_ORDER));
+    }
+
+    private TweetChange change(final long seq, final Instant at, final TweetChange.Type type, final Entry entry) {
+        final TweetChange change = new TweetChange();
+        change.setSeq(seq);
+        change.setTweetId(entry.id);
+        change.setPublisherId(entry.publisherId);
+        change.setType(type);
+        change.setNodeId(this.nodeId);
+        change.setCreatedAt(at);
+
+        this.changes.put(seq, change);
+        this.lastSeq = Math.max(this.lastSeq, seq);
+        Map.Entry<Long, TweetChange> first;
+        while((first = this.changes.firstEntry()) != null && first.getKey() <= this.lastSeq - this.maxChanges){
+            this.changes.remove(first.getKey());
+        }
+        return change;
+    }
+
+    private List<Path> list(final String glob) throws IOException {
+        final List<Path> paths = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(this.directory, glob)) {
+            files.forEach(paths::add);
+        }
+        paths.sort(Comparator.comparingLong(LogSegment::index));
+        return paths;
+    }
+
+    private static void write(final FileChannel channel, final byte[] payload) throws IOException {
+        final ByteBuffer record = LogSegment.frame(payload);
+        while(record.hasRemaining()){
+            channel.write(record);
+        }
+    }
+
+    private static List<String> links(final String text) {
+        final Tweet tweet = new Tweet();
+        if(!LinkUtils.extractLinks(tweet, text)){
+            return Collections.emptyList();
+        }
+        final List<String> links = new ArrayList<>();
+        for(TweetLink tweetLink : tweet.getLinks()){
+            links.add(tweetLink.getLink().getUrl());
+        }
+        return links;
+    }
+
+    private List<Tweet> toTweets(final Collection<Entry> entries) {
+        final List<Tweet> result = new ArrayList<>();
+        for(Entry entry : entries){
+            result.add(entry.toTweet());
+        }
+        return result;
+    }
+
+    private static String getString(final ByteBuffer record) {
+        final byte[] bytes = new byte[record.getInt()];
+        record.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Builder of the payload of a record.
+     */
+    private static final class Writer {
+        private final List<byte[]> strings = new ArrayList<>(2);
+        private final long[] longs = new long[4];
+        private final byte type;
+        private int longCount;
+
+        private Writer(final byte type) {
+            this.type = type;
+        }
+
+        private Writer putLong(final long value) {
+            this.longs[this.longCount++] = value;
+            return this;
+        }
+
+        private Writer putString(final String value) {
+            this.strings.add(value.getBytes(StandardCharsets.UTF_8));
+            return this;
+        }
+
+        private byte[] toBytes() {
+            int size = 1 + this.longCount * Long.BYTES;
+            for(byte[] string : this.strings){
+                size += Integer.BYTES + string.length;
+            }
+
+            final ByteBuffer buffer = ByteBuffer.allocate(size).put(this.type);
+            for(int i = 0; i < this.longCount; i++){
+                buffer.putLong(this.longs[i]);
+            }
+            for(byte[] string : this.strings){
+                buffer.putInt(string.length).put(string);
+            }
+            return buffer.array();
+        }
+    }
+
+    /**
+     * A stored tweet, replaced by a new instance on every change so readers never see it half updated.
+     */
+    private static final class Entry {
+        private final long id;
+        private final String publisher;
+        private final Integer publisherId;
+        private final String text;
+        private final Instant date;
+        private final Long pre2015;
+        private final Instant discardedAt;
+        private final long segment; //index of the segment holding the record the tweet was published or snapshot on.
+
+        private Entry(long id, String publisher, Integer publisherId, String text, Instant date, Long pre2015,
+                      Instant discardedAt, long segment) {
+            this.id = id;
+            this.publisher = publisher;
+            this.publisherId = publisherId;
+            this.text = text;
+            this.date = date;
+            this.pre2015 = pre2015;
+            this.discardedAt = discardedAt;
+            this.segment = segment;
+        }
+
+        private boolean isDiscarded() {
+            return this.discardedAt != null;
+        }
+
+        private Entry discard(final Instant at) {
+            return new Entry(this.id, this.publisher, this.publisherId, this.text, this.date, this.pre2015, at, this.segment);
+        }
+
+        private Tweet toTweet() {
+            final Tweet tweet = new Tweet(this.publisher, this.text);
+            tweet.setId(this.id);
+            tweet.setPublisherId(this.publisherId);
+            tweet.setDate(this.date);
+            tweet.setPre2015MigrationStatus(this.pre2015);
+            tweet.setDiscarded(isDiscarded());
+            tweet.setDiscardedAt(this.discardedAt);
+            return tweet;
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package com.scmspain.persistence;
+
+import com.scmspain.entities.Publisher;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+import javax.persistence.NoResultException;
+import javax.persistence.PersistenceException;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.LongSupplier;
+
+/**
+ * Dictionary of publishers, mapping every publisher name to the integer key stored on its tweets. Every entry read
+ * or created is kept in memory, so translating a key back to its name doesn't touch the repository and returns the
+ * same String instance for every tweet of a publisher, instead of one copy per loaded row.
+ *
+ * New publishers are created on the transaction storing their first tweet, or on a transaction of their own when
+ * there is none, so publishing never holds more than one connection. The row is inserted only when the name is not
+ * stored yet and then selected, so a publisher created meanwhile by another instance is reused, also when both
+ * insert it at once: the insert losing the race is rolled back on its own savepoint. A key is only cached
+ * once its transaction commits. Names found unknown are remembered for a short while, so reading the tweets or
+ * counts of a publisher that never published doesn't query the repository on every request.
+ */
+public class PublisherDictionary {
+    private static final Logger LOG = LoggerFactory.getLogger(PublisherDictionary.class);
+
+    private static final String QUERY_PUBLISHER_BY_NAME = "SELECT p FROM Publisher p WHERE p.name = :name";
+    private static final String INSERT_PUBLISHER_IF_ABSENT = "INSERT INTO PUBLISHER (NAME) SELECT ? FROM DUAL "
+            + "WHERE NOT EXISTS (SELECT 1 FROM PUBLISHER WHERE NAME = ?)";
+    static final int MAX_UNKNOWN_NAMES = 10000;
+
+    private final EntityManager entityManager;
+    private final TransactionTemplate transaction;
+    private final long unknownTtlMillis;
+    private final LongSupplier clock;
+
+    private final ConcurrentMap<String, Integer> ids = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Integer, String> names = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Long> unknown = new ConcurrentHashMap<>();
+
+    /**
+     * @param entityManager The EntityManager of the repository.
+     * @param transactionManager Transaction manager creating a transaction for new publishers when there is none.
+     * @param unknownTtlMillis For how long a name found unknown is answered as such without querying the repository.
+     */
+    public PublisherDictionary(final EntityManager entityManager, final PlatformTransactionManager transactionManager,
+                               final long unknownTtlMillis) {
+        this(entityManager, transactionManager, unknownTtlMillis, System::currentTimeMillis);
+    }
+
+    PublisherDictionary(final EntityManager entityManager, final PlatformTransactionManager transactionManager,
+                        final long unknownTtlMillis, final LongSupplier clock) {
+        this.entityManager = entityManager;
+        this.transaction = new TransactionTemplate(transactionManager);
+        this.unknownTtlMillis = unknownTtlMillis;
+        this.clock = clock;
+    }
+
+    /**
+     * @param name A publisher name.
+     * @return The key of the publisher, or null when there is no such publisher. A publisher created by another
+     * instance might be reported missing for as long as its name is remembered unknown.
+     * @throws IllegalArgumentException when an exception happens performing an operation in the existing
+     * EntityManager.
+     */
+    public Integer findId(final String name) throws IllegalArgumentException {
+        final Integer id = this.ids.get(name);
+        if(id != null){
+            return id;
+        }
+
+        final Long unknownUntil = this.unknown.get(name);
+        final long now = this.clock.getAsLong();
+        if(unknownUntil != null && unknownUntil > now){
+            return null;
+        }
+
+        final Publisher publisher = find(name);
+        if(Objects.isNull(publisher)){
+            if(this.unknown.size() >= MAX_UNKNOWN_NAMES){
+                this.unknown.clear();
+            }
+            this.unknown.put(name, now + this.unknownTtlMillis);
+            return null;
+        }
+        return cache(publisher);
+    }
+
+    /**
+     * @param name A publisher name.
+     * @return The key of the publisher, which is created when there is no such publisher yet.
+     * @throws IllegalArgumentException when an exception happens performing an operation in the existing
+     * EntityManager.
+     */
+    public Integer getOrCreateId(final String name) throws IllegalArgumentException {
+        final Integer id = this.ids.get(name);
+        if(id != null){
+            return id;
+        }
+
+        return this.transaction.execute(status -> {
+            LOG.debug("Looking up or creating publisher ["+ name +"]...");
+            SavepointInsert.execute(this.entityManager, INSERT_PUBLISHER_IF_ABSENT, name, name);
+
+            final Publisher publisher = find(name);
+            if(Objects.isNull(publisher)){
+                throw new IllegalArgumentException("Publisher ["+ name +"] could not be stored!");
+            }
+            cacheOnCommit(publisher);
+            return publisher.getId();
+        });
+    }
+
+    /**
+     * @param id A publisher key.
+     * @return The name of the publisher, always the same instance for the same key.
+     * @throws IllegalArgumentException when there is no such publisher or an exception happens performing an
+     * operation in the existing EntityManager.
+     */
+    public String nameOf(final Integer id) throws IllegalArgumentException {
+        final String name = this.names.get(id);
+        if(name != null){
+            return name;
+        }
+
+        final Publisher publisher;
+        try {
+            publisher = this.entityManager.find(Publisher.class, id);
+        } catch (PersistenceException ex){
+            throw new IllegalArgumentException(ex.getMessage(), ex);
+        }
+        if(Objects.isNull(publisher)){
+            throw new IllegalArgumentException("Publisher ["+ id +"] was not found!");
+        }
+        cache(publisher);
+        return this.names.get(id);
+    }
+
+    private Publisher find(final String name) {
+        try {
+            return (Publisher) this.entityManager.createQuery(QUERY_PUBLISHER_BY_NAME)
+                    .setParameter("name", name)
+                    .getSingleResult();
+        } catch (NoResultException ex){
+            return null;
+        } catch (PersistenceException ex){
+            throw new IllegalArgumentException(ex.getMessage(), ex);
+        }
+    }
+
+    private void cacheOnCommit(final Publisher publisher) {
+        if(!TransactionSynchronizationManager.isSynchronizationActive()){
+            cache(publisher);
+            return;
+        }
+
+        final Integer id = publisher.getId();
+        final String name = publisher.getName();
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCommit() {
+                cache(id, name);
+            }
+        });
+    }
+
+    private Integer cache(final Publisher publisher) {
+        return cache(publisher.getId(), publisher.getName());
+    }
+
+    private Integer cache(final Integer id, final String name) {
+        this.names.putIfAbsent(id, name);
+        this.ids.putIfAbsent(this.names.get(id), id);
+        this.unknown.remove(name);
+        return id;
+    }
+}
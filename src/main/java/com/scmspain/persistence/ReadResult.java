@@ -0,0 +1,24 @@
+package com.scmspain.persistence;
+
+/**
+ * Result of a read guarded by the {@link RepositoryGuard}: either fresh from the repository or the last good
+ * result of the same read, served while the repository is degraded.
+ * @param <T> The type of the value read.
+ */
+public class ReadResult<T> {
+    private final T value;
+    private final boolean stale;
+
+    public ReadResult(T value, boolean stale) {
+        this.value = value;
+        this.stale = stale;
+    }
+
+    public T getValue() {
+        return value;
+    }
+
+    public boolean isStale() {
+        return stale;
+    }
+}
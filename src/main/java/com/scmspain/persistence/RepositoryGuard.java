@@ -0,0 +1,290 @@
+package com.scmspain.persistence;
+
+import com.scmspain.utils.CircuitBreaker;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.boot.actuate.metrics.writer.Delta;
+import org.springframework.boot.actuate.metrics.writer.MetricWriter;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Protects the request threads from a degraded repository. Reads run on threads of their own, and a bulkhead lets
+ * only a few of them wait on the repository at once, while callers wait for them only up to a timeout. Every read
+ * outcome feeds a {@link CircuitBreaker}, which stops sending reads to the repository once too many of them fail
+ * or are slow. Whenever a read is refused, times out or finds the bulkhead full, the last good result of the same
+ * read is served instead, flagged as stale, and writes are refused right away while the circuit is open.
+ *
+ * A read which timed out counts as failed right away, so the circuit opens before the slow reads finish; it keeps
+ * its place on the bulkhead until the repository answers anyway. As reads don't run on the request thread, each
+ * one runs on a read only transaction of its own, keeping lazy associations loadable while it runs and never
+ * flushing the changes made on the loaded entities.
+ *
+ * Identical reads are coalesced: while a read runs, every caller of the same read waits for that one instead of
+ * running its own, taking neither a place on the bulkhead nor a call of the circuit. A read stops being shared once
+ * it timed out, so the next callers try again as usual. Optionally, a completed read keeps being shared for a few
+ * milliseconds more.
+ *
+ * The last good result of a read can be forgotten once it is known to be wrong, e.g. a tweet which got discarded.
+ * A read already running when its result is forgotten doesn't keep its value as the last good one either.
+ */
+public class RepositoryGuard implements DisposableBean {
+    private static final Logger LOG = LoggerFactory.getLogger(RepositoryGuard.class);
+
+    private final CircuitBreaker circuitBreaker;
+    private final TransactionTemplate readTransaction;
+    private final MetricWriter metricWriter;
+    private final long timeoutMillis;
+    private final Semaphore bulkhead;
+    private final ThreadPoolExecutor executor;
+    private final Map<String, Object> snapshots;
+    private final int maxSnapshots;
+    private final long reuseNanos;
+    private final ConcurrentMap<String, Flight> flights = new ConcurrentHashMap<>();
+    private final Set<Flight> running = ConcurrentHashMap.newKeySet(); // at most as many as the bulkhead allows.
+
+    /**
+     * @param circuitBreaker The circuit breaker judging the repository.
+     * @param transactionManager The transaction manager of the repository.
+     * @param metricWriter Writer of the guard metrics.
+     * @param maxConcurrentReads Amount of reads allowed to wait on the repository at once.
+     * @param timeoutMillis Time a caller waits for a read before being served the last good result.
+     * @param maxSnapshots Amount of last good results kept, the least recently used ones being dropped.
+     * @param reuseMillis Time a completed read keeps being shared with the callers of the same read, 0 to only
+     * share running reads.
+     */
+    public RepositoryGuard(CircuitBreaker circuitBreaker, PlatformTransactionManager transactionManager,
+                           MetricWriter metricWriter, int maxConcurrentReads, long timeoutMillis, int maxSnapshots,
+                           long reuseMillis) {
+        this.circuitBreaker = circuitBreaker;
+        this.readTransaction = new TransactionTemplate(transactionManager);
+        this.readTransaction.setReadOnly(true);
+        this.metricWriter = metricWriter;
+        this.timeoutMillis = timeoutMillis;
+        this.maxSnapshots = maxSnapshots;
+        this.reuseNanos = TimeUnit.MILLISECONDS.toNanos(reuseMillis);
+
+        final AtomicInteger threads = new AtomicInteger();
+        this.bulkhead = new Semaphore(maxConcurrentReads);
+        this.executor = new ThreadPoolExecutor(0, Integer.MAX_VALUE, 60, TimeUnit.SECONDS, new SynchronousQueue<>(), runnable -> {
+            final Thread thread = new Thread(runnable, "repository-read-"+ threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        this.snapshots = Collections.synchronizedMap(new LinkedHashMap<String, Object>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Object> eldest) {
+                return size() > maxSnapshots;
+            }
+        });
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        this.executor.shutdownNow();
+    }
+
+    /**
+     * Runs a read against the repository, falling back to its last good result when the repository is degraded.
+     * @param key Identifies the read and its parameters, the last good result being kept by this key and concurrent
+     * reads of the same key being coalesced.
+     * @param read The read to run.
+     * @param <T> The type of the value read.
+     * @return The value read, or the last good one flagged as stale.
+     * @throws RepositoryUnavailableException when the repository is degraded and there is no last good result.
+     */
+    public <T> ReadResult<T> read(final String key, final Supplier<T> read) throws RepositoryUnavailableException {
+        final Flight flight = new Flight(key);
+        final Flight installed = this.flights.compute(key, (k, existing) ->
+                existing != null && existing.isShared(System.nanoTime()) ? existing : flight);
+        if(installed != flight){
+            return join(key, installed);
+        }
+        if(this.reuseNanos > 0 && this.flights.size() > this.maxSnapshots){
+            this.flights.values().removeIf(other -> !other.isShared(System.nanoTime()));
+        }
+
+        final CircuitBreaker.State admittedIn = this.circuitBreaker.tryAcquire();
+        if(admittedIn == null){
+            return refuse(key, flight, "circuit open");
+        }
+
+        if(!this.bulkhead.tryAcquire()){
+            this.circuitBreaker.release(admittedIn);
+            return refuse(key, flight, "bulkhead full");
+        }
+
+        final AtomicBoolean judged = new AtomicBoolean(); // by whoever finds out first, the read or its timeout.
+        final long start = System.nanoTime();
+        this.running.add(flight);
+        this.executor.execute(() -> {
+            T value = null;
+            Throwable failure = null;
+            try {
+                value = this.readTransaction.execute(status -> read.get());
+                synchronized (this.snapshots){
+                    if(!flight.forgotten){
+                        this.snapshots.put(key, value);
+                    }
+                }
+            } catch (Throwable ex){
+                failure = ex;
+            } finally {
+                this.running.remove(flight);
+                this.bulkhead.release();
+                judge(judged, admittedIn, System.nanoTime() - start, failure != null);
+            }
+
+            if(failure == null && this.reuseNanos > 0){
+                flight.completedAt = System.nanoTime();
+            } else {
+                this.flights.remove(key, flight);
+            }
+            if(failure == null){
+                flight.result.complete(value);
+            } else {
+                flight.result.completeExceptionally(failure);
+            }
+        });
+
+        return await(key, flight, () -> {
+            judge(judged, admittedIn, System.nanoTime() - start, true);
+            // later callers start a read of their own instead of joining a read deemed failed.
+            this.flights.remove(key, flight);
+        });
+    }
+
+    /**
+     * Drops the last good result of a read, so it is never served stale, and stops sharing the read running or
+     * completed for it with later callers.
+     * @param key Identifies the read, as given to {@link #read(String, Supplier)}.
+     */
+    public void forget(final String key) {
+        synchronized (this.snapshots){
+            this.flights.remove(key);
+            for(Flight flight : this.running){
+                if(flight.key.equals(key)){
+                    flight.forgotten = true;
+                }
+            }
+            this.snapshots.remove(key);
+        }
+    }
+
+    /**
+     * @throws RepositoryUnavailableException when the circuit is open, so writes fail fast instead of queuing.
+     */
+    public void checkWritable() throws RepositoryUnavailableException {
+        if(this.circuitBreaker.getState() == CircuitBreaker.State.OPEN){
+            this.metricWriter.increment(new Delta<Number>("repository.writes.refused", 1));
+            throw new RepositoryUnavailableException("The repository is unavailable, try again later.");
+        }
+    }
+
+    private <T> ReadResult<T> join(final String key, final Flight flight) {
+        this.metricWriter.increment(new Delta<Number>("repository.reads.coalesced", 1));
+        return await(key, flight, () -> {});
+    }
+
+    private <T> ReadResult<T> await(final String key, final Flight flight, final Runnable onTimeout) {
+        try {
+            @SuppressWarnings("unchecked")
+            final T value = (T) flight.result.get(this.timeoutMillis, TimeUnit.MILLISECONDS);
+            return new ReadResult<>(value, false);
+        } catch (TimeoutException ex){
+            onTimeout.run();
+            return stale(key, "read timed out");
+        } catch (InterruptedException ex){
+            Thread.currentThread().interrupt();
+            return stale(key, "interrupted");
+        } catch (ExecutionException ex){
+            if(ex.getCause() instanceof Refusal){
+                return stale(key, ex.getCause().getMessage());
+            }
+            if(ex.getCause() instanceof RuntimeException){
+                throw (RuntimeException) ex.getCause();
+            }
+            throw new IllegalStateException(ex.getCause());
+        }
+    }
+
+    private <T> ReadResult<T> refuse(final String key, final Flight flight, final String reason) {
+        this.flights.remove(key, flight);
+        flight.result.completeExceptionally(new Refusal(reason));
+        return stale(key, reason);
+    }
+
+    private <T> ReadResult<T> stale(final String key, final String reason) {
+        @SuppressWarnings("unchecked")
+        final T snapshot = (T) this.snapshots.get(key);
+        if(snapshot == null){
+            this.metricWriter.increment(new Delta<Number>("repository.reads.refused", 1));
+            throw new RepositoryUnavailableException("The repository is unavailable ("+ reason +"), try again later.");
+        }
+
+        LOG.debug("Serving stale result for ["+ key +"]: "+ reason +".");
+        this.metricWriter.increment(new Delta<Number>("repository.reads.stale", 1));
+        return new ReadResult<>(snapshot, true);
+    }
+
+    private void judge(final AtomicBoolean judged, final CircuitBreaker.State admittedIn, final long durationNanos,
+                       final boolean failed) {
+        if(judged.compareAndSet(false, true)){
+            this.circuitBreaker.onResult(admittedIn, durationNanos, failed);
+            reportState();
+        }
+    }
+
+    private void reportState() {
+        this.metricWriter.set(new Metric<Number>("repository.circuit.state", this.circuitBreaker.getState().ordinal()));
+    }
+
+    private final class Flight {
+        private final String key;
+        private final CompletableFuture<Object> result = new CompletableFuture<>();
+        private volatile long completedAt; // 0 while running.
+        private boolean forgotten; // guarded by the snapshots lock.
+
+        private Flight(final String key) {
+            this.key = key;
+        }
+
+        private boolean isShared(final long now) {
+            final long completedAt = this.completedAt;
+            return completedAt == 0 || now - completedAt <= reuseNanos;
+        }
+    }
+
+    /**
+     * Tells the callers sharing a read that it was never run.
+     */
+    private static final class Refusal extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        private Refusal(final String reason) {
+            super(reason, null, false, false);
+        }
+    }
+}
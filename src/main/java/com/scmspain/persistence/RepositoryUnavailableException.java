@@ -0,0 +1,12 @@
+package com.scmspain.persistence;
+
+/**
+ * Thrown when the repository is considered unavailable, so the operation was refused without trying it.
+ */
+public class RepositoryUnavailableException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    public RepositoryUnavailableException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,58 @@
+package com.scmspain.persistence;
+
+import org.hibernate.Session;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.persistence.EntityManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+
+/**
+ * Native insert of a dictionary entry, run on a savepoint of the current transaction. When another transaction
+ * stores the same entry meanwhile, the integrity constraint violation only rolls the insert back, so the caller can
+ * read the entry stored by the other transaction. The same failure raised through the EntityManager would mark the
+ * whole transaction for rollback, failing the tweet being published.
+ */
+final class SavepointInsert {
+    private static final Logger LOG = LoggerFactory.getLogger(SavepointInsert.class);
+
+    private static final String INTEGRITY_CONSTRAINT_VIOLATION = "23";
+
+    private SavepointInsert() {
+    }
+
+    /**
+     * @param entityManager The EntityManager of the repository, which must be on a transaction.
+     * @param sql The insert, with one positional parameter for every given value.
+     * @param values The values of the parameters.
+     * @return Whether the insert ran, false when it was rolled back because the entry was stored concurrently.
+     * @throws IllegalArgumentException when the insert fails for any other reason.
+     */
+    static boolean execute(final EntityManager entityManager, final String sql, final Object... values)
+            throws IllegalArgumentException {
+        try {
+            return entityManager.unwrap(Session.class).doReturningWork(connection -> {
+                final Savepoint savepoint = connection.setSavepoint();
+                try (PreparedStatement statement = connection.prepareStatement(sql)) {
+                    for(int i = 0; i < values.length; i++){
+                        statement.setObject(i + 1, values[i]);
+                    }
+                    statement.executeUpdate();
+                } catch (SQLException ex){
+                    if(ex.getSQLState() == null || !ex.getSQLState().startsWith(INTEGRITY_CONSTRAINT_VIOLATION)){
+                        throw ex;
+                    }
+                    LOG.debug("Entry stored concurrently, rolling back its insert: " + ex.getMessage());
+                    connection.rollback(savepoint);
+                    return false;
+                }
+                connection.releaseSavepoint(savepoint);
+                return true;
+            });
+        } catch (RuntimeException ex){
+            throw new IllegalArgumentException(ex.getMessage(), ex);
+        }
+    }
+}
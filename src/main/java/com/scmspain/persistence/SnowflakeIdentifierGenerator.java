@@ -0,0 +1,65 @@
+package com.scmspain.persistence;
+
+import com.scmspain.utils.SnowflakeIdGenerator;
+import org.hibernate.HibernateException;
+import org.hibernate.MappingException;
+import org.hibernate.engine.config.spi.ConfigurationService;
+import org.hibernate.engine.config.spi.StandardConverters;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.id.Configurable;
+import org.hibernate.id.IdentifierGenerator;
+import org.hibernate.service.ServiceRegistry;
+import org.hibernate.type.Type;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Serializable;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Hibernate identifier generator allocating time ordered ids with a {@link SnowflakeIdGenerator}, so no repository
+ * round trip is needed to get an id and the primary key index can be used to sort by creation time.
+ *
+ * The node id is read from the "tweet.id.node" Hibernate setting (spring.jpa.properties.tweet.id.node), 0 by default
+ * like the log storage, and must be unique among the application instances sharing a repository. The same setting
+ * identifies the instance on the change log. Every entity using a node id shares one generator,
+ * as two generators with the same node id would generate the same ids.
+ */
+public class SnowflakeIdentifierGenerator implements IdentifierGenerator, Configurable {
+    private static final Logger LOG = LoggerFactory.getLogger(SnowflakeIdentifierGenerator.class);
+
+    public static final String NODE_SETTING = "tweet.id.node";
+    public static final String MAX_BACKWARDS_MILLIS_SETTING = "tweet.id.max-backwards-ms";
+    private static final String DEFAULT_NODE = "0";
+    private static final String DEFAULT_MAX_BACKWARDS_MILLIS = "5000";
+
+    private static final Map<Integer, SnowflakeIdGenerator> GENERATORS = new ConcurrentHashMap<>();
+
+    private SnowflakeIdGenerator generator;
+
+    @Override
+    public void configure(Type type, Properties params, ServiceRegistry serviceRegistry) throws MappingException {
+        final ConfigurationService configuration = serviceRegistry.getService(ConfigurationService.class);
+
+        final String nodeSetting = configuration.getSetting(NODE_SETTING, StandardConverters.STRING);
+        if(nodeSetting == null){
+            LOG.info("No ["+ NODE_SETTING +"] setting found, using node id ["+ DEFAULT_NODE +"]. Configure a unique one on every instance when running several.");
+        }
+        final int node = Integer.parseInt(nodeSetting == null ? DEFAULT_NODE : nodeSetting);
+        final long maxBackwardsMillis = Long.parseLong(
+                configuration.getSetting(MAX_BACKWARDS_MILLIS_SETTING, StandardConverters.STRING, DEFAULT_MAX_BACKWARDS_MILLIS));
+
+        this.generator = GENERATORS.computeIfAbsent(node, key -> new SnowflakeIdGenerator(key, maxBackwardsMillis));
+    }
+
+    @Override
+    public Serializable generate(SessionImplementor session, Object object) throws HibernateException {
+        try {
+            return this.generator.nextId();
+        } catch (IllegalStateException ex){
+            throw new HibernateException(ex.getMessage(), ex);
+        }
+    }
+}
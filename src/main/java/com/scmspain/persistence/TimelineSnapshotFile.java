@@ -0,0 +1,185 @@
+package com.scmspain.persistence;
+
+import com.scmspain.entities.Tweet;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Compact binary snapshot of the published timeline, written to a memory-mapped file so the next run of the
+ * application can serve the timeline before reading it from the repository. The file holds a header
+ * [magic][format version][CRC32 of the body] followed by the body: the time the snapshot was taken, the change log
+ * sequence number it is up to date with, and every tweet, newest first, as [id][publication date][migration status]
+ * [publisher][text], with links already included in the text.
+ *
+ * A snapshot is written to a temporary file which then replaces the previous one, so a crash while writing leaves
+ * the previous snapshot in place, and a snapshot whose checksum doesn't match is ignored.
+ */
+public class TimelineSnapshotFile {
+    private static final Logger LOG = LoggerFactory.getLogger(TimelineSnapshotFile.class);
+
+    private static final int MAGIC = 0x544c534e; // "TLSN"
+    private static final int FORMAT_VERSION = 1;
+    private static final int HEADER_BYTES = 12;
+    private static final long NONE = Long.MIN_VALUE;
+
+    private final Path path;
+
+    /**
+     * @param path The snapshot file, its directory being created when missing.
+     */
+    public TimelineSnapshotFile(Path path) {
+        this.path = path;
+    }
+
+    /**
+     * Replaces the snapshot file.
+     * @param snapshot The snapshot to write.
+     * @throws IllegalArgumentException when the file can't be written.
+     */
+    public void write(final Snapshot snapshot) throws IllegalArgumentException {
+        final List<byte[]> strings = new ArrayList<>(snapshot.getTweets().size() * 2);
+        int size = HEADER_BYTES + 2 * Long.BYTES + Integer.BYTES;
+        for(Tweet tweet : snapshot.getTweets()){
+            final byte[] publisher = tweet.getPublisher().getBytes(StandardCharsets.UTF_8);
+            final byte[] text = tweet.getTweet().getBytes(StandardCharsets.UTF_8);
+            strings.add(publisher);
+            strings.add(text);
+            size += 3 * Long.BYTES + 2 * Integer.BYTES + publisher.length + text.length;
+        }
+
+        final Path temporary = this.path.resolveSibling(this.path.getFileName() + ".tmp");
+        try {
+            if(this.path.getParent() != null){
+                Files.createDirectories(this.path.getParent());
+            }
+            try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+                buffer.position(HEADER_BYTES);
+                buffer.putLong(snapshot.getTakenAt().toEpochMilli());
+                buffer.putLong(snapshot.getSeq());
+                buffer.putInt(snapshot.getTweets().size());
+                for(int i = 0; i < snapshot.getTweets().size(); i++){
+                    final Tweet tweet = snapshot.getTweets().get(i);
+                    buffer.putLong(tweet.getId());
+                    buffer.putLong(tweet.getDate().isEmpty() ? NONE : Instant.parse(tweet.getDate()).toEpochMilli());
+                    buffer.putLong(tweet.getPre2015MigrationStatus() == null ? NONE : tweet.getPre2015MigrationStatus());
+                    putBytes(buffer, strings.get(2 * i));
+                    putBytes(buffer, strings.get(2 * i + 1));
+                }
+                buffer.putInt(0, MAGIC).putInt(4, FORMAT_VERSION).putInt(8, checksum(buffer));
+                buffer.force();
+            }
+            Files.move(temporary, this.path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException ex){
+            throw new IllegalArgumentException(ex.getMessage(), ex);
+        }
+
+        LOG.debug("Timeline snapshot of "+ snapshot.getTweets().size() +" tweet(s) written to ["+ this.path +"].");
+    }
+
+    /**
+     * @return The snapshot, or null when there is no snapshot file or it is not a valid one.
+     */
+    public Snapshot read() {
+        try (FileChannel channel = FileChannel.open(this.path, StandardOpenOption.READ)) {
+            final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if(buffer.limit() < HEADER_BYTES || buffer.getInt(0) != MAGIC || buffer.getInt(4) != FORMAT_VERSION
+                    || buffer.getInt(8) != checksum(buffer)){
+                LOG.warn("Timeline snapshot ["+ this.path +"] is not a valid snapshot, ignoring it.");
+                return null;
+            }
+
+            buffer.position(HEADER_BYTES);
+            final Instant takenAt = Instant.ofEpochMilli(buffer.getLong());
+            final long seq = buffer.getLong();
+            final int count = buffer.getInt();
+            final List<Tweet> tweets = new ArrayList<>(count);
+            for(int i = 0; i < count; i++){
+                final Tweet tweet = new Tweet();
+                tweet.setId(buffer.getLong());
+                final long date = buffer.getLong();
+                tweet.setDate(date == NONE ? null : Instant.ofEpochMilli(date));
+                final long pre2015 = buffer.getLong();
+                tweet.setPre2015MigrationStatus(pre2015 == NONE ? null : pre2015);
+                tweet.setPublisher(getString(buffer));
+                tweet.setTweet(getString(buffer));
+                tweet.setDiscarded(false);
+                tweets.add(tweet);
+            }
+            return new Snapshot(tweets, seq, takenAt);
+        } catch (NoSuchFileException ex){
+            return null;
+        } catch (IOException | BufferUnderflowException | IllegalArgumentException ex){
+            LOG.warn("Timeline snapshot ["+ this.path +"] could not be read, ignoring it.", ex);
+            return null;
+        }
+    }
+
+    private static void putBytes(final ByteBuffer buffer, final byte[] bytes) {
+        buffer.putInt(bytes.length).put(bytes);
+    }
+
+    private static String getString(final ByteBuffer buffer) {
+        final byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static int checksum(final ByteBuffer buffer) {
+        final ByteBuffer body = buffer.duplicate();
+        body.limit(buffer.capacity()).position(HEADER_BYTES);
+        final CRC32 crc = new CRC32();
+        crc.update(body);
+        return (int) crc.getValue();
+    }
+
+    /**
+     * Published timeline as of the time it was taken.
+     */
+    public static class Snapshot {
+        private final List<Tweet> tweets;
+        private final long seq;
+        private final Instant takenAt;
+
+        /**
+         * @param tweets Every published tweet, newest first.
+         * @param seq Sequence number of the change log every change up to is reflected on the tweets.
+         * @param takenAt Time the snapshot was taken.
+         */
+        public Snapshot(List<Tweet> tweets, long seq, Instant takenAt) {
+            this.tweets = Collections.unmodifiableList(tweets);
+            this.seq = seq;
+            this.takenAt = takenAt;
+        }
+
+        public List<Tweet> getTweets() {
+            return tweets;
+        }
+
+        public long getSeq() {
+            return seq;
+        }
+
+        public Instant getTakenAt() {
+            return takenAt;
+        }
+    }
+}
@@ -1,6 +1,9 @@
 package com.scmspain.persistence;
 
+import com.scmspain.entities.Link;
 import com.scmspain.entities.Tweet;
+import com.scmspain.entities.TweetChange;
+import com.scmspain.entities.TweetLink;
 import com.scmspain.utils.LinkUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -12,8 +15,12 @@ import javax.persistence.PersistenceException;
 import javax.persistence.Query;
 import javax.transaction.Transactional;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.Objects;
+import java.util.function.Consumer;
 
 /**
  * Persistence class responsible by interacting with the existing repository. Transfering the persistence
@@ -21,33 +28,69 @@ import java.util.Objects;
  * or consuption of services for persistence in a microservice architecture.
  */
 @Repository
-public class TweetPersistence {
+public class TweetPersistence implements TweetStorage {
     private static final Logger LOG = LoggerFactory.getLogger(TweetPersistence.class);
 
-    private static final String QUERY_NON_DISCARDED_TWEETS = "SELECT t FROM Tweet t WHERE t.discarded = false ORDER BY t.date DESC";
-    private static final String QUERY_DISCARDED_TWEETS = "SELECT t FROM Tweet t WHERE t.discarded = true AND t.publisher = :publisher ORDER BY t.date DESC";
+    // Both timelines are ordered by every column of their index, even the ones fixed by the WHERE clause, so the
+    // database reads the index in order instead of sorting the results (see TweetPersistenceQueryPlanTest).
+    static final String QUERY_NON_DISCARDED_TWEETS = "SELECT t FROM Tweet t WHERE t.discarded = false ORDER BY t.discarded, t.id DESC";
+    static final String QUERY_NON_DISCARDED_TWEETS_AFTER = "SELECT t FROM Tweet t WHERE t.discarded = false AND t.id > :id ORDER BY t.id DESC";
+    static final String QUERY_DISCARDED_TWEETS = "SELECT t FROM Tweet t WHERE t.discarded = true AND t.publisherId = :publisherId ORDER BY t.publisherId, t.discarded, t.discardedAt DESC";
+    private static final String QUERY_DISCARDED_TWEETS_WITHOUT_DISCARDED_AT = "SELECT t FROM Tweet t WHERE t.id > :id AND t.discarded = true AND t.discardedAt IS NULL ORDER BY t.id";
+    private static final String QUERY_COUNT_TWEETS_BY_PUBLISHER = "SELECT t.publisherId, t.discarded, COUNT(t) FROM Tweet t GROUP BY t.publisherId, t.discarded";
+    private static final String QUERY_TWEET_LINKS = "SELECT tl.link FROM TweetLink tl WHERE tl.tweetLinkId = :tweetId";
+    private static final String QUERY_COUNT_PUBLISHED_LINKS = "SELECT l.id, l.url, COUNT(DISTINCT t.id) FROM Tweet t JOIN t.links tl JOIN tl.link l WHERE t.discarded = false GROUP BY l.id, l.url";
+    private static final String QUERY_PUBLISHED_TWEETS_BEFORE = "SELECT t.id, t.date FROM Tweet t WHERE t.id > :afterId AND t.id < :beforeId AND t.discarded = false ORDER BY t.id";
+    private static final String QUERY_COUNT_PUBLISHED_TWEETS_BEFORE = "SELECT COUNT(t) FROM Tweet t WHERE t.id < :beforeId AND t.discarded = false";
+    private static final String QUERY_DISCARDED_TWEETS_BEFORE = "SELECT t.id FROM Tweet t WHERE t.discardedAt < :before ORDER BY t.discardedAt";
+    private static final String QUERY_COUNT_DISCARDED_TWEETS_BEFORE = "SELECT COUNT(t) FROM Tweet t WHERE t.discardedAt < :before";
+    private static final String QUERY_PURGED_TWEETS = "SELECT t.id, t.publisherId, t.discarded FROM Tweet t WHERE t.id IN :ids";
+    static final String QUERY_PURGED_LINK_IDS = "SELECT DISTINCT tl.link.id FROM TweetLink tl WHERE tl.tweetLinkId IN :ids";
+    private static final String DELETE_TWEET_LINKS = "DELETE FROM TweetLink tl WHERE tl.tweetLinkId IN :ids";
+    private static final String DELETE_UNREFERENCED_LINKS = "DELETE FROM Link l WHERE l.id IN :ids AND NOT EXISTS (SELECT tl.index FROM TweetLink tl WHERE tl.link.id = l.id)";
+    private static final String DELETE_TWEETS = "DELETE FROM Tweet t WHERE t.id IN :ids";
+    private static final String QUERY_CHANGES_AFTER = "SELECT c FROM TweetChange c WHERE c.seq > :seq ORDER BY c.seq";
+    private static final String QUERY_CHANGES_IN = "SELECT c FROM TweetChange c WHERE c.seq IN :seqs ORDER BY c.seq";
+    private static final String QUERY_LAST_CHANGE_SEQ = "SELECT MAX(c.seq) FROM TweetChange c";
+    private static final String DELETE_CHANGES_BEFORE = "DELETE FROM TweetChange c WHERE c.seq < :seq";
 
     private EntityManager entityManager;
+    private PublisherDictionary publisherDictionary;
+    private LinkDictionary linkDictionary;
+    private String nodeId;
 
-    public TweetPersistence(final EntityManager entityManager){
+    /**
+     * @param entityManager The EntityManager of the repository.
+     * @param publisherDictionary The dictionary translating publisher names to the keys stored on the tweets.
+     * @param linkDictionary The dictionary storing every distinct link found on tweets.
+     * @param nodeId Identifier of this application instance, recorded in the change log entries it writes.
+     */
+    public TweetPersistence(final EntityManager entityManager, final PublisherDictionary publisherDictionary,
+                            final LinkDictionary linkDictionary, final String nodeId){
         this.entityManager = entityManager;
+        this.publisherDictionary = publisherDictionary;
+        this.linkDictionary = linkDictionary;
+        this.nodeId = nodeId;
     }
 
     /**
      * Push tweet to repository
      * @param tweet The tweet to be published and stored.
+     * @return The change log entry appended for the published tweet.
      * @throws IllegalArgumentException explicitly included (RuntimeExceptions don't need to
      * be included) to throw when an exception happens performing an operation in the existing
      * EntityManager.
      */
+    @Override
     @Transactional
-    public void saveTweet(Tweet tweet) throws IllegalArgumentException {
+    public TweetChange saveTweet(Tweet tweet) throws IllegalArgumentException {
         LOG.debug("Saving tweet from ["+ tweet.getPublisher() +"] in the repository...");
 
         String text = tweet.getTweet();
         tweet.setTweet("");
         tweet.setDate(Instant.now());
         tweet.setDiscarded(false);
+        tweet.setPublisherId(this.publisherDictionary.getOrCreateId(tweet.getPublisher()));
 
         try {
             this.entityManager.persist(tweet); //persisting tweet without "text" to create primary key to be used by possible links.
@@ -56,6 +99,9 @@ public class TweetPersistence {
             if (LinkUtils.extractLinks(tweet, text)) {
                 LOG.debug("Updating tweet from [" + tweet.getPublisher() + "] in the repository, due to found links...");
                 checkTweetSize(tweet.getTweet());
+                for(TweetLink tweetLink : tweet.getLinks()){
+                    tweetLink.setLink(this.linkDictionary.resolve(tweetLink.getLink().getUrl()));
+                }
                 this.entityManager.persist(tweet);
             } else {
                 checkTweetSize(text);
@@ -64,7 +110,22 @@ public class TweetPersistence {
             throw new IllegalArgumentException(ex.getMessage(), ex);
         }
 
+        final TweetChange change = appendChange(tweet, TweetChange.Type.PUBLISHED);
+
         LOG.debug("Tweet from ["+ tweet.getPublisher() +"] saved successfully!");
+        return change;
+    }
+
+    /**
+     * Append an entry to the change log. Must be called inside the transaction performing the change.
+     * @param tweet The changed tweet.
+     * @param type The type of change.
+     * @return The appended change log entry.
+     */
+    private TweetChange appendChange(final Tweet tweet, final TweetChange.Type type){
+        final TweetChange change = new TweetChange(tweet, type, this.nodeId);
+        this.entityManager.persist(change);
+        return change;
     }
 
     /**
@@ -80,6 +141,16 @@ public class TweetPersistence {
         }
     }
 
+    /**
+     * Results of a query, typed as the rows its JPQL selects.
+     * @param query The query to run.
+     * @return The rows of the query.
+     */
+    @SuppressWarnings("unchecked")
+    private static <T> List<T> resultList(final Query query){
+        return query.getResultList();
+    }
+
     /**
      * Recover tweet from repository
      * @param id id of Tweet to be retrieved
@@ -88,8 +159,12 @@ public class TweetPersistence {
      * be included) to throw when an exception happens performing an operation in the existing
      * EntityManager.
      */
+    @Override
     public Tweet findTweetById(final Long id) throws IllegalArgumentException {
         Tweet tweet = this.entityManager.find(Tweet.class, id);
+        if(Objects.nonNull(tweet)){
+            tweet.setPublisher(this.publisherDictionary.nameOf(tweet.getPublisherId()));
+        }
         tweet = LinkUtils.includeLinks(tweet);
         return tweet;
     }
@@ -102,13 +177,14 @@ public class TweetPersistence {
      * be included) to throw when an exception happens performing an operation in the existing
      * EntityManager.
      */
+    @Override
     public List<Tweet> findNonDiscardedTweets() throws IllegalArgumentException {
         LOG.debug("Retrieving all tweets...");
 
         List<Tweet> result = null;
         try {
             final Query query = entityManager.createQuery(QUERY_NON_DISCARDED_TWEETS);
-            result = query.getResultList();
+            result = resultList(query);
         } catch (PersistenceException ex){
             throw new IllegalArgumentException(ex.getMessage(), ex);
         }
@@ -121,12 +197,37 @@ public class TweetPersistence {
     }
 
     /**
-     * Include all links found that were originally in the given tweet.
+     * Recover the non discarded tweets published after the given one, walking the same index as the whole timeline
+     * but only its newest entries, so catching up with the timeline costs as much as the tweets published since.
+     * @param afterId Only tweets with a greater id are recovered.
+     * @return The non discarded Tweets found sorted by publication date descending order.
+     * @throws IllegalArgumentException explicitly included (RuntimeExceptions don't need to
+     * be included) to throw when an exception happens performing an operation in the existing
+     * EntityManager.
+     */
+    @Override
+    public List<Tweet> findNonDiscardedTweetsAfter(final long afterId) throws IllegalArgumentException {
+        List<Tweet> result = null;
+        try {
+            final Query query = entityManager.createQuery(QUERY_NON_DISCARDED_TWEETS_AFTER);
+            query.setParameter("id", afterId);
+            result = resultList(query);
+        } catch (PersistenceException ex){
+            throw new IllegalArgumentException(ex.getMessage(), ex);
+        }
+
+        includeTweetsLinks(result);
+        return result;
+    }
+
+    /**
+     * Include all links found that were originally in the given tweet, together with its publisher name.
      * @param tweets Tweets to found links and insert those like the original tweet published.
      */
     private void includeTweetsLinks(final List<Tweet> tweets){
         if(Objects.isNull(tweets)){ return; }
         for(Tweet tweet : tweets){
+            tweet.setPublisher(this.publisherDictionary.nameOf(tweet.getPublisherId()));
             tweet = LinkUtils.includeLinks(tweet);
         }
     }
@@ -139,14 +240,21 @@ public class TweetPersistence {
      * be included) to throw when an exception happens performing an operation in the existing
      * EntityManager.
      */
+    @Override
     public List<Tweet> findDiscardedTweets(final String publisher) throws IllegalArgumentException{
         LOG.debug("Retrieving all discarded tweets for the publisher ["+ publisher +"]...");
 
+        final Integer publisherId = this.publisherDictionary.findId(publisher);
+        if(Objects.isNull(publisherId)){
+            LOG.debug("Publisher ["+ publisher +"] not found, so it has no tweets!");
+            return Collections.emptyList();
+        }
+
         List<Tweet> result = null;
         try {
             final Query query = entityManager.createQuery(QUERY_DISCARDED_TWEETS);
-            query.setParameter("publisher", publisher);
-            result = query.getResultList();
+            query.setParameter("publisherId", publisherId);
+            result = resultList(query);
         } catch (PersistenceException ex){
             throw new IllegalArgumentException(ex.getMessage(), ex);
         }
@@ -159,14 +267,329 @@ public class TweetPersistence {
     }
 
     /**
-     * Marks a tweet, based on the given id, as discarded.
+     * @see TweetStorage#findPublisherId(String)
+     */
+    @Override
+    public Integer findPublisherId(final String publisher) throws IllegalArgumentException {
+        return this.publisherDictionary.findId(publisher);
+    }
+
+    /**
+     * @see TweetStorage#findPublisherName(Integer)
+     */
+    @Override
+    public String findPublisherName(final Integer publisherId) throws IllegalArgumentException {
+        return this.publisherDictionary.nameOf(publisherId);
+    }
+
+    /**
+     * Count all tweets in the repository grouped by publisher and discarded flag. This is a single aggregate
+     * query over the whole table, meant to seed and periodically verify incrementally maintained counters,
+     * never to serve requests.
+     * @return Rows of [publisher key (Integer), discarded (Boolean), count (Long)].
+     * @throws IllegalArgumentException explicitly included (RuntimeExceptions don't need to
+     * be included) to throw when an exception happens performing an operation in the existing
+     * EntityManager.
+     */
+    @Override
+    public List<Object[]> countTweetsByPublisher() throws IllegalArgumentException {
+        LOG.debug("Counting tweets by publisher...");
+
+        try {
+            final Query query = entityManager.createQuery(QUERY_COUNT_TWEETS_BY_PUBLISHER);
+            return resultList(query);
+        } catch (PersistenceException ex){
+            throw new IllegalArgumentException(ex.getMessage(), ex);
+        }
+    }
+
+    /**
+     * Recover the links of a tweet, without loading the tweet itself.
+     * @param tweetId The id of the tweet.
+     * @return The dictionary entries of the links found on the tweet, once per occurrence.
+     * @throws IllegalArgumentException explicitly included (RuntimeExceptions don't need to
+     * be included) to throw when an exception happens performing an operation in the existing
+     * EntityManager.
+     */
+    @Override
+    public List<Link> findTweetLinks(final Long tweetId) throws IllegalArgumentException {
+        try {
+            final Query query = entityManager.createQuery(QUERY_TWEET_LINKS);
+            query.setParameter("tweetId", tweetId);
+            return resultList(query);
+        } catch (PersistenceException ex){
+            throw new IllegalArgumentException(ex.getMessage(), ex);
+        }
+    }
+
+    /**
+     * Count the non discarded tweets containing each link. Like {@link #countTweetsByPublisher()}, this is a single
+     * aggregate query meant to seed incrementally maintained counters, never to serve requests.
+     * @return Rows of [link key (Long), link (String), count (Long)].
+     * @throws IllegalArgumentException explicitly included (RuntimeExceptions don't need to
+     * be included) to throw when an exception happens performing an operation in the existing
+     * EntityManager.
+     */
+    @Override
+    public List<Object[]> countPublishedTweetsByLink() throws IllegalArgumentException {
+        LOG.debug("Counting published tweets by link...");
+
+        try {
+            final Query query = entityManager.createQuery(QUERY_COUNT_PUBLISHED_LINKS);
+            return resultList(query);
+        } catch (PersistenceException ex){
+            throw new IllegalArgumentException(ex.getMessage(), ex);
+        }
+    }
+
+    /**
+     * Recover the change log entries appended after the given sequence number, in sequence order.
+     * @param seq The last sequence number already seen.
+     * @param limit Maximum amount of entries to recover.
+     * @return The change log entries found.
+     * @throws IllegalArgumentException explicitly included (RuntimeExceptions don't need to
+     * be included) to throw when an exception happens performing an operation in the existing
+     * EntityManager.
+     */
+    @Override
+    public List<TweetChange> findChangesAfter(final long seq, final int limit) throws IllegalArgumentException {
+        try {
+            final Query query = entityManager.createQuery(QUERY_CHANGES_AFTER);
+            query.setParameter("seq", seq);
+            query.setMaxResults(limit);
+            return resultList(query);
+        } catch (PersistenceException ex){
+            throw new IllegalArgumentException(ex.getMessage(), ex);
+        }
+    }
+
+    /**
+     * Recover the change log entries with the given sequence numbers, in sequence order.
+     * @param seqs The sequence numbers to look for.
+     * @return The change log entries found, which might be fewer than the sequence numbers given.
+     * @throws IllegalArgumentException explicitly included (RuntimeExceptions don't need to
+     * be included) to throw when an exception happens performing an operation in the existing
+     * EntityManager.
+     */
+    @Override
+    public List<TweetChange> findChanges(final Collection<Long> seqs) throws IllegalArgumentException {
+        if(seqs.isEmpty()){ return Collections.emptyList(); }
+
+        try {
+            final Query query = entityManager.createQuery(QUERY_CHANGES_IN);
+            query.setParameter("seqs", seqs);
+            return resultList(query);
+        } catch (PersistenceException ex){
+            throw new IllegalArgumentException(ex.getMessage(), ex);
+        }
+    }
+
+    /**
+     * @return The sequence number of the last change log entry, 0 when the change log is empty.
+     * @throws IllegalArgumentException explicitly included (RuntimeExceptions don't need to
+     * be included) to throw when an exception happens performing an operation in the existing
+     * EntityManager.
+     */
+    @Override
+    public long findLastChangeSeq() throws IllegalArgumentException {
+        try {
+            final Number seq = (Number) entityManager.createQuery(QUERY_LAST_CHANGE_SEQ).getSingleResult();
+            return seq == null ? 0L : seq.longValue();
+        } catch (PersistenceException ex){
+            throw new IllegalArgumentException(ex.getMessage(), ex);
+        }
+    }
+
+    /**
+     * Deletes the change log entries before the given one, a range of the primary key.
+     * @see TweetStorage#deleteChangesBefore(long)
+     * @throws IllegalArgumentException explicitly included (RuntimeExceptions don't need to
+     * be included) to throw when an exception happens performing an operation in the existing
+     * EntityManager.
+     */
+    @Override
+    @Transactional
+    public int deleteChangesBefore(final long seq) throws IllegalArgumentException {
+        try {
+            return entityManager.createQuery(DELETE_CHANGES_BEFORE).setParameter("seq", seq).executeUpdate();
+        } catch (PersistenceException ex){
+            throw new IllegalArgumentException(ex.getMessage(), ex);
+        }
+    }
+
+    /**
+     * Fills the discard date of a chunk of tweets discarded before it was stored on its own column. Those tweets
+     * had their publication date overwritten with the discard date, so it is copied from there.
+     * @param afterId Only tweets with a greater id are migrated, allowing to walk the primary key index chunk by chunk.
+     * @param chunkSize Maximum amount of tweets migrated.
+     * @return The greatest id migrated, or null when no tweet was left to migrate.
+     * @throws IllegalArgumentException explicitly included (RuntimeExceptions don't need to
+     * be included) to throw when an exception happens performing an operation in the existing
+     * EntityManager.
+     */
+    @Override
+    @Transactional
+    public Long migrateDiscardedAt(final long afterId, final int chunkSize) throws IllegalArgumentException {
+        final List<Tweet> tweets;
+        try {
+            final Query query = entityManager.createQuery(QUERY_DISCARDED_TWEETS_WITHOUT_DISCARDED_AT);
+            query.setParameter("id", afterId);
+            query.setMaxResults(chunkSize);
+            tweets = resultList(query);
+        } catch (PersistenceException ex){
+            throw new IllegalArgumentException(ex.getMessage(), ex);
+        }
+
+        Long lastId = null;
+        for(Tweet tweet : tweets){
+            tweet.setDiscardedAt(tweet.getDate().isEmpty() ? Instant.now() : Instant.parse(tweet.getDate()));
+            lastId = tweet.getId();
+        }
+
+        LOG.debug("Discard date migrated for "+ tweets.size() +" tweet(s).");
+        return lastId;
+    }
+
+    /**
+     * Recover a chunk of non discarded tweets whose id is lower than the given one, walking the primary key index.
+     * As ids are time ordered, these are the tweets published before the time the given id was generated at,
+     * except the ones stored before ids were time ordered, which is why their publication date is returned too.
+     * @param afterId Only tweets with a greater id are recovered, allowing to walk the index chunk by chunk.
+     * @param beforeId Only tweets with a lower id are recovered.
+     * @param limit Maximum amount of tweets recovered.
+     * @return Rows of [id (Long), publication date (Instant)], in id order.
+     * @throws IllegalArgumentException explicitly included (RuntimeExceptions don't need to
+     * be included) to throw when an exception happens performing an operation in the existing
+     * EntityManager.
+     */
+    @Override
+    public List<Object[]> findPublishedTweetsBefore(final long afterId, final long beforeId, final int limit) throws IllegalArgumentException {
+        try {
+            final Query query = entityManager.createQuery(QUERY_PUBLISHED_TWEETS_BEFORE);
+            query.setParameter("afterId", afterId);
+            query.setParameter("beforeId", beforeId);
+            query.setMaxResults(limit);
+            return resultList(query);
+        } catch (PersistenceException ex){
+            throw new IllegalArgumentException(ex.getMessage(), ex);
+        }
+    }
+
+    /**
+     * Count the non discarded tweets whose id is lower than the given one, with an index range scan.
+     * @param beforeId Only tweets with a lower id are counted.
+     * @return The amount of tweets found.
+     * @throws IllegalArgumentException explicitly included (RuntimeExceptions don't need to
+     * be included) to throw when an exception happens performing an operation in the existing
+     * EntityManager.
+     */
+    @Override
+    public long countPublishedTweetsBefore(final long beforeId) throws IllegalArgumentException {
+        try {
+            final Query query = entityManager.createQuery(QUERY_COUNT_PUBLISHED_TWEETS_BEFORE);
+            query.setParameter("beforeId", beforeId);
+            return ((Number) query.getSingleResult()).longValue();
+        } catch (PersistenceException ex){
+            throw new IllegalArgumentException(ex.getMessage(), ex);
+        }
+    }
+
+    /**
+     * Recover the ids of a chunk of the tweets discarded before the given time, oldest discarded first, walking
+     * the discard date index.
+     * @param before Only tweets discarded before this time are recovered.
+     * @param limit Maximum amount of ids recovered.
+     * @return The ids of the tweets found.
+     * @throws IllegalArgumentException explicitly included (RuntimeExceptions don't need to
+     * be included) to throw when an exception happens performing an operation in the existing
+     * EntityManager.
+     */
+    @Override
+    public List<Long> findDiscardedTweetIdsBefore(final Instant before, final int limit) throws IllegalArgumentException {
+        try {
+            final Query query = entityManager.createQuery(QUERY_DISCARDED_TWEETS_BEFORE);
+            query.setParameter("before", before);
+            query.setMaxResults(limit);
+            return resultList(query);
+        } catch (PersistenceException ex){
+            throw new IllegalArgumentException(ex.getMessage(), ex);
+        }
+    }
+
+    /**
+     * Count the tweets discarded before the given time, with an index range scan.
+     * @param before Only tweets discarded before this time are counted.
+     * @return The amount of tweets found.
+     * @throws IllegalArgumentException explicitly included (RuntimeExceptions don't need to
+     * be included) to throw when an exception happens performing an operation in the existing
+     * EntityManager.
+     */
+    @Override
+    public long countDiscardedTweetsBefore(final Instant before) throws IllegalArgumentException {
+        try {
+            final Query query = entityManager.createQuery(QUERY_COUNT_DISCARDED_TWEETS_BEFORE);
+            query.setParameter("before", before);
+            return ((Number) query.getSingleResult()).longValue();
+        } catch (PersistenceException ex){
+            throw new IllegalArgumentException(ex.getMessage(), ex);
+        }
+    }
+
+    /**
+     * Deletes the given tweets together with their links, appending a change log entry for each of them. Rows are
+     * deleted by primary key, so only those rows are locked, and only for this short transaction. Link dictionary
+     * entries left without any tweet are deleted too, so the dictionary doesn't keep growing with purged links. Links
+     * resolved by a tweet being published are read locked by the {@link LinkDictionary}, so their deletion waits for
+     * that tweet and then finds them referenced.
+     * @param ids The ids of the tweets to delete.
+     * @return The change log entries appended, one per tweet found.
+     * @throws IllegalArgumentException explicitly included (RuntimeExceptions don't need to
+     * be included) to throw when an exception happens performing an operation in the existing
+     * EntityManager.
+     */
+    @Override
+    @Transactional
+    public List<TweetChange> purgeTweets(final Collection<Long> ids) throws IllegalArgumentException {
+        if(ids.isEmpty()){ return Collections.emptyList(); }
+
+        final List<TweetChange> changes = new ArrayList<>();
+        try {
+            final List<Object[]> rows = resultList(entityManager.createQuery(QUERY_PURGED_TWEETS).setParameter("ids", ids));
+            final List<Long> linkIds = resultList(entityManager.createQuery(QUERY_PURGED_LINK_IDS).setParameter("ids", ids));
+            entityManager.createQuery(DELETE_TWEET_LINKS).setParameter("ids", ids).executeUpdate();
+            entityManager.createQuery(DELETE_TWEETS).setParameter("ids", ids).executeUpdate();
+            if(!linkIds.isEmpty()){
+                entityManager.createQuery(DELETE_UNREFERENCED_LINKS).setParameter("ids", linkIds).executeUpdate();
+            }
+
+            for(Object[] row : rows){
+                final Tweet tweet = new Tweet();
+                tweet.setId((Long) row[0]);
+                tweet.setPublisherId((Integer) row[1]);
+                changes.add(appendChange(tweet, Boolean.TRUE.equals(row[2])
+                        ? TweetChange.Type.DISCARDED_PURGED : TweetChange.Type.PUBLISHED_PURGED));
+            }
+        } catch (PersistenceException ex){
+            throw new IllegalArgumentException(ex.getMessage(), ex);
+        }
+
+        LOG.debug(changes.size() +" tweet(s) purged.");
+        return changes;
+    }
+
+    /**
+     * Marks a tweet, based on the given id, as discarded. Discarding an already discarded tweet has no effect.
      * @param tweet The tweet instance containing the id of tweet to be marked as discarded.
+     * @param beforeDiscard Called with the publisher of the tweet right before it is marked.
+     * @return The change log entry appended for the discarded tweet, or null when the tweet was already
+     * discarded and nothing changed.
      * @throws IllegalArgumentException explicitly included (RuntimeExceptions don't need to
      * be included) to throw when an exception happens performing an operation in the existing
      * EntityManager.
      */
+    @Override
     @Transactional
-    public void discardTweet(Tweet tweet) throws IllegalArgumentException {
+    public TweetChange discardTweet(Tweet tweet, Consumer<String> beforeDiscard) throws IllegalArgumentException {
         LOG.debug("Setting tweet ["+ tweet.getId() +"] as discarded...");
         tweet = entityManager.find(Tweet.class, tweet.getId()); //fetching the whole object, without possible links, for update.
 
@@ -174,11 +597,19 @@ public class TweetPersistence {
             throw new IllegalArgumentException("Invalid tweet id was not found!");
         }
 
+        if(Boolean.TRUE.equals(tweet.isDiscarded())){
+            LOG.debug("Tweet id ["+ tweet.getId() +"] was already discarded!");
+            return null;
+        }
+
+        beforeDiscard.accept(this.publisherDictionary.nameOf(tweet.getPublisherId()));
         tweet.setDiscarded(true);
-        tweet.setDate(Instant.now());
+        tweet.setDiscardedAt(Instant.now());
         entityManager.merge(tweet);
+        final TweetChange change = appendChange(tweet, TweetChange.Type.DISCARDED);
 
         LOG.debug("Tweet id ["+ tweet.getId() +"] marked as discarded!");
+        return change;
     }
 
 }
@@ -0,0 +1,160 @@
+package com.scmspain.persistence;
+
+import com.scmspain.entities.Link;
+import com.scmspain.entities.Tweet;
+import com.scmspain.entities.TweetChange;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Storage of tweets and of their change log, as used by the services. {@link TweetPersistence} keeps them on the
+ * JPA repository and {@link LogTweetStorage} on local append-only segment files; the "tweet.storage.type" property
+ * selects which one is used.
+ *
+ * Every method throws IllegalArgumentException when the operation can't be performed on the underlying storage.
+ */
+public interface TweetStorage {
+
+    /**
+     * Store a new tweet, giving it an id, a publication date and the key of its publisher.
+     * @param tweet The tweet to be published and stored.
+     * @return The change log entry appended for the published tweet.
+     * @throws IllegalArgumentException when the tweet text is longer than allowed or can't be stored.
+     */
+    TweetChange saveTweet(Tweet tweet) throws IllegalArgumentException;
+
+    /**
+     * @param id id of Tweet to be retrieved
+     * @return retrieved Tweet, discarded or not, or null when there is no such tweet.
+     */
+    Tweet findTweetById(Long id) throws IllegalArgumentException;
+
+    /**
+     * @return All available non discarded Tweets sorted by publication date descending order.
+     */
+    List<Tweet> findNonDiscardedTweets() throws IllegalArgumentException;
+
+    /**
+     * @param afterId Only tweets with a greater id are recovered.
+     * @return The non discarded Tweets published after the given one, sorted by publication date descending order.
+     */
+    List<Tweet> findNonDiscardedTweetsAfter(long afterId) throws IllegalArgumentException;
+
+    /**
+     * @param publisher A publisher of discarded tweets
+     * @return A List of all discarded tweets of the given publisher, last discarded first.
+     */
+    List<Tweet> findDiscardedTweets(String publisher) throws IllegalArgumentException;
+
+    /**
+     * Marks a tweet as discarded. Discarding an already discarded tweet has no effect.
+     * @param tweet The tweet instance containing the id of tweet to be marked as discarded.
+     * @param beforeDiscard Called with the publisher of the tweet right before it is marked, throwing to leave it
+     *                      as it is.
+     * @return The change log entry appended for the discarded tweet, or null when the tweet was already
+     * discarded and nothing changed.
+     * @throws IllegalArgumentException when there is no such tweet.
+     */
+    TweetChange discardTweet(Tweet tweet, Consumer<String> beforeDiscard) throws IllegalArgumentException;
+
+    /**
+     * Count all tweets grouped by publisher and discarded flag, meant to seed and verify counters, never to serve
+     * requests.
+     * @return Rows of [publisher key (Integer), discarded (Boolean), count (Long)].
+     */
+    List<Object[]> countTweetsByPublisher() throws IllegalArgumentException;
+
+    /**
+     * @param publisher A publisher name.
+     * @return The key tweets of the publisher are counted by, or null when it never published.
+     */
+    Integer findPublisherId(String publisher) throws IllegalArgumentException;
+
+    /**
+     * @param publisherId A publisher key, as found on the tweets and their changes.
+     * @return The name of the publisher.
+     */
+    String findPublisherName(Integer publisherId) throws IllegalArgumentException;
+
+    /**
+     * @param tweetId The id of the tweet.
+     * @return The links found on the tweet, once per occurrence.
+     */
+    List<Link> findTweetLinks(Long tweetId) throws IllegalArgumentException;
+
+    /**
+     * Count the non discarded tweets containing each link, meant to seed counters, never to serve requests.
+     * @return Rows of [link key (Long), link (String), count (Long)].
+     */
+    List<Object[]> countPublishedTweetsByLink() throws IllegalArgumentException;
+
+    /**
+     * @param seq The last sequence number already seen.
+     * @param limit Maximum amount of entries to recover.
+     * @return The change log entries appended after the given sequence number, in sequence order.
+     */
+    List<TweetChange> findChangesAfter(long seq, int limit) throws IllegalArgumentException;
+
+    /**
+     * @param seqs The sequence numbers to look for.
+     * @return The change log entries found, in sequence order, which might be fewer than the sequence numbers given.
+     */
+    List<TweetChange> findChanges(Collection<Long> seqs) throws IllegalArgumentException;
+
+    /**
+     * @return The sequence number of the last change log entry, 0 when the change log is empty.
+     */
+    long findLastChangeSeq() throws IllegalArgumentException;
+
+    /**
+     * Deletes the oldest change log entries, so the change log doesn't keep growing.
+     * @param seq Only entries with a lower sequence number are deleted.
+     * @return The amount of entries deleted.
+     */
+    int deleteChangesBefore(long seq) throws IllegalArgumentException;
+
+    /**
+     * Fills the discard date of a chunk of tweets discarded before it was stored.
+     * @param afterId Only tweets with a greater id are migrated.
+     * @param chunkSize Maximum amount of tweets migrated.
+     * @return The greatest id migrated, or null when no tweet was left to migrate.
+     */
+    Long migrateDiscardedAt(long afterId, int chunkSize) throws IllegalArgumentException;
+
+    /**
+     * @param afterId Only tweets with a greater id are recovered, allowing to walk the tweets chunk by chunk.
+     * @param beforeId Only tweets with a lower id are recovered.
+     * @param limit Maximum amount of tweets recovered.
+     * @return Rows of [id (Long), publication date (Instant)] of non discarded tweets, in id order.
+     */
+    List<Object[]> findPublishedTweetsBefore(long afterId, long beforeId, int limit) throws IllegalArgumentException;
+
+    /**
+     * @param beforeId Only tweets with a lower id are counted.
+     * @return The amount of non discarded tweets found.
+     */
+    long countPublishedTweetsBefore(long beforeId) throws IllegalArgumentException;
+
+    /**
+     * @param before Only tweets discarded before this time are recovered.
+     * @param limit Maximum amount of ids recovered.
+     * @return The ids of the tweets found, oldest discarded first.
+     */
+    List<Long> findDiscardedTweetIdsBefore(Instant before, int limit) throws IllegalArgumentException;
+
+    /**
+     * @param before Only tweets discarded before this time are counted.
+     * @return The amount of tweets found.
+     */
+    long countDiscardedTweetsBefore(Instant before) throws IllegalArgumentException;
+
+    /**
+     * Deletes the given tweets, appending a change log entry for each of them.
+     * @param ids The ids of the tweets to delete.
+     * @return The change log entries appended, one per tweet found.
+     */
+    List<TweetChange> purgeTweets(Collection<Long> ids) throws IllegalArgumentException;
+}
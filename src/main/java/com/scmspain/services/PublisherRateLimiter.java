@@ -0,0 +1,59 @@
+package com.scmspain.services;
+
+import com.scmspain.utils.RateLimiter;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.boot.actuate.metrics.writer.Delta;
+import org.springframework.boot.actuate.metrics.writer.MetricWriter;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limits the rate of writes of every publisher, so a single publisher can't take the write capacity of everyone
+ * else. Checked before any other work is done on the request, validation included.
+ */
+@Service
+public class PublisherRateLimiter {
+    private final RateLimiter rateLimiter;
+    private final MetricWriter metricWriter;
+
+    /**
+     * @param rateLimiter The rate limiter keyed by publisher, or null to allow every write.
+     * @param metricWriter Writer of the rate limiting metrics.
+     */
+    public PublisherRateLimiter(RateLimiter rateLimiter, MetricWriter metricWriter) {
+        this.rateLimiter = rateLimiter;
+        this.metricWriter = metricWriter;
+    }
+
+    /**
+     * Counts a write of the given publisher.
+     * @param publisher The publisher writing, writes of unknown publishers not being limited.
+     * @throws RateLimitedException when the publisher exceeds its allowed rate.
+     */
+    public void acquire(final String publisher) throws RateLimitedException {
+        if(Objects.isNull(this.rateLimiter) || Objects.isNull(publisher)){
+            return;
+        }
+        final long waitNanos = this.rateLimiter.tryAcquire(publisher);
+        if(waitNanos > 0){
+            this.metricWriter.increment(new Delta<Number>("rate-limit.rejected", 1));
+            final long retryAfterSeconds = Math.max(1, (waitNanos + TimeUnit.SECONDS.toNanos(1) - 1) / TimeUnit.SECONDS.toNanos(1));
+            throw new RateLimitedException("Publisher ["+ publisher +"] is writing too fast, retry in "+ retryAfterSeconds +" seconds.", retryAfterSeconds);
+        }
+    }
+
+    /**
+     * Drops the buckets of the idle publishers, reporting how many are left.
+     */
+    @Scheduled(fixedDelayString = "${tweet.rate-limit.evict-interval-ms:60000}")
+    public void evictIdle() {
+        if(Objects.isNull(this.rateLimiter)){
+            return;
+        }
+        this.rateLimiter.evictIdle();
+        this.metricWriter.set(new Metric<Number>("rate-limit.publishers", this.rateLimiter.size()));
+    }
+}
@@ -0,0 +1,22 @@
+package com.scmspain.services;
+
+/**
+ * Thrown when a publisher exceeds its allowed rate of writes.
+ */
+public class RateLimitedException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    private final long retryAfterSeconds;
+
+    public RateLimitedException(String message, long retryAfterSeconds) {
+        super(message);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    /**
+     * @return The seconds to wait before the publisher is allowed to write again.
+     */
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
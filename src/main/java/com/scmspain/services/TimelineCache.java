@@ -0,0 +1,379 @@
+package com.scmspain.services;
+
+import com.scmspain.entities.Tweet;
+import com.scmspain.entities.TweetChange;
+import com.scmspain.persistence.ReadResult;
+import com.scmspain.persistence.RepositoryGuard;
+import com.scmspain.persistence.RepositoryUnavailableException;
+import com.scmspain.persistence.TimelineSnapshotFile;
+import com.scmspain.persistence.TweetStorage;
+import com.scmspain.utils.SnowflakeIdGenerator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.boot.actuate.metrics.writer.Delta;
+import org.springframework.boot.actuate.metrics.writer.MetricWriter;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * In-memory copy of the published timeline, served instead of reading the whole timeline from the repository as
+ * long as it holds at most a given amount of tweets. The timeline is kept complete as of a point in time: tweets
+ * are time ordered by id and every publish commits within the settle window of being notified, so only the tweets
+ * newer than that point minus the settle window need to be read again after any publish. Discarded and purged
+ * tweets are dropped as soon as their change commits, as that is when changes are notified, and remembered for a settle window so a read which started before they were
+ * discarded can't bring them back. The whole timeline is periodically reloaded, fixing any drift.
+ *
+ * The timeline is periodically written to a {@link TimelineSnapshotFile}, as well as on shutdown. On startup the
+ * snapshot is loaded instead of the whole timeline, then caught up by replaying the change log entries appended
+ * since it was taken for the tweets removed meanwhile and by reading the tweets published since it was taken. The
+ * whole timeline is loaded instead whenever the snapshot is missing or the change log doesn't hold every entry
+ * appended since it was taken.
+ *
+ * The cache holds the whole timeline or nothing: once the timeline grows beyond the maximum amount of entries it is
+ * read from the repository on every request, so the maximum has to be sized above the amount of published tweets.
+ */
+@Service
+public class TimelineCache implements TweetChangeListener, DisposableBean {
+    private static final Logger LOG = LoggerFactory.getLogger(TimelineCache.class);
+
+    private static final int CHANGES_BATCH = 500;
+
+    private final TweetStorage tweetStorage;
+    private final RepositoryGuard repositoryGuard;
+    private final TransactionTemplate readTransaction;
+    private final MetricWriter metricWriter;
+    private final TimelineSnapshotFile snapshotFile;
+    private final int maxEntries;
+    private final long settleMillis;
+    private final LongSupplier clock;
+
+    private volatile Timeline timeline;
+    private volatile long pendingUntil;
+    private final Map<Long, Long> removed = new HashMap<>(); // tweet id -> removal time, guarded by this.
+    private long version; // guarded by this.
+    private final Object snapshotLock = new Object();
+    private long snapshotVersion = -1; // guarded by snapshotLock.
+
+    /**
+     * @param tweetStorage Storage of the timeline.
+     * @param repositoryGuard Guard of the reads made while serving requests.
+     * @param transactionManager Transaction manager of the reads made while loading the timeline.
+     * @param metricWriter Writer of the cache metrics.
+     * @param snapshotFile Snapshot of the timeline, null to go without one.
+     * @param maxEntries Amount of tweets up to which the timeline is served, 0 to disable the cache. Nothing is
+     *                   served while the timeline is larger.
+     * @param settleMillis Time within which a notified change is committed.
+     */
+    public TimelineCache(TweetStorage tweetStorage, RepositoryGuard repositoryGuard,
+                         PlatformTransactionManager transactionManager, MetricWriter metricWriter,
+                         TimelineSnapshotFile snapshotFile, int maxEntries, long settleMillis) {
+        this(tweetStorage, repositoryGuard, transactionManager, metricWriter, snapshotFile, maxEntries, settleMillis,
+                System::currentTimeMillis);
+    }
+
+    /**
+     * @param clock Current time in milliseconds.
+     */
+    public TimelineCache(TweetStorage tweetStorage, RepositoryGuard repositoryGuard,
+                         PlatformTransactionManager transactionManager, MetricWriter metricWriter,
+                         TimelineSnapshotFile snapshotFile, int maxEntries, long settleMillis, LongSupplier clock) {
+        this.tweetStorage = tweetStorage;
+        this.repositoryGuard = repositoryGuard;
+        this.readTransaction = new TransactionTemplate(transactionManager);
+        this.readTransaction.setReadOnly(true);
+        this.metricWriter = metricWriter;
+        this.snapshotFile = snapshotFile;
+        this.maxEntries = maxEntries;
+        this.settleMillis = settleMillis;
+        this.clock = clock;
+    }
+
+    /**
+     * Loads the timeline, from the snapshot whenever possible. The cache serves nothing when it can't be loaded,
+     * until the next reload.
+     */
+    @PostConstruct
+    public void load() {
+        if(this.maxEntries <= 0){ return; }
+
+        try {
+            Timeline loaded = this.snapshotFile == null ? null : loadSnapshot();
+            if(loaded == null){
+                loaded = loadTimeline();
+            }
+            install(loaded);
+        } catch (RuntimeException ex){
+            LOG.warn("Timeline could not be loaded, it will be read from the repository until reloaded.", ex);
+        }
+    }
+
+    /**
+     * Reloads the whole timeline from the repository.
+     */
+    @Scheduled(initialDelayString = "${tweet.timeline.reconcile-interval-ms:300000}",
+            fixedDelayString = "${tweet.timeline.reconcile-interval-ms:300000}")
+    public void reconcile() {
+        if(this.maxEntries <= 0){ return; }
+
+        LOG.debug("Reloading the timeline...");
+        try {
+            install(loadTimeline());
+        } catch (RuntimeException ex){
+            LOG.warn("Timeline could not be reloaded.", ex);
+        }
+    }
+
+    /**
+     * @return The published timeline, or null when it isn't cached and has to be read from the repository. Stale
+     * when it couldn't be caught up with the tweets published lately because the repository is degraded.
+     */
+    public ReadResult<List<Tweet>> read() {
+        Timeline current = this.timeline;
+        if(current != null && current.tweets != null && this.pendingUntil > current.asOf){
+            final long from = SnowflakeIdGenerator.lowestIdAt(Instant.ofEpochMilli(current.asOf - this.settleMillis));
+            final ReadResult<TimelineDelta> delta;
+            try {
+                delta = this.repositoryGuard.read("timeline-delta",
+                        () -> new TimelineDelta(from, this.clock.getAsLong(), this.tweetStorage.findNonDiscardedTweetsAfter(from)));
+            } catch (RepositoryUnavailableException ex){
+                return hit(current, true);
+            }
+            if(delta.isStale()){
+                return hit(current, true);
+            }
+            current = merge(delta.getValue());
+        }
+
+        if(current == null || current.tweets == null){
+            this.metricWriter.increment(new Delta<Number>("timeline-cache.misses", 1));
+            return null;
+        }
+        return hit(current, false);
+    }
+
+    /**
+     * @see TweetChangeListener#onTweetChange(TweetChange)
+     */
+    @Override
+    public void onTweetChange(final TweetChange change) {
+        if(this.maxEntries <= 0){ return; }
+
+        final long now = this.clock.getAsLong();
+        if(change.getType() == TweetChange.Type.PUBLISHED){
+            synchronized (this){
+                this.pendingUntil = Math.max(this.pendingUntil, now + this.settleMillis);
+            }
+            return;
+        }
+
+        synchronized (this){
+            this.removed.put(change.getTweetId(), now);
+            final Timeline current = this.timeline;
+            if(current != null && current.tweets != null){
+                install(new Timeline(current.tweets, current.asOf, current.seq));
+            }
+        }
+    }
+
+    /**
+     * Writes the snapshot, unless the timeline didn't change since it was last written. Snapshots are written one
+     * at a time, as the scheduled write might still be running on shutdown.
+     * @throws IllegalArgumentException when the snapshot can't be written.
+     */
+    @Scheduled(initialDelayString = "${tweet.timeline.snapshot.interval-ms:60000}",
+            fixedDelayString = "${tweet.timeline.snapshot.interval-ms:60000}")
+    public void writeSnapshot() throws IllegalArgumentException {
+        if(this.snapshotFile == null){ return; }
+
+        synchronized (this.snapshotLock){
+            final Timeline current;
+            final long version;
+            synchronized (this){
+                current = this.timeline;
+                version = this.version;
+            }
+            if(current == null || current.tweets == null || version == this.snapshotVersion){ return; }
+
+            this.snapshotFile.write(new TimelineSnapshotFile.Snapshot(current.tweets, current.seq, Instant.ofEpochMilli(current.asOf)));
+            this.snapshotVersion = version;
+        }
+    }
+
+    /**
+     * Writes a last snapshot.
+     */
+    @Override
+    public void destroy() throws Exception {
+        try {
+            writeSnapshot();
+        } catch (IllegalArgumentException ex){
+            LOG.warn("Timeline snapshot could not be written on shutdown.", ex);
+        }
+    }
+
+    /**
+     * @return The snapshot caught up with the repository, or null when there is no usable snapshot.
+     */
+    private Timeline loadSnapshot() {
+        final TimelineSnapshotFile.Snapshot snapshot = this.snapshotFile.read();
+        if(snapshot == null){ return null; }
+
+        final long lastSeq = transactional(this.tweetStorage::findLastChangeSeq);
+        if(lastSeq < snapshot.getSeq()){
+            LOG.warn("Timeline snapshot is ahead of the change log, loading the whole timeline instead.");
+            return null;
+        }
+
+        long seq = snapshot.getSeq();
+        final Set<Long> removed = new HashSet<>();
+        List<TweetChange> changes = transactional(() -> this.tweetStorage.findChangesAfter(snapshot.getSeq(), CHANGES_BATCH));
+        if(!changes.isEmpty() && changes.get(0).getSeq() > seq + 1){
+            LOG.info("Change log no longer goes back to the timeline snapshot, loading the whole timeline instead.");
+            return null;
+        }
+        while(!changes.isEmpty()){
+            for(TweetChange change : changes){
+                if(change.getType() != TweetChange.Type.PUBLISHED){
+                    removed.add(change.getTweetId());
+                }
+                seq = change.getSeq();
+            }
+            final long after = seq;
+            changes = transactional(() -> this.tweetStorage.findChangesAfter(after, CHANGES_BATCH));
+        }
+        if(seq < lastSeq){
+            LOG.info("Change log ends before its last entry (e.g. compacted away), loading the whole timeline instead.");
+            return null;
+        }
+
+        final long asOf = this.clock.getAsLong();
+        final long from = SnowflakeIdGenerator.lowestIdAt(snapshot.getTakenAt().minusMillis(this.settleMillis));
+        final List<Tweet> tweets = new ArrayList<>(transactional(() -> this.tweetStorage.findNonDiscardedTweetsAfter(from)));
+        for(Tweet tweet : snapshot.getTweets()){
+            if(tweet.getId() <= from && !removed.contains(tweet.getId())){
+                tweets.add(tweet);
+            }
+        }
+
+        LOG.info("Timeline of "+ tweets.size() +" tweet(s) loaded from its snapshot taken at "+ snapshot.getTakenAt() +".");
+        return newTimeline(tweets, asOf, seq);
+    }
+
+    /**
+     * @return The whole timeline, read from the repository.
+     */
+    private Timeline loadTimeline() {
+        final long asOf = this.clock.getAsLong();
+        final long seq = transactional(this.tweetStorage::findLastChangeSeq);
+        return newTimeline(transactional(this.tweetStorage::findNonDiscardedTweets), asOf, seq);
+    }
+
+    /**
+     * Merges the tweets published lately into the timeline, unless the timeline moved on meanwhile.
+     * @param delta The tweets published lately.
+     * @return The current timeline.
+     */
+    private synchronized Timeline merge(final TimelineDelta delta) {
+        final Timeline current = this.timeline;
+        if(current == null || current.tweets == null || delta.asOf <= current.asOf
+                || delta.from > SnowflakeIdGenerator.lowestIdAt(Instant.ofEpochMilli(current.asOf - this.settleMillis))){
+            return current;
+        }
+
+        final List<Tweet> tweets = new ArrayList<>(delta.tweets);
+        for(Tweet tweet : current.tweets){
+            if(tweet.getId() <= delta.from){
+                tweets.add(tweet);
+            }
+        }
+        return install(newTimeline(tweets, delta.asOf, current.seq));
+    }
+
+    /**
+     * Replaces the timeline, dropping the tweets removed lately from it.
+     * @param next The new timeline.
+     * @return The timeline installed.
+     */
+    private synchronized Timeline install(Timeline next) {
+        final long asOf = next.asOf;
+        this.removed.values().removeIf(time -> time + this.settleMillis <= asOf);
+        if(next.tweets != null && !this.removed.isEmpty()){
+            final List<Tweet> tweets = new ArrayList<>(next.tweets.size());
+            for(Tweet tweet : next.tweets){
+                if(!this.removed.containsKey(tweet.getId())){
+                    tweets.add(tweet);
+                }
+            }
+            next = new Timeline(Collections.unmodifiableList(tweets), next.asOf, next.seq);
+        }
+
+        this.timeline = next;
+        this.version++;
+        this.metricWriter.set(new Metric<Number>("timeline-cache.entries", next.tweets == null ? 0 : next.tweets.size()));
+        return next;
+    }
+
+    private Timeline newTimeline(final List<Tweet> tweets, final long asOf, final long seq) {
+        if(tweets.size() > this.maxEntries){
+            LOG.warn("Timeline of "+ tweets.size() +" tweet(s) is larger than the "+ this.maxEntries
+                    +" cached at most (tweet.timeline.entries), it is read from the repository on every request.");
+            return new Timeline(null, asOf, seq);
+        }
+        return new Timeline(Collections.unmodifiableList(tweets), asOf, seq);
+    }
+
+    private ReadResult<List<Tweet>> hit(final Timeline timeline, final boolean stale) {
+        this.metricWriter.increment(new Delta<Number>("timeline-cache.hits", 1));
+        return new ReadResult<>(timeline.tweets, stale);
+    }
+
+    private <T> T transactional(final Supplier<T> read) {
+        return this.readTransaction.execute(status -> read.get());
+    }
+
+    /**
+     * Published timeline, complete as of a point in time.
+     */
+    private static final class Timeline {
+        private final List<Tweet> tweets; // newest first, null when too large to be cached.
+        private final long asOf;
+        private final long seq; // every removal up to this change log entry is reflected.
+
+        private Timeline(List<Tweet> tweets, long asOf, long seq) {
+            this.tweets = tweets;
+            this.asOf = asOf;
+            this.seq = seq;
+        }
+    }
+
+    /**
+     * Tweets published after a given id, read at a point in time.
+     */
+    private static final class TimelineDelta {
+        private final long from;
+        private final long asOf;
+        private final List<Tweet> tweets;
+
+        private TimelineDelta(long from, long asOf, List<Tweet> tweets) {
+            this.from = from;
+            this.asOf = asOf;
+            this.tweets = tweets;
+        }
+    }
+}
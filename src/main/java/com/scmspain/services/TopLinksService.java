@@ -0,0 +1,198 @@
+package com.scmspain.services;
+
+import com.scmspain.entities.Link;
+import com.scmspain.entities.TweetChange;
+import com.scmspain.persistence.TweetStorage;
+import com.scmspain.utils.CountMinSketch;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.stream.Collectors;
+
+/**
+ * Keeps track of the links found on the most published tweets, so the top links can be served without scanning
+ * the link table. The count of published tweets per link is estimated by a {@link CountMinSketch}, whose size
+ * doesn't depend on the amount of links, and a bounded set of candidates holds the links with the highest
+ * estimates seen (heavy hitters): a link is only admitted once its estimate beats the lowest candidate one.
+ *
+ * Counts are seeded with a single aggregate query at startup and then maintained from every tweet change, so they
+ * are approximate: a link can be overestimated, never underestimated, and a link whose tweets are discarded keeps
+ * its candidate place until a more published one takes it. Tweets deleted by the retention policy are only
+ * uncounted when rebuilt, which happens periodically from the repository.
+ */
+@Service
+public class TopLinksService implements TweetChangeListener {
+    private static final Logger LOG = LoggerFactory.getLogger(TopLinksService.class);
+
+    private final TweetStorage tweetStorage;
+    private final int sketchDepth;
+    private final int sketchWidth;
+    private final int capacity;
+
+    private volatile Counts counts;
+
+    /**
+     * @param tweetStorage The storage to read the links of tweets from.
+     * @param sketchDepth Amount of rows of the count-min sketch.
+     * @param sketchWidth Amount of counters per row of the count-min sketch.
+     * @param capacity Amount of candidate links kept, the most that can be asked for.
+     */
+    public TopLinksService(TweetStorage tweetStorage, int sketchDepth, int sketchWidth, int capacity) {
+        this.tweetStorage = tweetStorage;
+        this.sketchDepth = sketchDepth;
+        this.sketchWidth = sketchWidth;
+        this.capacity = capacity;
+        this.counts = new Counts();
+    }
+
+    /**
+     * Seeds the counts from the repository. Changes happening while seeding might be lost, in which case they
+     * will be fixed by the next rebuild.
+     */
+    @PostConstruct
+    public void seed() {
+        LOG.debug("Seeding link counts...");
+
+        final Counts counts = new Counts();
+        for(Object[] row : this.tweetStorage.countPublishedTweetsByLink()){
+            final long id = ((Number) row[0]).longValue();
+            final long estimate = counts.sketch.add(id, ((Number) row[2]).longValue());
+            counts.offer(id, (String) row[1], estimate);
+        }
+        this.counts = counts;
+    }
+
+    /**
+     * Rebuilds the counts from the repository, dropping any drift and stale candidate.
+     */
+    @Scheduled(initialDelayString = "${tweet.links.rebuild-interval-ms:3600000}",
+            fixedDelayString = "${tweet.links.rebuild-interval-ms:3600000}")
+    public void rebuild() {
+        seed();
+    }
+
+    /**
+     * @see TweetChangeListener#onTweetChange(TweetChange)
+     */
+    @Override
+    public void onTweetChange(final TweetChange change) {
+        final long delta;
+        switch (change.getType()) {
+            case PUBLISHED:
+                delta = 1;
+                break;
+            case DISCARDED:
+                delta = -1;
+                break;
+            default:
+                return; // the links of purged tweets are already gone, they are uncounted by the next rebuild.
+        }
+
+        final Map<Long, String> links = new HashMap<>(); // counting every link once per tweet.
+        for(Link link : this.tweetStorage.findTweetLinks(change.getTweetId())){
+            links.put(link.getId(), link.getUrl());
+        }
+
+        final Counts counts = this.counts;
+        links.forEach((id, url) -> {
+            final long estimate = counts.sketch.add(id, delta);
+            if(delta > 0){
+                counts.offer(id, url, estimate);
+            }
+        });
+    }
+
+    /**
+     * @param limit The amount of links to recover, at most the amount of candidates kept.
+     * @return The links found on the most published tweets, with the estimated amount of those tweets, in
+     * descending count order.
+     */
+    public List<LinkCount> top(final int limit) {
+        final Counts counts = this.counts;
+        return counts.candidates.entrySet().stream()
+                .map(entry -> new LinkCount(entry.getValue(), counts.sketch.estimate(entry.getKey())))
+                .filter(linkCount -> linkCount.getCount() > 0)
+                .sorted(Comparator.comparingLong(LinkCount::getCount).reversed())
+                .limit(Math.min(limit, this.capacity))
+                .collect(Collectors.toCollection(ArrayList::new));
+    }
+
+    /**
+     * @return The amount of candidate links kept, the most that can be asked for.
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Sketch and candidates, replaced together when rebuilt.
+     */
+    private class Counts {
+        private final CountMinSketch sketch = new CountMinSketch(sketchDepth, sketchWidth);
+        private final ConcurrentMap<Long, String> candidates = new ConcurrentHashMap<>();
+        private volatile long threshold; // lowest candidate estimate when last evicting, to skip hopeless links.
+
+        private void offer(final long id, final String url, final long estimate) {
+            if(this.candidates.containsKey(id) || (this.candidates.size() >= capacity && estimate <= this.threshold)){
+                return;
+            }
+
+            synchronized (this.candidates){
+                if(this.candidates.containsKey(id)){
+                    return;
+                }
+                if(this.candidates.size() < capacity){
+                    this.candidates.put(id, url);
+                    return;
+                }
+
+                Long lowest = null;
+                long lowestEstimate = Long.MAX_VALUE;
+                for(Long candidate : this.candidates.keySet()){
+                    final long candidateEstimate = this.sketch.estimate(candidate);
+                    if(candidateEstimate < lowestEstimate){
+                        lowest = candidate;
+                        lowestEstimate = candidateEstimate;
+                    }
+                }
+
+                if(estimate > lowestEstimate){
+                    this.candidates.remove(lowest);
+                    this.candidates.put(id, url);
+                }
+                this.threshold = lowestEstimate; // no candidate is lower now, unless discarded since.
+            }
+        }
+    }
+
+    /**
+     * A link together with the estimated amount of published tweets containing it.
+     */
+    public static class LinkCount {
+        private final String link;
+        private final long count;
+
+        public LinkCount(String link, long count) {
+            this.link = link;
+            this.count = count;
+        }
+
+        public String getLink() {
+            return link;
+        }
+
+        public long getCount() {
+            return count;
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package com.scmspain.services;
+
+import com.scmspain.entities.Tweet;
+import com.scmspain.entities.TweetChange;
+import com.scmspain.persistence.RepositoryGuard;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.boot.actuate.metrics.writer.MetricWriter;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded cache of published tweets by id, holding them as served: publisher name resolved and links already put
+ * back in the text, so a hit costs neither a repository round trip nor rebuilding the text. Once full, the least
+ * recently used tweet is evicted. Tweets are invalidated by every change other than publishing them, made by this
+ * instance or by others through the change log.
+ *
+ * A tweet loaded while any invalidation happens is not cached, so a tweet discarded while being loaded is never
+ * kept as published. Invalidated tweets are forgotten by the {@link RepositoryGuard} too, which would otherwise keep
+ * serving them as published while the repository is degraded.
+ */
+@Service
+public class TweetCache implements TweetChangeListener {
+
+    private final MetricWriter metricWriter;
+    private final RepositoryGuard repositoryGuard;
+    private final Map<Long, Tweet> tweets;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+
+    /**
+     * @param metricWriter Writer of the cache metrics.
+     * @param repositoryGuard The guard reading the tweets, whose last good results are dropped on invalidation.
+     * @param maxEntries Amount of tweets kept.
+     */
+    public TweetCache(MetricWriter metricWriter, RepositoryGuard repositoryGuard, final int maxEntries) {
+        this.metricWriter = metricWriter;
+        this.repositoryGuard = repositoryGuard;
+        this.tweets = new LinkedHashMap<Long, Tweet>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Tweet> eldest) {
+                if(size() > maxEntries){
+                    evictions.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * @param id A tweet id.
+     * @return The key reading the tweet through the {@link RepositoryGuard}.
+     */
+    public static String readKey(final Long id) {
+        return "tweet:"+ id;
+    }
+
+    /**
+     * @param id A tweet id.
+     * @return The cached tweet, or null when not cached.
+     */
+    public Tweet get(final Long id) {
+        final Tweet tweet;
+        synchronized (this.tweets){
+            tweet = this.tweets.get(id);
+        }
+        (tweet == null ? this.misses : this.hits).incrementAndGet();
+        return tweet;
+    }
+
+    /**
+     * @return A version to be given to {@link #put(Tweet, long)}, taken before loading the tweet to cache.
+     */
+    public long version() {
+        return this.invalidations.get();
+    }
+
+    /**
+     * Caches a published tweet, unless any tweet was invalidated since the given version was taken.
+     * @param tweet The tweet, as served.
+     * @param version The version taken before loading the tweet.
+     */
+    public void put(final Tweet tweet, final long version) {
+        synchronized (this.tweets){
+            if(this.invalidations.get() == version){
+                this.tweets.put(tweet.getId(), tweet);
+            }
+        }
+    }
+
+    /**
+     * @see TweetChangeListener#onTweetChange(TweetChange)
+     */
+    @Override
+    public void onTweetChange(final TweetChange change) {
+        if(change.getType() == TweetChange.Type.PUBLISHED){
+            return;
+        }
+        synchronized (this.tweets){
+            this.invalidations.incrementAndGet();
+            this.tweets.remove(change.getTweetId());
+        }
+        this.repositoryGuard.forget(readKey(change.getTweetId()));
+    }
+
+    /**
+     * Reports the hit ratio since the last report, together with the evictions and the amount of tweets cached.
+     */
+    @Scheduled(fixedDelayString = "${tweet.cache.report-interval-ms:10000}")
+    public void report() {
+        final long hits = this.hits.getAndSet(0);
+        final long lookups = hits + this.misses.getAndSet(0);
+        final int entries;
+        synchronized (this.tweets){
+            entries = this.tweets.size();
+        }
+
+        this.metricWriter.set(new Metric<Number>("tweet-cache.hit-ratio", lookups == 0 ? 0 : (double) hits / lookups));
+        this.metricWriter.set(new Metric<Number>("tweet-cache.evictions", this.evictions.get()));
+        this.metricWriter.set(new Metric<Number>("tweet-cache.entries", entries));
+    }
+}
@@ -0,0 +1,16 @@
+package com.scmspain.services;
+
+import com.scmspain.entities.TweetChange;
+
+/**
+ * Listener of tweet changes, implemented by every component keeping in-process state derived from the tweets.
+ * It is notified of the changes made by this application instance right after the transaction storing them commits,
+ * and of the changes made by any other instance when they are read from the change log.
+ */
+public interface TweetChangeListener {
+
+    /**
+     * @param change The change made on a tweet.
+     */
+    void onTweetChange(TweetChange change);
+}
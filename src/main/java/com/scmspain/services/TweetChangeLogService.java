@@ -0,0 +1,192 @@
+package com.scmspain.services;
+
+import com.scmspain.entities.TweetChange;
+import com.scmspain.persistence.TweetStorage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.boot.actuate.metrics.writer.Delta;
+import org.springframework.boot.actuate.metrics.writer.MetricWriter;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+/**
+ * Follows the tweet change log, notifying the changes made by other application instances to the change listeners
+ * of this one, so their in-process state doesn't go stale.
+ *
+ * The change log is read by sequence number, which is the primary key, so each poll is a cheap index range scan.
+ * Sequence numbers are assigned when a change is inserted but become visible when its transaction commits, so a
+ * lower sequence number might show up after a higher one was read. Every skipped sequence number is remembered
+ * and looked up again on the next polls, until it shows up or is old enough to belong to a rolled back transaction.
+ *
+ * Entries are deleted once they are older than the retention, which is longer than the gap timeout so no entry
+ * still awaited as a gap is deleted. As entries are appended by sequence number, the last sequence number read is
+ * remembered on every trim, and the entries before the one remembered a retention ago are deleted, without reading
+ * their creation date. Every instance trims, deleting the same range.
+ */
+@Service
+public class TweetChangeLogService {
+    private static final Logger LOG = LoggerFactory.getLogger(TweetChangeLogService.class);
+
+    private final TweetStorage tweetStorage;
+    private final MetricWriter metricWriter;
+    private final List<TweetChangeListener> changeListeners;
+    private final String nodeId;
+    private final int batchSize;
+    private final long gapTimeoutMillis;
+    private final long retentionMillis;
+    private final LongSupplier clock;
+
+    private long lastSeq;
+    private final Map<Long, Long> gaps = new HashMap<>(); //sequence number -> time first missed (millis)
+    private final Deque<long[]> marks = new ArrayDeque<>(); //[time (millis), last sequence number read then]
+
+    /**
+     * @param tweetStorage The storage to read the change log from.
+     * @param metricWriter Writer of the replication metrics.
+     * @param changeListeners The listeners to be notified of changes made by other instances.
+     * @param nodeId Identifier of this application instance, whose own changes are skipped.
+     * @param batchSize Maximum amount of changes read on each poll.
+     * @param gapTimeoutMillis Time after which a skipped sequence number is considered rolled back.
+     * @param retentionMillis Time after which an entry is deleted, longer than the gap timeout.
+     * @throws IllegalArgumentException when the retention is not longer than the gap timeout.
+     */
+    public TweetChangeLogService(TweetStorage tweetStorage, MetricWriter metricWriter,
+                                 List<TweetChangeListener> changeListeners, String nodeId,
+                                 int batchSize, long gapTimeoutMillis, long retentionMillis) {
+        this(tweetStorage, metricWriter, changeListeners, nodeId, batchSize, gapTimeoutMillis, retentionMillis,
+                System::currentTimeMillis);
+    }
+
+    /**
+     * @param clock Current time in milliseconds.
+     */
+    TweetChangeLogService(TweetStorage tweetStorage, MetricWriter metricWriter,
+                          List<TweetChangeListener> changeListeners, String nodeId,
+                          int batchSize, long gapTimeoutMillis, long retentionMillis, LongSupplier clock) {
+        if(retentionMillis <= gapTimeoutMillis){
+            throw new IllegalArgumentException("Change log retention ["+ retentionMillis
+                    +" ms] must be longer than the gap timeout ["+ gapTimeoutMillis +" ms].");
+        }
+        this.tweetStorage = tweetStorage;
+        this.metricWriter = metricWriter;
+        this.changeListeners = changeListeners;
+        this.nodeId = nodeId;
+        this.batchSize = batchSize;
+        this.gapTimeoutMillis = gapTimeoutMillis;
+        this.retentionMillis = retentionMillis;
+        this.clock = clock;
+    }
+
+    /**
+     * Starts following the change log from its current end, as the in-process state is seeded from the
+     * repository itself at startup.
+     */
+    @PostConstruct
+    public synchronized void start() {
+        this.lastSeq = this.tweetStorage.findLastChangeSeq();
+        LOG.debug("Following the tweet change log from sequence number ["+ this.lastSeq +"].");
+    }
+
+    /**
+     * Reads the changes appended since the last poll, notifying the ones made by other instances.
+     * @return The amount of changes read.
+     */
+    @Scheduled(fixedDelayString = "${tweet.changelog.poll-interval-ms:1000}")
+    public synchronized int poll() {
+        final long now = this.clock.getAsLong();
+        final List<TweetChange> changes = new ArrayList<>();
+        changes.addAll(this.tweetStorage.findChanges(new ArrayList<>(this.gaps.keySet())));
+        for(TweetChange change : changes){
+            this.gaps.remove(change.getSeq());
+        }
+        expireGaps(now);
+
+        final List<TweetChange> appended = this.tweetStorage.findChangesAfter(this.lastSeq, this.batchSize);
+        for(TweetChange change : appended){
+            for(long seq = this.lastSeq + 1; seq < change.getSeq(); seq++){
+                this.gaps.put(seq, now);
+            }
+            this.lastSeq = change.getSeq();
+        }
+        changes.addAll(appended);
+
+        long lagMillis = 0;
+        for(TweetChange change : changes){
+            if(!this.nodeId.equals(change.getNodeId())){
+                notifyChange(change);
+            }
+            lagMillis = Math.max(lagMillis, Duration.between(change.getCreatedAt(), Instant.now()).toMillis());
+        }
+
+        this.metricWriter.increment(new Delta<Number>("changelog.read-changes", changes.size()));
+        this.metricWriter.set(new Metric<Number>("changelog.replication-lag-ms", lagMillis));
+        this.metricWriter.set(new Metric<Number>("changelog.last-seq", this.lastSeq));
+        this.metricWriter.set(new Metric<Number>("changelog.pending-gaps", this.gaps.size()));
+
+        return changes.size();
+    }
+
+    /**
+     * Deletes the entries older than the retention.
+     * @return The amount of entries deleted.
+     */
+    @Scheduled(initialDelayString = "${tweet.changelog.trim-interval-ms:60000}",
+            fixedDelayString = "${tweet.changelog.trim-interval-ms:60000}")
+    public int trim() {
+        final long now = this.clock.getAsLong();
+        long before = 0;
+        synchronized (this) {
+            this.marks.addLast(new long[]{now, this.lastSeq});
+            while(this.marks.peekFirst()[0] <= now - this.retentionMillis){
+                before = this.marks.pollFirst()[1];
+            }
+        }
+        if(before <= 0){
+            return 0;
+        }
+
+        final int deleted = this.tweetStorage.deleteChangesBefore(before);
+        this.metricWriter.increment(new Delta<Number>("changelog.trimmed-changes", deleted));
+        LOG.debug("Deleted "+ deleted +" change log entries before sequence number ["+ before +"].");
+        return deleted;
+    }
+
+    /**
+     * @return The sequence number of the last change read.
+     */
+    public synchronized long getLastSeq() {
+        return this.lastSeq;
+    }
+
+    private void notifyChange(final TweetChange change) {
+        for(TweetChangeListener listener : this.changeListeners){
+            try {
+                listener.onTweetChange(change);
+            } catch (RuntimeException ex){
+                LOG.warn("Change listener failed handling change ["+ change.getSeq() +"]!", ex);
+            }
+        }
+    }
+
+    private void expireGaps(final long now) {
+        final Iterator<Map.Entry<Long, Long>> iterator = this.gaps.entrySet().iterator();
+        while(iterator.hasNext()){
+            if(now - iterator.next().getValue() > this.gapTimeoutMillis){
+                iterator.remove();
+            }
+        }
+    }
+}
@@ -0,0 +1,202 @@
+package com.scmspain.services;
+
+import com.scmspain.entities.TweetChange;
+import com.scmspain.persistence.TweetStorage;
+import com.scmspain.utils.SnowflakeIdGenerator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.boot.actuate.metrics.writer.Delta;
+import org.springframework.boot.actuate.metrics.writer.MetricWriter;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationListener;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Retention policy, deleting the tweets published longer ago than the published tweets maximum age and the ones
+ * discarded longer ago than the discarded tweets maximum age. A zero maximum age keeps those tweets forever.
+ *
+ * The purge runs periodically on its own thread once the application is ready. Like {@link
+ * com.scmspain.persistence.DiscardedAtMigration}, it works in small chunks, each one deleted by primary key on its
+ * own short transaction and followed by a pause, and never deletes more tweets per second than allowed, so it
+ * doesn't hold long locks or compete with the requests being served. Published tweets are found walking the
+ * primary key index, as ids are time ordered, and discarded tweets walking the discard date index. Every deleted
+ * tweet is appended to the change log and notified to the change listeners, and the links no other tweet refers to
+ * are deleted along with it.
+ */
+public class TweetRetentionService implements ApplicationListener<ApplicationReadyEvent>, DisposableBean {
+    private static final Logger LOG = LoggerFactory.getLogger(TweetRetentionService.class);
+
+    private final TweetStorage tweetStorage;
+    private final MetricWriter metricWriter;
+    private final List<TweetChangeListener> changeListeners;
+    private final Duration publishedMaxAge;
+    private final Duration discardedMaxAge;
+    private final int chunkSize;
+    private final long pauseMillis;
+    private final int maxTweetsPerSecond;
+    private final long intervalMillis;
+
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        final Thread thread = new Thread(runnable, "tweet-retention");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private long backlog;
+    private long purged;
+    private long startedAt;
+
+    /**
+     * @param tweetStorage The storage used to find and delete the tweets.
+     * @param metricWriter Writer of the purge metrics.
+     * @param changeListeners The listeners to be notified of every deleted tweet.
+     * @param publishedMaxAge Maximum age of the published tweets, zero to keep them forever.
+     * @param discardedMaxAge Maximum time a tweet is kept once discarded, zero to keep them forever.
+     * @param chunkSize Amount of tweets deleted on each transaction.
+     * @param pauseMillis Minimum pause between two chunks.
+     * @param maxTweetsPerSecond Maximum amount of tweets deleted per second, zero or less to only pause between
+     * chunks.
+     * @param intervalMillis Time between the end of a purge and the start of the next one.
+     */
+    public TweetRetentionService(TweetStorage tweetStorage, MetricWriter metricWriter,
+                                 List<TweetChangeListener> changeListeners,
+                                 Duration publishedMaxAge, Duration discardedMaxAge,
+                                 int chunkSize, long pauseMillis, int maxTweetsPerSecond, long intervalMillis) {
+        this.tweetStorage = tweetStorage;
+        this.metricWriter = metricWriter;
+        this.changeListeners = changeListeners;
+        this.publishedMaxAge = publishedMaxAge;
+        this.discardedMaxAge = discardedMaxAge;
+        this.chunkSize = chunkSize;
+        this.pauseMillis = pauseMillis;
+        this.maxTweetsPerSecond = maxTweetsPerSecond;
+        this.intervalMillis = intervalMillis;
+    }
+
+    @Override
+    public void onApplicationEvent(ApplicationReadyEvent event) {
+        if(!isEnabled(this.publishedMaxAge) && !isEnabled(this.discardedMaxAge)){
+            LOG.debug("No retention policy configured, tweets are kept forever.");
+            return;
+        }
+        this.executor.scheduleWithFixedDelay(this::purge, this.intervalMillis, this.intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        this.executor.shutdownNow();
+        this.executor.awaitTermination(5, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Deletes every tweet past its maximum age, chunk by chunk.
+     * @return The amount of tweets deleted.
+     */
+    public synchronized long purge() {
+        final Instant now = Instant.now();
+        this.purged = 0;
+        this.startedAt = System.nanoTime();
+
+        try {
+            this.backlog = countBacklog(now);
+            reportProgress();
+
+            if(isEnabled(this.discardedMaxAge)){
+                purgeDiscarded(now.minus(this.discardedMaxAge));
+            }
+            if(isEnabled(this.publishedMaxAge)){
+                purgePublished(now.minus(this.publishedMaxAge));
+            }
+            LOG.info("Retention purge finished, "+ this.purged +" tweet(s) deleted.");
+        } catch (InterruptedException ex){
+            LOG.info("Retention purge interrupted after deleting "+ this.purged +" tweet(s).");
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException ex){
+            LOG.warn("Retention purge failed after deleting "+ this.purged +" tweet(s), it will be retried on next run.", ex);
+        }
+        return this.purged;
+    }
+
+    private void purgeDiscarded(final Instant discardedBefore) throws InterruptedException {
+        List<Long> ids;
+        while(!(ids = this.tweetStorage.findDiscardedTweetIdsBefore(discardedBefore, this.chunkSize)).isEmpty()){
+            purgeChunk(ids);
+        }
+    }
+
+    private void purgePublished(final Instant publishedBefore) throws InterruptedException {
+        final long beforeId = SnowflakeIdGenerator.lowestIdAt(publishedBefore);
+        long afterId = Long.MIN_VALUE;
+
+        List<Object[]> rows;
+        while(!(rows = this.tweetStorage.findPublishedTweetsBefore(afterId, beforeId, this.chunkSize)).isEmpty()){
+            final List<Long> ids = new ArrayList<>();
+            for(Object[] row : rows){
+                // tweets stored before ids were time ordered have low ids no matter their age.
+                if(row[1] instanceof Instant && ((Instant) row[1]).isBefore(publishedBefore)){
+                    ids.add((Long) row[0]);
+                }
+            }
+            afterId = (Long) rows.get(rows.size() - 1)[0];
+            purgeChunk(ids);
+        }
+    }
+
+    private void purgeChunk(final List<Long> ids) throws InterruptedException {
+        final long start = System.currentTimeMillis();
+
+        final List<TweetChange> changes = this.tweetStorage.purgeTweets(ids);
+        for(TweetChange change : changes){
+            notifyChange(change);
+        }
+
+        this.purged += changes.size();
+        this.backlog = Math.max(0, this.backlog - ids.size());
+        this.metricWriter.increment(new Delta<Number>("retention.purged-tweets", changes.size()));
+        reportProgress();
+
+        final long elapsed = System.currentTimeMillis() - start;
+        final long throttleMillis = this.maxTweetsPerSecond > 0 ? ids.size() * 1000L / this.maxTweetsPerSecond - elapsed : 0;
+        Thread.sleep(Math.max(this.pauseMillis, throttleMillis));
+    }
+
+    private long countBacklog(final Instant now) {
+        long backlog = 0;
+        if(isEnabled(this.discardedMaxAge)){
+            backlog += this.tweetStorage.countDiscardedTweetsBefore(now.minus(this.discardedMaxAge));
+        }
+        if(isEnabled(this.publishedMaxAge)){
+            backlog += this.tweetStorage.countPublishedTweetsBefore(SnowflakeIdGenerator.lowestIdAt(now.minus(this.publishedMaxAge)));
+        }
+        return backlog;
+    }
+
+    private void reportProgress() {
+        final double seconds = (System.nanoTime() - this.startedAt) / 1e9;
+        this.metricWriter.set(new Metric<Number>("retention.backlog", this.backlog));
+        this.metricWriter.set(new Metric<Number>("retention.purge-rate", seconds > 0 ? this.purged / seconds : 0));
+    }
+
+    private void notifyChange(final TweetChange change) {
+        for(TweetChangeListener listener : this.changeListeners){
+            try {
+                listener.onTweetChange(change);
+            } catch (RuntimeException ex){
+                LOG.warn("Change listener failed handling purge of tweet ["+ change.getTweetId() +"]!", ex);
+            }
+        }
+    }
+
+    private static boolean isEnabled(final Duration maxAge) {
+        return !maxAge.isZero() && !maxAge.isNegative();
+    }
+}
@@ -1,25 +1,41 @@
 package com.scmspain.services;
 
 import com.scmspain.entities.Tweet;
-import com.scmspain.persistence.TweetPersistence;
+import com.scmspain.entities.TweetChange;
+import com.scmspain.persistence.ReadResult;
+import com.scmspain.persistence.RepositoryGuard;
+import com.scmspain.persistence.TweetStorage;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.boot.actuate.metrics.writer.Delta;
 import org.springframework.boot.actuate.metrics.writer.MetricWriter;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import javax.transaction.Transactional;
 import java.util.List;
+import java.util.function.Consumer;
 
 @Service
 public class TweetService {
     private static final Logger LOG = LoggerFactory.getLogger(TweetService.class);
     private MetricWriter metricWriter;
-    private TweetPersistence tweetPersistence;
+    private TweetStorage tweetStorage;
+    private List<TweetChangeListener> changeListeners;
+    private RepositoryGuard repositoryGuard;
+    private TweetCache tweetCache;
+    private TimelineCache timelineCache;
 
-    public TweetService(TweetPersistence tweetPersistence, MetricWriter metricWriter) {
-        this.tweetPersistence = tweetPersistence;
+    public TweetService(TweetStorage tweetStorage, MetricWriter metricWriter,
+                        List<TweetChangeListener> changeListeners, RepositoryGuard repositoryGuard,
+                        TweetCache tweetCache, TimelineCache timelineCache) {
+        this.tweetStorage = tweetStorage;
         this.metricWriter = metricWriter;
+        this.changeListeners = changeListeners;
+        this.repositoryGuard = repositoryGuard;
+        this.tweetCache = tweetCache;
+        this.timelineCache = timelineCache;
     }
 
     /**
@@ -28,27 +44,59 @@ public class TweetService {
     */
     @Transactional
     public void publishTweet(Tweet tweet) {
+        this.repositoryGuard.checkWritable();
         this.metricWriter.increment(new Delta<Number>("published-tweets", 1));
-        this.tweetPersistence.saveTweet(tweet);
+        notifyChange(this.tweetStorage.saveTweet(tweet));
     }
 
     /**
-     * Recover all tweets from repository descended by publicationDate.
-     * @return All available Tweets descended by publicationDate.
+     * Recover all tweets descended by publicationDate, from the timeline cache whenever possible.
+     * @return All available Tweets descended by publicationDate, stale while the repository is degraded.
      */
-    public List<Tweet> listAllTweets() {
+    public ReadResult<List<Tweet>> listAllTweets() {
         this.metricWriter.increment(new Delta<Number>("times-queried-tweets", 1));
-        return this.tweetPersistence.findNonDiscardedTweets();
+
+        final ReadResult<List<Tweet>> cached = this.timelineCache.read();
+        if(cached != null){
+            return cached;
+        }
+        return this.repositoryGuard.read("timeline", this.tweetStorage::findNonDiscardedTweets);
+    }
+
+    /**
+     * Recover a published tweet, from the tweet cache whenever possible.
+     * @param id The id of the tweet.
+     * @return The tweet, or a null value when there is no such tweet or it was discarded. Stale while the
+     * repository is degraded.
+     */
+    public ReadResult<Tweet> getTweet(Long id) {
+        this.metricWriter.increment(new Delta<Number>("times-queried-tweet", 1));
+
+        final Tweet cached = this.tweetCache.get(id);
+        if(cached != null){
+            return new ReadResult<>(cached, false);
+        }
+
+        final long version = this.tweetCache.version();
+        final ReadResult<Tweet> result = this.repositoryGuard.read(TweetCache.readKey(id), () -> this.tweetStorage.findTweetById(id));
+        final Tweet tweet = result.getValue();
+        if(tweet == null || Boolean.TRUE.equals(tweet.isDiscarded())){
+            return new ReadResult<>(null, result.isStale());
+        }
+        if(!result.isStale()){
+            this.tweetCache.put(tweet, version);
+        }
+        return result;
     }
 
     /**
      * Recover all discarded tweets for the given publisher.
      * @param publisher A publisher of discarded tweets
-     * @return A List of all discarded tweets of the given publisher.
+     * @return A List of all discarded tweets of the given publisher, stale while the repository is degraded.
      */
-    public List<Tweet> listDiscardedTweets(String publisher){
+    public ReadResult<List<Tweet>> listDiscardedTweets(String publisher){
         this.metricWriter.increment(new Delta<Number>("times-queried-discarded-tweets", 1));
-        return this.tweetPersistence.findDiscardedTweets(publisher);
+        return this.repositoryGuard.read("discarded:"+ publisher, () -> this.tweetStorage.findDiscardedTweets(publisher));
     }
 
     /**
@@ -57,8 +105,45 @@ public class TweetService {
      */
     @Transactional
     public void discardTweet(Tweet tweet){
+        discardTweet(tweet, publisher -> {});
+    }
+
+    /**
+     * Marks a tweet, based on the given id, as discarded, checking its publisher first.
+     * @param tweet The tweet instance containing the id of tweet to be marked as discarded.
+     * @param beforeDiscard Called with the publisher of the tweet, as loaded to discard it, right before it is
+     *                      marked. Not called when the tweet was already discarded.
+     */
+    @Transactional
+    public void discardTweet(Tweet tweet, Consumer<String> beforeDiscard){
+        this.repositoryGuard.checkWritable();
         this.metricWriter.increment(new Delta<Number>("discarded-tweets", 1));
-        this.tweetPersistence.discardTweet(tweet);
+        notifyChange(this.tweetStorage.discardTweet(tweet, beforeDiscard));
+    }
+
+    /**
+     * Notify the stored change to every change listener once the transaction storing it commits, so no listener
+     * acts on a change that is not visible yet or gets rolled back. Right away when there is no transaction.
+     * @param change The change stored, null when nothing changed.
+     */
+    private void notifyChange(final TweetChange change){
+        if(change == null){ return; }
+        if(!TransactionSynchronizationManager.isSynchronizationActive()){
+            notifyListeners(change);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCommit() {
+                notifyListeners(change);
+            }
+        });
+    }
+
+    private void notifyListeners(final TweetChange change){
+        for(TweetChangeListener listener : this.changeListeners){
+            listener.onTweetChange(change);
+        }
     }
 
 }
@@ -0,0 +1,303 @@
+package com.scmspain.services;
+
+import com.scmspain.entities.TweetChange;
+import com.scmspain.persistence.TweetStorage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * In-memory counters of published and discarded tweets, in total and per publisher. The counters are seeded with
+ * a single aggregate query at startup and then maintained incrementally from every tweet change, so reading them
+ * never touches the repository. Counters are kept on an array indexed by publisher key, as the storage hands out
+ * dense keys, so counting a tweet neither boxes its key nor hashes it. The publisher name is only looked up on the
+ * storage when read. As writes and counter updates are not atomic (e.g. a change missed while seeding),
+ * the counters are periodically checked against the repository and replaced by its values whenever they drifted.
+ */
+@Service
+public class TweetStatisticsService implements TweetChangeListener {
+    private static final Logger LOG = LoggerFactory.getLogger(TweetStatisticsService.class);
+    private static final int INITIAL_PUBLISHERS = 1024;
+
+    private final TweetStorage tweetStorage;
+
+    private final AtomicLong published = new AtomicLong();
+    private final AtomicLong discarded = new AtomicLong();
+    private volatile AtomicReferenceArray<Counters> publishers = new AtomicReferenceArray<>(INITIAL_PUBLISHERS);
+
+    public TweetStatisticsService(TweetStorage tweetStorage) {
+        this.tweetStorage = tweetStorage;
+    }
+
+    /**
+     * Seeds the counters from the repository.
+     */
+    @PostConstruct
+    public void seed() {
+        LOG.debug("Seeding tweet statistics...");
+        replaceCounters(countTweetsByPublisher());
+    }
+
+    /**
+     * Checks the counters against the repository, replacing them by the repository values in case any drift
+     * is found. Updates happening while the check runs might be lost, in which case they will be fixed by the
+     * next check.
+     */
+    @Scheduled(initialDelayString = "${tweet.statistics.reconcile-interval-ms:300000}",
+            fixedDelayString = "${tweet.statistics.reconcile-interval-ms:300000}")
+    public void reconcile() {
+        LOG.debug("Checking tweet statistics against the repository...");
+
+        final Map<Integer, Counts> actual = countTweetsByPublisher();
+        if(!actual.equals(countsByPublisherId())){
+            LOG.warn("Tweet statistics drifted from the repository, replacing them with the repository values.");
+            replaceCounters(actual);
+        }
+    }
+
+    /**
+     * @see TweetChangeListener#onTweetChange(TweetChange)
+     */
+    @Override
+    public void onTweetChange(final TweetChange change) {
+        switch (change.getType()) {
+            case PUBLISHED:
+                published(change.getPublisherId());
+                break;
+            case DISCARDED:
+                discarded(change.getPublisherId());
+                break;
+            case PUBLISHED_PURGED:
+                purged(change.getPublisherId(), false);
+                break;
+            case DISCARDED_PURGED:
+                purged(change.getPublisherId(), true);
+                break;
+        }
+    }
+
+    /**
+     * Counts a new published tweet.
+     * @param publisher The publisher key of the tweet.
+     */
+    public void published(final int publisher) {
+        this.published.incrementAndGet();
+        counters(publisher).published.incrementAndGet();
+    }
+
+    /**
+     * Moves a tweet from the published count to the discarded count.
+     * @param publisher The publisher key of the tweet.
+     */
+    public void discarded(final int publisher) {
+        this.published.decrementAndGet();
+        this.discarded.incrementAndGet();
+
+        final Counters counters = counters(publisher);
+        counters.published.decrementAndGet();
+        counters.discarded.incrementAndGet();
+    }
+
+    /**
+     * Uncounts a tweet deleted by the retention policy.
+     * @param publisher The publisher key of the tweet.
+     * @param discarded Whether the tweet was discarded.
+     */
+    public void purged(final int publisher, final boolean discarded) {
+        final Counters counters = counters(publisher);
+        if(discarded){
+            this.discarded.decrementAndGet();
+            counters.discarded.decrementAndGet();
+        } else {
+            this.published.decrementAndGet();
+            counters.published.decrementAndGet();
+        }
+    }
+
+    /**
+     * Recover the counts of the given publisher.
+     * @param publisher A publisher of tweets.
+     * @return The current counts of the publisher, zero when the publisher has no tweets.
+     */
+    public Counts getCounts(final String publisher) {
+        final Integer publisherId = this.tweetStorage.findPublisherId(publisher);
+        final Counters counters = publisherId == null ? null : find(publisherId);
+        if(Objects.isNull(counters)){
+            return new Counts(0, 0);
+        }
+        return counters.toCounts();
+    }
+
+    /**
+     * @return The current total counts, together with the counts of every publisher.
+     */
+    public Statistics snapshot() {
+        final Map<String, Counts> publishers = new HashMap<>();
+        countsByPublisherId().forEach((publisher, counts) ->
+                publishers.put(this.tweetStorage.findPublisherName(publisher), counts));
+        return new Statistics(this.published.get(), this.discarded.get(), publishers);
+    }
+
+    private Counters find(final int publisher) {
+        final AtomicReferenceArray<Counters> publishers = this.publishers;
+        return publisher >= 0 && publisher < publishers.length() ? publishers.get(publisher) : null;
+    }
+
+    private Counters counters(final int publisher) {
+        final Counters counters = find(publisher);
+        return counters != null ? counters : create(publisher);
+    }
+
+    /**
+     * Creates the counters of a publisher seen for the first time, growing the array when needed. Creation and
+     * growth are serialized so no counters get lost while copying, while counting on existing ones never locks.
+     */
+    private synchronized Counters create(final int publisher) {
+        if(publisher < 0){
+            throw new IllegalArgumentException("Invalid publisher key ["+ publisher +"]!");
+        }
+
+        AtomicReferenceArray<Counters> publishers = this.publishers;
+        if(publisher >= publishers.length()){
+            final AtomicReferenceArray<Counters> grown = new AtomicReferenceArray<>(
+                    Math.max(publishers.length() * 2, publisher + 1));
+            for(int i = 0; i < publishers.length(); i++){
+                grown.set(i, publishers.get(i));
+            }
+            this.publishers = grown;
+            publishers = grown;
+        }
+
+        Counters counters = publishers.get(publisher);
+        if(counters == null){
+            counters = new Counters();
+            publishers.set(publisher, counters);
+        }
+        return counters;
+    }
+
+    private synchronized void retain(final Map<Integer, Counts> counts) {
+        final AtomicReferenceArray<Counters> publishers = this.publishers;
+        for(int i = 0; i < publishers.length(); i++){
+            if(!counts.containsKey(i)){
+                publishers.set(i, null);
+            }
+        }
+    }
+
+    private Map<Integer, Counts> countsByPublisherId() {
+        final Map<Integer, Counts> counts = new HashMap<>();
+        final AtomicReferenceArray<Counters> publishers = this.publishers;
+        for(int i = 0; i < publishers.length(); i++){
+            final Counters counters = publishers.get(i);
+            if(counters != null){
+                counts.put(i, counters.toCounts());
+            }
+        }
+        return counts;
+    }
+
+    private Map<Integer, Counts> countTweetsByPublisher() {
+        final Map<Integer, Counts> result = new HashMap<>();
+        final List<Object[]> rows = this.tweetStorage.countTweetsByPublisher();
+
+        for(Object[] row : rows){
+            final Integer publisher = (Integer) row[0];
+            final long count = ((Number) row[2]).longValue();
+            final Counts counts = result.getOrDefault(publisher, new Counts(0, 0));
+
+            if(Boolean.TRUE.equals(row[1])){
+                result.put(publisher, new Counts(counts.getPublished(), counts.getDiscarded() + count));
+            } else {
+                result.put(publisher, new Counts(counts.getPublished() + count, counts.getDiscarded()));
+            }
+        }
+
+        return result;
+    }
+
+    private void replaceCounters(final Map<Integer, Counts> counts) {
+        long published = 0;
+        long discarded = 0;
+
+        retain(counts);
+        for(Map.Entry<Integer, Counts> entry : counts.entrySet()){
+            final Counters counters = counters(entry.getKey());
+            counters.published.set(entry.getValue().getPublished());
+            counters.discarded.set(entry.getValue().getDiscarded());
+            published += entry.getValue().getPublished();
+            discarded += entry.getValue().getDiscarded();
+        }
+
+        this.published.set(published);
+        this.discarded.set(discarded);
+    }
+
+    private static class Counters {
+        private final AtomicLong published = new AtomicLong();
+        private final AtomicLong discarded = new AtomicLong();
+
+        private Counts toCounts() {
+            return new Counts(published.get(), discarded.get());
+        }
+    }
+
+    /**
+     * Published and discarded tweet counts.
+     */
+    public static class Counts {
+        private final long published;
+        private final long discarded;
+
+        public Counts(long published, long discarded) {
+            this.published = published;
+            this.discarded = discarded;
+        }
+
+        public long getPublished() {
+            return published;
+        }
+
+        public long getDiscarded() {
+            return discarded;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Counts counts = (Counts) o;
+            return published == counts.published && discarded == counts.discarded;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(published, discarded);
+        }
+    }
+
+    /**
+     * Total counts together with the counts of every publisher.
+     */
+    public static class Statistics extends Counts {
+        private final Map<String, Counts> publishers;
+
+        public Statistics(long published, long discarded, Map<String, Counts> publishers) {
+            super(published, discarded);
+            this.publishers = publishers;
+        }
+
+        public Map<String, Counts> getPublishers() {
+            return publishers;
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package com.scmspain.utils;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Circuit breaker judging a dependency by the outcome of its last calls. While closed every call is allowed and
+ * its outcome recorded on a sliding window; once the window holds enough calls and too many of them failed or were
+ * slow, the circuit opens and calls are refused for a while. After that while a single trial call is allowed
+ * (half open): if it succeeds in time the circuit closes again, otherwise it opens for another while.
+ *
+ * Callers ask {@link #tryAcquire()} before calling and report every call allowed, either with
+ * {@link #onResult(State, long, boolean)} or, when the call didn't happen after all, with {@link #release(State)},
+ * telling the state the call was allowed in. A call allowed while closed which ends once half open is not taken for
+ * the trial call.
+ */
+public class CircuitBreaker {
+
+    public enum State { CLOSED, HALF_OPEN, OPEN }
+
+    private final int minimumCalls;
+    private final int failureRatePercent;
+    private final long slowCallNanos;
+    private final long openNanos;
+    private final LongSupplier clock;
+
+    private final boolean[] failedOrSlow; // ring of the last calls outcome, true when failed or slow.
+    private int next;
+    private int calls;
+    private int bad;
+
+    private State state = State.CLOSED;
+    private long openUntil;
+    private boolean trialInFlight;
+
+    /**
+     * @param windowSize The amount of last calls judged.
+     * @param minimumCalls The amount of calls needed on the window before judging it.
+     * @param failureRatePercent The percentage of failed or slow calls on the window that opens the circuit.
+     * @param slowCallMillis The duration over which a call is considered slow.
+     * @param openMillis The time calls are refused once the circuit opens.
+     */
+    public CircuitBreaker(int windowSize, int minimumCalls, int failureRatePercent, long slowCallMillis, long openMillis) {
+        this(windowSize, minimumCalls, failureRatePercent, slowCallMillis, openMillis, System::nanoTime);
+    }
+
+    /**
+     * @param windowSize The amount of last calls judged.
+     * @param minimumCalls The amount of calls needed on the window before judging it.
+     * @param failureRatePercent The percentage of failed or slow calls on the window that opens the circuit.
+     * @param slowCallMillis The duration over which a call is considered slow.
+     * @param openMillis The time calls are refused once the circuit opens.
+     * @param clock The source of the current time, in nanoseconds.
+     */
+    public CircuitBreaker(int windowSize, int minimumCalls, int failureRatePercent, long slowCallMillis, long openMillis,
+                          LongSupplier clock) {
+        if(windowSize < 1 || minimumCalls < 1 || minimumCalls > windowSize){
+            throw new IllegalArgumentException("Minimum calls must be between 1 and the window size ["+ windowSize +"].");
+        }
+        this.failedOrSlow = new boolean[windowSize];
+        this.minimumCalls = minimumCalls;
+        this.failureRatePercent = failureRatePercent;
+        this.slowCallNanos = TimeUnit.MILLISECONDS.toNanos(slowCallMillis);
+        this.openNanos = TimeUnit.MILLISECONDS.toNanos(openMillis);
+        this.clock = clock;
+    }
+
+    /**
+     * @return The state a call is allowed in now, CLOSED or HALF_OPEN for the trial call, which must be given back
+     * when reporting its outcome. Null when no call is allowed now.
+     */
+    public synchronized State tryAcquire() {
+        switch (this.state) {
+            case CLOSED:
+                return State.CLOSED;
+            case OPEN:
+                if(this.clock.getAsLong() - this.openUntil < 0){
+                    return null;
+                }
+                this.state = State.HALF_OPEN;
+                return acquireTrial();
+            default:
+                return acquireTrial();
+        }
+    }
+
+    /**
+     * Reports an allowed call that didn't happen after all.
+     * @param admittedIn The state the call was allowed in.
+     */
+    public synchronized void release(State admittedIn) {
+        if(admittedIn == State.HALF_OPEN){
+            this.trialInFlight = false;
+        }
+    }
+
+    /**
+     * Reports the outcome of an allowed call.
+     * @param admittedIn The state the call was allowed in.
+     * @param durationNanos How long the call took.
+     * @param failed Whether the call failed.
+     */
+    public synchronized void onResult(State admittedIn, long durationNanos, boolean failed) {
+        final boolean badCall = failed || durationNanos > this.slowCallNanos;
+
+        if(admittedIn == State.HALF_OPEN){
+            this.trialInFlight = false;
+            if(badCall){
+                open();
+            } else {
+                close();
+            }
+        } else if(this.state == State.CLOSED){
+            record(badCall);
+            if(this.calls >= this.minimumCalls && this.bad * 100 >= this.failureRatePercent * this.calls){
+                open();
+            }
+        }
+        // otherwise the call started before opening, which was already judged.
+    }
+
+    /**
+     * @return The current state, without moving an open circuit to half open.
+     */
+    public synchronized State getState() {
+        return this.state;
+    }
+
+    private State acquireTrial() {
+        if(this.trialInFlight){
+            return null;
+        }
+        this.trialInFlight = true;
+        return State.HALF_OPEN;
+    }
+
+    private void record(final boolean badCall) {
+        if(this.calls == this.failedOrSlow.length){
+            if(this.failedOrSlow[this.next]){
+                this.bad--;
+            }
+        } else {
+            this.calls++;
+        }
+        this.failedOrSlow[this.next] = badCall;
+        if(badCall){
+            this.bad++;
+        }
+        this.next = (this.next + 1) % this.failedOrSlow.length;
+    }
+
+    private void open() {
+        this.state = State.OPEN;
+        this.openUntil = this.clock.getAsLong() + this.openNanos;
+    }
+
+    private void close() {
+        this.state = State.CLOSED;
+        this.next = 0;
+        this.calls = 0;
+        this.bad = 0;
+    }
+}
@@ -0,0 +1,67 @@
+package com.scmspain.utils;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Count-min sketch of long keys: a fixed size table of counters estimating how many times each key was counted,
+ * using the same memory no matter how many distinct keys there are. Each key is counted on one counter of every
+ * row, picked by a different hash per row, and its estimate is the smallest of them. As long as no count goes
+ * below zero, estimates are never lower than the real count and exceed it by at most 2.72 / width times the
+ * total of all counts, with probability 1 - 0.37 ^ depth.
+ *
+ * Counters are updated atomically, so the sketch can be shared by several threads without locking.
+ */
+public class CountMinSketch {
+
+    private final int depth;
+    private final int mask;
+    private final AtomicLongArray counters;
+
+    /**
+     * @param depth The amount of rows, the more rows the likelier estimates are within bounds.
+     * @param width The amount of counters per row, rounded up to a power of two, the wider the more accurate.
+     */
+    public CountMinSketch(int depth, int width) {
+        if(depth < 1 || width < 1 || width > 1 << 30){
+            throw new IllegalArgumentException("Invalid sketch dimensions "+ depth +"x"+ width +".");
+        }
+        this.depth = depth;
+        this.mask = (width == 1 ? 1 : Integer.highestOneBit(width - 1) << 1) - 1;
+        this.counters = new AtomicLongArray(depth * (this.mask + 1));
+    }
+
+    /**
+     * Adds the given amount to the count of a key.
+     * @param key The key counted.
+     * @param delta The amount to add, negative to remove previous counts.
+     * @return The new estimate of the key count.
+     */
+    public long add(long key, long delta) {
+        long estimate = Long.MAX_VALUE;
+        for(int row = 0; row < this.depth; row++){
+            estimate = Math.min(estimate, this.counters.addAndGet(index(row, key), delta));
+        }
+        return estimate;
+    }
+
+    /**
+     * @param key A key.
+     * @return The estimate of the key count, never lower than the real count.
+     */
+    public long estimate(long key) {
+        long estimate = Long.MAX_VALUE;
+        for(int row = 0; row < this.depth; row++){
+            estimate = Math.min(estimate, this.counters.get(index(row, key)));
+        }
+        return estimate;
+    }
+
+    private int index(int row, long key) {
+        // splitmix64 finalizer over the key salted by row, spreading similar keys over unrelated counters.
+        long hash = key + (row + 1) * 0x9E3779B97F4A7C15L;
+        hash = (hash ^ (hash >>> 30)) * 0xBF58476D1CE4E5B9L;
+        hash = (hash ^ (hash >>> 27)) * 0x94D049BB133111EBL;
+        hash = hash ^ (hash >>> 31);
+        return row * (this.mask + 1) + (int) (hash & this.mask);
+    }
+}
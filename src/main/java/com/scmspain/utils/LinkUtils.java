@@ -1,5 +1,6 @@
 package com.scmspain.utils;
 
+import com.scmspain.entities.Link;
 import com.scmspain.entities.Tweet;
 import com.scmspain.entities.TweetLink;
 
@@ -32,7 +33,7 @@ public class LinkUtils {
 
             final TweetLink tweetLink = new TweetLink(tweet.getId());
             tweetLink.setIndex(start);
-            tweetLink.setLink(link);
+            tweetLink.setLink(new Link(link));
 
             tweet.addLink(tweetLink);
             sb.delete(sb.indexOf(link), (sb.indexOf(link) + link.length()));
@@ -55,7 +56,7 @@ public class LinkUtils {
         final StringBuilder text = new StringBuilder(tweet.getTweet());
 
         for(TweetLink link : tweet.getLinks()){
-            text.insert(link.getIndex(), link.getLink());
+            text.insert(link.getIndex(), link.getLink().getUrl());
         }
 
         tweet.setTweet(text.toString());
@@ -63,4 +64,19 @@ public class LinkUtils {
         return tweet;
     }
 
+    /**
+     * 64 bit FNV-1a hash of the given link, used as the key of the link dictionary.
+     * @param link The link to hash.
+     * @return The hash of the link.
+     */
+    public static long hash(final String link){
+        long hash = 0xcbf29ce484222325L;
+        for(int i = 0; i < link.length(); i++){
+            final char c = link.charAt(i);
+            hash = (hash ^ (c & 0xff)) * 0x100000001b3L;
+            hash = (hash ^ (c >>> 8)) * 0x100000001b3L;
+        }
+        return hash;
+    }
+
 }
@@ -0,0 +1,108 @@
+package com.scmspain.utils;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Token bucket rate limiter per key, implemented as the generic cell rate algorithm: each bucket is a single
+ * AtomicLong holding the theoretical arrival time of the next request, and taking a token is one compare and set
+ * pushing it forward by the emission interval, so no lock is ever taken. A request is allowed while the theoretical
+ * arrival time is at most the burst tolerance ahead of now.
+ *
+ * A bucket whose theoretical arrival time is in the past is full, so it is idle and can be dropped, a new bucket
+ * behaving just the same. Buckets are bounded: once the maximum is reached, idle buckets are evicted (at most once
+ * per refill period), and the keys which still find no room share a single overflow bucket until then.
+ */
+public class RateLimiter {
+    private final long intervalNanos;
+    private final long toleranceNanos;
+    private final int maxKeys;
+    private final LongSupplier clock;
+
+    private final ConcurrentMap<String, AtomicLong> buckets = new ConcurrentHashMap<>();
+    private final AtomicLong overflow;
+    private final AtomicLong nextEviction;
+
+    /**
+     * @param permitsPerSecond The sustained rate allowed per key.
+     * @param burst The amount of requests a key is allowed at once after being idle.
+     * @param maxKeys The amount of buckets kept.
+     */
+    public RateLimiter(double permitsPerSecond, int burst, int maxKeys) {
+        this(permitsPerSecond, burst, maxKeys, System::nanoTime);
+    }
+
+    /**
+     * @param permitsPerSecond The sustained rate allowed per key.
+     * @param burst The amount of requests a key is allowed at once after being idle.
+     * @param maxKeys The amount of buckets kept.
+     * @param clock The source of the current time, in nanoseconds.
+     */
+    public RateLimiter(double permitsPerSecond, int burst, int maxKeys, LongSupplier clock) {
+        if(permitsPerSecond <= 0 || burst < 1 || maxKeys < 1){
+            throw new IllegalArgumentException("Rate, burst and maximum keys must be positive.");
+        }
+        this.intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / permitsPerSecond);
+        this.toleranceNanos = this.intervalNanos * (burst - 1);
+        this.maxKeys = maxKeys;
+        this.clock = clock;
+        this.overflow = new AtomicLong(clock.getAsLong());
+        this.nextEviction = new AtomicLong(clock.getAsLong());
+    }
+
+    /**
+     * Takes a token from the bucket of the given key.
+     * @param key The key to be limited.
+     * @return 0 when the request is allowed, otherwise the nanoseconds until it would be.
+     */
+    public long tryAcquire(final String key) {
+        final long now = this.clock.getAsLong();
+        final AtomicLong bucket = bucket(key, now);
+        while(true){
+            final long arrival = bucket.get();
+            final long start = arrival - now > 0 ? arrival : now;
+            final long wait = start - this.toleranceNanos - now;
+            if(wait > 0){
+                return wait;
+            }
+            if(bucket.compareAndSet(arrival, start + this.intervalNanos)){
+                return 0;
+            }
+        }
+    }
+
+    /**
+     * Drops every idle bucket.
+     */
+    public void evictIdle() {
+        final long now = this.clock.getAsLong();
+        this.buckets.values().removeIf(bucket -> bucket.get() - now <= 0);
+    }
+
+    /**
+     * @return The amount of buckets kept.
+     */
+    public int size() {
+        return this.buckets.size();
+    }
+
+    private AtomicLong bucket(final String key, final long now) {
+        final AtomicLong bucket = this.buckets.get(key);
+        if(bucket != null){
+            return bucket;
+        }
+        if(this.buckets.size() >= this.maxKeys){
+            final long eviction = this.nextEviction.get();
+            if(now - eviction >= 0 && this.nextEviction.compareAndSet(eviction, now + this.toleranceNanos + this.intervalNanos)){
+                evictIdle();
+            }
+            if(this.buckets.size() >= this.maxKeys){
+                return this.overflow;
+            }
+        }
+        return this.buckets.computeIfAbsent(key, k -> new AtomicLong(now));
+    }
+}
@@ -0,0 +1,101 @@
+package com.scmspain.utils;
+
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Time ordered 64 bit id generator, following the Snowflake layout: 41 bits of milliseconds since {@link #EPOCH},
+ * 10 bits of node id and 12 bits of sequence within the millisecond. Ids generated by one instance are strictly
+ * increasing, and ids generated by different nodes never collide, so no repository round trip is needed to
+ * allocate them and they can be used to sort by creation time.
+ *
+ * The generator is lock-free: the last timestamp and sequence are packed in a single AtomicLong updated by CAS.
+ * When the clock moves backwards the generator keeps counting from the last timestamp it used, so ids keep
+ * increasing, and a clock regression longer than the allowed one is considered an error. Once the 4096 ids of a
+ * millisecond are used, callers spin until the clock moves to the next one.
+ */
+public class SnowflakeIdGenerator {
+
+    /** 2017-01-01T00:00:00Z, giving room for ~69 years of ids. */
+    public static final long EPOCH = Instant.parse("2017-01-01T00:00:00Z").toEpochMilli();
+
+    public static final int NODE_BITS = 10;
+    public static final int SEQUENCE_BITS = 12;
+    public static final int MAX_NODE = (1 << NODE_BITS) - 1;
+
+    private static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+    private static final int TIMESTAMP_SHIFT = NODE_BITS + SEQUENCE_BITS;
+
+    private final long node;
+    private final long maxBackwardsMillis;
+    private final LongSupplier clock;
+
+    private final AtomicLong state = new AtomicLong(); // (millis since EPOCH << SEQUENCE_BITS) | sequence
+
+    /**
+     * @param node The node id, from 0 to {@link #MAX_NODE}, unique among every generator in use.
+     * @param maxBackwardsMillis The longest clock regression tolerated.
+     */
+    public SnowflakeIdGenerator(int node, long maxBackwardsMillis) {
+        this(node, maxBackwardsMillis, System::currentTimeMillis);
+    }
+
+    /**
+     * @param node The node id, from 0 to {@link #MAX_NODE}, unique among every generator in use.
+     * @param maxBackwardsMillis The longest clock regression tolerated.
+     * @param clock The source of the current time, in milliseconds since the Unix epoch.
+     */
+    public SnowflakeIdGenerator(int node, long maxBackwardsMillis, LongSupplier clock) {
+        if(node < 0 || node > MAX_NODE){
+            throw new IllegalArgumentException("Node id must be between 0 and "+ MAX_NODE +", but was "+ node +".");
+        }
+        this.node = node;
+        this.maxBackwardsMillis = maxBackwardsMillis;
+        this.clock = clock;
+    }
+
+    /**
+     * @return A new id, greater than every id previously generated by this instance.
+     * @throws IllegalStateException when the clock moved backwards longer than tolerated.
+     */
+    public long nextId() {
+        while(true){
+            final long current = this.state.get();
+            final long lastMillis = current >>> SEQUENCE_BITS;
+            final long millis = this.clock.getAsLong() - EPOCH;
+
+            final long next;
+            if(millis > lastMillis){
+                next = millis << SEQUENCE_BITS;
+            } else if(lastMillis - millis > this.maxBackwardsMillis){
+                throw new IllegalStateException("Clock moved backwards "+ (lastMillis - millis) +"ms, refusing to generate ids.");
+            } else if((current & SEQUENCE_MASK) == SEQUENCE_MASK){
+                continue; // sequence exhausted, waiting for the clock to move to the next millisecond.
+            } else {
+                next = current + 1;
+            }
+
+            if(this.state.compareAndSet(current, next)){
+                return ((next >>> SEQUENCE_BITS) << TIMESTAMP_SHIFT) | (this.node << SEQUENCE_BITS) | (next & SEQUENCE_MASK);
+            }
+        }
+    }
+
+    /**
+     * @param id An id generated by any SnowflakeIdGenerator.
+     * @return The time the id was generated at.
+     */
+    public static Instant timestampOf(long id) {
+        return Instant.ofEpochMilli((id >>> TIMESTAMP_SHIFT) + EPOCH);
+    }
+
+    /**
+     * @param timestamp A point in time.
+     * @return The lowest id that any SnowflakeIdGenerator could generate at the given time, handy to turn a time
+     * range into an id range.
+     */
+    public static long lowestIdAt(Instant timestamp) {
+        return Math.max(0, timestamp.toEpochMilli() - EPOCH) << TIMESTAMP_SHIFT;
+    }
+}
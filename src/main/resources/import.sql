@@ -0,0 +1,6 @@
+-- Executed by Hibernate right after creating the schema. Apply it by hand to databases created before these indexes.
+-- Both timeline queries order by every column of their index, so the database reads them in order instead of sorting.
+CREATE INDEX IDX_TWEET_PUBLISHED_TIMELINE ON TWEET (DISCARDED, ID DESC);
+CREATE INDEX IDX_TWEET_DISCARDED_TIMELINE ON TWEET (PUBLISHER_ID, DISCARDED, DISCARDED_AT DESC);
+-- Walked by the retention purge, oldest discarded first.
+CREATE INDEX IDX_TWEET_DISCARDED_AT ON TWEET (DISCARDED_AT);
@@ -0,0 +1,76 @@
+package com.scmspain.configuration;
+
+import com.scmspain.MsFcTechTestApplication;
+import com.scmspain.entities.Tweet;
+import com.scmspain.entities.TweetChange;
+import org.junit.Test;
+import org.springframework.boot.actuate.endpoint.Endpoint;
+import org.springframework.boot.actuate.metrics.writer.MetricWriter;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.context.embedded.EmbeddedWebApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.jmx.export.MBeanExporter;
+import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
+import org.springframework.web.client.RestTemplate;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+
+/**
+ * Starts the application with the startup profile on a database whose schema was created by a previous start.
+ */
+public class StartupProfileTest {
+    private final String database = "jdbc:h2:mem:startup-" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1;DB_CLOSE_ON_EXIT=FALSE";
+
+    @Test
+    public void shouldStartWithListedEntitiesAndLazyInfrastructure() {
+        new SpringApplicationBuilder(TestConfiguration.class)
+                .web(false)
+                .properties("spring.datasource.url=" + database, "spring.jpa.hibernate.ddl-auto=update", "spring.jmx.enabled=false")
+                .run().close();
+
+        try (ConfigurableApplicationContext context = startProfile(database)) {
+            final List<String> entities = context.getBean(LocalContainerEntityManagerFactoryBean.class)
+                    .getPersistenceUnitInfo().getManagedClassNames();
+            assertThat(entities).contains(Tweet.class.getName(), TweetChange.class.getName());
+
+            final List<String> endpoints = Arrays.asList(context.getBeanFactory().getBeanNamesForType(Endpoint.class, true, false));
+            assertThat(endpoints).contains("healthEndpoint", "beansEndpoint");
+            assertThat(context.getBeanFactory().containsSingleton("healthEndpoint")).isTrue();
+            assertThat(context.getBeanFactory().containsSingleton("beansEndpoint")).isFalse();
+            assertThat(context.getBeansOfType(MBeanExporter.class)).isEmpty();
+            final LazyMetricWriter metricWriter = (LazyMetricWriter) context.getBean(MetricWriter.class);
+
+            final int port = ((EmbeddedWebApplicationContext) context).getEmbeddedServletContainer().getPort();
+            final HttpHeaders headers = new HttpHeaders();
+            headers.setContentType(MediaType.APPLICATION_JSON_UTF8);
+            new RestTemplate().postForEntity("http://localhost:" + port + "/tweet",
+                    new HttpEntity<>("{\"publisher\": \"Guybrush\", \"tweet\": \"I am Guybrush Threepwood, mighty pirate.\"}", headers), String.class);
+
+            assertThat(context.getBeanFactory().containsSingleton("beansEndpoint")).isTrue();
+            assertThat(metricWriter.isInitialized()).isTrue();
+        }
+    }
+
+    @Test
+    public void shouldNotCreateSchema() {
+        final Throwable failure = catchThrowable(() -> startProfile(
+                "jdbc:h2:mem:startup-" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1;DB_CLOSE_ON_EXIT=FALSE").close());
+
+        assertThat(failure).hasStackTraceContaining("Schema-validation");
+    }
+
+    private static ConfigurableApplicationContext startProfile(final String database) {
+        return new SpringApplicationBuilder(MsFcTechTestApplication.class)
+                .profiles("startup")
+                .properties("spring.datasource.url=" + database, "server.port=0")
+                .run();
+    }
+}
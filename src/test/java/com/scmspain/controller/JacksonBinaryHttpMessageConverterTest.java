@@ -0,0 +1,62 @@
+package com.scmspain.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.scmspain.configuration.TestConfiguration;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.web.context.WebApplicationContext;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+import static org.springframework.test.web.servlet.setup.MockMvcBuilders.webAppContextSetup;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(classes = TestConfiguration.class,
+        properties = {
+                "spring.datasource.url=jdbc:h2:mem:jacksonbinary;DB_CLOSE_DELAY=-1;DB_CLOSE_ON_EXIT=FALSE",
+                "spring.jackson.property-naming-strategy=UPPER_CAMEL_CASE"})
+@DirtiesContext
+public class JacksonBinaryHttpMessageConverterTest {
+    @Autowired
+    private WebApplicationContext context;
+    private MockMvc mockMvc;
+
+    @Before
+    public void setUp() {
+        this.mockMvc = webAppContextSetup(this.context).build();
+    }
+
+    @Test
+    public void shouldWriteBinaryFormatsWithJacksonProperties() throws Exception {
+        mockMvc.perform(post("/tweet")
+                .contentType(MediaType.APPLICATION_JSON_UTF8)
+                .content("{\"Publisher\": \"Guybrush\", \"Tweet\": \"I am Guybrush Threepwood, mighty pirate.\"}"))
+                .andExpect(status().is(201));
+
+        byte[] cbor = mockMvc.perform(get("/tweet").accept(JacksonBinaryHttpMessageConverter.APPLICATION_CBOR))
+                .andExpect(status().is(200))
+                .andReturn().getResponse().getContentAsByteArray();
+        List<Map<String, Object>> tweets = new ObjectMapper(new CBORFactory()).readValue(cbor, List.class);
+        assertThat(tweets).hasSize(1);
+        assertThat(tweets.get(0)).containsEntry("Publisher", "Guybrush").doesNotContainKey("publisher");
+
+        byte[] smile = mockMvc.perform(get("/tweet").accept(JacksonBinaryHttpMessageConverter.APPLICATION_SMILE))
+                .andExpect(status().is(200))
+                .andReturn().getResponse().getContentAsByteArray();
+        assertThat(new ObjectMapper(new SmileFactory()).readValue(smile, List.class)).isEqualTo(tweets);
+    }
+}
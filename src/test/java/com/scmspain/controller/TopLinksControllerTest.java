@@ -0,0 +1,83 @@
+package com.scmspain.controller;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.scmspain.configuration.TestConfiguration;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.web.context.WebApplicationContext;
+
+import java.util.List;
+import java.util.Map;
+
+import static java.lang.String.format;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+import static org.springframework.test.web.servlet.setup.MockMvcBuilders.webAppContextSetup;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(classes = TestConfiguration.class)
+@DirtiesContext
+public class TopLinksControllerTest {
+    @Autowired
+    private WebApplicationContext context;
+    private MockMvc mockMvc;
+
+    @Before
+    public void setUp() {
+        this.mockMvc = webAppContextSetup(this.context).build();
+    }
+
+    @Test
+    public void shouldReturnMostPublishedLinks() throws Exception {
+        publish("Grog at http://www.scummbar.com/ tonight");
+        publish("Still at http://www.scummbar.com/ and http://www.monkeyisland.com/ later");
+        publish("Never leaving http://www.scummbar.com/ again");
+
+        MvcResult getResult = mockMvc.perform(get("/links/top").param("limit", "1"))
+                .andExpect(status().is(200))
+                .andReturn();
+
+        List<Map<String, Object>> links = new ObjectMapper().readValue(getResult.getResponse().getContentAsString(),
+                new TypeReference<List<Map<String, Object>>>() {});
+        assertThat(links).hasSize(1);
+        assertThat(links.get(0).get("link")).isEqualTo("http://www.scummbar.com/ ");
+        assertThat(links.get(0).get("count")).isEqualTo(3);
+    }
+
+    @Test
+    public void shouldStoreEachLinkOnce() throws Exception {
+        publish("Grog at http://www.meleeisland.com/ tonight");
+        publish("Grog at http://www.meleeisland.com/ tomorrow");
+
+        MvcResult getResult = mockMvc.perform(get("/tweet"))
+                .andExpect(status().is(200))
+                .andReturn();
+
+        assertThat(getResult.getResponse().getContentAsString())
+                .contains("Grog at http://www.meleeisland.com/ tonight", "Grog at http://www.meleeisland.com/ tomorrow");
+    }
+
+    @Test
+    public void shouldRejectInvalidLimit() throws Exception {
+        mockMvc.perform(get("/links/top").param("limit", "0"))
+                .andExpect(status().is(400));
+    }
+
+    private void publish(String tweet) throws Exception {
+        mockMvc.perform(post("/tweet")
+                .contentType(MediaType.APPLICATION_JSON_UTF8)
+                .content(format("{\"publisher\": \"%s\", \"tweet\": \"%s\"}", "Guybrush Threepwood", tweet)))
+                .andExpect(status().is(201));
+    }
+}
@@ -0,0 +1,234 @@
+package com.scmspain.controller;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.scmspain.configuration.TestConfiguration;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.boot.actuate.metrics.writer.Delta;
+import org.springframework.boot.actuate.metrics.writer.MetricWriter;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+import org.springframework.web.context.WebApplicationContext;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.lang.String.format;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+import static org.springframework.test.web.servlet.setup.MockMvcBuilders.webAppContextSetup;
+
+/**
+ * Holds the first query of concurrent identical listings until every other request joined it, and checks H2 runs
+ * the statements of a single listing only once.
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(classes = {TestConfiguration.class, TweetControllerCoalescedReadsTest.QueryCounting.class},
+        properties = {
+                "spring.datasource.url=jdbc:h2:mem:coalesced;DB_CLOSE_DELAY=-1;DB_CLOSE_ON_EXIT=FALSE",
+                "tweet.repository.read-timeout-ms=5000"})
+@DirtiesContext
+public class TweetControllerCoalescedReadsTest {
+    private static final int REQUESTS = 8;
+
+    private static final AtomicInteger queries = new AtomicInteger();
+    private static final AtomicInteger coalesced = new AtomicInteger();
+    private static volatile CountDownLatch gate;
+
+    @Autowired
+    private WebApplicationContext context;
+    private MockMvc mockMvc;
+
+    @Before
+    public void setUp() {
+        this.mockMvc = webAppContextSetup(this.context).build();
+    }
+
+    @After
+    public void tearDown() {
+        gate = null;
+    }
+
+    @Test
+    public void shouldQueryRepositoryOnceForConcurrentDiscardedListings() throws Exception {
+        mockMvc.perform(newTweet("Guybrush", "Look behind you, a three-headed monkey! http://www.monkeyisland.com/ "))
+                .andExpect(status().is(201));
+        List<Map<String, Object>> tweets = new ObjectMapper().readValue(
+                mockMvc.perform(get("/tweet")).andExpect(status().is(200)).andReturn().getResponse().getContentAsString(),
+                new TypeReference<List<Map<String, Object>>>() {});
+        Object id = tweets.stream().filter(tweet -> "Guybrush".equals(tweet.get("publisher")))
+                .map(tweet -> tweet.get("id")).findFirst().get();
+        mockMvc.perform(post("/discarded")
+                .contentType(MediaType.APPLICATION_JSON_UTF8)
+                .content(format("{\"tweet\": \"%s\"}", id)))
+                .andExpect(status().is(200));
+
+        assertThat(assertQueriedOnce(get("/discarded").header("publisher", "Guybrush"))).contains("three-headed monkey");
+    }
+
+    @Test
+    public void shouldQueryRepositoryOnceForConcurrentTimelines() throws Exception {
+        mockMvc.perform(newTweet("Elaine", "Meet me at the mansion. http://www.meleeisland.com/ "))
+                .andExpect(status().is(201));
+
+        assertThat(assertQueriedOnce(get("/tweet"))).contains("Meet me at the mansion.");
+    }
+
+    private String assertQueriedOnce(MockHttpServletRequestBuilder request) throws Exception {
+        queries.set(0);
+        String expected = mockMvc.perform(request).andExpect(status().is(200)).andReturn().getResponse().getContentAsString();
+        int queriesPerListing = queries.get();
+        assertThat(queriesPerListing).isPositive();
+
+        queries.set(0);
+        coalesced.set(0);
+        gate = new CountDownLatch(1);
+        ExecutorService clients = Executors.newFixedThreadPool(REQUESTS);
+        try {
+            List<Future<String>> listings = new ArrayList<>();
+            for(int i = 0; i < REQUESTS; i++){
+                listings.add(clients.submit(() ->
+                        mockMvc.perform(request).andExpect(status().is(200)).andReturn().getResponse().getContentAsString()));
+            }
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while(coalesced.get() < REQUESTS - 1 && System.nanoTime() < deadline){
+                Thread.sleep(10);
+            }
+            assertThat(coalesced.get()).isEqualTo(REQUESTS - 1);
+            gate.countDown();
+
+            for(Future<String> listing : listings){
+                assertThat(listing.get()).isEqualTo(expected);
+            }
+        } finally {
+            gate.countDown();
+            clients.shutdownNow();
+        }
+        assertThat(queries.get()).isEqualTo(queriesPerListing);
+        return expected;
+    }
+
+    private MockHttpServletRequestBuilder newTweet(String publisher, String tweet) {
+        return post("/tweet")
+                .contentType(MediaType.APPLICATION_JSON_UTF8)
+                .content(format("{\"publisher\": \"%s\", \"tweet\": \"%s\"}", publisher, tweet));
+    }
+
+    /**
+     * Counts every query the repository guard runs against H2, holding them while {@link #gate} is closed, and counts
+     * the coalesced reads reported to the metric writer.
+     */
+    @Configuration
+    public static class QueryCounting {
+        @Bean
+        public static BeanPostProcessor queryCountingBeans() {
+            return new BeanPostProcessor() {
+                @Override
+                public Object postProcessBeforeInitialization(Object bean, String beanName) throws BeansException {
+                    return bean;
+                }
+
+                @Override
+                public Object postProcessAfterInitialization(Object bean, String beanName) throws BeansException {
+                    if(bean instanceof DataSource){
+                        return new DelegatingDataSource((DataSource) bean) {
+                            @Override
+                            public Connection getConnection() throws SQLException {
+                                return counting(super.getConnection());
+                            }
+                        };
+                    }
+                    if(bean instanceof MetricWriter){
+                        return counting((MetricWriter) bean);
+                    }
+                    return bean;
+                }
+            };
+        }
+
+        private static MetricWriter counting(MetricWriter metricWriter) {
+            return new MetricWriter() {
+                @Override
+                public void increment(Delta<?> delta) {
+                    if("repository.reads.coalesced".equals(delta.getName())){
+                        coalesced.incrementAndGet();
+                    }
+                    metricWriter.increment(delta);
+                }
+
+                @Override
+                public void reset(String metricName) {
+                    metricWriter.reset(metricName);
+                }
+
+                @Override
+                public void set(Metric<?> value) {
+                    metricWriter.set(value);
+                }
+            };
+        }
+
+        private static Connection counting(Connection connection) {
+            return (Connection) Proxy.newProxyInstance(QueryCounting.class.getClassLoader(), new Class<?>[]{Connection.class},
+                    (proxy, method, args) -> {
+                        Object result = invoke(connection, method, args);
+                        if(result instanceof PreparedStatement){
+                            return counting((PreparedStatement) result);
+                        }
+                        return result;
+                    });
+        }
+
+        private static PreparedStatement counting(PreparedStatement statement) {
+            return (PreparedStatement) Proxy.newProxyInstance(QueryCounting.class.getClassLoader(), new Class<?>[]{PreparedStatement.class},
+                    (proxy, method, args) -> {
+                        // only reads run by the repository guard, not the background jobs polling the repository
+                        if(method.getName().equals("executeQuery") && Thread.currentThread().getName().startsWith("repository-read-")){
+                            queries.incrementAndGet();
+                            CountDownLatch closed = gate;
+                            if(closed != null){
+                                closed.await(5, TimeUnit.SECONDS);
+                            }
+                        }
+                        return invoke(statement, method, args);
+                    });
+        }
+
+        private static Object invoke(Object target, java.lang.reflect.Method method, Object[] args) throws Throwable {
+            try {
+                return method.invoke(target, args);
+            } catch (InvocationTargetException ex){
+                throw ex.getCause();
+            }
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package com.scmspain.controller;
+
+import com.scmspain.configuration.TestConfiguration;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.web.context.WebApplicationContext;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static java.lang.String.format;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+import static org.springframework.test.web.servlet.setup.MockMvcBuilders.webAppContextSetup;
+
+/**
+ * Injects latency on every query run against H2 and checks the timeline keeps answering within the read timeout,
+ * serving the last good timeline flagged as stale, while writes are refused right away.
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(classes = {TestConfiguration.class, TweetControllerDegradedRepositoryTest.LatencyInjection.class},
+        properties = {
+                "spring.datasource.url=jdbc:h2:mem:degraded;DB_CLOSE_DELAY=-1;DB_CLOSE_ON_EXIT=FALSE",
+                "tweet.repository.read-timeout-ms=100",
+                "tweet.repository.slow-call-ms=50",
+                "tweet.repository.minimum-calls=4",
+                "tweet.repository.window-size=10",
+                "tweet.repository.max-concurrent-reads=4",
+                "tweet.repository.open-ms=60000"})
+@DirtiesContext
+public class TweetControllerDegradedRepositoryTest {
+    private static final int REQUESTS = 400;
+    private static final int CLIENTS = 16;
+
+    private static volatile long queryLatencyMillis;
+
+    @Autowired
+    private WebApplicationContext context;
+    private MockMvc mockMvc;
+
+    @Before
+    public void setUp() {
+        this.mockMvc = webAppContextSetup(this.context).build();
+    }
+
+    @After
+    public void tearDown() {
+        queryLatencyMillis = 0;
+    }
+
+    @Test
+    public void shouldBoundReadLatencyWhileRepositoryIsSlow() throws Exception {
+        mockMvc.perform(post("/tweet")
+                .contentType(MediaType.APPLICATION_JSON_UTF8)
+                .content(format("{\"publisher\": \"%s\", \"tweet\": \"%s\"}", "Otis", "Have a flower.")))
+                .andExpect(status().is(201));
+        MvcResult fresh = mockMvc.perform(get("/tweet")).andExpect(status().is(200)).andReturn();
+        assertThat(fresh.getResponse().getHeader(HttpHeaders.WARNING)).isNull();
+
+        queryLatencyMillis = 2000;
+
+        ExecutorService clients = Executors.newFixedThreadPool(CLIENTS);
+        List<Callable<Long>> requests = new ArrayList<>();
+        List<String> warnings = Collections.synchronizedList(new ArrayList<>());
+        for(int i = 0; i < REQUESTS; i++){
+            requests.add(() -> {
+                long start = System.nanoTime();
+                MvcResult result = mockMvc.perform(get("/tweet")).andExpect(status().is(200)).andReturn();
+                assertThat(result.getResponse().getContentAsString()).isEqualTo(fresh.getResponse().getContentAsString());
+                warnings.add(result.getResponse().getHeader(HttpHeaders.WARNING));
+                return System.nanoTime() - start;
+            });
+        }
+        List<Long> latencies = new ArrayList<>();
+        for(Future<Long> latency : clients.invokeAll(requests)){
+            latencies.add(latency.get());
+        }
+        clients.shutdown();
+
+        Collections.sort(latencies);
+        long p99Millis = latencies.get(REQUESTS * 99 / 100) / 1_000_000;
+        assertThat(p99Millis).isLessThan(500);
+        assertThat(warnings).containsOnly(TweetController.STALE_WARNING);
+
+        long start = System.nanoTime();
+        mockMvc.perform(post("/tweet")
+                .contentType(MediaType.APPLICATION_JSON_UTF8)
+                .content(format("{\"publisher\": \"%s\", \"tweet\": \"%s\"}", "Otis", "Another flower.")))
+                .andExpect(status().is(503));
+        assertThat((System.nanoTime() - start) / 1_000_000).isLessThan(500);
+    }
+
+    /**
+     * Stand-in for a degraded database: every query waits {@link #queryLatencyMillis} before reaching H2.
+     */
+    @Configuration
+    public static class LatencyInjection {
+        @Bean
+        public static BeanPostProcessor latencyInjectingDataSource() {
+            return new BeanPostProcessor() {
+                @Override
+                public Object postProcessBeforeInitialization(Object bean, String beanName) throws BeansException {
+                    return bean;
+                }
+
+                @Override
+                public Object postProcessAfterInitialization(Object bean, String beanName) throws BeansException {
+                    if(!(bean instanceof DataSource)){
+                        return bean;
+                    }
+                    return new DelegatingDataSource((DataSource) bean) {
+                        @Override
+                        public Connection getConnection() throws SQLException {
+                            return slow(super.getConnection());
+                        }
+                    };
+                }
+            };
+        }
+
+        private static Connection slow(Connection connection) {
+            return (Connection) Proxy.newProxyInstance(LatencyInjection.class.getClassLoader(), new Class<?>[]{Connection.class},
+                    (proxy, method, args) -> {
+                        Object result = invoke(connection, method, args);
+                        if(result instanceof PreparedStatement){
+                            return slow((PreparedStatement) result);
+                        }
+                        return result;
+                    });
+        }
+
+        private static PreparedStatement slow(PreparedStatement statement) {
+            return (PreparedStatement) Proxy.newProxyInstance(LatencyInjection.class.getClassLoader(), new Class<?>[]{PreparedStatement.class},
+                    (proxy, method, args) -> {
+                        if(method.getName().equals("executeQuery") && queryLatencyMillis > 0){
+                            Thread.sleep(queryLatencyMillis);
+                        }
+                        return invoke(statement, method, args);
+                    });
+        }
+
+        private static Object invoke(Object target, java.lang.reflect.Method method, Object[] args) throws Throwable {
+            try {
+                return method.invoke(target, args);
+            } catch (InvocationTargetException ex){
+                throw ex.getCause();
+            }
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package com.scmspain.controller;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.scmspain.configuration.TestConfiguration;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+import org.springframework.web.context.WebApplicationContext;
+
+import java.util.List;
+import java.util.Map;
+
+import static java.lang.String.format;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+import static org.springframework.test.web.servlet.setup.MockMvcBuilders.webAppContextSetup;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(classes = TestConfiguration.class,
+        properties = {
+                "spring.datasource.url=jdbc:h2:mem:logstorage;DB_CLOSE_DELAY=-1;DB_CLOSE_ON_EXIT=FALSE",
+                "tweet.storage.type=log",
+                "tweet.storage.log.directory=${java.io.tmpdir}/tweet-log-${random.uuid}"})
+@DirtiesContext
+public class TweetControllerLogStorageTest {
+    @Autowired
+    private WebApplicationContext context;
+    private MockMvc mockMvc;
+
+    @Before
+    public void setUp() {
+        this.mockMvc = webAppContextSetup(this.context).build();
+    }
+
+    @Test
+    public void shouldPublishListAndDiscardTweetsOnTheLog() throws Exception {
+        mockMvc.perform(newTweet("Guybrush", "I am Guybrush Threepwood, mighty pirate. http://monkey.island "))
+                .andExpect(status().is(201));
+        mockMvc.perform(newTweet("LeChuck", "Arrr!"))
+                .andExpect(status().is(201));
+
+        List<Map<String, Object>> tweets = list(get("/tweet"));
+        assertThat(tweets).extracting("publisher").containsExactly("LeChuck", "Guybrush");
+        assertThat(tweets.get(1).get("tweet")).isEqualTo("I am Guybrush Threepwood, mighty pirate. http://monkey.island ");
+
+        mockMvc.perform(post("/discarded")
+                .contentType(MediaType.APPLICATION_JSON_UTF8)
+                .content(format("{\"tweet\": \"%s\"}", tweets.get(0).get("id"))))
+                .andExpect(status().is(200));
+
+        assertThat(list(get("/tweet"))).extracting("publisher").containsExactly("Guybrush");
+        assertThat(list(get("/discarded").header("publisher", "LeChuck"))).extracting("tweet").containsExactly("Arrr!");
+        mockMvc.perform(get("/tweet/" + tweets.get(0).get("id"))).andExpect(status().is(404));
+    }
+
+    private List<Map<String, Object>> list(MockHttpServletRequestBuilder request) throws Exception {
+        String content = mockMvc.perform(request).andExpect(status().is(200)).andReturn().getResponse().getContentAsString();
+        return new ObjectMapper().readValue(content, new TypeReference<List<Map<String, Object>>>() {});
+    }
+
+    private MockHttpServletRequestBuilder newTweet(String publisher, String tweet) {
+        return post("/tweet")
+                .contentType(MediaType.APPLICATION_JSON_UTF8)
+                .content(format("{\"publisher\": \"%s\", \"tweet\": \"%s\"}", publisher, tweet));
+    }
+}
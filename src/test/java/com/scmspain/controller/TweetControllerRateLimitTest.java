@@ -0,0 +1,80 @@
+package com.scmspain.controller;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.scmspain.configuration.TestConfiguration;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+import org.springframework.web.context.WebApplicationContext;
+
+import java.util.List;
+import java.util.Map;
+
+import static java.lang.String.format;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+import static org.springframework.test.web.servlet.setup.MockMvcBuilders.webAppContextSetup;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(classes = TestConfiguration.class,
+        properties = {
+                "spring.datasource.url=jdbc:h2:mem:ratelimit;DB_CLOSE_DELAY=-1;DB_CLOSE_ON_EXIT=FALSE",
+                "tweet.rate-limit.writes-per-second=0.01",
+                "tweet.rate-limit.burst=2"})
+@DirtiesContext
+public class TweetControllerRateLimitTest {
+    @Autowired
+    private WebApplicationContext context;
+    private MockMvc mockMvc;
+
+    @Before
+    public void setUp() {
+        this.mockMvc = webAppContextSetup(this.context).build();
+    }
+
+    @Test
+    public void shouldReturn429OncePublisherExceedsItsRate() throws Exception {
+        mockMvc.perform(newTweet("Guybrush", "I am Guybrush Threepwood, mighty pirate."))
+                .andExpect(status().is(201));
+        mockMvc.perform(newTweet("Guybrush", "Look behind you, a three-headed monkey!"))
+                .andExpect(status().is(201));
+
+        mockMvc.perform(newTweet("Guybrush", "How appropriate. You fight like a cow."))
+                .andExpect(status().is(429))
+                .andExpect(header().string(HttpHeaders.RETRY_AFTER, "100"));
+        mockMvc.perform(newTweet("Guybrush", ""))
+                .andExpect(status().is(429));
+
+        mockMvc.perform(newTweet("LeChuck", "Arrr!"))
+                .andExpect(status().is(201));
+
+        MvcResult published = mockMvc.perform(get("/tweet")).andExpect(status().is(200)).andReturn();
+        List<Map<String, Object>> tweets = new ObjectMapper().readValue(published.getResponse().getContentAsString(),
+                new TypeReference<List<Map<String, Object>>>() {});
+        Object guybrushTweet = tweets.stream().filter(tweet -> "Guybrush".equals(tweet.get("publisher")))
+                .map(tweet -> tweet.get("id")).findFirst().get();
+        mockMvc.perform(post("/discarded")
+                .contentType(MediaType.APPLICATION_JSON_UTF8)
+                .content(format("{\"tweet\": \"%s\"}", guybrushTweet)))
+                .andExpect(status().is(429));
+    }
+
+    private MockHttpServletRequestBuilder newTweet(String publisher, String tweet) {
+        return post("/tweet")
+                .contentType(MediaType.APPLICATION_JSON_UTF8)
+                .content(format("{\"publisher\": \"%s\", \"tweet\": \"%s\"}", publisher, tweet));
+    }
+}
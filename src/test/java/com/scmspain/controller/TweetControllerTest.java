@@ -1,13 +1,17 @@
 package com.scmspain.controller;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
 import com.scmspain.configuration.TestConfiguration;
+import com.scmspain.entities.Tweet;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.http.MediaType;
+import org.springframework.test.annotation.DirtiesContext;
 import org.springframework.test.context.junit4.SpringRunner;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.MvcResult;
@@ -15,6 +19,7 @@ import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilde
 import org.springframework.web.context.WebApplicationContext;
 
 import java.util.List;
+import java.util.Map;
 
 import static java.lang.String.format;
 import static org.assertj.core.api.Assertions.assertThat;
@@ -69,7 +74,10 @@ public class TweetControllerTest {
                 .andReturn();
 
         String content = getResult.getResponse().getContentAsString();
-        assertThat(new ObjectMapper().readValue(content, List.class).size()).isEqualTo(1);
+        List<Map> tweets = new ObjectMapper().readValue(content, List.class);
+        assertThat(tweets.size()).isEqualTo(1);
+        assertThat(tweets.get(0).keySet()).containsOnly("id", "publisher", "tweet", "pre2015MigrationStatus");
+        assertThat(tweets.get(0).get("publisher")).isEqualTo("Yo");
     }
 
     @Test
@@ -77,9 +85,14 @@ public class TweetControllerTest {
         mockMvc.perform(newTweet("Yo", "How are you?"))
                 .andExpect(status().is(201));
 
+        MvcResult publishedResult = mockMvc.perform(get("/tweet"))
+                .andExpect(status().is(200))
+                .andReturn();
+        List<Map> published = new ObjectMapper().readValue(publishedResult.getResponse().getContentAsString(), List.class);
+
         mockMvc.perform(post("/discarded")
                 .contentType(MediaType.APPLICATION_JSON_UTF8)
-                .content(format("{\"tweet\": \"%s\"}", "1")))
+                .content(format("{\"tweet\": \"%s\"}", published.get(0).get("id"))))
                 .andExpect(status().is(200));
 
         MvcResult getResult = mockMvc.perform(get("/discarded")
@@ -91,6 +104,78 @@ public class TweetControllerTest {
         assertThat(new ObjectMapper().readValue(content, List.class).size()).isEqualTo(1);
     }
 
+    @Test
+    @DirtiesContext
+    public void shouldReturnPublishedTweetUntilDiscarded() throws Exception {
+        mockMvc.perform(newTweet("Yo", "How are you?"))
+                .andExpect(status().is(201));
+
+        MvcResult publishedResult = mockMvc.perform(get("/tweet"))
+                .andExpect(status().is(200))
+                .andReturn();
+        Object id = new ObjectMapper().readValue(publishedResult.getResponse().getContentAsString(), List.class)
+                .stream().map(tweet -> ((Map) tweet).get("id")).findFirst().get();
+
+        for(int i = 0; i < 2; i++){
+            MvcResult getResult = mockMvc.perform(get("/tweet/"+ id))
+                    .andExpect(status().is(200))
+                    .andReturn();
+            Map tweet = new ObjectMapper().readValue(getResult.getResponse().getContentAsString(), Map.class);
+            assertThat(tweet.keySet()).containsOnly("id", "publisher", "tweet", "pre2015MigrationStatus");
+            assertThat(tweet.get("tweet")).isEqualTo("How are you?");
+        }
+
+        mockMvc.perform(post("/discarded")
+                .contentType(MediaType.APPLICATION_JSON_UTF8)
+                .content(format("{\"tweet\": \"%s\"}", id)))
+                .andExpect(status().is(200));
+
+        mockMvc.perform(get("/tweet/"+ id))
+                .andExpect(status().is(404));
+    }
+
+    @Test
+    public void shouldReturn404WhenTweetDoesNotExist() throws Exception {
+        mockMvc.perform(get("/tweet/42"))
+                .andExpect(status().is(404));
+    }
+
+    @Test
+    @DirtiesContext
+    public void shouldServeFormatAcceptedByClient() throws Exception {
+        mockMvc.perform(newTweet("Yo", "How are you?"))
+                .andExpect(status().is(201));
+
+        MvcResult json = mockMvc.perform(get("/tweet").accept(MediaType.ALL))
+                .andExpect(status().is(200))
+                .andReturn();
+        assertThat(json.getResponse().getContentType()).startsWith(MediaType.APPLICATION_JSON_VALUE);
+        List<Map> tweets = new ObjectMapper().readValue(json.getResponse().getContentAsString(), List.class);
+
+        MvcResult cbor = mockMvc.perform(get("/tweet").accept(JacksonBinaryHttpMessageConverter.APPLICATION_CBOR))
+                .andExpect(status().is(200))
+                .andReturn();
+        assertThat(new ObjectMapper(new CBORFactory()).readValue(cbor.getResponse().getContentAsByteArray(), List.class))
+                .isEqualTo(tweets);
+
+        MvcResult smile = mockMvc.perform(get("/tweet").accept(JacksonBinaryHttpMessageConverter.APPLICATION_SMILE))
+                .andExpect(status().is(200))
+                .andReturn();
+        assertThat(new ObjectMapper(new SmileFactory()).readValue(smile.getResponse().getContentAsByteArray(), List.class))
+                .isEqualTo(tweets);
+
+        MvcResult protobuf = mockMvc.perform(get("/tweet").accept(TweetProtobufHttpMessageConverter.APPLICATION_PROTOBUF))
+                .andExpect(status().is(200))
+                .andReturn();
+        List<Tweet> decoded = TweetProtobufHttpMessageConverter.decode(protobuf.getResponse().getContentAsByteArray());
+        assertThat(decoded).hasSize(tweets.size());
+        for(int i = 0; i < tweets.size(); i++){
+            assertThat(decoded.get(i).getId()).isEqualTo(((Number) tweets.get(i).get("id")).longValue());
+            assertThat(decoded.get(i).getPublisher()).isEqualTo(tweets.get(i).get("publisher"));
+            assertThat(decoded.get(i).getTweet()).isEqualTo(tweets.get(i).get("tweet"));
+        }
+    }
+
     private MockHttpServletRequestBuilder newTweet(String publisher, String tweet) {
         return post("/tweet")
                 .contentType(MediaType.APPLICATION_JSON_UTF8)
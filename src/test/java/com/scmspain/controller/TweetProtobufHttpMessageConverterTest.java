@@ -0,0 +1,80 @@
+package com.scmspain.controller;
+
+import com.scmspain.entities.Tweet;
+import org.junit.Test;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.mock.http.MockHttpInputMessage;
+import org.springframework.mock.http.MockHttpOutputMessage;
+
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TweetProtobufHttpMessageConverterTest {
+    private static final Type TWEETS = new ParameterizedTypeReference<List<Tweet>>() {}.getType();
+
+    private final TweetProtobufHttpMessageConverter converter = new TweetProtobufHttpMessageConverter();
+
+    @Test
+    public void shouldRoundTripTweets() throws Exception {
+        Tweet first = tweet(1525132800000L << 22, "Guybrush Threepwood", "I am Guybrush Threepwood, mighty pirate.");
+        Tweet second = tweet(7L, "LeChuck", "¡Arrr! ☠");
+        second.setPre2015MigrationStatus(3L);
+
+        MockHttpOutputMessage output = new MockHttpOutputMessage();
+        converter.write(Arrays.asList(first, second), TWEETS, TweetProtobufHttpMessageConverter.APPLICATION_PROTOBUF, output);
+
+        List<Tweet> tweets = (List<Tweet>) converter.read(TWEETS, null, new MockHttpInputMessage(output.getBodyAsBytes()));
+        assertThat(tweets).hasSize(2);
+        assertThat(tweets.get(0)).isEqualToComparingOnlyGivenFields(first, "id", "publisher", "tweet", "pre2015MigrationStatus");
+        assertThat(tweets.get(1)).isEqualToComparingOnlyGivenFields(second, "id", "publisher", "tweet", "pre2015MigrationStatus");
+        assertThat(output.getHeaders().getContentLength()).isEqualTo(output.getBodyAsBytes().length);
+    }
+
+    @Test
+    public void shouldWriteSingleTweetAsOneMessage() throws Exception {
+        Tweet tweet = tweet(1L, "Stan", "Stan's previously owned vessels");
+
+        MockHttpOutputMessage output = new MockHttpOutputMessage();
+        converter.write(tweet, TweetProtobufHttpMessageConverter.APPLICATION_PROTOBUF, output);
+
+        byte[] body = output.getBodyAsBytes();
+        assertThat(body[0]).isEqualTo((byte) (body.length - 1));
+        assertThat(converter.read(Tweet.class, null, new MockHttpInputMessage(body)))
+                .isEqualToComparingOnlyGivenFields(tweet, "id", "publisher", "tweet", "pre2015MigrationStatus");
+    }
+
+    @Test
+    public void shouldSkipUnknownFields() {
+        byte[] body = {9, 0x08, 42, 0x2A, 2, 'h', 'i', 0x35, 1, 2, 3, 4};
+        body[0] = (byte) (body.length - 1);
+
+        List<Tweet> tweets = TweetProtobufHttpMessageConverter.decode(body);
+
+        assertThat(tweets).hasSize(1);
+        assertThat(tweets.get(0).getId()).isEqualTo(42L);
+    }
+
+    @Test(expected = HttpMessageNotReadableException.class)
+    public void shouldFailOnTruncatedMessage() {
+        TweetProtobufHttpMessageConverter.decode(new byte[]{10, 0x08, 42});
+    }
+
+    @Test
+    public void shouldOnlyConvertTweets() {
+        assertThat(converter.canWrite(TWEETS, ArrayList.class, TweetProtobufHttpMessageConverter.APPLICATION_PROTOBUF)).isTrue();
+        assertThat(converter.canWrite(new ParameterizedTypeReference<List<String>>() {}.getType(), ArrayList.class,
+                TweetProtobufHttpMessageConverter.APPLICATION_PROTOBUF)).isFalse();
+        assertThat(converter.canWrite(String.class, TweetProtobufHttpMessageConverter.APPLICATION_PROTOBUF)).isFalse();
+    }
+
+    private static Tweet tweet(Long id, String publisher, String text) {
+        Tweet tweet = new Tweet(publisher, text);
+        tweet.setId(id);
+        return tweet;
+    }
+}
@@ -0,0 +1,68 @@
+package com.scmspain.controller;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.scmspain.configuration.TestConfiguration;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.web.context.WebApplicationContext;
+
+import java.util.Map;
+
+import static java.lang.String.format;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+import static org.springframework.test.web.servlet.setup.MockMvcBuilders.webAppContextSetup;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(classes = TestConfiguration.class)
+@DirtiesContext
+public class TweetStatisticsControllerTest {
+    @Autowired
+    private WebApplicationContext context;
+    private MockMvc mockMvc;
+
+    @Before
+    public void setUp() {
+        this.mockMvc = webAppContextSetup(this.context).build();
+    }
+
+    @Test
+    public void shouldReturnPublisherStatistics() throws Exception {
+        mockMvc.perform(post("/tweet")
+                .contentType(MediaType.APPLICATION_JSON_UTF8)
+                .content(format("{\"publisher\": \"%s\", \"tweet\": \"%s\"}", "Stan", "Stan's previously owned vessels")))
+                .andExpect(status().is(201));
+
+        MvcResult getResult = mockMvc.perform(get("/stats")
+                .header("publisher", "Stan"))
+                .andExpect(status().is(200))
+                .andReturn();
+
+        Map<String, Object> statistics = new ObjectMapper().readValue(getResult.getResponse().getContentAsString(),
+                new TypeReference<Map<String, Object>>() {});
+        assertThat(statistics.get("published")).isEqualTo(1);
+        assertThat(statistics.get("discarded")).isEqualTo(0);
+    }
+
+    @Test
+    public void shouldReturnAllStatistics() throws Exception {
+        MvcResult getResult = mockMvc.perform(get("/stats"))
+                .andExpect(status().is(200))
+                .andReturn();
+
+        Map<String, Object> statistics = new ObjectMapper().readValue(getResult.getResponse().getContentAsString(),
+                new TypeReference<Map<String, Object>>() {});
+        assertThat(statistics).containsKeys("published", "discarded", "publishers");
+    }
+}
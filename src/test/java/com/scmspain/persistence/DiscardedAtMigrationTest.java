@@ -0,0 +1,48 @@
+package com.scmspain.persistence;
+
+import com.scmspain.configuration.TestConfiguration;
+import com.scmspain.entities.Tweet;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+import java.time.Instant;
+
+import static org.junit.Assert.*;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(classes = TestConfiguration.class, properties = "tweet.migration.pause-ms=0")
+@DirtiesContext
+public class DiscardedAtMigrationTest {
+    @Autowired
+    private EntityManager entityManager;
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+    @Autowired
+    private DiscardedAtMigration discardedAtMigration;
+    @Autowired
+    private PublisherDictionary publisherDictionary;
+
+    @Test
+    public void shouldCopyDiscardDateFromPublicationDate() {
+        Instant discardedOn = Instant.parse("2017-03-01T10:15:30Z");
+        Long id = transactionTemplate.execute(status -> {
+            Tweet tweet = new Tweet("Herman Toothrot", "Have you seen my banana picker?");
+            tweet.setPublisherId(publisherDictionary.getOrCreateId(tweet.getPublisher()));
+            tweet.setDate(discardedOn);
+            tweet.setDiscarded(true);
+            entityManager.persist(tweet);
+            return tweet.getId();
+        });
+
+        discardedAtMigration.migrate();
+
+        entityManager.clear();
+        assertEquals(discardedOn, entityManager.find(Tweet.class, id).getDiscardedAt());
+    }
+}
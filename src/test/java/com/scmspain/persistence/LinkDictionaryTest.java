@@ -0,0 +1,209 @@
+package com.scmspain.persistence;
+
+import com.scmspain.configuration.TestConfiguration;
+import com.scmspain.entities.Link;
+import com.scmspain.entities.Tweet;
+import com.scmspain.entities.TweetChange;
+import com.scmspain.utils.LinkUtils;
+import org.hibernate.JDBCException;
+import org.hibernate.Session;
+import org.hibernate.jdbc.ReturningWork;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+import javax.persistence.LockModeType;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.*;
+
+public class LinkDictionaryTest {
+    private static final String LINK = "http://www.scummbar.com/ ";
+
+    private EntityManager entityManager;
+    private PreparedStatement insert;
+    private LinkDictionary linkDictionary;
+
+    @Before
+    public void setUp() throws Exception {
+        this.entityManager = mock(EntityManager.class);
+        this.insert = mock(PreparedStatement.class);
+        this.linkDictionary = new LinkDictionary(entityManager, mock(PlatformTransactionManager.class));
+
+        Session session = mock(Session.class);
+        Connection connection = mock(Connection.class);
+        when(entityManager.unwrap(Session.class)).thenReturn(session);
+        when(session.doReturningWork(any())).then(invocation -> {
+            try {
+                return invocation.getArgumentAt(0, ReturningWork.class).execute(connection);
+            } catch (SQLException ex) {
+                throw new JDBCException(ex.getMessage(), ex);
+            }
+        });
+        when(connection.prepareStatement(anyString())).thenReturn(insert);
+    }
+
+    @Test
+    public void shouldReuseStoredLink() {
+        Link link = new Link(LinkUtils.hash(LINK), LINK);
+        when(entityManager.find(Link.class, LinkUtils.hash(LINK), LockModeType.PESSIMISTIC_READ)).thenReturn(link);
+
+        assertSame(link, linkDictionary.resolve(LINK));
+        verify(entityManager, never()).unwrap(Session.class);
+    }
+
+    @Test
+    public void shouldCreateLinkKeyedByItsHash() throws Exception {
+        Link stored = new Link(LinkUtils.hash(LINK), LINK);
+        when(entityManager.find(Link.class, LinkUtils.hash(LINK), LockModeType.PESSIMISTIC_READ)).thenReturn(null, stored);
+
+        assertSame(stored, linkDictionary.resolve(LINK));
+
+        verify(insert).setObject(1, LinkUtils.hash(LINK));
+        verify(insert).setObject(2, LINK);
+        verify(insert).executeUpdate();
+        verify(entityManager, never()).persist(any());
+    }
+
+    @Test
+    public void shouldProbeNextKeyOnCollision() {
+        long hash = LinkUtils.hash(LINK);
+        Link colliding = new Link(hash, "http://www.monkeyisland.com/ ");
+        Link stored = new Link(hash + 1, LINK);
+        when(entityManager.find(Link.class, hash, LockModeType.PESSIMISTIC_READ)).thenReturn(colliding);
+        when(entityManager.find(Link.class, hash + 1, LockModeType.PESSIMISTIC_READ)).thenReturn(null, stored);
+
+        assertSame(stored, linkDictionary.resolve(LINK));
+    }
+
+    @Test
+    public void shouldFindLinkCreatedConcurrently() throws Exception {
+        Link stored = new Link(LinkUtils.hash(LINK), LINK);
+        when(entityManager.find(Link.class, LinkUtils.hash(LINK), LockModeType.PESSIMISTIC_READ)).thenReturn(null, stored);
+        when(insert.executeUpdate()).thenReturn(0);
+
+        assertSame(stored, linkDictionary.resolve(LINK));
+    }
+
+    @Test
+    public void shouldFindLinkInsertedConcurrently() throws Exception {
+        Link stored = new Link(LinkUtils.hash(LINK), LINK);
+        when(entityManager.find(Link.class, LinkUtils.hash(LINK), LockModeType.PESSIMISTIC_READ)).thenReturn(null, stored);
+        when(insert.executeUpdate()).thenThrow(new SQLException("Unique index or primary key violation", "23505"));
+
+        assertSame(stored, linkDictionary.resolve(LINK));
+    }
+
+    @Test
+    public void shouldProbeNextKeyWhenTakenConcurrently() throws Exception {
+        long hash = LinkUtils.hash(LINK);
+        Link colliding = new Link(hash, "http://www.monkeyisland.com/ ");
+        Link stored = new Link(hash + 1, LINK);
+        when(entityManager.find(Link.class, hash, LockModeType.PESSIMISTIC_READ)).thenReturn(null, colliding);
+        when(entityManager.find(Link.class, hash + 1, LockModeType.PESSIMISTIC_READ)).thenReturn(null, stored);
+        when(insert.executeUpdate())
+                .thenThrow(new SQLException("Unique index or primary key violation", "23505"))
+                .thenReturn(1);
+
+        assertSame(stored, linkDictionary.resolve(LINK));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldThrowExceptionWhenLinkCanNotBeInserted() throws Exception {
+        when(entityManager.find(Link.class, LinkUtils.hash(LINK), LockModeType.PESSIMISTIC_READ)).thenReturn(null);
+        when(insert.executeUpdate()).thenThrow(new SQLException("Connection is broken", "08006"));
+
+        linkDictionary.resolve(LINK);
+    }
+
+    @Test
+    public void shouldHashEqualLinksEqually() {
+        assertEquals(LinkUtils.hash(LINK), LinkUtils.hash(new String(LINK)));
+        assertNotEquals(LinkUtils.hash(LINK), LinkUtils.hash("http://www.scummbar.com/grog "));
+    }
+
+    @Test
+    public void shouldShareNewLinkResolvedConcurrently() throws Exception {
+        try (ConfigurableApplicationContext context = new SpringApplicationBuilder(TestConfiguration.class)
+                .web(false)
+                .properties("spring.datasource.url=jdbc:h2:mem:links-" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1;DB_CLOSE_ON_EXIT=FALSE",
+                        "spring.jmx.enabled=false")
+                .run()) {
+            LinkDictionary dictionary = context.getBean(LinkDictionary.class);
+            TransactionTemplate transaction = new TransactionTemplate(context.getBean(PlatformTransactionManager.class));
+            CyclicBarrier start = new CyclicBarrier(4);
+            ExecutorService executor = Executors.newFixedThreadPool(4);
+            try {
+                List<Future<Long>> resolved = new ArrayList<>();
+                for(int i = 0; i < 4; i++){
+                    resolved.add(executor.submit(() -> {
+                        start.await();
+                        return transaction.execute(status -> dictionary.resolve(LINK).getId());
+                    }));
+                }
+
+                for(Future<Long> id : resolved){
+                    assertEquals(Long.valueOf(LinkUtils.hash(LINK)), id.get());
+                }
+            } finally {
+                executor.shutdownNow();
+            }
+        }
+    }
+
+    @Test
+    public void shouldKeepLinkResolvedByTweetBeingPublishedWhilePurging() throws Exception {
+        try (ConfigurableApplicationContext context = new SpringApplicationBuilder(TestConfiguration.class)
+                .web(false)
+                .properties("spring.datasource.url=jdbc:h2:mem:links-" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1;DB_CLOSE_ON_EXIT=FALSE",
+                        "spring.jmx.enabled=false")
+                .run()) {
+            LinkDictionary dictionary = context.getBean(LinkDictionary.class);
+            TweetStorage storage = context.getBean(TweetStorage.class);
+            TransactionTemplate transaction = new TransactionTemplate(context.getBean(PlatformTransactionManager.class));
+            Long purged = storage.saveTweet(new Tweet("Stan", "Visit " + LINK + "for used ships.")).getTweetId();
+            CountDownLatch resolved = new CountDownLatch(1);
+            ExecutorService executor = Executors.newSingleThreadExecutor();
+            try {
+                // the link is resolved by the tweet being published before the purge of the only tweet having it,
+                // and the tweet referencing it is only stored after the purge
+                Future<TweetChange> published = executor.submit(() -> transaction.execute(status -> {
+                    dictionary.resolve(LINK);
+                    resolved.countDown();
+                    try {
+                        Thread.sleep(200);
+                    } catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                    }
+                    return storage.saveTweet(new Tweet("Stan", "Still visit " + LINK + "for used ships."));
+                }));
+                resolved.await();
+                storage.purgeTweets(Collections.singletonList(purged));
+
+                List<Link> links = storage.findTweetLinks(published.get().getTweetId());
+                assertEquals(1, links.size());
+                assertEquals(LINK, links.get(0).getUrl());
+            } finally {
+                executor.shutdownNow();
+            }
+        }
+    }
+}
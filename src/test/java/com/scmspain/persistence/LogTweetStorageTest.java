@@ -0,0 +1,214 @@
+package com.scmspain.persistence;
+
+import com.scmspain.entities.Link;
+import com.scmspain.entities.Tweet;
+import com.scmspain.entities.TweetChange;
+import com.scmspain.utils.LinkUtils;
+import com.scmspain.utils.SnowflakeIdGenerator;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.boot.actuate.metrics.writer.MetricWriter;
+
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.mock;
+
+public class LogTweetStorageTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private SnowflakeIdGenerator idGenerator;
+    private Path directory;
+    private LogTweetStorage storage;
+
+    @Before
+    public void setUp() throws Exception {
+        this.idGenerator = new SnowflakeIdGenerator(0, 5000);
+        this.directory = folder.getRoot().toPath();
+        this.storage = open(4096);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        storage.destroy();
+    }
+
+    @Test
+    public void shouldServeTimelinesFromTheIndexes() throws Exception {
+        final TweetChange first = storage.saveTweet(new Tweet("Guybrush", "I am Guybrush Threepwood, mighty pirate."));
+        final TweetChange second = storage.saveTweet(new Tweet("Guybrush", "Look behind you, a three-headed monkey! http://monkey.island "));
+        final TweetChange third = storage.saveTweet(new Tweet("LeChuck", "Arrr!"));
+
+        final List<String> checked = new ArrayList<>();
+        assertEquals(TweetChange.Type.DISCARDED, storage.discardTweet(tweet(second.getTweetId()), checked::add).getType());
+        assertNull(storage.discardTweet(tweet(second.getTweetId()), checked::add));
+        assertEquals(Collections.singletonList("Guybrush"), checked);
+
+        assertEquals(Arrays.asList(third.getTweetId(), first.getTweetId()), ids(storage.findNonDiscardedTweets()));
+        assertEquals(Arrays.asList(second.getTweetId()), ids(storage.findDiscardedTweets("Guybrush")));
+        assertTrue(storage.findDiscardedTweets("Elaine").isEmpty());
+        assertEquals("Look behind you, a three-headed monkey! http://monkey.island ",
+                storage.findTweetById(second.getTweetId()).getTweet());
+        assertEquals(Arrays.asList(1L, 2L, 3L, 4L), seqs(storage.findChangesAfter(0, 10)));
+        assertEquals(4L, storage.findLastChangeSeq());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectTweetsLongerThan140CharactersWithoutLinks() throws Exception {
+        storage.saveTweet(new Tweet("Pirate", "LeChuck? He's the guy that went to the Governor's for dinner and never wanted to leave. He fell for her in a big way, but she told him to drop dead. So he did."));
+    }
+
+    @Test
+    public void shouldRecoverTweetsAfterReopening() throws Exception {
+        final TweetChange first = storage.saveTweet(new Tweet("Guybrush", "I am Guybrush Threepwood, mighty pirate. http://monkey.island "));
+        final TweetChange second = storage.saveTweet(new Tweet("LeChuck", "Arrr!"));
+        storage.discardTweet(tweet(second.getTweetId()), publisher -> {});
+        final List<Tweet> timeline = storage.findNonDiscardedTweets();
+        final Instant discardedAt = storage.findTweetById(second.getTweetId()).getDiscardedAt();
+
+        storage.destroy();
+        storage = open(4096);
+
+        assertEquals(ids(timeline), ids(storage.findNonDiscardedTweets()));
+        assertEquals(timeline.get(0).getTweet(), storage.findTweetById(first.getTweetId()).getTweet());
+        assertEquals(timeline.get(0).getDate(), storage.findTweetById(first.getTweetId()).getDate());
+        assertEquals(discardedAt, storage.findTweetById(second.getTweetId()).getDiscardedAt());
+        assertEquals(Arrays.asList(second.getTweetId()), ids(storage.findDiscardedTweets("LeChuck")));
+        final List<Link> links = storage.findTweetLinks(first.getTweetId());
+        assertEquals(1, links.size());
+        assertEquals("http://monkey.island ", links.get(0).getUrl());
+        assertEquals(Long.valueOf(LinkUtils.hash("http://monkey.island ")), links.get(0).getId());
+        assertEquals(3L, storage.findLastChangeSeq());
+    }
+
+    @Test
+    public void shouldKeepPublisherKeysOnTheLog() throws Exception {
+        final TweetChange first = storage.saveTweet(new Tweet("Guybrush", "I am Guybrush Threepwood, mighty pirate."));
+        final TweetChange second = storage.saveTweet(new Tweet("LeChuck", "Arrr!"));
+        storage.saveTweet(new Tweet("Guybrush", "Look behind you, a three-headed monkey!"));
+
+        assertEquals(Integer.valueOf(1), first.getPublisherId());
+        assertEquals(Integer.valueOf(2), second.getPublisherId());
+        assertEquals("LeChuck", storage.findPublisherName(2));
+        assertNull(storage.findPublisherId("Stan"));
+
+        storage.destroy();
+        storage = open(4096);
+
+        final Integer guybrush = storage.findPublisherId("Guybrush");
+        assertEquals("Guybrush", storage.findPublisherName(guybrush));
+        assertEquals("LeChuck", storage.findPublisherName(storage.findPublisherId("LeChuck")));
+        for(Object[] row : storage.countTweetsByPublisher()){
+            assertEquals(row[0].equals(guybrush) ? 2L : 1L, row[2]);
+        }
+        assertEquals(guybrush, storage.findTweetById(first.getTweetId()).getPublisherId());
+    }
+
+    @Test
+    public void shouldIgnoreTornRecordWhenRecovering() throws Exception {
+        final TweetChange first = storage.saveTweet(new Tweet("Guybrush", "I am Guybrush Threepwood, mighty pirate."));
+        storage.saveTweet(new Tweet("Guybrush", "Look behind you, a three-headed monkey!"));
+        storage.destroy();
+
+        try (RandomAccessFile segment = new RandomAccessFile(LogSegment.path(directory, 1).toFile(), "rw")) {
+            final int length = segment.readInt();
+            final long position = LogSegment.HEADER_BYTES + length + LogSegment.HEADER_BYTES + 10;
+            segment.seek(position);
+            final byte value = segment.readByte();
+            segment.seek(position);
+            segment.write(~value); //the second record was only partially written to disk.
+        }
+
+        storage = open(4096);
+        assertEquals(Arrays.asList(first.getTweetId()), ids(storage.findNonDiscardedTweets()));
+
+        final TweetChange third = storage.saveTweet(new Tweet("LeChuck", "Arrr!"));
+        storage.destroy();
+        storage = open(4096);
+        assertEquals(Arrays.asList(third.getTweetId(), first.getTweetId()), ids(storage.findNonDiscardedTweets()));
+        assertEquals(2L, storage.findLastChangeSeq());
+    }
+
+    @Test
+    public void shouldCompactSealedSegmentsKeepingWhatIsStillStored() throws Exception {
+        storage.destroy();
+        storage = open(256);
+
+        final List<Long> ids = new ArrayList<>();
+        for(int i = 0; i < 20; i++){
+            ids.add(storage.saveTweet(new Tweet("Publisher " + (i % 3), "Tweet number " + i)).getTweetId());
+        }
+        storage.discardTweet(tweet(ids.get(1)), publisher -> {});
+        storage.discardTweet(tweet(ids.get(2)), publisher -> {});
+        storage.purgeTweets(Arrays.asList(ids.get(0), ids.get(2)));
+        final long lastSeq = storage.findLastChangeSeq();
+        final List<Tweet> timeline = storage.findNonDiscardedTweets();
+
+        storage.compact();
+        assertTrue(Files.list(directory).count() < 5);
+
+        Files.createFile(directory.resolve(String.format("%020d", 1) + ".compacting")); //left by an interrupted compaction.
+        storage.destroy();
+        storage = open(256);
+
+        assertFalse(Files.exists(directory.resolve(String.format("%020d", 1) + ".compacting")));
+        assertEquals(ids(timeline), ids(storage.findNonDiscardedTweets()));
+        assertEquals(Arrays.asList(ids.get(1)), ids(storage.findDiscardedTweets("Publisher 1")));
+        assertNull(storage.findTweetById(ids.get(0)));
+        assertEquals(lastSeq, storage.findLastChangeSeq());
+        assertEquals(17L, storage.countPublishedTweetsBefore(Long.MAX_VALUE));
+        assertEquals(lastSeq + 1, storage.saveTweet(new Tweet("Publisher 0", "After compaction")).getSeq().longValue());
+    }
+
+    @Test
+    public void shouldPurgeTweetsAppendingTheirChanges() throws Exception {
+        final long first = storage.saveTweet(new Tweet("Guybrush", "I am Guybrush Threepwood, mighty pirate.")).getTweetId();
+        final long second = storage.saveTweet(new Tweet("Guybrush", "Look behind you, a three-headed monkey!")).getTweetId();
+        storage.discardTweet(tweet(second), publisher -> {});
+
+        assertEquals(1L, storage.countDiscardedTweetsBefore(Instant.now().plusSeconds(1)));
+        assertEquals(Arrays.asList(second), storage.findDiscardedTweetIdsBefore(Instant.now().plusSeconds(1), 10));
+        assertEquals(1, storage.findPublishedTweetsBefore(Long.MIN_VALUE, Long.MAX_VALUE, 10).size());
+
+        final List<TweetChange> changes = storage.purgeTweets(Arrays.asList(first, second, 42L));
+
+        assertEquals(Arrays.asList(TweetChange.Type.PUBLISHED_PURGED, TweetChange.Type.DISCARDED_PURGED),
+                changes.stream().map(TweetChange::getType).collect(Collectors.toList()));
+        assertTrue(storage.findNonDiscardedTweets().isEmpty());
+        assertTrue(storage.findDiscardedTweets("Guybrush").isEmpty());
+        assertEquals(0L, storage.countDiscardedTweetsBefore(Instant.now().plusSeconds(1)));
+    }
+
+    private LogTweetStorage open(final int segmentBytes) {
+        final LogTweetStorage storage = new LogTweetStorage(directory, segmentBytes, false, 1000,
+                idGenerator, mock(MetricWriter.class), "node");
+        storage.open();
+        return storage;
+    }
+
+    private static Tweet tweet(final Long id) {
+        final Tweet tweet = new Tweet();
+        tweet.setId(id);
+        return tweet;
+    }
+
+    private static List<Long> ids(final List<Tweet> tweets) {
+        return tweets.stream().map(Tweet::getId).collect(Collectors.toList());
+    }
+
+    private static List<Long> seqs(final List<TweetChange> changes) {
+        return changes.stream().map(TweetChange::getSeq).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,219 @@
+package com.scmspain.persistence;
+
+import com.scmspain.configuration.TestConfiguration;
+import com.scmspain.entities.Publisher;
+import com.scmspain.entities.Tweet;
+import com.scmspain.services.TweetService;
+import org.hibernate.JDBCException;
+import org.hibernate.Session;
+import org.hibernate.jdbc.ReturningWork;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+import javax.persistence.NoResultException;
+import javax.persistence.Query;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.*;
+
+public class PublisherDictionaryTest {
+    private EntityManager entityManager;
+    private Query query;
+    private PreparedStatement insert;
+    private AtomicLong clock;
+    private PublisherDictionary publisherDictionary;
+
+    @Before
+    public void setUp() throws Exception {
+        this.entityManager = mock(EntityManager.class);
+        this.query = mock(Query.class);
+        this.insert = mock(PreparedStatement.class);
+        this.clock = new AtomicLong();
+        this.publisherDictionary = new PublisherDictionary(entityManager, mock(PlatformTransactionManager.class), 1000, clock::get);
+
+        when(entityManager.createQuery(anyString())).thenReturn(query);
+        when(query.setParameter(anyString(), any())).thenReturn(query);
+        Session session = mock(Session.class);
+        Connection connection = mock(Connection.class);
+        when(entityManager.unwrap(Session.class)).thenReturn(session);
+        when(session.doReturningWork(any())).then(invocation -> {
+            try {
+                return invocation.getArgumentAt(0, ReturningWork.class).execute(connection);
+            } catch (SQLException ex) {
+                throw new JDBCException(ex.getMessage(), ex);
+            }
+        });
+        when(connection.prepareStatement(anyString())).thenReturn(insert);
+    }
+
+    @Test
+    public void shouldLookUpEachPublisherOnce() {
+        Publisher publisher = new Publisher("Guybrush Threepwood");
+        publisher.setId(1);
+        when(query.getSingleResult()).thenReturn(publisher);
+
+        assertEquals(Integer.valueOf(1), publisherDictionary.findId("Guybrush Threepwood"));
+        assertEquals(Integer.valueOf(1), publisherDictionary.findId("Guybrush Threepwood"));
+
+        verify(query, times(1)).getSingleResult();
+    }
+
+    @Test
+    public void shouldReturnSameNameInstanceForEveryLookUp() {
+        Publisher publisher = new Publisher(new String("Guybrush Threepwood"));
+        publisher.setId(1);
+        when(entityManager.find(Publisher.class, 1)).thenReturn(publisher);
+
+        String name = publisherDictionary.nameOf(1);
+
+        assertSame(name, publisherDictionary.nameOf(1));
+        verify(entityManager, times(1)).find(Publisher.class, 1);
+    }
+
+    @Test
+    public void shouldNotFindUnknownPublisher() {
+        when(query.getSingleResult()).thenThrow(NoResultException.class);
+
+        assertNull(publisherDictionary.findId("LeChuck"));
+    }
+
+    @Test
+    public void shouldRememberUnknownPublisherBriefly() {
+        when(query.getSingleResult()).thenThrow(NoResultException.class);
+
+        assertNull(publisherDictionary.findId("LeChuck"));
+        assertNull(publisherDictionary.findId("LeChuck"));
+        verify(query, times(1)).getSingleResult();
+
+        clock.set(1000);
+        assertNull(publisherDictionary.findId("LeChuck"));
+        verify(query, times(2)).getSingleResult();
+    }
+
+    @Test
+    public void shouldCreateUnknownPublisherOnCurrentTransaction() throws Exception {
+        when(query.getSingleResult()).thenThrow(NoResultException.class);
+        assertNull(publisherDictionary.findId("LeChuck"));
+
+        Publisher publisher = new Publisher("LeChuck");
+        publisher.setId(3);
+        reset(query);
+        when(query.setParameter(anyString(), any())).thenReturn(query);
+        when(query.getSingleResult()).thenReturn(publisher);
+
+        assertEquals(Integer.valueOf(3), publisherDictionary.getOrCreateId("LeChuck"));
+        assertEquals(Integer.valueOf(3), publisherDictionary.findId("LeChuck"));
+        verify(insert).executeUpdate();
+        verify(entityManager, never()).persist(any());
+    }
+
+    @Test
+    public void shouldReusePublisherInsertedConcurrently() throws Exception {
+        Publisher publisher = new Publisher("LeChuck");
+        publisher.setId(3);
+        when(query.getSingleResult()).thenReturn(publisher);
+        when(insert.executeUpdate()).thenThrow(new SQLException("Unique index or primary key violation", "23505"));
+
+        assertEquals(Integer.valueOf(3), publisherDictionary.getOrCreateId("LeChuck"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldThrowExceptionWhenPublisherCanNotBeInserted() throws Exception {
+        when(insert.executeUpdate()).thenThrow(new SQLException("Connection is broken", "08006"));
+
+        publisherDictionary.getOrCreateId("LeChuck");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldThrowExceptionForUnknownKey() {
+        publisherDictionary.nameOf(1);
+    }
+
+    @Test
+    public void shouldPublishNewPublisherAndLinkWithASingleConnection() {
+        try (ConfigurableApplicationContext context = new SpringApplicationBuilder(TestConfiguration.class)
+                .web(false)
+                .properties("spring.datasource.url=jdbc:h2:mem:publishers-" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1;DB_CLOSE_ON_EXIT=FALSE",
+                        "spring.datasource.tomcat.max-active=1", "spring.datasource.tomcat.max-wait=2000",
+                        "spring.jmx.enabled=false")
+                .run()) {
+            context.getBean(TweetService.class).publishTweet(new Tweet("Stan", "Visit http://www.stans.com/ for used ships."));
+
+            PublisherDictionary dictionary = context.getBean(PublisherDictionary.class);
+            assertEquals("Stan", dictionary.nameOf(dictionary.findId("Stan")));
+        }
+    }
+
+    @Test
+    public void shouldShareNewPublisherCreatedConcurrently() throws Exception {
+        try (ConfigurableApplicationContext context = new SpringApplicationBuilder(TestConfiguration.class)
+                .web(false)
+                .properties("spring.datasource.url=jdbc:h2:mem:publishers-" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1;DB_CLOSE_ON_EXIT=FALSE",
+                        "spring.jmx.enabled=false")
+                .run()) {
+            PublisherDictionary dictionary = context.getBean(PublisherDictionary.class);
+            TransactionTemplate transaction = new TransactionTemplate(context.getBean(PlatformTransactionManager.class));
+            CountDownLatch created = new CountDownLatch(1);
+            ExecutorService executor = Executors.newSingleThreadExecutor();
+            try {
+                // the first transaction keeps the new publisher uncommitted while the second one creates it too
+                Future<Integer> first = executor.submit(() -> transaction.execute(status -> {
+                    Integer id = dictionary.getOrCreateId("Herman Toothrot");
+                    created.countDown();
+                    try {
+                        Thread.sleep(200);
+                    } catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                    }
+                    return id;
+                }));
+                created.await();
+                Integer second = transaction.execute(status -> dictionary.getOrCreateId("Herman Toothrot"));
+
+                assertEquals(first.get(), second);
+                assertEquals("Herman Toothrot", dictionary.nameOf(second));
+            } finally {
+                executor.shutdownNow();
+            }
+        }
+    }
+
+    @Test
+    public void shouldKeepTransactionWhenInsertConflicts() {
+        try (ConfigurableApplicationContext context = new SpringApplicationBuilder(TestConfiguration.class)
+                .web(false)
+                .properties("spring.datasource.url=jdbc:h2:mem:publishers-" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1;DB_CLOSE_ON_EXIT=FALSE",
+                        "spring.jmx.enabled=false")
+                .run()) {
+            PublisherDictionary dictionary = context.getBean(PublisherDictionary.class);
+            EntityManager entityManager = context.getBean(EntityManager.class);
+            TransactionTemplate transaction = new TransactionTemplate(context.getBean(PlatformTransactionManager.class));
+            Integer id = dictionary.getOrCreateId("Stan");
+
+            // a plain insert of a stored name fails like the insert of a publisher created by a concurrent transaction
+            Integer created = transaction.execute(status -> {
+                assertFalse(SavepointInsert.execute(entityManager, "INSERT INTO PUBLISHER (NAME) VALUES (?)", "Stan"));
+                return dictionary.getOrCreateId("Otis");
+            });
+
+            assertNotEquals(id, created);
+            assertEquals("Otis", entityManager.find(Publisher.class, created).getName());
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package com.scmspain.persistence;
+
+import com.scmspain.utils.CircuitBreaker;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.boot.actuate.metrics.writer.MetricWriter;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+public class RepositoryGuardTest {
+    private CircuitBreaker circuitBreaker;
+    private RepositoryGuard repositoryGuard;
+    private CountDownLatch unblock;
+
+    @Before
+    public void setUp() throws Exception {
+        this.circuitBreaker = new CircuitBreaker(2, 1, 50, 1000, 60000);
+        this.repositoryGuard = new RepositoryGuard(circuitBreaker, mock(PlatformTransactionManager.class),
+                mock(MetricWriter.class), 1, 50, 10, 0);
+        this.unblock = new CountDownLatch(1);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        unblock.countDown();
+        repositoryGuard.destroy();
+    }
+
+    @Test
+    public void shouldServeFreshResult() {
+        ReadResult<String> result = repositoryGuard.read("key", () -> "fresh");
+
+        assertEquals("fresh", result.getValue());
+        assertFalse(result.isStale());
+    }
+
+    @Test
+    public void shouldServeLastGoodResultWhenReadTimesOut() {
+        repositoryGuard.read("key", () -> "good");
+
+        ReadResult<String> result = repositoryGuard.read("key", this::blocked);
+
+        assertEquals("good", result.getValue());
+        assertTrue(result.isStale());
+    }
+
+    @Test
+    public void shouldServeLastGoodResultWhenBulkheadIsFull() throws Exception {
+        circuitBreaker = new CircuitBreaker(10, 10, 50, 1000, 60000);
+        repositoryGuard.destroy();
+        repositoryGuard = new RepositoryGuard(circuitBreaker, mock(PlatformTransactionManager.class),
+                mock(MetricWriter.class), 1, 50, 10, 0);
+        repositoryGuard.read("key", () -> "good");
+        repositoryGuard.read("other", () -> "good");
+        repositoryGuard.read("other", this::blocked);
+
+        ReadResult<String> result = repositoryGuard.read("key", () -> "never read");
+
+        assertEquals("good", result.getValue());
+        assertTrue(result.isStale());
+        assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState());
+    }
+
+    @Test
+    public void shouldServeLastGoodResultWithoutReadingWhileOpen() {
+        repositoryGuard.read("key", () -> "good");
+        try {
+            repositoryGuard.read("key", () -> { throw new IllegalArgumentException("broken"); });
+            fail();
+        } catch (IllegalArgumentException ex){
+            assertEquals("broken", ex.getMessage());
+        }
+        assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+
+        ReadResult<String> result = repositoryGuard.read("key", () -> { throw new AssertionError("read while open"); });
+
+        assertEquals("good", result.getValue());
+        assertTrue(result.isStale());
+    }
+
+    @Test(expected = RepositoryUnavailableException.class)
+    public void shouldFailWhenDegradedWithoutLastGoodResult() {
+        repositoryGuard.read("key", this::blocked);
+    }
+
+    @Test
+    public void shouldReuseCompletedReadWithinWindow() throws Exception {
+        repositoryGuard.destroy();
+        repositoryGuard = new RepositoryGuard(circuitBreaker, mock(PlatformTransactionManager.class),
+                mock(MetricWriter.class), 1, 50, 10, 60000);
+
+        assertEquals("first", repositoryGuard.read("key", () -> "first").getValue());
+        assertEquals("first", repositoryGuard.read("key", () -> "second").getValue());
+        assertEquals("other", repositoryGuard.read("other", () -> "other").getValue());
+    }
+
+    @Test(expected = RepositoryUnavailableException.class)
+    public void shouldNotServeForgottenResult() {
+        repositoryGuard.read("key", () -> "good");
+
+        repositoryGuard.forget("key");
+
+        repositoryGuard.read("key", this::blocked);
+    }
+
+    @Test
+    public void shouldNotKeepResultOfReadRunningWhenForgotten() throws Exception {
+        repositoryGuard.read("key", () -> "good");
+        assertTrue(repositoryGuard.read("key", this::blocked).isStale());
+
+        repositoryGuard.forget("key");
+        unblock.countDown();
+        Thread.sleep(200); // lets the blocked read complete.
+
+        try {
+            repositoryGuard.read("key", () -> "never read while open");
+            fail();
+        } catch (RepositoryUnavailableException ex){
+            assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+        }
+    }
+
+    @Test(expected = RepositoryUnavailableException.class)
+    public void shouldRefuseWritesWhileOpen() {
+        try {
+            repositoryGuard.read("key", () -> { throw new IllegalArgumentException("broken"); });
+        } catch (IllegalArgumentException ex){
+            // opens the circuit.
+        }
+
+        repositoryGuard.checkWritable();
+    }
+
+    private String blocked() {
+        try {
+            unblock.await();
+        } catch (InterruptedException ex){
+            Thread.currentThread().interrupt();
+        }
+        return "late";
+    }
+}
@@ -0,0 +1,61 @@
+package com.scmspain.persistence;
+
+import com.scmspain.configuration.TestConfiguration;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.hql.internal.ast.ASTQueryTranslatorFactory;
+import org.hibernate.hql.spi.QueryTranslator;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import javax.persistence.EntityManagerFactory;
+import java.util.Collections;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Checks the execution plan of the timeline queries, translating them to SQL the same way Hibernate does and
+ * asking the database to explain them. A query that is not reading its index in order would need to sort its
+ * results, which H2 reports by leaving out the "index sorted" mark.
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(classes = TestConfiguration.class)
+public class TweetPersistenceQueryPlanTest {
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    public void shouldReadPublishedTimelineInIndexOrder() {
+        String plan = explain(TweetPersistence.QUERY_NON_DISCARDED_TWEETS);
+
+        assertThat(plan).contains("IDX_TWEET_PUBLISHED_TIMELINE").contains("/* index sorted */");
+    }
+
+    @Test
+    public void shouldReadNewestPublishedTweetsByIdRange() {
+        String plan = explain(TweetPersistence.QUERY_NON_DISCARDED_TWEETS_AFTER, 1L);
+
+        assertThat(plan).contains("PRIMARY_KEY").contains("ID > ?1");
+    }
+
+    @Test
+    public void shouldReadDiscardedTimelineInIndexOrder() {
+        String plan = explain(TweetPersistence.QUERY_DISCARDED_TWEETS, 1);
+
+        assertThat(plan).contains("IDX_TWEET_DISCARDED_TIMELINE").contains("/* index sorted */");
+    }
+
+    private String explain(String jpql, Object... parameters) {
+        SessionFactoryImplementor sessionFactory = entityManagerFactory.unwrap(SessionFactoryImplementor.class);
+        QueryTranslator translator = new ASTQueryTranslatorFactory()
+                .createQueryTranslator(jpql, jpql, Collections.emptyMap(), sessionFactory, null);
+        translator.compile(Collections.emptyMap(), false);
+
+        return jdbcTemplate.queryForObject("EXPLAIN " + translator.getSQLString(), parameters, String.class);
+    }
+}
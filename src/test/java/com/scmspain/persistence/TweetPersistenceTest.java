@@ -1,6 +1,8 @@
 package com.scmspain.persistence;
 
+import com.scmspain.entities.Link;
 import com.scmspain.entities.Tweet;
+import com.scmspain.entities.TweetChange;
 import org.junit.Before;
 import org.junit.Test;
 
@@ -9,29 +11,43 @@ import javax.persistence.EntityManager;
 import javax.persistence.PersistenceException;
 import javax.persistence.Query;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 import static org.junit.Assert.*;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.isA;
 import static org.mockito.Mockito.*;
 
 public class TweetPersistenceTest {
     private EntityManager entityManager;
+    private PublisherDictionary publisherDictionary;
+    private LinkDictionary linkDictionary;
     private TweetPersistence tweetPersistence;
 
         @Before
         public void setUp() throws Exception {
             this.entityManager = mock(EntityManager.class);
-            this.tweetPersistence = new TweetPersistence(entityManager);
+            this.publisherDictionary = mock(PublisherDictionary.class);
+            this.linkDictionary = mock(LinkDictionary.class);
+            this.tweetPersistence = new TweetPersistence(entityManager, publisherDictionary, linkDictionary, "node");
     }
 
     @Test
     public void shouldInsertANewTweet() throws Exception {
         Tweet tweet = new Tweet("Guybrush Threepwood", "I am Guybrush Threepwood, mighty pirate.");
-        tweetPersistence.saveTweet(tweet);
+        when(publisherDictionary.getOrCreateId("Guybrush Threepwood")).thenReturn(7);
+
+        TweetChange change = tweetPersistence.saveTweet(tweet);
 
-        verify(entityManager).persist(any(Tweet.class));
+        verify(entityManager).persist(tweet);
+        assertEquals(Integer.valueOf(7), tweet.getPublisherId());
+        assertEquals(Integer.valueOf(7), change.getPublisherId());
+        verify(entityManager).persist(isA(TweetChange.class));
+        assertEquals(TweetChange.Type.PUBLISHED, change.getType());
+        assertEquals("node", change.getNodeId());
     }
 
     @Test(expected = IllegalArgumentException.class)
@@ -52,10 +68,14 @@ public class TweetPersistenceTest {
     @Test
     public void shouldInsertNewTweetWithLinks() throws Exception {
         Tweet tweet = new Tweet("Guybrush Threepwood", "I am Guybrush Threepwood ( https://en.wikipedia.org/wiki/Guybrush_Threepwood ), mighty pirate.");
+        Link link = new Link(42L, "https://en.wikipedia.org/wiki/Guybrush_Threepwood ");
+        when(linkDictionary.resolve("https://en.wikipedia.org/wiki/Guybrush_Threepwood ")).thenReturn(link);
+
         tweetPersistence.saveTweet(tweet);
 
         assertFalse(tweet.getLinks().isEmpty());
         assertEquals(1, tweet.getLinks().size());
+        assertSame(link, tweet.getLinks().get(0).getLink());
     }
 
     @Test
@@ -120,6 +140,7 @@ public class TweetPersistenceTest {
         tweets.add(tweet3);
 
         Query query = mock(Query.class);
+        when(publisherDictionary.findId(anyString())).thenReturn(1);
         when(entityManager.createQuery(anyString())).thenReturn(query);
         when(query.getResultList()).thenReturn(tweets);
         List<Tweet> result = tweetPersistence.findDiscardedTweets(anyString());
@@ -132,23 +153,72 @@ public class TweetPersistenceTest {
     @Test(expected = IllegalArgumentException.class)
     public void shouldThrowExceptionFindDiscardedTweets(){
         Query query = mock(Query.class);
+        when(publisherDictionary.findId(anyString())).thenReturn(1);
         when(entityManager.createQuery(anyString())).thenReturn(query);
         when(query.getResultList()).thenThrow(PersistenceException.class);
 
         tweetPersistence.findDiscardedTweets(anyString());
     }
 
+    @Test
+    public void shouldFindNoDiscardedTweetsForUnknownPublisher(){
+        when(publisherDictionary.findId("Pirate")).thenReturn(null);
+
+        assertTrue(tweetPersistence.findDiscardedTweets("Pirate").isEmpty());
+        verify(entityManager, never()).createQuery(anyString());
+    }
+
     @Test
     public void shouldDiscardTweet(){
         Tweet tweet = new Tweet("Guybrush Threepwood", "I am Guybrush Threepwood, mighty pirate.");
         tweet.setId(1L);
+        tweet.setPublisherId(7);
+        List<String> checked = new ArrayList<>();
 
         when(entityManager.find(Tweet.class, 1L)).thenReturn(tweet);
+        when(publisherDictionary.nameOf(7)).thenReturn("Guybrush Threepwood");
 
-        tweetPersistence.discardTweet(tweet);
+        TweetChange change = tweetPersistence.discardTweet(tweet, checked::add);
 
         verify(entityManager).merge(any(Tweet.class));
+        verify(entityManager).persist(isA(TweetChange.class));
         assertEquals(true, tweet.isDiscarded());
+        assertNotNull(tweet.getDiscardedAt());
+        assertEquals("", tweet.getDate());
+        assertEquals(TweetChange.Type.DISCARDED, change.getType());
+        assertEquals(Long.valueOf(1L), change.getTweetId());
+        assertEquals(Collections.singletonList("Guybrush Threepwood"), checked);
+    }
+
+    @Test
+    public void shouldNotDiscardTweetRejectedByCheck(){
+        Tweet tweet = new Tweet("Guybrush Threepwood", "I am Guybrush Threepwood, mighty pirate.");
+        tweet.setId(1L);
+        tweet.setPublisherId(7);
+
+        when(entityManager.find(Tweet.class, 1L)).thenReturn(tweet);
+
+        try {
+            tweetPersistence.discardTweet(tweet, publisher -> { throw new IllegalStateException(publisher); });
+            fail();
+        } catch (IllegalStateException expected) {
+        }
+        assertNull(tweet.isDiscarded());
+        verify(entityManager, never()).merge(any(Tweet.class));
+        verify(entityManager, never()).persist(any());
+    }
+
+    @Test
+    public void shouldNotDiscardTweetTwice(){
+        Tweet tweet = new Tweet("Guybrush Threepwood", "I am Guybrush Threepwood, mighty pirate.");
+        tweet.setId(1L);
+        tweet.setDiscarded(true);
+
+        when(entityManager.find(Tweet.class, 1L)).thenReturn(tweet);
+
+        assertNull(tweetPersistence.discardTweet(tweet, publisher -> fail()));
+        verify(entityManager, never()).merge(any(Tweet.class));
+        verify(entityManager, never()).persist(any());
     }
 
     @Test(expected = IllegalArgumentException.class)
@@ -158,6 +228,47 @@ public class TweetPersistenceTest {
 
         when(entityManager.find(Tweet.class, 1L)).thenReturn(null);
 
-        tweetPersistence.discardTweet(tweet);
+        tweetPersistence.discardTweet(tweet, publisher -> {});
+    }
+
+    @Test
+    public void shouldPurgeTweetsAppendingTheirChanges(){
+        Query query = mock(Query.class);
+        Query linkIds = mock(Query.class);
+        when(entityManager.createQuery(anyString())).thenReturn(query);
+        when(entityManager.createQuery(TweetPersistence.QUERY_PURGED_LINK_IDS)).thenReturn(linkIds);
+        when(query.setParameter(anyString(), any())).thenReturn(query);
+        when(linkIds.setParameter(anyString(), any())).thenReturn(linkIds);
+        List<Object[]> rows = new ArrayList<>();
+        rows.add(new Object[]{1L, 7, false});
+        rows.add(new Object[]{2L, 8, true});
+        when(query.getResultList()).thenReturn(rows);
+        when(linkIds.getResultList()).thenReturn(new ArrayList<>());
+
+        List<TweetChange> changes = tweetPersistence.purgeTweets(Arrays.asList(1L, 2L));
+
+        verify(query, times(2)).executeUpdate();
+        assertEquals(2, changes.size());
+        assertEquals(TweetChange.Type.PUBLISHED_PURGED, changes.get(0).getType());
+        assertEquals(Integer.valueOf(7), changes.get(0).getPublisherId());
+        assertEquals(TweetChange.Type.DISCARDED_PURGED, changes.get(1).getType());
+        assertEquals(Long.valueOf(2L), changes.get(1).getTweetId());
+    }
+
+    @Test
+    public void shouldPurgeLinksOfPurgedTweets(){
+        Query query = mock(Query.class);
+        Query linkIds = mock(Query.class);
+        when(entityManager.createQuery(anyString())).thenReturn(query);
+        when(entityManager.createQuery(TweetPersistence.QUERY_PURGED_LINK_IDS)).thenReturn(linkIds);
+        when(query.setParameter(anyString(), any())).thenReturn(query);
+        when(linkIds.setParameter(anyString(), any())).thenReturn(linkIds);
+        when(query.getResultList()).thenReturn(Collections.singletonList(new Object[]{1L, 7, false}));
+        when(linkIds.getResultList()).thenReturn(Collections.singletonList(42L));
+
+        tweetPersistence.purgeTweets(Collections.singletonList(1L));
+
+        verify(query).setParameter("ids", Collections.singletonList(42L));
+        verify(query, times(3)).executeUpdate();
     }
 }
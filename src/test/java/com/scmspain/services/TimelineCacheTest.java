@@ -0,0 +1,254 @@
+package com.scmspain.services;
+
+import com.scmspain.entities.Tweet;
+import com.scmspain.entities.TweetChange;
+import com.scmspain.persistence.LogTweetStorage;
+import com.scmspain.persistence.RepositoryGuard;
+import com.scmspain.persistence.TimelineSnapshotFile;
+import com.scmspain.persistence.TweetStorage;
+import com.scmspain.utils.CircuitBreaker;
+import com.scmspain.utils.SnowflakeIdGenerator;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.boot.actuate.metrics.writer.MetricWriter;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Mockito.*;
+
+public class TimelineCacheTest {
+    private static final long SETTLE_MILLIS = 2000;
+    private static final Instant START = Instant.parse("2020-01-01T00:00:00Z");
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final AtomicLong clock = new AtomicLong(START.toEpochMilli());
+    private TweetStorage tweetStorage;
+    private MetricWriter metricWriter;
+    private RepositoryGuard repositoryGuard;
+    private TimelineSnapshotFile snapshotFile;
+
+    @Before
+    public void setUp() throws Exception {
+        this.tweetStorage = mock(TweetStorage.class);
+        this.metricWriter = mock(MetricWriter.class);
+        this.repositoryGuard = new RepositoryGuard(new CircuitBreaker(10, 5, 50, 1000, 1000),
+                mock(PlatformTransactionManager.class), metricWriter, 2, 1000, 10, 0);
+        this.snapshotFile = new TimelineSnapshotFile(folder.getRoot().toPath().resolve("timeline.snapshot"));
+        when(tweetStorage.findChangesAfter(anyLong(), anyInt())).thenReturn(Collections.emptyList());
+    }
+
+    @Test
+    public void shouldServeTimelineLoadedOnStartup() {
+        final List<Tweet> tweets = Arrays.asList(tweet(2, "Look behind you!"), tweet(1, "I am Guybrush Threepwood."));
+        when(tweetStorage.findNonDiscardedTweets()).thenReturn(tweets);
+
+        final TimelineCache cache = open(null, 10);
+
+        assertEquals(tweets, cache.read().getValue());
+        assertEquals(tweets, cache.read().getValue());
+        verify(tweetStorage, times(1)).findNonDiscardedTweets();
+    }
+
+    @Test
+    public void shouldNotServeTimelineLargerThanMaxEntries() {
+        when(tweetStorage.findNonDiscardedTweets()).thenReturn(Arrays.asList(tweet(2, "Look behind you!"), tweet(1, "Arrr!")));
+
+        final TimelineCache cache = open(null, 1);
+
+        assertNull(cache.read());
+    }
+
+    @Test
+    public void shouldCatchUpWithTweetsPublishedLately() {
+        final Tweet old = tweet(1, "I am Guybrush Threepwood.");
+        when(tweetStorage.findNonDiscardedTweets()).thenReturn(Collections.singletonList(old));
+        final TimelineCache cache = open(null, 10);
+
+        clock.addAndGet(10000);
+        final Tweet published = tweet(10000, "Look behind you, a three-headed monkey!");
+        when(tweetStorage.findNonDiscardedTweetsAfter(anyLong())).thenAnswer(invocation -> {
+            final long from = invocation.getArgumentAt(0, Long.class);
+            return Arrays.asList(published, old).stream().filter(tweet -> tweet.getId() > from).collect(Collectors.toList());
+        });
+        cache.onTweetChange(change(published, TweetChange.Type.PUBLISHED, 1));
+
+        assertEquals(Arrays.asList(published, old), cache.read().getValue());
+        verify(tweetStorage).findNonDiscardedTweetsAfter(SnowflakeIdGenerator.lowestIdAt(START.minusMillis(SETTLE_MILLIS)));
+
+        // until the publish is settled, only the tweets published since the last read minus the settle window are read.
+        clock.addAndGet(SETTLE_MILLIS);
+        assertEquals(Arrays.asList(published, old), cache.read().getValue());
+        verify(tweetStorage).findNonDiscardedTweetsAfter(SnowflakeIdGenerator.lowestIdAt(START.plusMillis(10000 - SETTLE_MILLIS)));
+
+        assertEquals(Arrays.asList(published, old), cache.read().getValue());
+        verify(tweetStorage, times(2)).findNonDiscardedTweetsAfter(anyLong());
+    }
+
+    @Test
+    public void shouldNotBringBackTweetsDiscardedLately() {
+        final Tweet first = tweet(1, "I am Guybrush Threepwood.");
+        final Tweet second = tweet(2, "Arrr!");
+        when(tweetStorage.findNonDiscardedTweets()).thenReturn(Arrays.asList(second, first));
+        final TimelineCache cache = open(null, 10);
+
+        cache.onTweetChange(change(second, TweetChange.Type.DISCARDED, 1));
+        assertEquals(Collections.singletonList(first), cache.read().getValue());
+
+        // a read which started before the discard was committed still finds the tweet published.
+        final Tweet published = tweet(100, "Look behind you!");
+        when(tweetStorage.findNonDiscardedTweetsAfter(anyLong())).thenReturn(Arrays.asList(published, second, first));
+        cache.onTweetChange(change(published, TweetChange.Type.PUBLISHED, 2));
+        clock.addAndGet(1);
+
+        assertEquals(Arrays.asList(published, first), cache.read().getValue());
+    }
+
+    @Test
+    public void shouldLoadSnapshotAndCatchUpWithChangeLog() {
+        final Tweet first = tweet(-10000, "I am Guybrush Threepwood.");
+        final Tweet second = tweet(-5000, "Arrr! http://monkey.island ");
+        final Tweet published = tweet(60000, "Look behind you, a three-headed monkey!");
+        snapshotFile.write(new TimelineSnapshotFile.Snapshot(Arrays.asList(second, first), 5, START));
+        clock.addAndGet(60000);
+
+        when(tweetStorage.findLastChangeSeq()).thenReturn(7L);
+        when(tweetStorage.findChangesAfter(5, 500)).thenReturn(Arrays.asList(
+                change(second, TweetChange.Type.DISCARDED, 6), change(published, TweetChange.Type.PUBLISHED, 7)));
+        when(tweetStorage.findNonDiscardedTweetsAfter(SnowflakeIdGenerator.lowestIdAt(START.minusMillis(SETTLE_MILLIS))))
+                .thenReturn(Collections.singletonList(published));
+
+        final TimelineCache cache = open(snapshotFile, 10);
+
+        final List<Tweet> tweets = cache.read().getValue();
+        assertEquals(Arrays.asList(published.getId(), first.getId()), Arrays.asList(tweets.get(0).getId(), tweets.get(1).getId()));
+        assertEquals(first.getTweet(), tweets.get(1).getTweet());
+        assertEquals(first.getDate(), tweets.get(1).getDate());
+        verify(tweetStorage, never()).findNonDiscardedTweets();
+    }
+
+    @Test
+    public void shouldLoadWholeTimelineWhenChangeLogNoLongerGoesBackToSnapshot() {
+        snapshotFile.write(new TimelineSnapshotFile.Snapshot(Collections.singletonList(tweet(1, "Arrr!")), 5, START));
+        final List<Tweet> tweets = Collections.singletonList(tweet(3, "I am Guybrush Threepwood."));
+        when(tweetStorage.findLastChangeSeq()).thenReturn(9L);
+        when(tweetStorage.findChangesAfter(5, 500)).thenReturn(Collections.singletonList(
+                change(tweets.get(0), TweetChange.Type.PUBLISHED, 9)));
+        when(tweetStorage.findNonDiscardedTweets()).thenReturn(tweets);
+
+        final TimelineCache cache = open(snapshotFile, 10);
+
+        assertEquals(tweets, cache.read().getValue());
+    }
+
+    @Test
+    public void shouldLoadWholeTimelineWhenChangeLogEndsBeforeItsLastEntry() {
+        snapshotFile.write(new TimelineSnapshotFile.Snapshot(Collections.singletonList(tweet(1, "Arrr!")), 5, START));
+        final List<Tweet> tweets = Collections.singletonList(tweet(3, "I am Guybrush Threepwood."));
+        when(tweetStorage.findLastChangeSeq()).thenReturn(9L);
+        when(tweetStorage.findNonDiscardedTweets()).thenReturn(tweets);
+
+        final TimelineCache cache = open(snapshotFile, 10);
+
+        assertEquals(tweets, cache.read().getValue());
+    }
+
+    @Test
+    public void shouldNotServeTweetDiscardedAfterSnapshotOnceLogIsCompacted() throws Exception {
+        LogTweetStorage storage = openLog();
+        final Long guybrush = storage.saveTweet(new Tweet("Guybrush Threepwood", "I am Guybrush Threepwood, mighty pirate.")).getTweetId();
+        final Long lechuck = storage.saveTweet(new Tweet("LeChuck", "You fight like a dairy farmer.")).getTweetId();
+        Thread.sleep(5);
+        open(storage, snapshotFile).destroy();
+
+        storage.discardTweet(tweet(lechuck), publisher -> {});
+        for(int i = 0; i < 5; i++){
+            storage.saveTweet(new Tweet("Stan", "Stan's previously owned vessels " + i));
+        }
+        assertTrue(storage.compact());
+        storage.destroy();
+        storage = openLog();
+
+        try {
+            final List<Long> ids = ids(open(storage, snapshotFile).read().getValue());
+            assertEquals(6, ids.size());
+            assertTrue(ids.contains(guybrush));
+            assertFalse(ids.contains(lechuck));
+        } finally {
+            storage.destroy();
+        }
+    }
+
+    @Test
+    public void shouldWriteSnapshotOnShutdown() throws Exception {
+        final Tweet tweet = tweet(1, "I am Guybrush Threepwood.");
+        when(tweetStorage.findLastChangeSeq()).thenReturn(3L);
+        when(tweetStorage.findNonDiscardedTweets()).thenReturn(Collections.singletonList(tweet));
+        final TimelineCache cache = open(snapshotFile, 10);
+
+        cache.destroy();
+
+        final TimelineSnapshotFile.Snapshot snapshot = snapshotFile.read();
+        assertEquals(3L, snapshot.getSeq());
+        assertEquals(START, snapshot.getTakenAt());
+        assertEquals(tweet.getId(), snapshot.getTweets().get(0).getId());
+        assertEquals(tweet.getPublisher(), snapshot.getTweets().get(0).getPublisher());
+    }
+
+    private TimelineCache open(final TimelineSnapshotFile snapshotFile, final int maxEntries) {
+        final TimelineCache cache = new TimelineCache(tweetStorage, repositoryGuard, mock(PlatformTransactionManager.class),
+                metricWriter, snapshotFile, maxEntries, SETTLE_MILLIS, clock::get);
+        cache.load();
+        return cache;
+    }
+
+    private LogTweetStorage openLog() throws Exception {
+        final LogTweetStorage storage = new LogTweetStorage(folder.getRoot().toPath().resolve("log"), 256, false, 1000,
+                new SnowflakeIdGenerator(0, 5000), metricWriter, "node");
+        storage.open();
+        return storage;
+    }
+
+    private TimelineCache open(final TweetStorage storage, final TimelineSnapshotFile snapshotFile) {
+        final TimelineCache cache = new TimelineCache(storage, repositoryGuard, mock(PlatformTransactionManager.class),
+                metricWriter, snapshotFile, 10, 0);
+        cache.load();
+        return cache;
+    }
+
+    private static Tweet tweet(final Long id) {
+        final Tweet tweet = new Tweet();
+        tweet.setId(id);
+        return tweet;
+    }
+
+    private static List<Long> ids(final List<Tweet> tweets) {
+        return tweets.stream().map(Tweet::getId).collect(Collectors.toList());
+    }
+
+    private static Tweet tweet(final long millis, final String text) {
+        final Tweet tweet = new Tweet("Guybrush Threepwood", text);
+        tweet.setId(SnowflakeIdGenerator.lowestIdAt(START.plusMillis(millis)));
+        tweet.setDate(START.plusMillis(millis));
+        tweet.setDiscarded(false);
+        return tweet;
+    }
+
+    private static TweetChange change(final Tweet tweet, final TweetChange.Type type, final long seq) {
+        final TweetChange change = new TweetChange(tweet, type, "node");
+        change.setSeq(seq);
+        return change;
+    }
+}
@@ -0,0 +1,95 @@
+package com.scmspain.services;
+
+import com.scmspain.configuration.TestConfiguration;
+import com.scmspain.entities.Tweet;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+/**
+ * Restarts the application on the same H2 database, once loading the timeline from the repository on the first
+ * request and once from the snapshot written on the previous shutdown, logging the time until the first timeline
+ * response of each. Both include starting the application, which takes most of it, so the times are only logged to
+ * be compared over runs. The snapshot is caught up with the tweets published and discarded while it was down.
+ */
+public class TimelineWarmRestartTest {
+    private static final Logger LOG = LoggerFactory.getLogger(TimelineWarmRestartTest.class);
+    private static final int TWEETS = 1000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final String database = "jdbc:h2:mem:warmrestart-" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1;DB_CLOSE_ON_EXIT=FALSE";
+
+    @Test
+    public void shouldServeTimelineFromSnapshotRightAfterRestart() throws Exception {
+        final Path snapshot = folder.getRoot().toPath().resolve("timeline.snapshot");
+        final Tweet discarded;
+        final Tweet published = new Tweet("LeChuck", "You fight like a dairy farmer. http://monkey.island ");
+        try (ConfigurableApplicationContext context = start(snapshot, 10000)) {
+            final TweetService tweetService = context.getBean(TweetService.class);
+            for(int i = 0; i < TWEETS; i++){
+                tweetService.publishTweet(new Tweet("Guybrush Threepwood", "I am Guybrush Threepwood, mighty pirate " + i + " http://monkey.island "));
+            }
+            discarded = tweetService.listAllTweets().getValue().get(TWEETS / 2);
+        }
+        assertTrue(Files.exists(snapshot));
+
+        final List<Long> expected;
+        try (ConfigurableApplicationContext context = start(null, 0)) {
+            final TweetService tweetService = context.getBean(TweetService.class);
+            tweetService.discardTweet(discarded);
+            tweetService.publishTweet(published);
+            expected = ids(tweetService.listAllTweets().getValue());
+        }
+
+        final long coldStart = System.nanoTime();
+        try (ConfigurableApplicationContext context = start(null, 10000)) {
+            assertEquals(expected, ids(context.getBean(TweetService.class).listAllTweets().getValue()));
+            report("without snapshot", coldStart);
+        }
+
+        final long warmStart = System.nanoTime();
+        try (ConfigurableApplicationContext context = start(snapshot, 10000)) {
+            final List<Tweet> tweets = context.getBean(TimelineCache.class).read().getValue();
+            report("with snapshot", warmStart);
+
+            assertEquals(expected, ids(tweets));
+            assertEquals("You fight like a dairy farmer. http://monkey.island ", tweets.get(0).getTweet());
+            assertEquals("Guybrush Threepwood", tweets.get(1).getPublisher());
+        }
+    }
+
+    private ConfigurableApplicationContext start(final Path snapshot, final int entries) {
+        return new SpringApplicationBuilder(TestConfiguration.class)
+                .web(false)
+                .properties(
+                        "spring.datasource.url=" + database,
+                        "spring.jpa.hibernate.ddl-auto=update",
+                        "spring.jmx.enabled=false",
+                        "tweet.timeline.entries=" + entries,
+                        "tweet.timeline.snapshot.path=" + (snapshot == null ? "" : snapshot.toString()))
+                .run();
+    }
+
+    private static List<Long> ids(final List<Tweet> tweets) {
+        return tweets.stream().map(Tweet::getId).collect(Collectors.toList());
+    }
+
+    private static void report(final String label, final long start) {
+        LOG.info("Timeline of " + TWEETS + " tweets served " + label + " "
+                + (System.nanoTime() - start) / 1_000_000 + " ms after starting the application.");
+    }
+}
@@ -0,0 +1,99 @@
+package com.scmspain.services;
+
+import com.scmspain.entities.Link;
+import com.scmspain.entities.Tweet;
+import com.scmspain.entities.TweetChange;
+import com.scmspain.persistence.TweetPersistence;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+public class TopLinksServiceTest {
+    private static final Link SCUMM_BAR = new Link(1L, "http://www.scummbar.com/ ");
+    private static final Link MONKEY_ISLAND = new Link(2L, "http://www.monkeyisland.com/ ");
+    private static final Link MELEE_ISLAND = new Link(3L, "http://www.meleeisland.com/ ");
+
+    private TweetPersistence tweetPersistence;
+    private TopLinksService topLinksService;
+    private long tweetId;
+
+    @Before
+    public void setUp() throws Exception {
+        this.tweetPersistence = mock(TweetPersistence.class);
+        this.topLinksService = new TopLinksService(tweetPersistence, 4, 1024, 2);
+    }
+
+    @Test
+    public void shouldSeedCountsFromRepository() {
+        List<Object[]> rows = new ArrayList<>();
+        rows.add(new Object[]{1L, SCUMM_BAR.getUrl(), 3L});
+        rows.add(new Object[]{2L, MONKEY_ISLAND.getUrl(), 5L});
+        when(tweetPersistence.countPublishedTweetsByLink()).thenReturn(rows);
+
+        topLinksService.seed();
+
+        List<TopLinksService.LinkCount> top = topLinksService.top(10);
+        assertEquals(2, top.size());
+        assertEquals(MONKEY_ISLAND.getUrl(), top.get(0).getLink());
+        assertEquals(5, top.get(0).getCount());
+        assertEquals(SCUMM_BAR.getUrl(), top.get(1).getLink());
+        assertEquals(3, top.get(1).getCount());
+    }
+
+    @Test
+    public void shouldCountEveryLinkOncePerTweet() {
+        publish(SCUMM_BAR, SCUMM_BAR, MONKEY_ISLAND);
+        publish(SCUMM_BAR);
+
+        List<TopLinksService.LinkCount> top = topLinksService.top(1);
+        assertEquals(1, top.size());
+        assertEquals(SCUMM_BAR.getUrl(), top.get(0).getLink());
+        assertEquals(2, top.get(0).getCount());
+    }
+
+    @Test
+    public void shouldUncountDiscardedTweets() {
+        long discarded = publish(SCUMM_BAR);
+        publish(MONKEY_ISLAND);
+
+        topLinksService.onTweetChange(change(discarded, TweetChange.Type.DISCARDED));
+
+        List<TopLinksService.LinkCount> top = topLinksService.top(10);
+        assertEquals(1, top.size());
+        assertEquals(MONKEY_ISLAND.getUrl(), top.get(0).getLink());
+    }
+
+    @Test
+    public void shouldReplaceLowestCandidateByMorePublishedLink() {
+        publish(SCUMM_BAR);
+        publish(SCUMM_BAR);
+        publish(MONKEY_ISLAND);
+        publish(MELEE_ISLAND);
+        publish(MELEE_ISLAND);
+
+        List<TopLinksService.LinkCount> top = topLinksService.top(10);
+        assertEquals(2, top.size());
+        assertEquals(2, top.get(0).getCount());
+        assertEquals(2, top.get(1).getCount());
+        assertTrue(top.stream().noneMatch(linkCount -> linkCount.getLink().equals(MONKEY_ISLAND.getUrl())));
+    }
+
+    private long publish(Link... links) {
+        long id = ++tweetId;
+        when(tweetPersistence.findTweetLinks(id)).thenReturn(Arrays.asList(links));
+        topLinksService.onTweetChange(change(id, TweetChange.Type.PUBLISHED));
+        return id;
+    }
+
+    private TweetChange change(long id, TweetChange.Type type) {
+        Tweet tweet = new Tweet("Guybrush Threepwood", "");
+        tweet.setId(id);
+        return new TweetChange(tweet, type, "node");
+    }
+}
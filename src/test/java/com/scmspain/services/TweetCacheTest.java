@@ -0,0 +1,106 @@
+package com.scmspain.services;
+
+import com.scmspain.entities.Tweet;
+import com.scmspain.entities.TweetChange;
+import com.scmspain.persistence.RepositoryGuard;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.boot.actuate.metrics.writer.MetricWriter;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.*;
+
+public class TweetCacheTest {
+    private MetricWriter metricWriter;
+    private RepositoryGuard repositoryGuard;
+    private TweetCache tweetCache;
+
+    @Before
+    public void setUp() {
+        this.metricWriter = mock(MetricWriter.class);
+        this.repositoryGuard = mock(RepositoryGuard.class);
+        this.tweetCache = new TweetCache(metricWriter, repositoryGuard, 2);
+    }
+
+    @Test
+    public void shouldEvictLeastRecentlyUsedTweet() {
+        tweetCache.put(tweet(1L), tweetCache.version());
+        tweetCache.put(tweet(2L), tweetCache.version());
+        tweetCache.get(1L);
+        tweetCache.put(tweet(3L), tweetCache.version());
+
+        assertNotNull(tweetCache.get(1L));
+        assertNull(tweetCache.get(2L));
+        assertNotNull(tweetCache.get(3L));
+    }
+
+    @Test
+    public void shouldInvalidateTweetOnEveryChangeButPublishing() {
+        tweetCache.put(tweet(1L), tweetCache.version());
+        tweetCache.onTweetChange(new TweetChange(tweet(1L), TweetChange.Type.PUBLISHED, "node"));
+        assertNotNull(tweetCache.get(1L));
+
+        tweetCache.onTweetChange(new TweetChange(tweet(1L), TweetChange.Type.DISCARDED, "node"));
+        assertNull(tweetCache.get(1L));
+
+        tweetCache.put(tweet(2L), tweetCache.version());
+        tweetCache.onTweetChange(new TweetChange(tweet(2L), TweetChange.Type.PUBLISHED_PURGED, "node"));
+        assertNull(tweetCache.get(2L));
+    }
+
+    @Test
+    public void shouldForgetLastGoodResultOfInvalidatedTweet() {
+        tweetCache.onTweetChange(new TweetChange(tweet(1L), TweetChange.Type.PUBLISHED, "node"));
+        verify(repositoryGuard, never()).forget(anyString());
+
+        tweetCache.onTweetChange(new TweetChange(tweet(1L), TweetChange.Type.DISCARDED, "node"));
+        tweetCache.onTweetChange(new TweetChange(tweet(2L), TweetChange.Type.DISCARDED_PURGED, "node"));
+
+        verify(repositoryGuard).forget(TweetCache.readKey(1L));
+        verify(repositoryGuard).forget(TweetCache.readKey(2L));
+    }
+
+    @Test
+    public void shouldNotCacheTweetLoadedWhileInvalidating() {
+        final long version = tweetCache.version();
+        tweetCache.onTweetChange(new TweetChange(tweet(1L), TweetChange.Type.DISCARDED, "node"));
+        tweetCache.put(tweet(1L), version);
+
+        assertNull(tweetCache.get(1L));
+    }
+
+    @Test
+    public void shouldReportHitRatioEvictionsAndEntries() {
+        tweetCache.put(tweet(1L), tweetCache.version());
+        tweetCache.put(tweet(2L), tweetCache.version());
+        tweetCache.put(tweet(3L), tweetCache.version());
+        tweetCache.get(2L);
+        tweetCache.get(3L);
+        tweetCache.get(1L);
+        tweetCache.get(4L);
+
+        tweetCache.report();
+
+        ArgumentCaptor<Metric> captor = ArgumentCaptor.forClass(Metric.class);
+        verify(metricWriter, times(3)).set(captor.capture());
+        Map<String, Number> metrics = new HashMap<>();
+        for(Metric<?> metric : captor.getAllValues()){
+            metrics.put(metric.getName(), metric.getValue());
+        }
+        assertEquals(0.5, metrics.get("tweet-cache.hit-ratio").doubleValue(), 0.0001);
+        assertEquals(1L, metrics.get("tweet-cache.evictions").longValue());
+        assertEquals(2, metrics.get("tweet-cache.entries").intValue());
+    }
+
+    private static Tweet tweet(Long id) {
+        Tweet tweet = new Tweet("Guybrush Threepwood", "I am Guybrush Threepwood, mighty pirate.");
+        tweet.setId(id);
+        return tweet;
+    }
+}
@@ -0,0 +1,96 @@
+package com.scmspain.services;
+
+import com.scmspain.configuration.TestConfiguration;
+import com.scmspain.entities.Tweet;
+import com.scmspain.persistence.TweetStorage;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs several application instances in the same JVM, all of them sharing one H2 database, to check that the
+ * changes made by any instance reach the in-process state of the others through the change log.
+ */
+public class TweetChangeLogMultiNodeTest {
+    private static final int NODES = 3;
+
+    private final List<ConfigurableApplicationContext> nodes = new ArrayList<>();
+
+    @Before
+    public void setUp() throws Exception {
+        for(int i = 0; i < NODES; i++){
+            nodes.add(new SpringApplicationBuilder(TestConfiguration.class)
+                    .web(false)
+                    .properties(
+                            "spring.datasource.url=jdbc:h2:mem:multinode;DB_CLOSE_DELAY=-1;DB_CLOSE_ON_EXIT=FALSE",
+                            "spring.jpa.hibernate.ddl-auto=update",
+                            "spring.jmx.enabled=false",
+                            "spring.jpa.properties.tweet.id.node=" + i,
+                            "tweet.changelog.poll-interval-ms=3600000")
+                    .run());
+        }
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        for(ConfigurableApplicationContext node : nodes){
+            node.close();
+        }
+    }
+
+    @Test
+    public void shouldPropagateChangesToEveryNode() {
+        Tweet tweet = new Tweet("Elaine Marley", "I'm the governor of Melee Island.");
+        service(0).publishTweet(tweet);
+        service(0).publishTweet(new Tweet("Elaine Marley", "Nobody lays a finger on my pirate."));
+
+        Tweet discarded = new Tweet();
+        discarded.setId(tweet.getId());
+        service(1).discardTweet(discarded);
+
+        for(int i = 0; i < NODES; i++){
+            changeLog(i).poll();
+        }
+
+        for(int i = 0; i < NODES; i++){
+            TweetStatisticsService.Counts counts = statistics(i).getCounts("Elaine Marley");
+            assertEquals("published tweets on node " + i, 1, counts.getPublished());
+            assertEquals("discarded tweets on node " + i, 1, counts.getDiscarded());
+        }
+    }
+
+    @Test
+    public void shouldKeepFollowingChangesAfterOldOnesAreDeleted() {
+        service(0).publishTweet(new Tweet("Stan", "Stan's previously owned vessels."));
+        changeLog(1).poll();
+        final TweetStorage storage = nodes.get(1).getBean(TweetStorage.class);
+        final long lastSeq = storage.findLastChangeSeq();
+
+        assertTrue(storage.deleteChangesBefore(lastSeq) >= 0);
+        assertEquals(lastSeq, storage.findLastChangeSeq());
+        assertTrue(storage.findChangesAfter(0, 10).stream().allMatch(change -> change.getSeq() >= lastSeq));
+
+        service(0).publishTweet(new Tweet("Stan", "Stan's previously previously owned vessels."));
+        changeLog(1).poll();
+        assertEquals(2, statistics(1).getCounts("Stan").getPublished());
+    }
+
+    private TweetService service(int node) {
+        return nodes.get(node).getBean(TweetService.class);
+    }
+
+    private TweetChangeLogService changeLog(int node) {
+        return nodes.get(node).getBean(TweetChangeLogService.class);
+    }
+
+    private TweetStatisticsService statistics(int node) {
+        return nodes.get(node).getBean(TweetStatisticsService.class);
+    }
+}
@@ -0,0 +1,106 @@
+package com.scmspain.services;
+
+import com.scmspain.entities.Tweet;
+import com.scmspain.entities.TweetChange;
+import com.scmspain.persistence.TweetPersistence;
+import org.hamcrest.CustomMatcher;
+import org.hamcrest.Matcher;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.boot.actuate.metrics.writer.MetricWriter;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.anyCollection;
+import static org.mockito.Matchers.argThat;
+import static org.mockito.Mockito.*;
+
+public class TweetChangeLogServiceTest {
+    private TweetPersistence tweetPersistence;
+    private TweetChangeListener changeListener;
+    private TweetChangeLogService tweetChangeLogService;
+    private final AtomicLong clock = new AtomicLong(1000000L);
+
+    @Before
+    public void setUp() throws Exception {
+        this.tweetPersistence = mock(TweetPersistence.class);
+        this.changeListener = mock(TweetChangeListener.class);
+        this.tweetChangeLogService = new TweetChangeLogService(tweetPersistence, mock(MetricWriter.class),
+                Collections.singletonList(changeListener), "local", 100, 60000, 600000, clock::get);
+
+        when(tweetPersistence.findLastChangeSeq()).thenReturn(10L);
+        when(tweetPersistence.findChanges(anyCollection())).thenReturn(Collections.emptyList());
+        tweetChangeLogService.start();
+    }
+
+    @Test
+    public void shouldNotifyOnlyChangesFromOtherNodes() {
+        TweetChange local = change(11L, "local");
+        TweetChange remote = change(12L, "remote");
+        when(tweetPersistence.findChangesAfter(10L, 100)).thenReturn(Arrays.asList(local, remote));
+
+        assertEquals(2, tweetChangeLogService.poll());
+
+        verify(changeListener).onTweetChange(remote);
+        verify(changeListener, never()).onTweetChange(local);
+        assertEquals(12L, tweetChangeLogService.getLastSeq());
+    }
+
+    @Test
+    public void shouldReadSkippedChangesWhenTheyShowUp() {
+        TweetChange late = change(11L, "remote");
+        TweetChange early = change(12L, "remote");
+        when(tweetPersistence.findChangesAfter(10L, 100)).thenReturn(Collections.singletonList(early));
+
+        tweetChangeLogService.poll();
+        verify(changeListener).onTweetChange(early);
+
+        when(tweetPersistence.findChangesAfter(12L, 100)).thenReturn(Collections.emptyList());
+        when(tweetPersistence.findChanges(argThat(containsOnly(11L)))).thenReturn(Collections.singletonList(late));
+
+        tweetChangeLogService.poll();
+        verify(changeListener).onTweetChange(late);
+    }
+
+    private static TweetChange change(long seq, String nodeId) {
+        Tweet tweet = new Tweet("Guybrush Threepwood", "I am Guybrush Threepwood, mighty pirate.");
+        tweet.setId(seq);
+        TweetChange change = new TweetChange(tweet, TweetChange.Type.PUBLISHED, nodeId);
+        change.setSeq(seq);
+        return change;
+    }
+
+    @Test
+    public void shouldDeleteChangesReadBeforeTheRetention() {
+        when(tweetPersistence.findChangesAfter(10L, 100)).thenReturn(Arrays.asList(change(11L, "remote"), change(12L, "remote")));
+        when(tweetPersistence.deleteChangesBefore(12L)).thenReturn(11);
+        tweetChangeLogService.poll();
+
+        assertEquals(0, tweetChangeLogService.trim());
+        clock.addAndGet(599999);
+        assertEquals(0, tweetChangeLogService.trim());
+        clock.addAndGet(1);
+        assertEquals(11, tweetChangeLogService.trim());
+
+        verify(tweetPersistence, times(1)).deleteChangesBefore(anyLong());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldNotKeepChangesShorterThanTheGapTimeout() {
+        new TweetChangeLogService(tweetPersistence, mock(MetricWriter.class), Collections.emptyList(), "local",
+                100, 60000, 60000);
+    }
+
+    private static Matcher<Collection<Long>> containsOnly(Long seq) {
+        return new CustomMatcher<Collection<Long>>("collection containing only " + seq) {
+            @Override
+            public boolean matches(Object item) {
+                return item instanceof Collection && ((Collection) item).size() == 1 && ((Collection) item).contains(seq);
+            }
+        };
+    }
+}
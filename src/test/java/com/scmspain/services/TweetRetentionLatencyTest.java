@@ -0,0 +1,117 @@
+package com.scmspain.services;
+
+import com.scmspain.configuration.TestConfiguration;
+import com.scmspain.entities.Tweet;
+import com.scmspain.persistence.PublisherDictionary;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.context.WebApplicationContext;
+
+import javax.persistence.EntityManager;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+import static org.springframework.test.web.servlet.setup.MockMvcBuilders.webAppContextSetup;
+
+/**
+ * Checks the published timeline keeps answering as fast while the retention purge deletes thousands of tweets.
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(classes = TestConfiguration.class, properties = {
+        "tweet.retention.discarded-max-age-days=1",
+        "tweet.retention.chunk-size=50",
+        "tweet.retention.pause-ms=1",
+        "tweet.retention.max-tweets-per-second=2000"})
+@DirtiesContext
+public class TweetRetentionLatencyTest {
+    private static final int PUBLISHED = 100;
+    private static final int EXPIRED = 5000;
+    private static final int SAMPLES = 200;
+
+    @Autowired
+    private WebApplicationContext context;
+    @Autowired
+    private EntityManager entityManager;
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+    @Autowired
+    private PublisherDictionary publisherDictionary;
+    @Autowired
+    private TweetRetentionService tweetRetentionService;
+    private MockMvc mockMvc;
+
+    @Before
+    public void setUp() {
+        this.mockMvc = webAppContextSetup(this.context).build();
+    }
+
+    @Test
+    public void shouldKeepTimelineLatencyStableWhilePurging() throws Exception {
+        Integer publisherId = publisherDictionary.getOrCreateId("Murray");
+        Instant discardedAt = Instant.now().minus(Duration.ofDays(2));
+        store(publisherId, PUBLISHED, null);
+        store(publisherId, EXPIRED, discardedAt);
+
+        timelineLatencies(SAMPLES); // warm up
+        long[] before = timelineLatencies(SAMPLES);
+
+        CompletableFuture<Long> purge = CompletableFuture.supplyAsync(tweetRetentionService::purge);
+        List<Long> samples = new ArrayList<>();
+        while(!purge.isDone()){
+            samples.add(timelineLatencies(1)[0]);
+        }
+        long[] during = samples.stream().mapToLong(Long::longValue).toArray();
+
+        assertThat(purge.get()).isEqualTo(EXPIRED);
+        assertThat(during.length).isGreaterThan(SAMPLES / 10);
+        assertThat(percentile(during, 50)).isLessThanOrEqualTo(percentile(before, 50) * 3 + 5_000_000);
+        assertThat(percentile(during, 99)).isLessThanOrEqualTo(percentile(before, 99) * 3 + 20_000_000);
+    }
+
+    private void store(Integer publisherId, int amount, Instant discardedAt) {
+        transactionTemplate.execute(status -> {
+            for(int i = 0; i < amount; i++){
+                Tweet tweet = new Tweet("Murray", "I am a powerful demonic force! "+ i);
+                tweet.setPublisherId(publisherId);
+                tweet.setDate(Instant.now());
+                tweet.setDiscarded(discardedAt != null);
+                tweet.setDiscardedAt(discardedAt);
+                entityManager.persist(tweet);
+            }
+            return null;
+        });
+    }
+
+    private long[] timelineLatencies(int samples) throws Exception {
+        long[] latencies = new long[samples];
+        for(int i = 0; i < samples; i++){
+            long start = System.nanoTime();
+            mockMvc.perform(get("/tweet"))
+                    .andExpect(status().is(200))
+                    .andExpect(jsonPath("$.length()").value(PUBLISHED));
+            latencies[i] = System.nanoTime() - start;
+        }
+        return latencies;
+    }
+
+    private static long percentile(long[] latencies, int percentile) {
+        long[] sorted = latencies.clone();
+        Arrays.sort(sorted);
+        return sorted[Math.min(sorted.length - 1, sorted.length * percentile / 100)];
+    }
+}
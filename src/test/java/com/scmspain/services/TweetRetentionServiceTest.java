@@ -0,0 +1,146 @@
+package com.scmspain.services;
+
+import com.scmspain.configuration.TestConfiguration;
+import com.scmspain.entities.Tweet;
+import com.scmspain.entities.TweetChange;
+import com.scmspain.persistence.TweetPersistence;
+import com.scmspain.persistence.TweetStorage;
+import com.scmspain.utils.SnowflakeIdGenerator;
+import org.hamcrest.CustomMatcher;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.boot.actuate.metrics.writer.MetricWriter;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.UUID;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Matchers.longThat;
+import static org.mockito.Mockito.*;
+
+public class TweetRetentionServiceTest {
+    private TweetPersistence tweetPersistence;
+    private TweetChangeListener changeListener;
+
+    @Before
+    public void setUp() throws Exception {
+        this.tweetPersistence = mock(TweetPersistence.class);
+        this.changeListener = mock(TweetChangeListener.class);
+
+        when(tweetPersistence.findDiscardedTweetIdsBefore(any(Instant.class), anyInt())).thenReturn(Collections.emptyList());
+        when(tweetPersistence.findPublishedTweetsBefore(anyLong(), anyLong(), anyInt())).thenReturn(Collections.emptyList());
+    }
+
+    @Test
+    public void shouldPurgeDiscardedTweetsChunkByChunk() {
+        TweetChange first = change(1L, TweetChange.Type.DISCARDED_PURGED);
+        TweetChange second = change(2L, TweetChange.Type.DISCARDED_PURGED);
+        when(tweetPersistence.findDiscardedTweetIdsBefore(any(Instant.class), eq(1)))
+                .thenReturn(Collections.singletonList(1L), Collections.singletonList(2L), Collections.emptyList());
+        when(tweetPersistence.purgeTweets(Collections.singletonList(1L))).thenReturn(Collections.singletonList(first));
+        when(tweetPersistence.purgeTweets(Collections.singletonList(2L))).thenReturn(Collections.singletonList(second));
+
+        assertEquals(2, service(Duration.ZERO, Duration.ofDays(1), 1).purge());
+
+        verify(changeListener).onTweetChange(first);
+        verify(changeListener).onTweetChange(second);
+        verify(tweetPersistence, never()).findPublishedTweetsBefore(anyLong(), anyLong(), anyInt());
+    }
+
+    @Test
+    public void shouldKeepTweetsStoredBeforeTimeOrderedIdsUntilTheyExpire() {
+        Instant now = Instant.now();
+        Object[] expired = {1L, now.minus(Duration.ofDays(40))};
+        Object[] young = {2L, now.minus(Duration.ofDays(1))};
+        long beforeId = SnowflakeIdGenerator.lowestIdAt(now.minus(Duration.ofDays(30)));
+        when(tweetPersistence.findPublishedTweetsBefore(eq(Long.MIN_VALUE), anyLong(), eq(10)))
+                .thenReturn(Arrays.<Object[]>asList(expired, young));
+        when(tweetPersistence.purgeTweets(Collections.singletonList(1L)))
+                .thenReturn(Collections.singletonList(change(1L, TweetChange.Type.PUBLISHED_PURGED)));
+
+        assertEquals(1, service(Duration.ofDays(30), Duration.ZERO, 10).purge());
+
+        verify(tweetPersistence).purgeTweets(Collections.singletonList(1L));
+        verify(tweetPersistence).findPublishedTweetsBefore(eq(2L), idCloseTo(beforeId), eq(10));
+    }
+
+    @Test
+    public void shouldStopPurgingWhenRepositoryFails() {
+        when(tweetPersistence.findDiscardedTweetIdsBefore(any(Instant.class), anyInt())).thenThrow(IllegalArgumentException.class);
+
+        assertEquals(0, service(Duration.ZERO, Duration.ofDays(1), 10).purge());
+    }
+
+    @Test
+    public void shouldNotThrottleWithoutMaximumRate() {
+        when(tweetPersistence.findDiscardedTweetIdsBefore(any(Instant.class), eq(10)))
+                .thenReturn(Collections.singletonList(1L), Collections.emptyList());
+        when(tweetPersistence.purgeTweets(Collections.singletonList(1L)))
+                .thenReturn(Collections.singletonList(change(1L, TweetChange.Type.DISCARDED_PURGED)));
+
+        assertEquals(1, service(Duration.ZERO, Duration.ofDays(1), 10, 0).purge());
+    }
+
+    @Test
+    public void shouldDeleteLinksNoOtherTweetRefersTo() {
+        try (ConfigurableApplicationContext context = new SpringApplicationBuilder(TestConfiguration.class)
+                .web(false)
+                .properties("spring.datasource.url=jdbc:h2:mem:retention-" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1;DB_CLOSE_ON_EXIT=FALSE",
+                        "spring.jmx.enabled=false")
+                .run()) {
+            TweetService tweetService = context.getBean(TweetService.class);
+            TweetStorage tweetStorage = context.getBean(TweetStorage.class);
+            JdbcTemplate jdbcTemplate = context.getBean(JdbcTemplate.class);
+            Tweet grog = new Tweet("Guybrush Threepwood", "Grog at http://www.scummbar.com/ tonight");
+            Tweet island = new Tweet("Guybrush Threepwood", "From http://www.scummbar.com/ to http://www.monkeyisland.com/ later");
+            tweetService.publishTweet(grog);
+            tweetService.publishTweet(island);
+
+            tweetStorage.purgeTweets(Collections.singletonList(island.getId()));
+            assertEquals(Collections.singletonList("http://www.scummbar.com/ "),
+                    jdbcTemplate.queryForList("SELECT URL FROM LINK", String.class));
+
+            tweetStorage.purgeTweets(Collections.singletonList(grog.getId()));
+            assertEquals(0, (int) jdbcTemplate.queryForObject("SELECT COUNT(*) FROM LINK", Integer.class));
+        }
+    }
+
+    private TweetRetentionService service(Duration publishedMaxAge, Duration discardedMaxAge, int chunkSize) {
+        return service(publishedMaxAge, discardedMaxAge, chunkSize, Integer.MAX_VALUE);
+    }
+
+    private TweetRetentionService service(Duration publishedMaxAge, Duration discardedMaxAge, int chunkSize,
+                                          int maxTweetsPerSecond) {
+        return new TweetRetentionService(tweetPersistence, mock(MetricWriter.class),
+                Collections.singletonList(changeListener), publishedMaxAge, discardedMaxAge,
+                chunkSize, 0, maxTweetsPerSecond, 3600000);
+    }
+
+    private static long idCloseTo(long approximately) {
+        // the purge computes its own cutoff a few milliseconds later, so the exact id can't be known.
+        return longThat(new CustomMatcher<Long>("close to "+ approximately) {
+            @Override
+            public boolean matches(Object item) {
+                return Math.abs(SnowflakeIdGenerator.timestampOf((Long) item).toEpochMilli()
+                        - SnowflakeIdGenerator.timestampOf(approximately).toEpochMilli()) < 60000;
+            }
+        });
+    }
+
+    private static TweetChange change(long id, TweetChange.Type type) {
+        Tweet tweet = new Tweet("Guybrush Threepwood", "");
+        tweet.setId(id);
+        tweet.setPublisherId(1);
+        return new TweetChange(tweet, type, "node");
+    }
+}
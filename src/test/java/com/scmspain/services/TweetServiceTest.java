@@ -1,13 +1,32 @@
 package com.scmspain.services;
 
+import com.scmspain.configuration.TestConfiguration;
 import com.scmspain.entities.Tweet;
+import com.scmspain.entities.TweetChange;
+import com.scmspain.persistence.ReadResult;
+import com.scmspain.persistence.RepositoryGuard;
 import com.scmspain.persistence.TweetPersistence;
+import com.scmspain.utils.CircuitBreaker;
 import org.junit.Before;
 import org.junit.Test;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.boot.actuate.metrics.writer.Delta;
 import org.springframework.boot.actuate.metrics.writer.MetricWriter;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 import static org.junit.Assert.*;
 import static org.mockito.Mockito.*;
@@ -16,19 +35,31 @@ public class TweetServiceTest {
     private MetricWriter metricWriter;
     private TweetService tweetService;
     private TweetPersistence tweetPersistence;
+    private TweetChangeListener changeListener;
+    private TimelineCache timelineCache;
 
     @Before
     public void setUp() throws Exception {
         this.metricWriter = mock(MetricWriter.class);
         this.tweetPersistence = mock(TweetPersistence.class);
-        this.tweetService = new TweetService(tweetPersistence, metricWriter);
+        this.changeListener = mock(TweetChangeListener.class);
+        this.timelineCache = mock(TimelineCache.class);
+        final RepositoryGuard repositoryGuard = new RepositoryGuard(new CircuitBreaker(10, 5, 50, 1000, 1000),
+                mock(PlatformTransactionManager.class), metricWriter, 2, 1000, 10, 0);
+        this.tweetService = new TweetService(tweetPersistence, metricWriter, Collections.singletonList(changeListener),
+                repositoryGuard, new TweetCache(metricWriter, repositoryGuard, 10), timelineCache);
     }
 
     @Test
     public void shouldPublishTweet() {
         Tweet tweet = new Tweet("Guybrush Threepwood", "I am Guybrush Threepwood, mighty pirate.");
+        TweetChange change = new TweetChange(tweet, TweetChange.Type.PUBLISHED, "node");
+        when(tweetPersistence.saveTweet(tweet)).thenReturn(change);
+
         tweetService.publishTweet(tweet);
+
         verify(tweetPersistence).saveTweet(tweet);
+        verify(changeListener).onTweetChange(change);
     }
 
     @Test
@@ -43,13 +74,24 @@ public class TweetServiceTest {
 
         when(tweetPersistence.findNonDiscardedTweets()).thenReturn(tweets);
 
-        List<Tweet> actual = tweetService.listAllTweets();
+        List<Tweet> actual = tweetService.listAllTweets().getValue();
 
         assertNotNull(actual);
         assertFalse(actual.isEmpty());
         assertEquals(tweets.size(), actual.size());
     }
 
+    @Test
+    public void shouldListAllTweetsFromTimelineCache() {
+        List<Tweet> tweets = Collections.singletonList(new Tweet("Guybrush Threepwood", "I am Guybrush Threepwood, mighty pirate."));
+        when(timelineCache.read()).thenReturn(new ReadResult<>(tweets, false));
+
+        List<Tweet> actual = tweetService.listAllTweets().getValue();
+
+        assertEquals(tweets, actual);
+        verify(tweetPersistence, never()).findNonDiscardedTweets();
+    }
+
     @Test
     public void shouldListDiscardedTweets() {
         Tweet tweet1 = new Tweet("Guybrush Threepwood", "I am Guybrush Threepwood, mighty pirate.");
@@ -65,19 +107,156 @@ public class TweetServiceTest {
 
         when(tweetPersistence.findDiscardedTweets(anyString())).thenReturn(tweets);
 
-        List<Tweet> actual = tweetService.listDiscardedTweets(anyString());
+        List<Tweet> actual = tweetService.listDiscardedTweets(anyString()).getValue();
 
         assertNotNull(actual);
         assertFalse(actual.isEmpty());
         assertEquals(tweets.size(), actual.size());
     }
 
+    @Test
+    public void shouldQueryRepositoryOnceForConcurrentIdenticalListings() throws Exception {
+        final int requests = 16;
+        final CountDownLatch unblock = new CountDownLatch(1);
+        final CountDownLatch coalesced = new CountDownLatch(requests - 1);
+        final MetricWriter metricWriter = new MetricWriter() {
+            @Override
+            public void increment(Delta<?> delta) {
+                if("repository.reads.coalesced".equals(delta.getName())){
+                    coalesced.countDown();
+                }
+            }
+
+            @Override
+            public void reset(String metricName) {
+            }
+
+            @Override
+            public void set(Metric<?> value) {
+            }
+        };
+        final RepositoryGuard repositoryGuard = new RepositoryGuard(new CircuitBreaker(10, 5, 50, 60000, 1000),
+                mock(PlatformTransactionManager.class), metricWriter, 2, 60000, 10, 0);
+        this.tweetService = new TweetService(tweetPersistence, metricWriter, Collections.singletonList(changeListener),
+                repositoryGuard, new TweetCache(metricWriter, repositoryGuard, 10), timelineCache);
+        final List<Tweet> tweets = Collections.singletonList(new Tweet("Guybrush Threepwood", "I am Guybrush Threepwood, mighty pirate."));
+        when(tweetPersistence.findDiscardedTweets("Guybrush Threepwood")).thenAnswer(invocation -> {
+            unblock.await();
+            return tweets;
+        });
+
+        final ExecutorService executor = Executors.newFixedThreadPool(requests);
+        try {
+            final List<Future<List<Tweet>>> results = new ArrayList<>();
+            for(int i = 0; i < requests; i++){
+                results.add(executor.submit(() -> tweetService.listDiscardedTweets("Guybrush Threepwood").getValue()));
+            }
+            assertTrue(coalesced.await(5, TimeUnit.SECONDS));
+            unblock.countDown();
+
+            for(Future<List<Tweet>> result : results){
+                assertSame(tweets, result.get());
+            }
+        } finally {
+            unblock.countDown();
+            executor.shutdownNow();
+        }
+        verify(tweetPersistence, times(1)).findDiscardedTweets("Guybrush Threepwood");
+    }
+
+    @Test
+    public void shouldRecoverTweetFromRepositoryOnlyOnce() {
+        Tweet tweet = new Tweet("Guybrush Threepwood", "I am Guybrush Threepwood, mighty pirate.");
+        tweet.setId(1L);
+        tweet.setDiscarded(false);
+        when(tweetPersistence.findTweetById(1L)).thenReturn(tweet);
+
+        assertSame(tweet, tweetService.getTweet(1L).getValue());
+        assertSame(tweet, tweetService.getTweet(1L).getValue());
+
+        verify(tweetPersistence, times(1)).findTweetById(1L);
+    }
+
+    @Test
+    public void shouldNotRecoverDiscardedTweet() {
+        Tweet tweet = new Tweet("Guybrush Threepwood", "I am Guybrush Threepwood, mighty pirate.");
+        tweet.setId(1L);
+        tweet.setDiscarded(true);
+        when(tweetPersistence.findTweetById(1L)).thenReturn(tweet);
+
+        assertNull(tweetService.getTweet(1L).getValue());
+        assertNull(tweetService.getTweet(2L).getValue());
+    }
+
     @Test
     public void shouldDiscardTweet(){
         Tweet tweet = new Tweet();
         tweet.setId(1L);
         tweetService.discardTweet(tweet);
 
-        verify(tweetPersistence).discardTweet(tweet);
+        verify(tweetPersistence).discardTweet(eq(tweet), any());
+        verify(changeListener, never()).onTweetChange(any(TweetChange.class));
+    }
+
+    @Test
+    public void shouldCheckPublisherOnDiscardWithoutReadingTweet(){
+        Tweet tweet = new Tweet();
+        tweet.setId(1L);
+        Consumer<String> check = publisher -> {};
+
+        tweetService.discardTweet(tweet, check);
+
+        verify(tweetPersistence).discardTweet(tweet, check);
+        verify(tweetPersistence, never()).findTweetById(anyLong());
+    }
+
+    @Test
+    public void shouldNotifyDiscardedTweet(){
+        Tweet tweet = new Tweet();
+        tweet.setId(1L);
+        Tweet discarded = new Tweet("Guybrush Threepwood", "I am Guybrush Threepwood, mighty pirate.");
+        discarded.setId(1L);
+        TweetChange change = new TweetChange(discarded, TweetChange.Type.DISCARDED, "node");
+
+        when(tweetPersistence.discardTweet(eq(tweet), any())).thenReturn(change);
+        tweetService.discardTweet(tweet);
+
+        verify(changeListener).onTweetChange(change);
+    }
+
+    @Test
+    public void shouldNotCacheTweetLoadedBeforeItsDiscardCommits() throws Exception {
+        try (ConfigurableApplicationContext context = new SpringApplicationBuilder(TestConfiguration.class)
+                .web(false)
+                .properties("spring.datasource.url=jdbc:h2:mem:discard-" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1;DB_CLOSE_ON_EXIT=FALSE",
+                        "spring.jmx.enabled=false")
+                .run()) {
+            TweetService tweetService = context.getBean(TweetService.class);
+            TransactionTemplate transaction = new TransactionTemplate(context.getBean(PlatformTransactionManager.class));
+            Tweet tweet = new Tweet("Guybrush Threepwood", "I am Guybrush Threepwood, mighty pirate.");
+            tweetService.publishTweet(tweet);
+            Long id = tweet.getId();
+
+            ExecutorService executor = Executors.newSingleThreadExecutor();
+            try {
+                Future<Tweet> loaded = transaction.execute(status -> {
+                    Tweet discarded = new Tweet();
+                    discarded.setId(id);
+                    tweetService.discardTweet(discarded);
+                    Future<Tweet> load = executor.submit(() -> tweetService.getTweet(id).getValue());
+                    try {
+                        load.get(5, TimeUnit.SECONDS);
+                    } catch (Exception ex){
+                        throw new IllegalStateException(ex);
+                    }
+                    return load;
+                });
+
+                assertNotNull("loaded while the discard was not committed yet", loaded.get());
+                assertNull(tweetService.getTweet(id).getValue());
+            } finally {
+                executor.shutdownNow();
+            }
+        }
     }
 }
@@ -0,0 +1,110 @@
+package com.scmspain.services;
+
+import com.scmspain.persistence.TweetPersistence;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+public class TweetStatisticsServiceTest {
+    private static final int GUYBRUSH = 1;
+    private static final int PIRATE = 2;
+    private static final int LECHUCK = 3;
+
+    private TweetPersistence tweetPersistence;
+    private TweetStatisticsService tweetStatisticsService;
+
+    @Before
+    public void setUp() throws Exception {
+        this.tweetPersistence = mock(TweetPersistence.class);
+        this.tweetStatisticsService = new TweetStatisticsService(tweetPersistence);
+
+        when(tweetPersistence.findPublisherId("Guybrush Threepwood")).thenReturn(GUYBRUSH);
+        when(tweetPersistence.findPublisherId("Pirate")).thenReturn(PIRATE);
+        when(tweetPersistence.findPublisherId("LeChuck")).thenReturn(LECHUCK);
+        when(tweetPersistence.findPublisherName(GUYBRUSH)).thenReturn("Guybrush Threepwood");
+        when(tweetPersistence.findPublisherName(PIRATE)).thenReturn("Pirate");
+        when(tweetPersistence.findPublisherName(LECHUCK)).thenReturn("LeChuck");
+    }
+
+    @Test
+    public void shouldSeedCountersFromRepository() {
+        List<Object[]> rows = new ArrayList<>();
+        rows.add(new Object[]{GUYBRUSH, false, 3L});
+        rows.add(new Object[]{GUYBRUSH, true, 1L});
+        rows.add(new Object[]{PIRATE, false, 2L});
+        when(tweetPersistence.countTweetsByPublisher()).thenReturn(rows);
+
+        tweetStatisticsService.seed();
+
+        TweetStatisticsService.Statistics statistics = tweetStatisticsService.snapshot();
+        assertEquals(5, statistics.getPublished());
+        assertEquals(1, statistics.getDiscarded());
+        assertEquals(new TweetStatisticsService.Counts(3, 1), tweetStatisticsService.getCounts("Guybrush Threepwood"));
+        assertEquals(new TweetStatisticsService.Counts(2, 0), tweetStatisticsService.getCounts("Pirate"));
+    }
+
+    @Test
+    public void shouldCountPublishedAndDiscardedTweets() {
+        tweetStatisticsService.published(GUYBRUSH);
+        tweetStatisticsService.published(GUYBRUSH);
+        tweetStatisticsService.published(PIRATE);
+        tweetStatisticsService.discarded(GUYBRUSH);
+
+        TweetStatisticsService.Statistics statistics = tweetStatisticsService.snapshot();
+        assertEquals(2, statistics.getPublished());
+        assertEquals(1, statistics.getDiscarded());
+        assertEquals(new TweetStatisticsService.Counts(1, 1), tweetStatisticsService.getCounts("Guybrush Threepwood"));
+        assertEquals(new TweetStatisticsService.Counts(0, 0), tweetStatisticsService.getCounts("LeChuck"));
+    }
+
+    @Test
+    public void shouldUncountPurgedTweets() {
+        tweetStatisticsService.published(GUYBRUSH);
+        tweetStatisticsService.published(GUYBRUSH);
+        tweetStatisticsService.discarded(GUYBRUSH);
+        tweetStatisticsService.purged(GUYBRUSH, true);
+        tweetStatisticsService.purged(GUYBRUSH, false);
+
+        TweetStatisticsService.Statistics statistics = tweetStatisticsService.snapshot();
+        assertEquals(0, statistics.getPublished());
+        assertEquals(0, statistics.getDiscarded());
+        assertEquals(new TweetStatisticsService.Counts(0, 0), tweetStatisticsService.getCounts("Guybrush Threepwood"));
+    }
+
+    @Test
+    public void shouldReplaceDriftedCountersOnReconcile() {
+        tweetStatisticsService.published(GUYBRUSH);
+        tweetStatisticsService.published(LECHUCK);
+
+        List<Object[]> rows = new ArrayList<>();
+        rows.add(new Object[]{GUYBRUSH, false, 4L});
+        when(tweetPersistence.countTweetsByPublisher()).thenReturn(rows);
+
+        tweetStatisticsService.reconcile();
+
+        TweetStatisticsService.Statistics statistics = tweetStatisticsService.snapshot();
+        assertEquals(4, statistics.getPublished());
+        assertEquals(0, statistics.getDiscarded());
+        assertFalse(statistics.getPublishers().containsKey("LeChuck"));
+    }
+
+    @Test
+    public void shouldCountPublishersWithKeysBeyondInitialCapacity() {
+        when(tweetPersistence.findPublisherName(5000)).thenReturn("Stan");
+        when(tweetPersistence.findPublisherId("Stan")).thenReturn(5000);
+
+        tweetStatisticsService.published(GUYBRUSH);
+        tweetStatisticsService.published(5000);
+        tweetStatisticsService.published(5000);
+
+        TweetStatisticsService.Statistics statistics = tweetStatisticsService.snapshot();
+        assertEquals(3, statistics.getPublished());
+        assertEquals(new TweetStatisticsService.Counts(2, 0), statistics.getPublishers().get("Stan"));
+        assertEquals(new TweetStatisticsService.Counts(1, 0), tweetStatisticsService.getCounts("Guybrush Threepwood"));
+    }
+}
@@ -0,0 +1,126 @@
+package com.scmspain.utils;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class CircuitBreakerTest {
+    private long now;
+    private CircuitBreaker circuitBreaker;
+
+    @Before
+    public void setUp() throws Exception {
+        this.circuitBreaker = new CircuitBreaker(4, 2, 50, 100, 1000, () -> now);
+    }
+
+    @Test
+    public void shouldOpenWhenTooManyCallsFail() {
+        succeed();
+        assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState());
+
+        fail();
+
+        assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+        assertNull(circuitBreaker.tryAcquire());
+    }
+
+    @Test
+    public void shouldOpenWhenTooManyCallsAreSlow() {
+        succeed();
+        assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.tryAcquire());
+        circuitBreaker.onResult(CircuitBreaker.State.CLOSED, TimeUnit.MILLISECONDS.toNanos(150), false);
+
+        assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+    }
+
+    @Test
+    public void shouldNotJudgeBeforeMinimumCalls() {
+        fail();
+
+        assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState());
+    }
+
+    @Test
+    public void shouldForgetCallsOutOfTheWindow() {
+        succeed();
+        succeed();
+        fail();
+        succeed();
+        succeed();
+        succeed();
+        succeed();
+        fail();
+
+        assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState());
+    }
+
+    @Test
+    public void shouldAllowSingleTrialCallOnceOpenTimeElapsed() {
+        fail();
+        fail();
+
+        now += TimeUnit.MILLISECONDS.toNanos(1000);
+
+        assertEquals(CircuitBreaker.State.HALF_OPEN, circuitBreaker.tryAcquire());
+        assertEquals(CircuitBreaker.State.HALF_OPEN, circuitBreaker.getState());
+        assertNull(circuitBreaker.tryAcquire());
+
+        circuitBreaker.onResult(CircuitBreaker.State.HALF_OPEN, 0, false);
+        assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState());
+        assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.tryAcquire());
+    }
+
+    @Test
+    public void shouldNotTakeCallAllowedWhileClosedForTheTrialCall() {
+        assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.tryAcquire());
+        fail();
+        fail();
+        now += TimeUnit.MILLISECONDS.toNanos(1000);
+        assertEquals(CircuitBreaker.State.HALF_OPEN, circuitBreaker.tryAcquire());
+
+        circuitBreaker.onResult(CircuitBreaker.State.CLOSED, 0, false);
+        circuitBreaker.release(CircuitBreaker.State.CLOSED);
+
+        assertEquals(CircuitBreaker.State.HALF_OPEN, circuitBreaker.getState());
+        assertNull(circuitBreaker.tryAcquire());
+    }
+
+    @Test
+    public void shouldOpenAgainWhenTrialCallFails() {
+        fail();
+        fail();
+        now += TimeUnit.MILLISECONDS.toNanos(1000);
+
+        fail();
+
+        assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+        assertNull(circuitBreaker.tryAcquire());
+    }
+
+    @Test
+    public void shouldAllowAnotherTrialCallWhenReleased() {
+        fail();
+        fail();
+        now += TimeUnit.MILLISECONDS.toNanos(1000);
+
+        assertEquals(CircuitBreaker.State.HALF_OPEN, circuitBreaker.tryAcquire());
+        circuitBreaker.release(CircuitBreaker.State.HALF_OPEN);
+
+        assertEquals(CircuitBreaker.State.HALF_OPEN, circuitBreaker.tryAcquire());
+    }
+
+    private void succeed() {
+        CircuitBreaker.State admittedIn = circuitBreaker.tryAcquire();
+        assertNotNull(admittedIn);
+        circuitBreaker.onResult(admittedIn, 0, false);
+    }
+
+    private void fail() {
+        CircuitBreaker.State admittedIn = circuitBreaker.tryAcquire();
+        assertNotNull(admittedIn);
+        circuitBreaker.onResult(admittedIn, 0, true);
+    }
+}
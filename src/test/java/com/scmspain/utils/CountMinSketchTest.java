@@ -0,0 +1,53 @@
+package com.scmspain.utils;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class CountMinSketchTest {
+
+    @Test
+    public void shouldNeverUnderestimate() {
+        CountMinSketch sketch = new CountMinSketch(4, 64);
+        for(long key = 0; key < 1000; key++){
+            sketch.add(key, key % 10);
+        }
+
+        for(long key = 0; key < 1000; key++){
+            assertTrue(sketch.estimate(key) >= key % 10);
+        }
+    }
+
+    @Test
+    public void shouldCountExactlyWithoutCollisions() {
+        CountMinSketch sketch = new CountMinSketch(4, 1 << 16);
+        sketch.add(42L, 3);
+        sketch.add(42L, -1);
+        sketch.add(-7L, 5);
+
+        assertEquals(2, sketch.estimate(42L));
+        assertEquals(5, sketch.estimate(-7L));
+        assertEquals(0, sketch.estimate(1L));
+    }
+
+    @Test
+    public void shouldKeepHeavyHittersWithinErrorBound() {
+        CountMinSketch sketch = new CountMinSketch(4, 1024);
+        long total = 0;
+        for(long key = 0; key < 100_000; key++){
+            sketch.add(key, 1);
+            total++;
+        }
+        sketch.add(-1L, 5000);
+        total += 5000;
+
+        long estimate = sketch.estimate(-1L);
+        assertTrue(estimate >= 5000);
+        assertTrue(estimate <= 5000 + Math.E * total / 1024);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectInvalidDimensions() {
+        new CountMinSketch(0, 16);
+    }
+}
@@ -0,0 +1,97 @@
+package com.scmspain.utils;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+public class RateLimiterTest {
+    private final AtomicLong clock = new AtomicLong(-TimeUnit.SECONDS.toNanos(100));
+
+    @Test
+    public void shouldAllowBurstThenRate() {
+        RateLimiter rateLimiter = new RateLimiter(2, 3, 10, clock::get);
+
+        assertEquals(0, rateLimiter.tryAcquire("Guybrush"));
+        assertEquals(0, rateLimiter.tryAcquire("Guybrush"));
+        assertEquals(0, rateLimiter.tryAcquire("Guybrush"));
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(500), rateLimiter.tryAcquire("Guybrush"));
+
+        clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(500));
+        assertEquals(0, rateLimiter.tryAcquire("Guybrush"));
+        assertTrue(rateLimiter.tryAcquire("Guybrush") > 0);
+    }
+
+    @Test
+    public void shouldLimitEveryKeyOnItsOwn() {
+        RateLimiter rateLimiter = new RateLimiter(1, 1, 10, clock::get);
+
+        assertEquals(0, rateLimiter.tryAcquire("Guybrush"));
+        assertTrue(rateLimiter.tryAcquire("Guybrush") > 0);
+        assertEquals(0, rateLimiter.tryAcquire("LeChuck"));
+    }
+
+    @Test
+    public void shouldEvictIdleBuckets() {
+        RateLimiter rateLimiter = new RateLimiter(1, 2, 10, clock::get);
+        rateLimiter.tryAcquire("Guybrush");
+        rateLimiter.tryAcquire("LeChuck");
+        rateLimiter.tryAcquire("LeChuck");
+
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(1));
+        rateLimiter.evictIdle();
+
+        assertEquals(1, rateLimiter.size());
+    }
+
+    @Test
+    public void shouldShareOverflowBucketOnceFull() {
+        RateLimiter rateLimiter = new RateLimiter(1, 1, 2, clock::get);
+        rateLimiter.tryAcquire("Guybrush");
+        rateLimiter.tryAcquire("LeChuck");
+
+        assertEquals(0, rateLimiter.tryAcquire("Stan"));
+        assertTrue(rateLimiter.tryAcquire("Otis") > 0);
+        assertEquals(2, rateLimiter.size());
+
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(2));
+        assertEquals(0, rateLimiter.tryAcquire("Otis"));
+        assertEquals(1, rateLimiter.size());
+    }
+
+    @Test
+    public void shouldNeverAllowMoreThanBurstConcurrently() throws Exception {
+        RateLimiter rateLimiter = new RateLimiter(1, 100, 10, clock::get);
+        AtomicInteger allowed = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for(int i = 0; i < 16; i++){
+            Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException ex){
+                    return;
+                }
+                for(int j = 0; j < 100; j++){
+                    if(rateLimiter.tryAcquire("Guybrush") == 0){
+                        allowed.incrementAndGet();
+                    }
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        start.countDown();
+        for(Thread thread : threads){
+            thread.join();
+        }
+
+        assertEquals(100, allowed.get());
+    }
+}
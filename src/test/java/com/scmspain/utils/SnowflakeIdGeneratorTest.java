@@ -0,0 +1,119 @@
+package com.scmspain.utils;
+
+import org.junit.Test;
+
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+public class SnowflakeIdGeneratorTest {
+    private static final int THREADS = 32;
+    private static final int IDS_PER_THREAD = 100_000;
+
+    @Test
+    public void shouldGenerateUniqueIdsFromManyThreads() throws Exception {
+        SnowflakeIdGenerator generator = new SnowflakeIdGenerator(1, 5000);
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+
+        List<Future<long[]>> futures = new ArrayList<>();
+        for(int i = 0; i < THREADS; i++){
+            futures.add(executor.submit(() -> {
+                long[] ids = new long[IDS_PER_THREAD];
+                start.await();
+                for(int j = 0; j < IDS_PER_THREAD; j++){
+                    ids[j] = generator.nextId();
+                }
+                return ids;
+            }));
+        }
+        start.countDown();
+
+        long[] all = new long[THREADS * IDS_PER_THREAD];
+        for(int i = 0; i < THREADS; i++){
+            long[] ids = futures.get(i).get(1, TimeUnit.MINUTES);
+            for(int j = 1; j < ids.length; j++){
+                assertTrue("ids of a thread must be increasing", ids[j] > ids[j - 1]);
+            }
+            System.arraycopy(ids, 0, all, i * IDS_PER_THREAD, IDS_PER_THREAD);
+        }
+        executor.shutdown();
+
+        Arrays.sort(all);
+        for(int i = 1; i < all.length; i++){
+            assertNotEquals("duplicated id", all[i - 1], all[i]);
+        }
+    }
+
+    @Test
+    public void shouldNotCollideAmongNodes() {
+        AtomicLong clock = new AtomicLong(Instant.parse("2017-06-01T00:00:00Z").toEpochMilli());
+        SnowflakeIdGenerator node1 = new SnowflakeIdGenerator(1, 5000, clock::get);
+        SnowflakeIdGenerator node2 = new SnowflakeIdGenerator(2, 5000, clock::get);
+
+        assertNotEquals(node1.nextId(), node2.nextId());
+    }
+
+    @Test
+    public void shouldKeepIncreasingWhenClockMovesBackwards() {
+        AtomicLong clock = new AtomicLong(Instant.parse("2017-06-01T00:00:00Z").toEpochMilli());
+        SnowflakeIdGenerator generator = new SnowflakeIdGenerator(1, 5000, clock::get);
+
+        long first = generator.nextId();
+        clock.addAndGet(-1000);
+        long second = generator.nextId();
+
+        assertTrue(second > first);
+        assertEquals(SnowflakeIdGenerator.timestampOf(first), SnowflakeIdGenerator.timestampOf(second));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void shouldFailWhenClockMovesBackwardsTooMuch() {
+        AtomicLong clock = new AtomicLong(Instant.parse("2017-06-01T00:00:00Z").toEpochMilli());
+        SnowflakeIdGenerator generator = new SnowflakeIdGenerator(1, 5000, clock::get);
+
+        generator.nextId();
+        clock.addAndGet(-10000);
+        generator.nextId();
+    }
+
+    @Test
+    public void shouldWaitForNextMillisecondWhenSequenceIsExhausted() {
+        Instant now = Instant.parse("2017-06-01T00:00:00Z");
+        AtomicLong reads = new AtomicLong();
+        int idsPerMillisecond = 1 << SnowflakeIdGenerator.SEQUENCE_BITS;
+        // the clock moves to the next millisecond only after being read a few times more than there are ids.
+        SnowflakeIdGenerator generator = new SnowflakeIdGenerator(1, 5000,
+                () -> now.toEpochMilli() + (reads.incrementAndGet() > idsPerMillisecond + 10 ? 1 : 0));
+
+        long last = 0;
+        for(int i = 0; i <= idsPerMillisecond; i++){
+            long id = generator.nextId();
+            assertTrue(id > last);
+            last = id;
+        }
+
+        assertEquals(now.plusMillis(1), SnowflakeIdGenerator.timestampOf(last));
+    }
+
+    @Test
+    public void shouldMapTimestampsToIdRanges() {
+        Instant now = Instant.parse("2017-06-01T00:00:00Z");
+        SnowflakeIdGenerator generator = new SnowflakeIdGenerator(SnowflakeIdGenerator.MAX_NODE, 5000, now::toEpochMilli);
+
+        long id = generator.nextId();
+
+        assertEquals(now, SnowflakeIdGenerator.timestampOf(id));
+        assertTrue(id >= SnowflakeIdGenerator.lowestIdAt(now));
+        assertTrue(id < SnowflakeIdGenerator.lowestIdAt(now.plusMillis(1)));
+    }
+}